@@ -0,0 +1,37 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.event;
+
+/**
+ * <p>An event which supersedes the earlier events of the same type with the same key. If several such events are
+ * fired before the listeners are notified then the listeners are notified on the latest event only.</p>
+ */
+public interface CoalescingEvent extends Event {
+
+    /**
+     * <p>Gets the key identifying the events superseding each other.</p>
+     *
+     * @return a key of the event.
+     */
+    Object getCoalescingKey();
+
+}
@@ -21,6 +21,7 @@
 
 package com.hmdm.event;
 
+import com.hmdm.rest.json.DeviceInfo;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.ToString;
@@ -29,11 +30,14 @@ import java.io.Serializable;
 
 /**
  * <p>An event fired when info for device was updated.</p>
+ *
+ * <p>The events for the same device supersede each other. If the event is fired for the info just submitted by
+ * device then it carries that info, so the listeners do not need to read it from database.</p>
  */
 @Data
 @AllArgsConstructor
-@ToString
-public class DeviceInfoUpdatedEvent implements Event, Serializable {
+@ToString(exclude = "deviceInfo")
+public class DeviceInfoUpdatedEvent implements CoalescingEvent, Serializable {
 
     private static final long serialVersionUID = 482433207404662000L;
     
@@ -42,6 +46,24 @@ public class DeviceInfoUpdatedEvent implements Event, Serializable {
      */
     private final int deviceId;
 
+    /**
+     * <p>An ID of the configuration of the device or <code>null</code> if not known.</p>
+     */
+    private final transient Integer configurationId;
+
+    /**
+     * <p>The updated info of the device or <code>null</code> if it has to be read from database.</p>
+     */
+    private final transient DeviceInfo deviceInfo;
+
+    /**
+     * <p>Constructs new <code>DeviceInfoUpdatedEvent</code> instance for the device which info has to be read from
+     * database.</p>
+     */
+    public DeviceInfoUpdatedEvent(int deviceId) {
+        this(deviceId, null, null);
+    }
+
     /**
      * <p>Gets the type of the event.</p>
      *
@@ -51,4 +73,14 @@ public class DeviceInfoUpdatedEvent implements Event, Serializable {
     public EventType getType() {
         return EventType.DEVICE_INFO_UPDATED;
     }
+
+    /**
+     * <p>Gets the key identifying the events superseding each other.</p>
+     *
+     * @return an ID of the device.
+     */
+    @Override
+    public Object getCoalescingKey() {
+        return deviceId;
+    }
 }
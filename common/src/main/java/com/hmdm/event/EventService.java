@@ -28,6 +28,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.validation.constraints.NotNull;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -53,6 +54,18 @@ public class EventService {
      */
     private final BackgroundTaskRunnerService taskRunner;
 
+    /**
+     * <p>A mapping from the keys of the coalescing events to the latest events of those keys for which the listeners
+     * are not yet notified.</p>
+     */
+    private final ConcurrentMap<List<Object>, PendingEvent> pendingEvents = new ConcurrentHashMap<>();
+
+    /**
+     * <p>A period after which the pending coalescing event is submitted again if it has not been handled (in
+     * milliseconds). Protects from losing the events if the task has been discarded by the runner.</p>
+     */
+    private static final long PENDING_EVENT_TIMEOUT = 60000;
+
     /**
      * <p>Constructs new <code>EventService</code> instance. This implementation does nothing.</p>
      */
@@ -82,15 +95,78 @@ public class EventService {
      */
     @SuppressWarnings("unchecked")
     public void fireEvent(final Event event) {
+        if (event instanceof CoalescingEvent) {
+            fireCoalescingEvent((CoalescingEvent) event);
+            return;
+        }
         try {
             final List<EventListener<? extends Event>> eventListeners = this.eventListeners.get(event.getType());
             eventListeners.forEach(listener -> {
                 final HandleEventTask task = new HandleEventTask(event, listener);
-                this.taskRunner.submitTask(task);
+                this.taskRunner.submitTask(BackgroundTaskRunnerService.Lane.EVENTS, "Event " + event.getType(), task);
             });
         } catch (Exception e) {
             logger.error("Unexpected error when firing event: {}", event, e);
         }
     }
 
+    /**
+     * <p>Notifies the intended listeners on the coalescing event. Only one task per key is submitted; if the next event
+     * with the same key is fired before the task has been run then the task notifies the listeners on the latest event
+     * only.</p>
+     *
+     * @param event a new fired event to notify the respective listeners on.
+     */
+    private void fireCoalescingEvent(final CoalescingEvent event) {
+        try {
+            final List<Object> key = Arrays.asList(event.getType(), event.getCoalescingKey());
+            final long now = System.currentTimeMillis();
+            final boolean[] submit = new boolean[1];
+            this.pendingEvents.compute(key, (k, pending) -> {
+                submit[0] = pending == null || now - pending.submitTime > PENDING_EVENT_TIMEOUT;
+                return new PendingEvent(event, submit[0] ? now : pending.submitTime);
+            });
+            if (submit[0]) {
+                this.taskRunner.submitTask(BackgroundTaskRunnerService.Lane.EVENTS, "Event " + event.getType(),
+                        () -> handleCoalescingEvent(key));
+            }
+        } catch (Exception e) {
+            logger.error("Unexpected error when firing event: {}", event, e);
+        }
+    }
+
+    /**
+     * <p>Notifies the listeners on the latest pending event with the specified key.</p>
+     *
+     * @param key a key of the pending event.
+     */
+    @SuppressWarnings("unchecked")
+    private void handleCoalescingEvent(List<Object> key) {
+        final PendingEvent pending = this.pendingEvents.remove(key);
+        if (pending == null) {
+            // Already handled by the task submitted again
+            return;
+        }
+        this.eventListeners.get(pending.event.getType()).forEach(listener -> {
+            try {
+                new HandleEventTask(pending.event, listener).run();
+            } catch (Exception e) {
+                logger.error("Unexpected error when handling event: {}", pending.event, e);
+            }
+        });
+    }
+
+    /**
+     * <p>A coalescing event waiting for the listeners to be notified.</p>
+     */
+    private static class PendingEvent {
+        private final Event event;
+        private final long submitTime;
+
+        private PendingEvent(Event event, long submitTime) {
+            this.event = event;
+            this.submitTime = submitTime;
+        }
+    }
+
 }
@@ -22,7 +22,7 @@
 package com.hmdm.guice.module;
 
 import com.google.inject.name.Names;
-import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import com.hmdm.persistence.TransactionHooks;
 import org.mybatis.guice.MyBatisModule;
 import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
 
@@ -56,7 +56,8 @@ public abstract class AbstractPersistenceModule extends MyBatisModule {
      *
      * <ul>
      *     <li>Binds the constants with names starting with "JDBC" to values set in context</li>
-     *     <li>Configures the SQL session factory to use conection pool and JDBC transaction strategy</li>
+     *     <li>Configures the SQL session factory to use conection pool and JDBC transaction strategy which performs
+     *     the actions registered with {@link TransactionHooks} after commit</li>
      *     <li>Sets database connection poll size to 30</li>
      *     <li>Register the mapper classes and aliases for domain objects</li>
      * </ul>
@@ -65,7 +66,7 @@ public abstract class AbstractPersistenceModule extends MyBatisModule {
      * return the package names specific to plugins.</p>
      *
      * @see PooledDataSourceProvider
-     * @see JdbcTransactionFactory
+     * @see TransactionHooks.TransactionFactory
      */
     protected final void initialize() {
         Enumeration params = this.context.getInitParameterNames();
@@ -89,7 +90,7 @@ public abstract class AbstractPersistenceModule extends MyBatisModule {
         this.bindConstant().annotatedWith(Names.named("mybatis.pooled.maximumActiveConnections")).to(30);
         this.environmentId("production");
         this.bindDataSourceProviderType(PooledDataSourceProvider.class);
-        this.bindTransactionFactoryType(JdbcTransactionFactory.class);
+        this.bindTransactionFactoryType(TransactionHooks.TransactionFactory.class);
         this.addMapperClasses(getMapperPackageName());
         this.addSimpleAliases(getDomainObjectsPackageName());
     }
@@ -57,6 +57,7 @@ import com.hmdm.persistence.domain.Customer;
 import com.hmdm.persistence.mapper.ApplicationMapper;
 import com.hmdm.security.SecurityContext;
 import com.hmdm.security.SecurityException;
+import com.hmdm.service.ConfigurationRevisionService;
 
 import javax.validation.constraints.NotNull;
 
@@ -71,19 +72,22 @@ public class ApplicationDAO extends AbstractLinkedDAO<Application, ApplicationCo
     private final String baseUrl;
     private final String apkTrustedUrl;
     private APKFileAnalyzer apkFileAnalyzer;
+    private final ConfigurationRevisionService revisionService;
 
     @Inject
     public ApplicationDAO(ApplicationMapper mapper, CustomerDAO customerDAO,
                           @Named("files.directory") String filesDirectory,
                           @Named("base.url") String baseUrl,
                           @Named("apk.trusted.url") String apkTrustedUrl,
-                          APKFileAnalyzer apkFileAnalyzer) {
+                          APKFileAnalyzer apkFileAnalyzer,
+                          ConfigurationRevisionService revisionService) {
         this.mapper = mapper;
         this.customerDAO = customerDAO;
         this.filesDirectory = filesDirectory;
         this.baseUrl = baseUrl;
         this.apkTrustedUrl = apkTrustedUrl;
         this.apkFileAnalyzer = apkFileAnalyzer;
+        this.revisionService = revisionService;
     }
 
     public List<Application> getAllApplications() {
@@ -278,6 +282,7 @@ public class ApplicationDAO extends AbstractLinkedDAO<Application, ApplicationCo
     @Transactional
     public void updateApplication(Application application) {
         updateRecord(application, this.mapper::updateApplication, SecurityException::onApplicationAccessViolation);
+        this.revisionService.onCommonDataChanged();
     }
 
     /**
@@ -296,6 +301,7 @@ public class ApplicationDAO extends AbstractLinkedDAO<Application, ApplicationCo
             application.setVersion("0");
 
             updateRecord(application, this.mapper::updateApplication, SecurityException::onApplicationAccessViolation);
+            this.revisionService.onCommonDataChanged();
         } else {
             throw SecurityException.onAnonymousAccess();
         }
@@ -349,6 +355,8 @@ public class ApplicationDAO extends AbstractLinkedDAO<Application, ApplicationCo
             final ApplicationVersion newLatestVersion = this.mapper.findVersionById(newLatestVersionId);
             doAutoUpdateToApplicationVersion(newLatestVersion);
         }
+
+        this.revisionService.onCommonDataChanged();
     }
 
     /**
@@ -380,6 +388,7 @@ public class ApplicationDAO extends AbstractLinkedDAO<Application, ApplicationCo
                 (record) -> this.mapper.removeApplicationById(record.getId()),
                 SecurityException::onApplicationAccessViolation
         );
+        this.revisionService.onCommonDataChanged();
 
         if (removeApk) {
             final int customerId = SecurityContext.get().getCurrentUser().get().getCustomerId();
@@ -471,6 +480,7 @@ public class ApplicationDAO extends AbstractLinkedDAO<Application, ApplicationCo
             this.mapper.recheckConfigurationKioskModes(user.getCustomerId());
         });
 
+        this.revisionService.onCommonDataChanged();
     }
 
     @Transactional
@@ -506,6 +516,8 @@ public class ApplicationDAO extends AbstractLinkedDAO<Application, ApplicationCo
         this.mapper.recheckConfigurationMainApplications(user.getCustomerId());
         this.mapper.recheckConfigurationContentApplications(user.getCustomerId());
         this.mapper.recheckConfigurationKioskModes(user.getCustomerId());
+
+        this.revisionService.onCommonDataChanged();
     }
 
     public void removeApplicationConfigurationsByVersionId(Integer applicationVersionId, User user) {
@@ -702,6 +714,8 @@ public class ApplicationDAO extends AbstractLinkedDAO<Application, ApplicationCo
 
                 // Evaluate the most recent version for new common app
                 this.mapper.recalculateLatestVersion(newCommonApplication.getId());
+
+                this.revisionService.onCommonDataChanged();
             }
         }
     }
@@ -819,6 +833,7 @@ public class ApplicationDAO extends AbstractLinkedDAO<Application, ApplicationCo
                 }
             }
 
+            this.revisionService.onCommonDataChanged();
 
             return dbApplicationVersion.getUrl();
         }
@@ -960,6 +975,8 @@ public class ApplicationDAO extends AbstractLinkedDAO<Application, ApplicationCo
             doAutoUpdateToApplicationVersion(applicationVersion);
         }
 
+        this.revisionService.onCommonDataChanged();
+
         return applicationVersion.getId();
     }
 
@@ -29,6 +29,7 @@ import com.hmdm.persistence.mapper.CustomerMapper;
 import com.hmdm.persistence.mapper.DeviceMapper;
 import com.hmdm.security.SecurityContext;
 import com.hmdm.security.SecurityException;
+import com.hmdm.service.ConfigurationRevisionService;
 
 @Singleton
 public class CommonDAO extends AbstractDAO<Settings> {
@@ -36,12 +37,15 @@ public class CommonDAO extends AbstractDAO<Settings> {
     private final CommonMapper mapper;
     private final CustomerMapper customerMapper;
     private final DeviceMapper deviceMapper;
+    private final ConfigurationRevisionService revisionService;
 
     @Inject
-    public CommonDAO(CommonMapper mapper, CustomerMapper customerMapper, DeviceMapper deviceMapper) {
+    public CommonDAO(CommonMapper mapper, CustomerMapper customerMapper, DeviceMapper deviceMapper,
+                     ConfigurationRevisionService revisionService) {
         this.mapper = mapper;
         this.customerMapper = customerMapper;
         this.deviceMapper = deviceMapper;
+        this.revisionService = revisionService;
     }
 
     public Settings getSettings() {
@@ -71,6 +75,7 @@ public class CommonDAO extends AbstractDAO<Settings> {
 
     public void saveDefaultDesignSettings(Settings settings) {
         insertRecord(settings, this.mapper::saveDefaultDesignSettings);
+        this.revisionService.onCommonDataChanged();
     }
 
     public void saveLanguageSettings(Settings settings) {
@@ -79,6 +84,7 @@ public class CommonDAO extends AbstractDAO<Settings> {
 
     public void saveMiscSettings(Settings settings) {
         insertRecord(settings, this.mapper::saveMiscSettings);
+        this.revisionService.onCommonDataChanged();
     }
 
     public void setTwoFactor(Settings settings) {
@@ -94,6 +100,7 @@ public class CommonDAO extends AbstractDAO<Settings> {
     public void saveDefaultDesignSettingsBySuperAdmin(Settings settings) {
 //        if (SecurityContext.get().getCurrentUser().get().isSuperAdmin()) {
             this.mapper.saveDefaultDesignSettings(settings);
+            this.revisionService.onCommonDataChanged();
 //        } else {
 //            throw SecurityException.onAdminDataAccessViolation("save customer settings");
 //        }
@@ -26,6 +26,8 @@ import com.google.inject.Inject;
 import java.io.IOException;
 import java.net.URL;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -42,6 +44,7 @@ import com.hmdm.persistence.mapper.ApplicationMapper;
 import com.hmdm.persistence.domain.ConfigurationApplicationParameters;
 import com.hmdm.persistence.mapper.ConfigurationMapper;
 import com.hmdm.security.SecurityException;
+import com.hmdm.service.ConfigurationRevisionService;
 import com.hmdm.util.CryptoUtil;
 import org.mybatis.guice.transactional.Transactional;
 import org.slf4j.Logger;
@@ -61,6 +64,7 @@ public class ConfigurationDAO extends AbstractLinkedDAO<Configuration, Applicati
     private final ConfigurationFileDAO configurationFileDAO;
     private String baseUrl;
     private final EventService eventService;
+    private final ConfigurationRevisionService revisionService;
 
 
     @Inject
@@ -69,13 +73,15 @@ public class ConfigurationDAO extends AbstractLinkedDAO<Configuration, Applicati
                             ApplicationSettingDAO applicationSettingDAO,
                             ConfigurationFileDAO configurationFileDAO,
                             @Named("base.url") String baseUrl,
-                            EventService eventService) {
+                            EventService eventService,
+                            ConfigurationRevisionService revisionService) {
         this.mapper = mapper;
         this.applicationMapper = applicationMapper;
         this.applicationSettingDAO = applicationSettingDAO;
         this.configurationFileDAO = configurationFileDAO;
         this.baseUrl = baseUrl;
         this.eventService = eventService;
+        this.revisionService = revisionService;
         log.info("Base URL: " + baseUrl);
     }
 
@@ -176,6 +182,7 @@ public class ConfigurationDAO extends AbstractLinkedDAO<Configuration, Applicati
                         });
                     } */
 
+                    this.revisionService.onConfigurationChanged(configuration.getId());
                     this.eventService.fireEvent(new ConfigurationUpdatedEvent(configuration.getId()));
                 },
                 SecurityException::onConfigurationAccessViolation
@@ -192,7 +199,10 @@ public class ConfigurationDAO extends AbstractLinkedDAO<Configuration, Applicati
         updateById(
                 id,
                 this.mapper::getConfigurationById,
-                configuration -> this.mapper.removeConfigurationById(configuration.getId()),
+                configuration -> {
+                    this.mapper.removeConfigurationById(configuration.getId());
+                    this.revisionService.onConfigurationChanged(configuration.getId());
+                },
                 SecurityException::onConfigurationAccessViolation
         );
     }
@@ -226,6 +236,50 @@ public class ConfigurationDAO extends AbstractLinkedDAO<Configuration, Applicati
         return getSingleRecord(() -> this.mapper.getConfigurationById(id), SecurityException::onConfigurationAccessViolation);
     }
 
+    /**
+     * <p>Gets the configurations with the specified IDs available to current user.</p>
+     *
+     * @param ids the IDs of configurations.
+     * @return a list of found configurations.
+     */
+    public List<Configuration> getConfigurationsByIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return getListWithCurrentUser(user -> this.mapper.getConfigurationsByIds(user.getCustomerId(), ids));
+    }
+
+    /**
+     * <p>Gets the applications used by the specified configurations with only the properties needed for evaluating
+     * the application statuses of devices. All configurations are loaded by a single query.</p>
+     *
+     * @param ids the IDs of configurations available to current user.
+     * @return a mapping from configuration IDs to the lists of applications.
+     */
+    public Map<Integer, List<Application>> getConfigurationsApplicationsLite(Collection<Integer> ids) {
+        final Map<Integer, List<Application>> result = new HashMap<>();
+        if (!ids.isEmpty()) {
+            getListWithCurrentUser(user -> this.mapper.getConfigurationsApplicationsLite(user.getCustomerId(), ids))
+                    .forEach(configuration -> result.put(configuration.getId(), configuration.getApplications()));
+        }
+        return result;
+    }
+
+    /**
+     * <p>Gets the files used by the specified configurations. All configurations are loaded by a single query.</p>
+     *
+     * @param ids the IDs of configurations available to current user.
+     * @return a mapping from configuration IDs to the lists of files.
+     */
+    public Map<Integer, List<ConfigurationFile>> getConfigurationsFiles(Collection<Integer> ids) {
+        final Map<Integer, List<ConfigurationFile>> result = new HashMap<>();
+        if (!ids.isEmpty()) {
+            this.mapper.getConfigurationsFiles(ids).forEach(file ->
+                    result.computeIfAbsent(file.getConfigurationId(), id -> new ArrayList<>()).add(file));
+        }
+        return result;
+    }
+
     @Transactional
     public Configuration getConfigurationByIdFull(Integer id) {
         final Configuration configuration = getSingleRecord(() -> this.mapper.getConfigurationById(id), SecurityException::onConfigurationAccessViolation);
@@ -257,6 +311,7 @@ public class ConfigurationDAO extends AbstractLinkedDAO<Configuration, Applicati
                 this.mapper::getConfigurationById,
                 configuration -> {
                     this.mapper.upgradeConfigurationApplication(configuration.getId(), applicationId);
+                    this.revisionService.onConfigurationChanged(configuration.getId());
                     log.debug("Upgraded application #{} to most recent version for configuration #{}",
                             applicationId, configurationId);
                 },
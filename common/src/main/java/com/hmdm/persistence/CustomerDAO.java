@@ -41,6 +41,7 @@ import com.hmdm.persistence.mapper.ConfigurationMapper;
 import com.hmdm.persistence.mapper.CustomerMapper;
 import com.hmdm.security.SecurityContext;
 import com.hmdm.security.SecurityException;
+import com.hmdm.service.DeviceIdentityCache;
 import com.hmdm.util.CryptoUtil;
 
 import java.io.File;
@@ -76,6 +77,7 @@ public class CustomerDAO {
     private final ApplicationSettingDAO applicationSettingDAO;
     private final int orgAdminRoleId;
     private final EventService eventService;
+    private final DeviceIdentityCache deviceIdentityCache;
 
     @Inject
     public CustomerDAO(CustomerMapper mapper,
@@ -87,7 +89,8 @@ public class CustomerDAO {
                        ApplicationSettingDAO applicationSettingDAO,
                        @Named("files.directory") String filesDirectory,
                        @Named("role.orgadmin.id") int orgAdminRoleId,
-                       EventService eventService) {
+                       EventService eventService,
+                       DeviceIdentityCache deviceIdentityCache) {
         this.mapper = mapper;
         this.configurationMapper = configurationMapper;
         this.applicationMapper = applicationMapper;
@@ -98,6 +101,7 @@ public class CustomerDAO {
         this.applicationSettingDAO = applicationSettingDAO;
         this.orgAdminRoleId = orgAdminRoleId;
         this.eventService = eventService;
+        this.deviceIdentityCache = deviceIdentityCache;
     }
 
     public void removeCustomerById(Integer id) {
@@ -126,6 +130,7 @@ public class CustomerDAO {
                 log.warn("Skipping to delete the customer's files due to invalid files directory name: {}", customer.getFilesDir());
             }
             this.mapper.delete(id);
+            this.deviceIdentityCache.invalidateAll();
             log.info("Deleted customer account {}", customer);
         }
     }
@@ -21,8 +21,11 @@
 
 package com.hmdm.persistence;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -41,23 +44,44 @@ import org.mybatis.guice.transactional.Transactional;
 import com.hmdm.persistence.mapper.DeviceMapper;
 import com.hmdm.security.SecurityContext;
 import com.hmdm.security.SecurityException;
+import com.hmdm.service.ConfigurationRevisionService;
+import com.hmdm.service.DeviceIdentityCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 @Singleton
 public class DeviceDAO extends AbstractDAO<Device> {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceDAO.class);
+
+    private static final ObjectMapper pageKeyReader = new ObjectMapper();
+
     private final DeviceMapper mapper;
     private final ApplicationSettingDAO applicationSettingDAO;
 
     private final Set<DeviceListHook> deviceListHooks;
     private final EventService eventService;
+    private final ConfigurationRevisionService revisionService;
+    private final DeviceIdentityCache deviceIdentityCache;
     private final int fastSearchChars;
+    private final boolean indexedSearch;
+    private final int searchCountLimit;
 
     @Inject
     public DeviceDAO(DeviceMapper mapper, ApplicationSettingDAO applicationSettingDAO, Injector injector,
-                     EventService eventService, @Named("device.fast.search.chars") int fastSearchChars) {
+                     EventService eventService, ConfigurationRevisionService revisionService,
+                     DeviceIdentityCache deviceIdentityCache,
+                     @Named("device.fast.search.chars") int fastSearchChars,
+                     @Named("device.search.indexed") boolean indexedSearch,
+                     @Named("device.search.count.limit") int searchCountLimit) {
         this.mapper = mapper;
         this.applicationSettingDAO = applicationSettingDAO;
         this.eventService = eventService;
+        this.revisionService = revisionService;
+        this.deviceIdentityCache = deviceIdentityCache;
         this.fastSearchChars = fastSearchChars;
+        this.indexedSearch = indexedSearch;
+        this.searchCountLimit = searchCountLimit;
 
         // TODO : Such a logic needs to be extracted into some utility service
         Set<DeviceListHook> hooks = new HashSet<>();
@@ -132,11 +156,20 @@ public class DeviceDAO extends AbstractDAO<Device> {
     }
 
     public PaginatedData<Device> getAllDevices(DeviceSearchRequest request) {
+        request.setIndexedSearch(this.indexedSearch);
+        request.setCountLimit(this.searchCountLimit);
+        if (this.indexedSearch && request.getPageKey() != null) {
+            setLastDevice(request);
+        }
+
         List<Device> devices = getListWithCurrentUser(currentUser -> {
             request.setCustomerId(currentUser.getCustomerId());
             request.setUserId(currentUser.getId());
             return this.mapper.getAllDevices(request);
         });
+        // The key is taken before the hooks as they may filter the devices out
+        final String nextPageKey = this.indexedSearch && !devices.isEmpty()
+                ? devices.get(devices.size() - 1).getPageKey() : null;
 
         if (!this.deviceListHooks.isEmpty()) {
             for (DeviceListHook hook : this.deviceListHooks) {
@@ -145,13 +178,46 @@ public class DeviceDAO extends AbstractDAO<Device> {
         }
 
         Long totalItemsCount = this.mapper.countAllDevices(request);
-        return new PaginatedData<>(devices, totalItemsCount);
+        PaginatedData<Device> result = new PaginatedData<>(devices, totalItemsCount);
+        result.setNextPageKey(nextPageKey);
+        return result;
+    }
+
+    /**
+     * <p>Parses the key of the last device on the previous page into the search request. The key is a JSON array of
+     * the sorting value, search priority, number and ID of the device as built by the search query. An invalid key is
+     * ignored and the page is retrieved by its number then.</p>
+     *
+     * @param request a request for searching the devices.
+     */
+    static void setLastDevice(DeviceSearchRequest request) {
+        try {
+            final JsonNode key = pageKeyReader.readTree(request.getPageKey());
+            if (key != null && key.isArray() && key.size() == 4 && key.get(1).isInt() && key.get(3).isInt()) {
+                request.setLastDevice(key.get(0).asText(), key.get(1).asInt(), key.get(2).asText(), key.get(3).asInt());
+                return;
+            }
+        } catch (IOException e) {
+            // Handled below
+        }
+        log.warn("Ignoring invalid device list page key: {}", request.getPageKey());
     }
 
     public List<Device> getDeviceIdsByConfigurationId(int configurationId) {
         return getList(customerId -> this.mapper.getDeviceIdsByConfigurationId(customerId, configurationId));
     }
 
+    /**
+     * <p>Gets the IDs and numbers of the devices using the specified configuration.</p>
+     *
+     * @param configurationId an ID of a configuration.
+     * @return a list of devices with only <code>id</code>, <code>number</code> and <code>oldNumber</code> properties
+     *         set.
+     */
+    public List<Device> getDeviceNumbersByConfigurationId(int configurationId) {
+        return getList(customerId -> this.mapper.getDeviceNumbersByConfigurationId(customerId, configurationId));
+    }
+
     public List<ApplicationSetting> getDeviceApplicationSettings(int deviceId) {
         final Device dbDevice
                 = getSingleRecord(() -> this.mapper.getDeviceById(deviceId), SecurityException::onDeviceAccessViolation);
@@ -168,7 +234,10 @@ public class DeviceDAO extends AbstractDAO<Device> {
         updateById(
                 id,
                 this.mapper::getDeviceById,
-                device -> this.mapper.removeDevice(device.getId()),
+                device -> {
+                    this.mapper.removeDevice(device.getId());
+                    this.deviceIdentityCache.invalidate(device.getId());
+                },
                 SecurityException::onDeviceAccessViolation
         );
     }
@@ -177,7 +246,10 @@ public class DeviceDAO extends AbstractDAO<Device> {
         updateById(
                 deviceId,
                 this.mapper::getDeviceById,
-                device -> this.mapper.updateDeviceConfiguration(device.getId(), configurationId),
+                device -> {
+                    this.mapper.updateDeviceConfiguration(device.getId(), configurationId);
+                    this.deviceIdentityCache.invalidate(device.getId());
+                },
                 SecurityException::onDeviceAccessViolation
         );
     }
@@ -225,6 +297,7 @@ public class DeviceDAO extends AbstractDAO<Device> {
                         device.getId(), device.getGroups().stream().map(LookupItem::getId).collect(Collectors.toList())
                 );
             }
+            this.deviceIdentityCache.invalidate(device.getId());
             this.eventService.fireEvent(new DeviceInfoUpdatedEvent(device.getId()));
         }, SecurityException::onDeviceAccessViolation);
     }
@@ -269,6 +342,7 @@ public class DeviceDAO extends AbstractDAO<Device> {
         if (dbDevice != null) {
             this.mapper.deleteDeviceApplicationSettings(dbDevice.getId());
             this.mapper.insertDeviceApplicationSettings(dbDevice.getId(), applicationSettings);
+            this.revisionService.onDeviceChanged(dbDevice.getId());
         }
     }
 
@@ -289,179 +363,23 @@ public class DeviceDAO extends AbstractDAO<Device> {
         );
     }
 
+    /**
+     * <p>Gets the summary of devices available to the specified user. The numbers of devices per status, per
+     * configuration and per enrollment month are counted by a single query.</p>
+     *
+     * @param user a user to get the summary for.
+     * @param onlineSince a time since which the devices are counted as online.
+     * @param idleSince a time since which the devices which are not online are counted as idle.
+     * @param enrolledSince a time since which the devices are counted as enrolled recently.
+     * @param monthBounds the start times of the months to count enrolled devices for, followed by the end time of the
+     *                    last month.
+     * @return a list of summary rows.
+     */
     @Transactional
-    public List<ChartItem> getStatusSummary() {
-        return SecurityContext.get().getCurrentUser()
-                .map(u -> {
-                    DeviceSummaryRequest filter = new DeviceSummaryRequest(
-                        u.getId(), u.getCustomerId(),
-                        null, null, null, null, null, null, null
-                    );
-                    long now = System.currentTimeMillis();
-                    List<ChartItem> result = new LinkedList<>();
-
-                    ChartItem item1 = new ChartItem();
-                    item1.setStringAttr("green");
-                    filter.setMinOnlineTime(now - 3600*1000l);
-                    item1.setNumber(this.mapper.countAllDevicesForSummary(filter));
-                    result.add(item1);
-
-                    ChartItem item2 = new ChartItem();
-                    item2.setStringAttr("yellow");
-                    filter.setMinOnlineTime(now - 3600*4000l);
-                    filter.setMaxOnlineTime(now - 3600*1000l);
-                    item2.setNumber(this.mapper.countAllDevicesForSummary(filter));
-                    result.add(item2);
-
-                    ChartItem item3 = new ChartItem();
-                    item3.setStringAttr("red");
-                    filter.setMinOnlineTime(0l);
-                    filter.setMaxOnlineTime(now - 3600*1000l);
-                    item3.setNumber(this.mapper.countAllDevicesForSummary(filter));
-                    result.add(item3);
-
-                    return result;
-                })
-                .orElse(null);
-    }
-
-    @Transactional
-    public List<ChartItem> getInstallSummary() {
-        return SecurityContext.get().getCurrentUser()
-                .map(u -> {
-                    DeviceSummaryRequest filter = new DeviceSummaryRequest(
-                            u.getId(), u.getCustomerId(),
-                            null, null, 1l, null, null, null, null
-                    );
-                    List<ChartItem> result = new LinkedList<>();
-
-                    ChartItem item1 = new ChartItem();
-                    item1.setStringAttr("SUCCESS");
-                    filter.setAppStatus(DeviceApplicationsStatus.SUCCESS);
-                    item1.setNumber(this.mapper.countAllDevicesForSummary(filter));
-                    result.add(item1);
-
-                    ChartItem item2 = new ChartItem();
-                    item2.setStringAttr("VERSION_MISMATCH");
-                    filter.setAppStatus(DeviceApplicationsStatus.VERSION_MISMATCH);
-                    item2.setNumber(this.mapper.countAllDevicesForSummary(filter));
-                    result.add(item2);
-
-                    ChartItem item3 = new ChartItem();
-                    item3.setStringAttr("FAILURE");
-                    filter.setAppStatus(DeviceApplicationsStatus.FAILURE);
-                    item3.setNumber(this.mapper.countAllDevicesForSummary(filter));
-                    result.add(item3);
-
-                    return result;
-                })
-                .orElse(null);
-    }
-
-    @Transactional
-    public Long countEnrolled(long lastEnrollTime) {
-        return SecurityContext.get().getCurrentUser()
-                .map(u -> {
-                    DeviceSummaryRequest filter = new DeviceSummaryRequest(
-                            u.getId(), u.getCustomerId(),
-                            null, null, lastEnrollTime, null, null, null, null
-                    );
-                    return this.mapper.countAllDevicesForSummary(filter);
-                })
-                .orElse(0l);
-    }
-
-    @Transactional
-    public List<SummaryConfigItem> getSummaryByConfig(DeviceSummaryRequest condition,
-                                                      List<SummaryConfigItem> topConfigs) {
-        return SecurityContext.get().getCurrentUser()
-                .map(u -> {
-                    List<Integer> configIds = null;
-                    if (topConfigs != null) {
-                        configIds = new LinkedList<>();
-                        for (SummaryConfigItem summaryConfigItem : topConfigs) {
-                            configIds.add(summaryConfigItem.getId());
-                        }
-                        ;
-                    }
-
-                    DeviceSummaryRequest filter = new DeviceSummaryRequest(
-                            u.getId(), u.getCustomerId(),
-                            condition.getFileStatus(),
-                            condition.getAppStatus(),
-                            condition.getMinEnrollTime(),
-                            condition.getMaxEnrollTime(),
-                            condition.getMinOnlineTime(),
-                            condition.getMaxOnlineTime(),
-                            condition.getConfigIds()
-                    );
-                    List<SummaryConfigItem> result = mapper.countDevicesByConfig(filter);
-                    if (topConfigs != null) {
-                        // Sort result to correspond configIds
-                        List<SummaryConfigItem> result1 = new LinkedList<>();
-                        for (SummaryConfigItem baseItem : topConfigs) {
-                            boolean zero = true;
-                            for (SummaryConfigItem c : result) {
-                                if (c.getId() == baseItem.getId()) {
-                                    result1.add(c);
-                                    zero = false;
-                                    break;
-                                }
-                            }
-                            if (zero) {
-                                // Result not present, which means zero value
-                                baseItem.setCounter(0);
-                                result1.add(baseItem);
-                            }
-                        }
-                        return result1;
-                    }
-                    return result;
-                })
-                .orElse(null);
-    }
-
-    public List<ChartItem> getDevicesEnrolledMonthly() {
-        return SecurityContext.get().getCurrentUser()
-                .map(u -> {
-                    List<ChartItem> result = new LinkedList<>();
-                    Calendar c = Calendar.getInstance();
-                    int year = c.get(Calendar.YEAR) - 1;
-                    int month = c.get(Calendar.MONTH) + 1;
-                    if (month >= 12) {
-                        month = 0;
-                        year++;
-                    }
-                    c.set(year, month, 0, 0, 0);
-                    long startTime = c.getTimeInMillis();
-                    long endTime = 0;
-                    for (int i = 0; i < 12; i++) {
-                        String label = String.format("%02d/%02d", month + 1, year % 100);
-                        month++;
-                        if (month >= 12) {
-                            month = 0;
-                            year++;
-                        }
-                        c.set(year, month, 0, 0, 0);
-                        endTime = c.getTimeInMillis();
-
-                        DeviceSummaryRequest filter = new DeviceSummaryRequest(
-                                u.getId(), u.getCustomerId(),
-                                null, null,
-                                startTime, endTime,
-                                null, null, null
-                        );
-
-                        ChartItem item = new ChartItem();
-                        item.setStringAttr(label);
-                        item.setNumber(this.mapper.countAllDevicesForSummary(filter));
-                        result.add(item);
-                        startTime = endTime;
-                    }
-                    return result;
-                })
-                .orElse(null);
-
+    public List<DeviceSummaryItem> getDeviceSummary(User user, long onlineSince, long idleSince, long enrolledSince,
+                                                    List<Long> monthBounds) {
+        return this.mapper.getDeviceSummary(user.getId(), user.getCustomerId(),
+                onlineSince, idleSince, enrolledSince, monthBounds);
     }
 
 }
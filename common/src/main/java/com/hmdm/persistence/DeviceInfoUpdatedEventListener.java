@@ -48,7 +48,11 @@ public class DeviceInfoUpdatedEventListener implements EventListener<DeviceInfoU
     @Override
     public void onEvent(DeviceInfoUpdatedEvent event) {
         final int deviceId = event.getDeviceId();
-        this.deviceStatusService.recalcDeviceStatuses(deviceId);
+        if (event.getDeviceInfo() != null && event.getConfigurationId() != null) {
+            this.deviceStatusService.recalcDeviceStatuses(deviceId, event.getConfigurationId(), event.getDeviceInfo());
+        } else {
+            this.deviceStatusService.recalcDeviceStatuses(deviceId);
+        }
     }
 
     /**
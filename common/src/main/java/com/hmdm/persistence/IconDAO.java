@@ -26,6 +26,7 @@ import com.google.inject.Singleton;
 import com.hmdm.persistence.domain.Icon;
 import com.hmdm.persistence.mapper.IconMapper;
 import com.hmdm.security.SecurityException;
+import com.hmdm.service.ConfigurationRevisionService;
 
 import java.util.List;
 
@@ -42,12 +43,15 @@ public class IconDAO extends AbstractDAO<Icon> {
      */
     private final IconMapper iconMapper;
 
+    private final ConfigurationRevisionService revisionService;
+
     /**
      * <p>Constructs new <code>IconDAO</code> instance. This implementation does nothing.</p>
      */
     @Inject
-    public IconDAO(IconMapper iconMapper) {
+    public IconDAO(IconMapper iconMapper, ConfigurationRevisionService revisionService) {
         this.iconMapper = iconMapper;
+        this.revisionService = revisionService;
     }
 
     /**
@@ -63,6 +67,7 @@ public class IconDAO extends AbstractDAO<Icon> {
 
     public Icon updateIcon(Icon icon) {
         updateRecord(icon, this.iconMapper::updateIcon, SecurityException::onIconAccessViolation);
+        this.revisionService.onCommonDataChanged();
         return icon;
     }
 
@@ -82,6 +87,7 @@ public class IconDAO extends AbstractDAO<Icon> {
     public void removeById(Integer id) {
         updateById(id, this.iconMapper::getById, icon -> this.iconMapper.removeById(icon.getId()),
                 SecurityException::onIconAccessViolation);
+        this.revisionService.onCommonDataChanged();
     }
 
     public Icon getById(Integer id) {
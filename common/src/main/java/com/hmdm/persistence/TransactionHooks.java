@@ -0,0 +1,155 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.persistence;
+
+import org.apache.ibatis.session.TransactionIsolationLevel;
+import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * <p>A registry of the actions to be performed once the changes made by current thread are committed to database.
+ * Such actions are used for updating the in-memory state (caches, revisions) which must not be visible to other
+ * threads before the changes it reflects are visible to them as well.</p>
+ *
+ * <p>The actions are bound to the database transactions created by {@link TransactionFactory}. If there is no such
+ * transaction open by current thread then the changes are already committed and the action is performed
+ * immediately.</p>
+ */
+public final class TransactionHooks {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionHooks.class);
+
+    /**
+     * <p>The transactions open by current thread. The last one is the innermost.</p>
+     */
+    private static final ThreadLocal<Deque<HookedTransaction>> transactions = ThreadLocal.withInitial(ArrayDeque::new);
+
+    /**
+     * <p>Constructs new <code>TransactionHooks</code> instance. This implementation does nothing.</p>
+     */
+    private TransactionHooks() {
+    }
+
+    /**
+     * <p>Registers the action to be performed once the current transaction is committed. The action is dropped if
+     * the transaction is rolled back.</p>
+     *
+     * @param action an action to be performed after commit.
+     */
+    public static void afterCommit(Runnable action) {
+        final HookedTransaction transaction = transactions.get().peekLast();
+        if (transaction == null) {
+            action.run();
+        } else {
+            transaction.actions.add(action);
+        }
+    }
+
+    /**
+     * <p>A factory for JDBC transactions which perform the registered actions once committed.</p>
+     */
+    public static class TransactionFactory extends JdbcTransactionFactory {
+
+        @Override
+        public Transaction newTransaction(Connection conn) {
+            return new HookedTransaction(conn);
+        }
+
+        @Override
+        public Transaction newTransaction(DataSource ds, TransactionIsolationLevel level, boolean autoCommit) {
+            return new HookedTransaction(ds, level, autoCommit);
+        }
+    }
+
+    /**
+     * <p>A JDBC transaction which performs the registered actions once committed.</p>
+     */
+    private static class HookedTransaction extends JdbcTransaction {
+
+        /**
+         * <p>The actions to be performed after commit.</p>
+         */
+        private final List<Runnable> actions = new ArrayList<>();
+
+        private HookedTransaction(Connection connection) {
+            super(connection);
+            transactions.get().addLast(this);
+        }
+
+        private HookedTransaction(DataSource ds, TransactionIsolationLevel level, boolean autoCommit) {
+            super(ds, level, autoCommit);
+            transactions.get().addLast(this);
+        }
+
+        @Override
+        public void commit() throws SQLException {
+            super.commit();
+            runActions();
+        }
+
+        @Override
+        public void rollback() throws SQLException {
+            this.actions.clear();
+            super.rollback();
+        }
+
+        /**
+         * <p>Closes this transaction. The actions which are still pending are performed since the transaction which
+         * was neither committed nor rolled back has made no changes.</p>
+         */
+        @Override
+        public void close() throws SQLException {
+            try {
+                super.close();
+            } finally {
+                transactions.get().remove(this);
+                runActions();
+            }
+        }
+
+        private void runActions() {
+            if (this.actions.isEmpty()) {
+                return;
+            }
+            final List<Runnable> pending = new ArrayList<>(this.actions);
+            this.actions.clear();
+            for (Runnable action : pending) {
+                try {
+                    action.run();
+                } catch (RuntimeException e) {
+                    logger.error("Failed to perform an action after transaction commit", e);
+                }
+            }
+        }
+    }
+}
@@ -34,6 +34,8 @@ import com.hmdm.rest.json.LookupItem;
 import com.hmdm.rest.json.PaginatedData;
 import com.hmdm.security.SecurityContext;
 import com.hmdm.security.SecurityException;
+import com.hmdm.service.ConfigurationRevisionService;
+import com.hmdm.service.DeviceIdentityCache;
 import com.hmdm.util.CryptoUtil;
 import com.hmdm.util.PasswordUtil;
 import org.mybatis.guice.transactional.Transactional;
@@ -74,9 +76,27 @@ public class UnsecureDAO {
     private final File filesDirectory;
     private final int orgAdminRoleId;
     private final EventService eventService;
+    private final ConfigurationRevisionService revisionService;
+    private final DeviceIdentityCache deviceIdentityCache;
+
+    /**
+     * <p>A flag indicating whether the typed device info columns have been filled for the existing devices since
+     * start.</p>
+     */
+    private volatile boolean deviceInfoColumnsFilled;
 
     private static final int DEFAULT_CUSTOMER_ID = 1;
 
+    /**
+     * <p>A range of device IDs to update the typed device info columns for in a single statement.</p>
+     */
+    private static final int DEVICE_INFO_COLUMNS_CHUNK_SIZE = 1000;
+
+    /**
+     * <p>A range of device IDs to fill the search document for in a single statement.</p>
+     */
+    private static final int DEVICE_SEARCH_TEXT_CHUNK_SIZE = 1000;
+
     /**
      * <p>Constructs new <code>UnsecureDAO</code> instance. This implementation does nothing.</p>
      */
@@ -95,6 +115,8 @@ public class UnsecureDAO {
                        ConfigurationFileMapper configurationFileMapper,
                        CustomerMapper customerMapper,
                        EventService eventService,
+                       ConfigurationRevisionService revisionService,
+                       DeviceIdentityCache deviceIdentityCache,
                        @Named("files.directory") String filesDirectory,
                        @Named("role.orgadmin.id") int orgAdminRoleId,
                        @Named("launcher.package") String defaultLauncherPackage) {
@@ -112,6 +134,8 @@ public class UnsecureDAO {
         this.configurationFileMapper = configurationFileMapper;
         this.customerMapper = customerMapper;
         this.eventService = eventService;
+        this.revisionService = revisionService;
+        this.deviceIdentityCache = deviceIdentityCache;
         this.filesDirectory = new File(filesDirectory);
         this.orgAdminRoleId = orgAdminRoleId;
         this.defaultLauncherPackage = defaultLauncherPackage;
@@ -166,12 +190,39 @@ public class UnsecureDAO {
         return this.deviceMapper.getDeviceByNumber(number);
     }
 
+    /**
+     * <p>Gets the identity of the device with the specified number. The identities are cached so this method should
+     * be preferred when only the device ID, customer account, configuration or groups are needed.</p>
+     *
+     * @param number a device number.
+     * @return an identity of the device or <code>null</code> if there is no such device.
+     */
+    public DeviceIdentity getDeviceIdentityByNumber(String number) {
+        return this.deviceIdentityCache.getByNumber(number, () -> this.deviceMapper.getDeviceByNumber(number));
+    }
+
+    /**
+     * <p>Gets the identity of the device with the specified old number.</p>
+     *
+     * @param number an old device number.
+     * @return an identity of the device or <code>null</code> if there is no such device.
+     * @see #getDeviceIdentityByNumber(String)
+     */
+    public DeviceIdentity getDeviceIdentityByOldNumber(String number) {
+        return this.deviceIdentityCache.getByOldNumber(number, () -> this.deviceMapper.getDeviceByOldNumber(number));
+    }
+
     public Device getDeviceByOldNumber(String number) {
         return this.deviceMapper.getDeviceByOldNumber(number);
     }
 
     public Device getDeviceByImeiOrSerial(String number) {
-        return this.deviceMapper.getDeviceByImeiOrSerial(number);
+        final Device device = this.deviceMapper.getDeviceByImeiOrSerial(number);
+        if (device == null && !this.deviceInfoColumnsFilled) {
+            // The typed serial column may not be filled yet for the devices which have not been updated since upgrade
+            return this.deviceMapper.getDeviceBySerialInInfo(number);
+        }
+        return device;
     }
 
     public List<ApplicationSetting> getDeviceAppSettings(int deviceId) {
@@ -184,12 +235,17 @@ public class UnsecureDAO {
         this.deviceMapper.updateDeviceInfo(id, info, imeiUpdateTs, publicIp);
     }
 
+    public void updateDeviceInfoBatch(List<DeviceInfoUpdate> updates) {
+        this.deviceMapper.updateDeviceInfoBatch(updates);
+    }
+
     public void updateDeviceCustomProperties(Integer id, Device device) {
         this.deviceMapper.updateDeviceCustomProperties(id, device.getCustom1(), device.getCustom2(), device.getCustom3());
     }
 
     public void completeDeviceMigration(Integer id) {
         this.deviceMapper.clearOldNumber(id);
+        this.deviceIdentityCache.invalidate(id);
     }
 
     // This method should be called in a single-tenant mode only
@@ -352,6 +408,7 @@ public class UnsecureDAO {
                     .collect(Collectors.toList());
             this.deviceMapper.insertDeviceApplicationSettings(dbDevice.getId(), validSettings);
         }
+        this.revisionService.onDeviceChanged(dbDevice.getId());
     }
 
     /**
@@ -396,7 +453,17 @@ public class UnsecureDAO {
      * @return a list of configuration files to be used on device.
      */
     public List<ConfigurationFile> getConfigurationFiles(Device device) {
-        return this.configurationFileMapper.getConfigurationFiles(device.getConfigurationId());
+        return getConfigurationFiles(device.getConfigurationId());
+    }
+
+    /**
+     * <p>Gets the list of files set up by the specified configuration.</p>
+     *
+     * @param configurationId an ID of a configuration to get the files for.
+     * @return a list of configuration files.
+     */
+    public List<ConfigurationFile> getConfigurationFiles(Integer configurationId) {
+        return this.configurationFileMapper.getConfigurationFiles(configurationId);
     }
 
 //    /**
@@ -679,6 +746,39 @@ public class UnsecureDAO {
         deviceMapper.updateFastSearch(fastSearchChars);
     }
 
+    /**
+     * <p>Copies the device properties used for sorting and filtering the devices from the device info to the typed
+     * columns where they differ, e.g. after upgrading. The devices are updated in chunks by ranges of IDs so a single
+     * statement doesn't lock many rows for a long time.</p>
+     */
+    public void updateDeviceInfoColumns() {
+        final int maxId = deviceMapper.getMaxDeviceId();
+        int updated = 0;
+        for (int fromId = 0; fromId < maxId; fromId += DEVICE_INFO_COLUMNS_CHUNK_SIZE) {
+            updated += deviceMapper.updateOutdatedDeviceInfoColumns(fromId, fromId + DEVICE_INFO_COLUMNS_CHUNK_SIZE);
+        }
+        if (updated > 0) {
+            logger.info("Updated device info columns for {} devices", updated);
+        }
+        this.deviceInfoColumnsFilled = true;
+    }
+
+    /**
+     * <p>Fills the search document used by the indexed device search for the devices which do not have it yet, e.g.
+     * after enabling the indexed search. The devices are updated in chunks by ranges of IDs so a single statement
+     * doesn't lock many rows for a long time.</p>
+     */
+    public void updateDeviceSearchText() {
+        final int maxId = deviceMapper.getMaxDeviceId();
+        int updated = 0;
+        for (int fromId = 0; fromId < maxId; fromId += DEVICE_SEARCH_TEXT_CHUNK_SIZE) {
+            updated += deviceMapper.updateMissingDeviceSearchText(fromId, fromId + DEVICE_SEARCH_TEXT_CHUNK_SIZE);
+        }
+        if (updated > 0) {
+            logger.info("Updated device search text for {} devices", updated);
+        }
+    }
+
     public UserRole findRoleByNameUnsecure(String name) {
         return userMapper.findUserRoleByName(name);
     }
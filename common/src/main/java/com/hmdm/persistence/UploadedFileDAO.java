@@ -31,6 +31,7 @@ import com.hmdm.persistence.mapper.UploadedFileMapper;
 import com.hmdm.rest.json.FileConfigurationLink;
 import com.hmdm.security.SecurityContext;
 import com.hmdm.security.SecurityException;
+import com.hmdm.service.ConfigurationRevisionService;
 import org.mybatis.guice.transactional.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,6 +61,7 @@ public class UploadedFileDAO extends AbstractDAO<UploadedFile> {
     private final ConfigurationFileMapper configurationFileMapper;
     private final CustomerDAO customerDAO;
     private String filesDirectory;
+    private final ConfigurationRevisionService revisionService;
 
     /**
      * <p>Constructs new <code>UploadedFileDAO</code> instance. This implementation does nothing.</p>
@@ -68,11 +70,13 @@ public class UploadedFileDAO extends AbstractDAO<UploadedFile> {
     public UploadedFileDAO(UploadedFileMapper fileMapper,
                            ConfigurationFileMapper configurationFileMapper,
                            CustomerDAO customerDAO,
-                           @Named("files.directory") String filesDirectory) {
+                           @Named("files.directory") String filesDirectory,
+                           ConfigurationRevisionService revisionService) {
         this.fileMapper = fileMapper;
         this.configurationFileMapper = configurationFileMapper;
         this.customerDAO = customerDAO;
         this.filesDirectory = filesDirectory;
+        this.revisionService = revisionService;
     }
 
     /**
@@ -97,6 +101,7 @@ public class UploadedFileDAO extends AbstractDAO<UploadedFile> {
 
     public void update(UploadedFile file) {
         updateRecord(file, this.fileMapper::update, SecurityException::onUploadedFileAccessViolation);
+        this.revisionService.onCommonDataChanged();
     }
 
     public UploadedFile getById(Integer id) {
@@ -118,6 +123,7 @@ public class UploadedFileDAO extends AbstractDAO<UploadedFile> {
                 this.fileMapper::findById,
                 file -> this.fileMapper.delete(file.getId()),
                 SecurityException::onUploadedFileAccessViolation);
+        this.revisionService.onCommonDataChanged();
     }
 
     public List<FileConfigurationLink> getFileConfigurations(Integer id) {
@@ -154,6 +160,8 @@ public class UploadedFileDAO extends AbstractDAO<UploadedFile> {
                 configurationFileMapper.insertConfigurationFile(cf);
             });
         }
+
+        this.revisionService.onCommonDataChanged();
     }
 
 }
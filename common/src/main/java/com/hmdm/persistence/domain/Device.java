@@ -26,6 +26,7 @@ import java.util.List;
 
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.hmdm.rest.json.LookupItem;
 
@@ -103,6 +104,8 @@ public class Device implements CustomerData, Serializable {
     private Long enrollTime;
     @ApiModelProperty(hidden = true)
     private String serial;
+    @ApiModelProperty(hidden = true)
+    private String pageKey;
 
     public Device() {
     }
@@ -353,6 +356,15 @@ public class Device implements CustomerData, Serializable {
         this.serial = serial;
     }
 
+    @JsonIgnore
+    public String getPageKey() {
+        return pageKey;
+    }
+
+    public void setPageKey(String pageKey) {
+        this.pageKey = pageKey;
+    }
+
     public String getFastSearch() {
         return fastSearch;
     }
@@ -0,0 +1,91 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.persistence.domain;
+
+import com.hmdm.rest.json.LookupItem;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>The identifying data of a device which rarely changes: the references to customer account, configuration and
+ * groups. It is used by the device-facing services which need to resolve the device by its number only.</p>
+ */
+public class DeviceIdentity implements Serializable {
+
+    private static final long serialVersionUID = 4418163839734561063L;
+
+    private final int id;
+
+    private final String number;
+
+    private final int customerId;
+
+    private final Integer configurationId;
+
+    private final List<LookupItem> groups;
+
+    /**
+     * <p>Constructs new <code>DeviceIdentity</code> instance. This implementation does nothing.</p>
+     */
+    public DeviceIdentity(Device device) {
+        this.id = device.getId();
+        this.number = device.getNumber();
+        this.customerId = device.getCustomerId();
+        this.configurationId = device.getConfigurationId();
+        this.groups = device.getGroups() == null
+                ? Collections.emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(device.getGroups()));
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getNumber() {
+        return number;
+    }
+
+    public int getCustomerId() {
+        return customerId;
+    }
+
+    public Integer getConfigurationId() {
+        return configurationId;
+    }
+
+    public List<LookupItem> getGroups() {
+        return groups;
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceIdentity{" +
+                "id=" + id +
+                ", number='" + number + '\'' +
+                ", customerId=" + customerId +
+                ", configurationId=" + configurationId +
+                '}';
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.persistence.domain;
+
+import com.hmdm.rest.json.DeviceInfo;
+
+import java.io.Serializable;
+
+/**
+ * <p>A pending update of the info submitted by device.</p>
+ */
+public class DeviceInfoUpdate implements Serializable {
+
+    private static final long serialVersionUID = -3618406285531972715L;
+
+    /**
+     * <p>An ID of a device.</p>
+     */
+    private int deviceId;
+
+    /**
+     * <p>A JSON representation of the device info.</p>
+     */
+    private String info;
+
+    /**
+     * <p>A timestamp of the last IMEI change.</p>
+     */
+    private Long imeiUpdateTs;
+
+    /**
+     * <p>A public IP address of the device.</p>
+     */
+    private String publicIp;
+
+    /**
+     * <p>The custom properties reported by device. <code>null</code> values do not change the stored ones.</p>
+     */
+    private String custom1;
+    private String custom2;
+    private String custom3;
+
+    /**
+     * <p>A timestamp of receiving the info from device (in milliseconds since epoch).</p>
+     */
+    private long lastUpdate;
+
+    /**
+     * <p>The device info parsed from request. Passed to the listeners of device info updates.</p>
+     */
+    private transient DeviceInfo deviceInfo;
+
+    /**
+     * <p>An ID of the configuration of the device at the time of update.</p>
+     */
+    private transient Integer configurationId;
+
+    /**
+     * <p>Constructs new <code>DeviceInfoUpdate</code> instance. This implementation does nothing.</p>
+     */
+    public DeviceInfoUpdate() {
+    }
+
+    /**
+     * <p>Merges the older pending update for the same device into this one. The data from this update takes
+     * precedence.</p>
+     *
+     * @param older an older update for the same device.
+     * @return this update.
+     */
+    public DeviceInfoUpdate mergeOlder(DeviceInfoUpdate older) {
+        if (this.custom1 == null) {
+            this.custom1 = older.custom1;
+        }
+        if (this.custom2 == null) {
+            this.custom2 = older.custom2;
+        }
+        if (this.custom3 == null) {
+            this.custom3 = older.custom3;
+        }
+        if (this.imeiUpdateTs == null
+                || (older.imeiUpdateTs != null && older.imeiUpdateTs > this.imeiUpdateTs)) {
+            this.imeiUpdateTs = older.imeiUpdateTs;
+        }
+        return this;
+    }
+
+    public boolean hasCustomProperties() {
+        return custom1 != null || custom2 != null || custom3 != null;
+    }
+
+    public int getDeviceId() {
+        return deviceId;
+    }
+
+    public void setDeviceId(int deviceId) {
+        this.deviceId = deviceId;
+    }
+
+    public String getInfo() {
+        return info;
+    }
+
+    public void setInfo(String info) {
+        this.info = info;
+    }
+
+    public Long getImeiUpdateTs() {
+        return imeiUpdateTs;
+    }
+
+    public void setImeiUpdateTs(Long imeiUpdateTs) {
+        this.imeiUpdateTs = imeiUpdateTs;
+    }
+
+    public String getPublicIp() {
+        return publicIp;
+    }
+
+    public void setPublicIp(String publicIp) {
+        this.publicIp = publicIp;
+    }
+
+    public String getCustom1() {
+        return custom1;
+    }
+
+    public void setCustom1(String custom1) {
+        this.custom1 = custom1;
+    }
+
+    public String getCustom2() {
+        return custom2;
+    }
+
+    public void setCustom2(String custom2) {
+        this.custom2 = custom2;
+    }
+
+    public String getCustom3() {
+        return custom3;
+    }
+
+    public void setCustom3(String custom3) {
+        this.custom3 = custom3;
+    }
+
+    public long getLastUpdate() {
+        return lastUpdate;
+    }
+
+    public void setLastUpdate(long lastUpdate) {
+        this.lastUpdate = lastUpdate;
+    }
+
+    public DeviceInfo getDeviceInfo() {
+        return deviceInfo;
+    }
+
+    public void setDeviceInfo(DeviceInfo deviceInfo) {
+        this.deviceInfo = deviceInfo;
+    }
+
+    public Integer getConfigurationId() {
+        return configurationId;
+    }
+
+    public void setConfigurationId(Integer configurationId) {
+        this.configurationId = configurationId;
+    }
+}
@@ -30,10 +30,17 @@ import java.io.Serializable;
 import java.util.Date;
 
 @ApiModel(description = "A request for searching the devices")
-@JsonIgnoreProperties(value = {"customerId", "userId"}, ignoreUnknown = true)
+@JsonIgnoreProperties(value = {"customerId", "userId", "indexedSearch", "countLimit", "lastSortingValue",
+        "lastSearchPriority", "lastNumber", "lastId", "keysetPaging"}, ignoreUnknown = true)
 public class DeviceSearchRequest implements Serializable {
 
     private static final long serialVersionUID = -8435796711101758494L;
+
+    /**
+     * <p>A separator of the device fields in the search document used by the indexed search.</p>
+     */
+    private static final char SEARCH_TEXT_SEPARATOR = '\u0001';
+
     @ApiModelProperty("A filter to search devices")
     private String value;
 
@@ -149,18 +156,75 @@ public class DeviceSearchRequest implements Serializable {
     @ApiModelProperty("Flag of fast searching by device number")
     private boolean fastSearch;
 
+    /**
+     * <p>A key of the last device on the previous page as returned with that page. If set, the page following that
+     * device is retrieved instead of the page specified by <code>pageNum</code>.</p>
+     */
+    @ApiModelProperty("A key of the last device on the previous page (if the search supports paging by keys)")
+    private String pageKey;
+
+    /**
+     * <p>A flag of searching the devices by the indexed search document.</p>
+     */
+    @ApiModelProperty(hidden = true)
+    private boolean indexedSearch;
+
+    /**
+     * <p>A maximum number of devices to count (0 - no limit).</p>
+     */
+    @ApiModelProperty(hidden = true)
+    private int countLimit;
+
+    /**
+     * <p>The sorting values of the last device on the previous page parsed from the page key.</p>
+     */
+    @ApiModelProperty(hidden = true)
+    private String lastSortingValue;
+
+    @ApiModelProperty(hidden = true)
+    private Integer lastSearchPriority;
+
+    @ApiModelProperty(hidden = true)
+    private String lastNumber;
+
+    @ApiModelProperty(hidden = true)
+    private Integer lastId;
+
     public DeviceSearchRequest() {
     }
 
     public String getValue() {
         String v = this.value != null && !this.value.trim().isEmpty() ? this.value : null;
         if (!fastSearch && v != null) {
-            return "%" + v + "%";
+            return "%" + (indexedSearch ? escapeSearchText(v) : v) + "%";
         } else {
             return v;
         }
     }
 
+    /**
+     * <p>Escapes the wildcards in the searched value for matching it as is against the search document. Otherwise a
+     * wildcard could match the separator of the document fields and find a device by the parts of different fields.
+     * The separator itself is removed from the value for the same reason.</p>
+     *
+     * @param value a searched value.
+     * @return a value to be used in <code>LIKE</code> pattern with the default escape character.
+     */
+    static String escapeSearchText(String value) {
+        final StringBuilder result = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == SEARCH_TEXT_SEPARATOR) {
+                continue;
+            }
+            if (c == '\\' || c == '%' || c == '_') {
+                result.append('\\');
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+
     public void setValue(String value) {
         this.value = value;
     }
@@ -333,6 +397,70 @@ public class DeviceSearchRequest implements Serializable {
         this.fastSearch = fastSearch;
     }
 
+    public String getPageKey() {
+        return pageKey;
+    }
+
+    public void setPageKey(String pageKey) {
+        this.pageKey = pageKey;
+    }
+
+    public boolean isIndexedSearch() {
+        return indexedSearch;
+    }
+
+    public void setIndexedSearch(boolean indexedSearch) {
+        this.indexedSearch = indexedSearch;
+    }
+
+    public int getCountLimit() {
+        return countLimit;
+    }
+
+    public void setCountLimit(int countLimit) {
+        this.countLimit = countLimit;
+    }
+
+    public String getLastSortingValue() {
+        return lastSortingValue;
+    }
+
+    public Integer getLastSearchPriority() {
+        return lastSearchPriority;
+    }
+
+    public String getLastNumber() {
+        return lastNumber;
+    }
+
+    public Integer getLastId() {
+        return lastId;
+    }
+
+    /**
+     * <p>Sets the sorting values of the last device on the previous page to retrieve the next page after.</p>
+     *
+     * @param sortingValue a value of the sorting column.
+     * @param searchPriority a relevance of the device for the searched value.
+     * @param number a device number in lower case.
+     * @param id a device ID.
+     */
+    public void setLastDevice(String sortingValue, Integer searchPriority, String number, Integer id) {
+        this.lastSortingValue = sortingValue;
+        this.lastSearchPriority = searchPriority;
+        this.lastNumber = number;
+        this.lastId = id;
+    }
+
+    /**
+     * <p>Checks if the page following the last device on the previous page is to be retrieved.</p>
+     *
+     * @return <code>true</code> if the devices are to be paged by keys; <code>false</code> otherwise.
+     */
+    public boolean isKeysetPaging() {
+        return indexedSearch && lastId != null;
+    }
+
     public long getDateFromMillis() {
         if (dateFrom != null) {
             return dateFrom.getTime();
@@ -388,6 +516,7 @@ public class DeviceSearchRequest implements Serializable {
                 ", kioskMode=" + kioskMode +
                 ", androidVersion=" + androidVersion +
                 ", installationStatus=" + installationStatus +
+                ", pageKey=" + pageKey +
                 '}';
     }
 }
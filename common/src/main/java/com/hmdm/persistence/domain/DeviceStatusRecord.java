@@ -0,0 +1,153 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.persistence.domain;
+
+import com.hmdm.service.DeviceApplicationsStatus;
+import com.hmdm.service.DeviceConfigFilesStatus;
+
+import java.io.Serializable;
+
+/**
+ * <p>The statuses of a device along with the data they have been evaluated from. The data revisions are recorded
+ * with the statuses, so the devices with outdated statuses can be found by comparing them to the current ones.</p>
+ */
+public class DeviceStatusRecord implements Serializable {
+
+    private static final long serialVersionUID = 4816395108224576306L;
+
+    /**
+     * <p>An ID of a device.</p>
+     */
+    private int deviceId;
+
+    /**
+     * <p>An ID of the configuration of the device.</p>
+     */
+    private Integer configurationId;
+
+    /**
+     * <p>A JSON representation of the device info. Used for evaluating the statuses only and is not saved.</p>
+     */
+    private String info;
+
+    /**
+     * <p>A timestamp of the last update of the device info (in milliseconds since epoch).</p>
+     */
+    private Long infoTime;
+
+    /**
+     * <p>A revision of the configuration of the device.</p>
+     */
+    private Long configurationRevision;
+
+    /**
+     * <p>A revision of the data common for all configurations.</p>
+     */
+    private Long commonRevision;
+
+    private DeviceConfigFilesStatus configFilesStatus;
+
+    private DeviceApplicationsStatus applicationsStatus;
+
+    /**
+     * <p>Constructs new <code>DeviceStatusRecord</code> instance. This implementation does nothing.</p>
+     */
+    public DeviceStatusRecord() {
+    }
+
+    public int getDeviceId() {
+        return deviceId;
+    }
+
+    public void setDeviceId(int deviceId) {
+        this.deviceId = deviceId;
+    }
+
+    public Integer getConfigurationId() {
+        return configurationId;
+    }
+
+    public void setConfigurationId(Integer configurationId) {
+        this.configurationId = configurationId;
+    }
+
+    public String getInfo() {
+        return info;
+    }
+
+    public void setInfo(String info) {
+        this.info = info;
+    }
+
+    public Long getInfoTime() {
+        return infoTime;
+    }
+
+    public void setInfoTime(Long infoTime) {
+        this.infoTime = infoTime;
+    }
+
+    public Long getConfigurationRevision() {
+        return configurationRevision;
+    }
+
+    public void setConfigurationRevision(Long configurationRevision) {
+        this.configurationRevision = configurationRevision;
+    }
+
+    public Long getCommonRevision() {
+        return commonRevision;
+    }
+
+    public void setCommonRevision(Long commonRevision) {
+        this.commonRevision = commonRevision;
+    }
+
+    public DeviceConfigFilesStatus getConfigFilesStatus() {
+        return configFilesStatus;
+    }
+
+    public void setConfigFilesStatus(DeviceConfigFilesStatus configFilesStatus) {
+        this.configFilesStatus = configFilesStatus;
+    }
+
+    public DeviceApplicationsStatus getApplicationsStatus() {
+        return applicationsStatus;
+    }
+
+    public void setApplicationsStatus(DeviceApplicationsStatus applicationsStatus) {
+        this.applicationsStatus = applicationsStatus;
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceStatusRecord{" +
+                "deviceId=" + deviceId +
+                ", configurationId=" + configurationId +
+                ", infoTime=" + infoTime +
+                ", configurationRevision=" + configurationRevision +
+                ", commonRevision=" + commonRevision +
+                ", configFilesStatus=" + configFilesStatus +
+                ", applicationsStatus=" + applicationsStatus +
+                '}';
+    }
+}
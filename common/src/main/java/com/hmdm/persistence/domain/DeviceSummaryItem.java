@@ -0,0 +1,275 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.persistence.domain;
+
+import java.io.Serializable;
+
+/**
+ * <p>A row of the device summary displayed on the dashboard. The numbers of devices in all rows are computed by a
+ * single grouped query: a row for all devices, a row per configuration and a row per month of enrollment.</p>
+ */
+public class DeviceSummaryItem implements Serializable {
+
+    private static final long serialVersionUID = -3519266020432711893L;
+
+    public static final String KIND_TOTAL = "TOTAL";
+    public static final String KIND_CONFIG = "CONFIG";
+    public static final String KIND_MONTH = "MONTH";
+
+    /**
+     * <p>A kind of the summary row: <code>TOTAL</code> for all devices, <code>CONFIG</code> for the devices of a
+     * configuration, <code>MONTH</code> for the devices enrolled in a month.</p>
+     */
+    private String kind;
+
+    /**
+     * <p>An ID of the configuration (for <code>CONFIG</code> rows).</p>
+     */
+    private Integer configurationId;
+
+    /**
+     * <p>A name of the configuration (for <code>CONFIG</code> rows).</p>
+     */
+    private String configurationName;
+
+    /**
+     * <p>A 0-based index of the month of enrollment (for <code>MONTH</code> rows).</p>
+     */
+    private Integer enrollMonth;
+
+    /**
+     * <p>A number of devices.</p>
+     */
+    private long counter;
+
+    /**
+     * <p>A number of devices which have ever been online.</p>
+     */
+    private long active;
+
+    /**
+     * <p>A number of devices which have been online recently.</p>
+     */
+    private long online;
+
+    /**
+     * <p>A number of devices which have been online a while ago.</p>
+     */
+    private long idle;
+
+    /**
+     * <p>A number of devices which have ever been online but not recently.</p>
+     */
+    private long offline;
+
+    /**
+     * <p>A number of active devices with all applications installed.</p>
+     */
+    private long appSuccess;
+
+    /**
+     * <p>A number of active devices with application versions mismatch.</p>
+     */
+    private long appMismatch;
+
+    /**
+     * <p>A number of active devices with applications failed to install.</p>
+     */
+    private long appFailure;
+
+    /**
+     * <p>A number of enrolled devices with all applications installed.</p>
+     */
+    private long installSuccess;
+
+    /**
+     * <p>A number of enrolled devices with application versions mismatch.</p>
+     */
+    private long installMismatch;
+
+    /**
+     * <p>A number of enrolled devices with applications failed to install.</p>
+     */
+    private long installFailure;
+
+    /**
+     * <p>A number of enrolled devices.</p>
+     */
+    private long enrolled;
+
+    /**
+     * <p>A number of devices enrolled recently.</p>
+     */
+    private long enrolledRecently;
+
+    /**
+     * <p>Constructs new <code>DeviceSummaryItem</code> instance. This implementation does nothing.</p>
+     */
+    public DeviceSummaryItem() {
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public void setKind(String kind) {
+        this.kind = kind;
+    }
+
+    public Integer getConfigurationId() {
+        return configurationId;
+    }
+
+    public void setConfigurationId(Integer configurationId) {
+        this.configurationId = configurationId;
+    }
+
+    public String getConfigurationName() {
+        return configurationName;
+    }
+
+    public void setConfigurationName(String configurationName) {
+        this.configurationName = configurationName;
+    }
+
+    public Integer getEnrollMonth() {
+        return enrollMonth;
+    }
+
+    public void setEnrollMonth(Integer enrollMonth) {
+        this.enrollMonth = enrollMonth;
+    }
+
+    public long getCounter() {
+        return counter;
+    }
+
+    public void setCounter(long counter) {
+        this.counter = counter;
+    }
+
+    public long getActive() {
+        return active;
+    }
+
+    public void setActive(long active) {
+        this.active = active;
+    }
+
+    public long getOnline() {
+        return online;
+    }
+
+    public void setOnline(long online) {
+        this.online = online;
+    }
+
+    public long getIdle() {
+        return idle;
+    }
+
+    public void setIdle(long idle) {
+        this.idle = idle;
+    }
+
+    public long getOffline() {
+        return offline;
+    }
+
+    public void setOffline(long offline) {
+        this.offline = offline;
+    }
+
+    public long getAppSuccess() {
+        return appSuccess;
+    }
+
+    public void setAppSuccess(long appSuccess) {
+        this.appSuccess = appSuccess;
+    }
+
+    public long getAppMismatch() {
+        return appMismatch;
+    }
+
+    public void setAppMismatch(long appMismatch) {
+        this.appMismatch = appMismatch;
+    }
+
+    public long getAppFailure() {
+        return appFailure;
+    }
+
+    public void setAppFailure(long appFailure) {
+        this.appFailure = appFailure;
+    }
+
+    public long getInstallSuccess() {
+        return installSuccess;
+    }
+
+    public void setInstallSuccess(long installSuccess) {
+        this.installSuccess = installSuccess;
+    }
+
+    public long getInstallMismatch() {
+        return installMismatch;
+    }
+
+    public void setInstallMismatch(long installMismatch) {
+        this.installMismatch = installMismatch;
+    }
+
+    public long getInstallFailure() {
+        return installFailure;
+    }
+
+    public void setInstallFailure(long installFailure) {
+        this.installFailure = installFailure;
+    }
+
+    public long getEnrolled() {
+        return enrolled;
+    }
+
+    public void setEnrolled(long enrolled) {
+        this.enrolled = enrolled;
+    }
+
+    public long getEnrolledRecently() {
+        return enrolledRecently;
+    }
+
+    public void setEnrolledRecently(long enrolledRecently) {
+        this.enrolledRecently = enrolledRecently;
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceSummaryItem{" +
+                "kind='" + kind + '\'' +
+                ", configurationId=" + configurationId +
+                ", enrollMonth=" + enrollMonth +
+                ", counter=" + counter +
+                '}';
+    }
+}
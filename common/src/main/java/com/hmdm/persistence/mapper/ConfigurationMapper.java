@@ -21,6 +21,7 @@
 
 package com.hmdm.persistence.mapper;
 
+import java.util.Collection;
 import java.util.List;
 
 import com.hmdm.persistence.domain.ApplicationSetting;
@@ -200,6 +201,23 @@ public interface ConfigurationMapper {
     @Select({"SELECT * FROM configurations WHERE id=#{id}"})
     Configuration getConfigurationById(@Param("id") Integer id);
 
+    List<Configuration> getConfigurationsByIds(@Param("customerId") int customerId,
+                                               @Param("ids") Collection<Integer> ids);
+
+    /**
+     * <p>Gets the applications used by the specified configurations, in the same context as
+     * {@link #getConfigurationApplications(Integer, Integer, String)} does, with only the properties needed for
+     * evaluating the application statuses of devices.</p>
+     *
+     * @param customerId an ID of a customer account set for current user.
+     * @param ids the IDs of configurations.
+     * @return a list of configurations with only IDs and applications set.
+     */
+    List<Configuration> getConfigurationsApplicationsLite(@Param("customerId") int customerId,
+                                                          @Param("ids") Collection<Integer> ids);
+
+    List<ConfigurationFile> getConfigurationsFiles(@Param("ids") Collection<Integer> ids);
+
     @Select({"SELECT * FROM configurations WHERE qrCodeKey=#{key}"})
     Configuration getConfigurationByQRCodeKey(@Param("key") String key);
 
@@ -63,6 +63,8 @@ public interface DeviceMapper {
 
     Device getDeviceByImeiOrSerial(@Param("number") String number);
 
+    Device getDeviceBySerialInInfo(@Param("number") String number);
+
     Device getDeviceById(@Param("id") Integer id);
 
     @Select({"SELECT * FROM devices " +
@@ -99,21 +101,55 @@ public interface DeviceMapper {
 
     Long countAllDevicesForSummary(DeviceSummaryRequest filter);
 
-    List<SummaryConfigItem> countDevicesByConfig(DeviceSummaryRequest filter);
+    /**
+     * <p>Gets the summary of devices available to the specified user: the numbers of all devices, of the devices per
+     * configuration and of the devices enrolled in each of the specified months.</p>
+     *
+     * @param userId an ID of a user.
+     * @param customerId an ID of a customer account.
+     * @param onlineSince a time since which the devices are counted as online.
+     * @param idleSince a time since which the devices which are not online are counted as idle.
+     * @param enrolledSince a time since which the devices are counted as enrolled recently.
+     * @param monthBounds the start times of the months to count enrolled devices for, followed by the end time of the
+     *                    last month.
+     * @return a list of summary rows.
+     */
+    List<DeviceSummaryItem> getDeviceSummary(@Param("userId") int userId,
+                                             @Param("customerId") int customerId,
+                                             @Param("onlineSince") long onlineSince,
+                                             @Param("idleSince") long idleSince,
+                                             @Param("enrolledSince") long enrolledSince,
+                                             @Param("monthBounds") List<Long> monthBounds);
 
-    @Update({"UPDATE devices SET " +
-            "  info = #{info}, " +
-            "  infojson = #{info}::json, " +
-            "  lastUpdate = CAST(EXTRACT(EPOCH FROM NOW()) * 1000 AS BIGINT), " +
-            "  enrollTime = COALESCE(enrollTime, CAST(EXTRACT(EPOCH FROM NOW()) * 1000 AS BIGINT)), " +
-            "  imeiUpdateTs = #{imeiUpdateTs}, " +
-            "  publicIp = #{publicIp} " +
-            "WHERE id = #{deviceId}"})
     void updateDeviceInfo(@Param("deviceId") Integer deviceId,
                           @Param("info") String info,
                           @Param("imeiUpdateTs") Long imeiUpdateTs,
                           @Param("publicIp") String publicIp);
 
+    void updateDeviceInfoBatch(@Param("updates") List<DeviceInfoUpdate> updates);
+
+    @Select({"SELECT COALESCE(MAX(id), 0) FROM devices"})
+    int getMaxDeviceId();
+
+    /**
+     * <p>Copies the device properties used for sorting and filtering the devices from the device info to the typed
+     * columns for the devices in the specified range of IDs if they differ.</p>
+     *
+     * @param fromId a lower bound of device IDs (exclusive).
+     * @param toId an upper bound of device IDs (inclusive).
+     * @return a number of updated devices.
+     */
+    int updateOutdatedDeviceInfoColumns(@Param("fromId") int fromId, @Param("toId") int toId);
+
+    /**
+     * <p>Fills the search document for the devices in the specified range of IDs which do not have it yet.</p>
+     *
+     * @param fromId a lower bound of device IDs (exclusive).
+     * @param toId an upper bound of device IDs (inclusive).
+     * @return a number of updated devices.
+     */
+    int updateMissingDeviceSearchText(@Param("fromId") int fromId, @Param("toId") int toId);
+
     @Update({"UPDATE devices SET " +
             "  custom1 = #{custom1}, " +
             "  custom2 = #{custom2}, " +
@@ -180,6 +216,11 @@ public interface DeviceMapper {
     List<Device> getDeviceIdsByConfigurationId(@Param("customerId") Integer customerId,
                                                @Param("configurationId") int configurationId);
 
+    @Select("SELECT devices.id, devices.number, devices.oldNumber FROM devices " +
+            "WHERE customerId = #{customerId} AND configurationId = #{configurationId}")
+    List<Device> getDeviceNumbersByConfigurationId(@Param("customerId") Integer customerId,
+                                                   @Param("configurationId") int configurationId);
+
     @Select("SELECT devices.id FROM devices WHERE configurationId = #{configurationId}")
     List<Device> getDeviceIdsBySoleConfigurationId(@Param("configurationId") int configurationId);
 
@@ -200,14 +241,37 @@ public interface DeviceMapper {
             ") deviceApps")
     List<DeviceApplication> getDeviceInstalledApplications(@Param("deviceId") int deviceId);
 
-    @Update("INSERT INTO deviceStatuses (deviceId, configFilesStatus, applicationsStatus) " +
-            "VALUES (#{deviceId}, #{filesStatus}, #{appsStatus})" +
+    @Update("INSERT INTO deviceStatuses (deviceId, configFilesStatus, applicationsStatus, " +
+            "                            infoTime, configurationId, configurationRevision, commonRevision) " +
+            "SELECT devices.id, #{filesStatus}, #{appsStatus}, " +
+            "       devices.lastUpdate, devices.configurationId, configurations.syncRevision, customers.syncRevision " +
+            "FROM devices " +
+            "LEFT JOIN configurations ON configurations.id = devices.configurationId " +
+            "INNER JOIN customers ON customers.id = devices.customerId " +
+            "WHERE devices.id = #{deviceId} " +
             "ON CONFLICT ON CONSTRAINT deviceStatuses_pr_key DO " +
-            "UPDATE SET configFilesStatus = EXCLUDED.configFilesStatus, applicationsStatus = EXCLUDED.applicationsStatus")
+            "UPDATE SET configFilesStatus = EXCLUDED.configFilesStatus, applicationsStatus = EXCLUDED.applicationsStatus, " +
+            "           infoTime = EXCLUDED.infoTime, configurationId = EXCLUDED.configurationId, " +
+            "           configurationRevision = EXCLUDED.configurationRevision, commonRevision = EXCLUDED.commonRevision " +
+            "WHERE deviceStatuses.infoTime IS NULL OR deviceStatuses.infoTime <= EXCLUDED.infoTime")
     int updateDeviceStatuses(@Param("deviceId") Integer deviceId,
                              @Param("filesStatus") DeviceConfigFilesStatus deviceConfigFilesStatus,
                              @Param("appsStatus") DeviceApplicationsStatus deviceApplicatiosStatus);
 
-    @Select("SELECT id FROM devices")
-    List<Integer> getAllDeviceIds();
+    List<DeviceStatusRecord> getDeviceStatusSources(@Param("ids") List<Integer> deviceIds);
+
+    void updateDeviceStatusesBatch(@Param("statuses") List<DeviceStatusRecord> statuses);
+
+    @Select("SELECT devices.id " +
+            "FROM devices " +
+            "LEFT JOIN configurations ON configurations.id = devices.configurationId " +
+            "INNER JOIN customers ON customers.id = devices.customerId " +
+            "LEFT JOIN deviceStatuses ON deviceStatuses.deviceId = devices.id " +
+            "WHERE deviceStatuses.deviceId IS NULL " +
+            "   OR deviceStatuses.infoTime IS DISTINCT FROM devices.lastUpdate " +
+            "   OR deviceStatuses.configurationId IS DISTINCT FROM devices.configurationId " +
+            "   OR deviceStatuses.configurationRevision IS DISTINCT FROM configurations.syncRevision " +
+            "   OR deviceStatuses.commonRevision IS DISTINCT FROM customers.syncRevision " +
+            "ORDER BY devices.id")
+    List<Integer> getDeviceIdsWithOutdatedStatuses();
 }
@@ -0,0 +1,52 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.persistence.mapper;
+
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+/**
+ * <p>A mapper for the revision counters of the data delivered to devices on configuration synchronization.</p>
+ */
+public interface SyncRevisionMapper {
+
+    @Update("UPDATE configurations SET syncRevision = syncRevision + 1 WHERE id = #{id}")
+    void incrementConfigurationRevision(@Param("id") int configurationId);
+
+    @Update("UPDATE devices SET syncRevision = syncRevision + 1 WHERE id = #{id}")
+    void incrementDeviceRevision(@Param("id") int deviceId);
+
+    @Update("UPDATE customers SET syncRevision = syncRevision + 1 WHERE id = #{id}")
+    void incrementCustomerRevision(@Param("id") int customerId);
+
+    @Update("UPDATE customers SET syncRevision = syncRevision + 1")
+    void incrementAllCustomerRevisions();
+
+    @Select("SELECT devices.configurationId || '-' || configurations.syncRevision || '-' || " +
+            "       customers.syncRevision || '-' || devices.syncRevision " +
+            "FROM devices " +
+            "INNER JOIN configurations ON configurations.id = devices.configurationId " +
+            "INNER JOIN customers ON customers.id = devices.customerId " +
+            "WHERE devices.id = #{id}")
+    String getDeviceSyncRevision(@Param("id") int deviceId);
+}
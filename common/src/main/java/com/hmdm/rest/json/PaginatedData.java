@@ -21,6 +21,7 @@
 
 package com.hmdm.rest.json;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
 
@@ -46,6 +47,13 @@ public class PaginatedData<T> {
     @ApiModelProperty("A total number of items in collection")
     private long totalItemsCount;
 
+    /**
+     * <p>A key to retrieve the page following this one (if supported by the collection).</p>
+     */
+    @ApiModelProperty("A key to retrieve the next page by (if supported)")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextPageKey;
+
     /**
      * <p>Constructs new <code>PaginatedData</code> instance. This implementation does nothing.</p>
      */
@@ -72,4 +80,12 @@ public class PaginatedData<T> {
     public void setTotalItemsCount(long totalItemsCount) {
         this.totalItemsCount = totalItemsCount;
     }
+
+    public String getNextPageKey() {
+        return nextPageKey;
+    }
+
+    public void setNextPageKey(String nextPageKey) {
+        this.nextPageKey = nextPageKey;
+    }
 }
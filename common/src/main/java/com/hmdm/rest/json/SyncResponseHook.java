@@ -38,4 +38,16 @@ public interface SyncResponseHook {
      * @return a device configuration synchronization response to be used further in process.
      */
     SyncResponseInt handle(int deviceId, SyncResponseInt original);
+
+    /**
+     * <p>Gets the version of the data this hook adds to the response for the specified device. The version is a part
+     * of the entity tag of the response, so the device gets the full response once the version changes.</p>
+     *
+     * @param deviceId an ID of a device.
+     * @return a version of the data added by this hook or <code>null</code> if the version can not be evaluated; in
+     *         that case the full response is always sent to device.
+     */
+    default String getVersion(int deviceId) {
+        return null;
+    }
 }
@@ -0,0 +1,139 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.service;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.hmdm.persistence.TransactionHooks;
+import com.hmdm.persistence.domain.User;
+import com.hmdm.persistence.mapper.SyncRevisionMapper;
+import com.hmdm.security.SecurityContext;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A service tracking the revisions of the configuration data delivered to devices. The revision of a
+ * configuration grows each time the configuration itself or any data it refers to (applications, files, design
+ * settings) is changed, so the caches built from that data can detect that they are outdated.</p>
+ *
+ * <p>The in-memory revisions are used by the local caches. They are issued only after the changing transaction is
+ * committed, so a cache can not pair the new revision with the data loaded before the commit. The same changes are
+ * also counted in database within the changing transaction, so the devices can detect that their configuration is
+ * outdated regardless of the server node they are talking to. The changes of the data shared by configurations are
+ * counted in database per customer account, so they do not affect the devices of other customer accounts.</p>
+ */
+@Singleton
+public class ConfigurationRevisionService {
+
+    /**
+     * <p>A sequence for issuing the revision numbers.</p>
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * <p>A revision issued when the data shared by all configurations has been changed last time.</p>
+     */
+    private volatile long commonRevision;
+
+    /**
+     * <p>A mapping from configuration IDs to revisions issued when those configurations have been changed last
+     * time.</p>
+     */
+    private final ConcurrentMap<Integer, Long> configurationRevisions = new ConcurrentHashMap<>();
+
+    /**
+     * <p>A mapper for the revision counters stored in database.</p>
+     */
+    private final SyncRevisionMapper syncRevisionMapper;
+
+    /**
+     * <p>Constructs new <code>ConfigurationRevisionService</code> instance. This implementation does nothing.</p>
+     */
+    @Inject
+    public ConfigurationRevisionService(SyncRevisionMapper syncRevisionMapper) {
+        this.syncRevisionMapper = syncRevisionMapper;
+    }
+
+    /**
+     * <p>Gets the current revision of the specified configuration.</p>
+     *
+     * @param configurationId an ID of a configuration.
+     * @return a current revision of the configuration.
+     */
+    public long getRevision(int configurationId) {
+        final Long revision = this.configurationRevisions.get(configurationId);
+        return revision == null ? this.commonRevision : Math.max(revision, this.commonRevision);
+    }
+
+    /**
+     * <p>Signals on the change of the specified configuration.</p>
+     *
+     * @param configurationId an ID of the changed configuration.
+     */
+    public void onConfigurationChanged(int configurationId) {
+        this.syncRevisionMapper.incrementConfigurationRevision(configurationId);
+        TransactionHooks.afterCommit(
+                () -> this.configurationRevisions.put(configurationId, this.sequence.incrementAndGet())
+        );
+    }
+
+    /**
+     * <p>Signals on the change of the data which may be referenced by any configuration of current customer account
+     * (applications, files, settings). The data of master customer account may be referenced by the configurations
+     * of all customer accounts (common applications) so its changes are counted for all customer accounts.</p>
+     */
+    public void onCommonDataChanged() {
+        final SecurityContext context = SecurityContext.get();
+        final Optional<User> user = context != null ? context.getCurrentUser() : Optional.empty();
+        final Optional<Integer> customerId = context != null ? context.getCurrentCustomerId() : Optional.empty();
+        if (customerId.isPresent() && !user.map(User::isMasterCustomer).orElse(false)) {
+            this.syncRevisionMapper.incrementCustomerRevision(customerId.get());
+        } else {
+            this.syncRevisionMapper.incrementAllCustomerRevisions();
+        }
+        TransactionHooks.afterCommit(() -> this.commonRevision = this.sequence.incrementAndGet());
+    }
+
+    /**
+     * <p>Signals on the change of the data which is specific to the specified device (application settings).</p>
+     *
+     * @param deviceId an ID of the changed device.
+     */
+    public void onDeviceChanged(int deviceId) {
+        this.syncRevisionMapper.incrementDeviceRevision(deviceId);
+    }
+
+    /**
+     * <p>Gets the revision of the whole configuration data delivered to the specified device as stored in
+     * database.</p>
+     *
+     * @param deviceId an ID of a device.
+     * @return a revision of the device configuration data or <code>null</code> if there is no such device or the
+     *         device has no configuration.
+     */
+    public String getDeviceSyncRevision(int deviceId) {
+        return this.syncRevisionMapper.getDeviceSyncRevision(deviceId);
+    }
+}
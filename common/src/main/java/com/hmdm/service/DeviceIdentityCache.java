@@ -0,0 +1,177 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.hmdm.persistence.TransactionHooks;
+import com.hmdm.persistence.domain.Device;
+import com.hmdm.persistence.domain.DeviceIdentity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Named;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * <p>A cache of the device identities resolved by device numbers. The entries are evicted when the cache size limit
+ * is reached or the entry gets older than configured time, and explicitly when the devices are changed.</p>
+ *
+ * <p>The explicit invalidation is performed once the changes of the devices are committed, so the identities loaded
+ * concurrently from the data which is not yet committed are not kept in cache.</p>
+ */
+@Singleton
+public class DeviceIdentityCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceIdentityCache.class);
+
+    /**
+     * <p>A mapping from the lookup keys to device identities.</p>
+     */
+    private final Cache<String, DeviceIdentity> identities;
+
+    /**
+     * <p>A mapping from the device IDs to the lookup keys of the cached identities of those devices.</p>
+     */
+    private final ConcurrentMap<Integer, Set<String>> keysByDeviceId = new ConcurrentHashMap<>();
+
+    /**
+     * <p>Constructs new <code>DeviceIdentityCache</code> instance. This implementation does nothing.</p>
+     */
+    @Inject
+    public DeviceIdentityCache(@Named("device.identity.cache.size") int maxSize,
+                               @Named("device.identity.cache.ttl") int ttlSeconds) {
+        // The replaced entries are kept in index as they are mostly replaced by the identities of the same device
+        final RemovalListener<String, DeviceIdentity> removalListener = notification -> {
+            if (notification.getCause() != RemovalCause.REPLACED && notification.getValue() != null) {
+                removeKey(notification.getValue().getId(), notification.getKey());
+            }
+        };
+        this.identities = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(maxSize, 0))
+                .expireAfterWrite(Math.max(ttlSeconds, 0), TimeUnit.SECONDS)
+                .removalListener(removalListener)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * <p>Gets the identity of the device with the specified number.</p>
+     *
+     * @param number a device number.
+     * @param loader a loader of the device if there is no valid identity in cache.
+     * @return an identity of the device or <code>null</code> if there is no such device.
+     */
+    public DeviceIdentity getByNumber(String number, Supplier<Device> loader) {
+        return get("number:" + number, loader);
+    }
+
+    /**
+     * <p>Gets the identity of the device with the specified old number (the device is being migrated to new
+     * number).</p>
+     *
+     * @param oldNumber an old device number.
+     * @param loader a loader of the device if there is no valid identity in cache.
+     * @return an identity of the device or <code>null</code> if there is no such device.
+     */
+    public DeviceIdentity getByOldNumber(String oldNumber, Supplier<Device> loader) {
+        return get("oldNumber:" + oldNumber, loader);
+    }
+
+    private DeviceIdentity get(String key, Supplier<Device> loader) {
+        DeviceIdentity identity = this.identities.getIfPresent(key);
+        if (identity == null) {
+            // The devices which are not found are not cached as they may be created on demand
+            final Device device = loader.get();
+            if (device != null) {
+                identity = new DeviceIdentity(device);
+                this.identities.put(key, identity);
+                this.keysByDeviceId.compute(identity.getId(), (id, keys) -> {
+                    final Set<String> result = keys != null ? keys : ConcurrentHashMap.newKeySet();
+                    result.add(key);
+                    return result;
+                });
+            }
+        }
+        return identity;
+    }
+
+    /**
+     * <p>Drops the cached identity of the specified device once the current transaction is committed.</p>
+     *
+     * @param deviceId an ID of the changed device.
+     */
+    public void invalidate(int deviceId) {
+        TransactionHooks.afterCommit(() -> {
+            final Set<String> keys = this.keysByDeviceId.remove(deviceId);
+            if (keys != null) {
+                this.identities.invalidateAll(keys);
+            }
+        });
+    }
+
+    /**
+     * <p>Drops all cached identities once the current transaction is committed. Used when the changes may affect
+     * many devices at once.</p>
+     */
+    public void invalidateAll() {
+        TransactionHooks.afterCommit(() -> {
+            this.identities.invalidateAll();
+            this.keysByDeviceId.clear();
+        });
+    }
+
+    private void removeKey(int deviceId, String key) {
+        this.keysByDeviceId.computeIfPresent(deviceId, (id, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    /**
+     * <p>Gets the statistics of cache usage.</p>
+     *
+     * @return the cache hits, misses and evictions counted since start.
+     */
+    public CacheStats getStats() {
+        return this.identities.stats();
+    }
+
+    /**
+     * <p>Logs the statistics of cache usage.</p>
+     */
+    public void logStats() {
+        final CacheStats stats = getStats();
+        logger.info("Device identity cache: size: {}, hits: {}, misses: {}, hit rate: {}, evictions: {}",
+                this.identities.size(), stats.hitCount(), stats.missCount(),
+                String.format("%.3f", stats.hitRate()), stats.evictionCount());
+    }
+}
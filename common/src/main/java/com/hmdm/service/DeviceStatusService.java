@@ -22,6 +22,8 @@
 package com.hmdm.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.hmdm.persistence.domain.*;
@@ -36,22 +38,65 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiPredicate;
 
 
 /**
- * <p>$</p>
+ * <p>A service evaluating the statuses of applications and files installed on devices against their
+ * configurations.</p>
+ *
+ * <p>The applications and files required by configurations are cached indexed by package and device path, so the
+ * evaluation is a single pass over the applications and files reported by device. The cached requirements are
+ * reloaded once the configuration has been changed on this node or the cache entry has expired.</p>
+ *
+ * <p>The statuses of many devices are recalculated in chunks: the devices of a chunk are loaded by a single query and
+ * their statuses are saved by a single statement. The revisions of the data the statuses have been evaluated from are
+ * saved along with the statuses, so only the devices with outdated statuses are recalculated on startup. The statuses
+ * evaluated from an older device info than the one of the saved statuses are not saved.</p>
  */
 @Singleton
 public class DeviceStatusService {
 
     private static final Logger logger = LoggerFactory.getLogger(DeviceStatusService.class);
 
+    /**
+     * <p>A time to live for the cached requirements of configuration (in milliseconds). Limits the staleness of the
+     * cache when the configuration is changed on another node.</p>
+     */
+    private static final long REQUIREMENTS_TTL = 60000;
+
+    /**
+     * <p>A maximum number of configurations whose requirements are cached.</p>
+     */
+    private static final int REQUIREMENTS_CACHE_SIZE = 1000;
+
+    /**
+     * <p>A maximum number of devices whose statuses are recalculated by a single chunk.</p>
+     */
+    private static final int RECALC_CHUNK_SIZE = 500;
+
+    private static final ObjectMapper jsonMapper = new ObjectMapper();
+
     private final DeviceMapper deviceMapper;
     private final ConfigurationMapper configurationMapper;
     private final ConfigurationFileMapper configurationFileMapper;
+    private final ConfigurationRevisionService configurationRevisionService;
+
+    /**
+     * <p>A mapping from configuration IDs to the cached requirements of those configurations.</p>
+     */
+    private final Cache<Integer, Requirements> requirementsCache = CacheBuilder.newBuilder()
+            .maximumSize(REQUIREMENTS_CACHE_SIZE)
+            .expireAfterWrite(REQUIREMENTS_TTL, TimeUnit.MILLISECONDS)
+            .build();
 
     /**
      * <p>Constructs new <code>DeviceStatusService</code> instance. This implementation does nothing.</p>
@@ -59,132 +104,245 @@ public class DeviceStatusService {
     @Inject
     public DeviceStatusService(DeviceMapper deviceMapper,
                                ConfigurationMapper configurationMapper,
-                               ConfigurationFileMapper configurationFileMapper) {
+                               ConfigurationFileMapper configurationFileMapper,
+                               ConfigurationRevisionService configurationRevisionService) {
         this.deviceMapper = deviceMapper;
         this.configurationMapper = configurationMapper;
         this.configurationFileMapper = configurationFileMapper;
+        this.configurationRevisionService = configurationRevisionService;
     }
 
+    /**
+     * <p>Recalculates the statuses of the specified device using the device info stored in database.</p>
+     *
+     * @param deviceId an ID of a device.
+     */
     @Transactional
     public void recalcDeviceStatuses(int deviceId) {
         final Device dbDevice = this.deviceMapper.getDeviceById(deviceId);
         if (dbDevice != null) {
             try {
-                DeviceConfigFilesStatus deviceConfigFilesStatus = DeviceConfigFilesStatus.OTHER;
-                DeviceApplicationsStatus deviceApplicatiosStatus = DeviceApplicationsStatus.FAILURE;
-
-                if (dbDevice.getInfo() != null) {
-                    if (!dbDevice.getInfo().trim().isEmpty()) {
-                        final String deviceInfoString = dbDevice.getInfo();
-                        ObjectMapper jsonMapper = new ObjectMapper();
-                        DeviceInfo info = jsonMapper.readValue(deviceInfoString, DeviceInfo.class);
-
-                        deviceConfigFilesStatus = evaluateDeviceConfigurationFilesStatus(dbDevice, info);
-                        deviceApplicatiosStatus = evaluateDeviceApplicationsStatus(dbDevice, info);
-                    }
+                DeviceInfo info = null;
+                if (dbDevice.getInfo() != null && !dbDevice.getInfo().trim().isEmpty()) {
+                    info = jsonMapper.readValue(dbDevice.getInfo(), DeviceInfo.class);
                 }
-
-                this.deviceMapper.updateDeviceStatuses(dbDevice.getId(), deviceConfigFilesStatus, deviceApplicatiosStatus);
-                
+                updateDeviceStatuses(dbDevice.getId(), dbDevice.getConfigurationId(), info);
             } catch (IOException e) {
                 logger.error("Failed to parse JSON data from info property", e);
             }
+        }
+    }
+
+    /**
+     * <p>Recalculates the statuses of the specified device using the specified device info which has just been
+     * submitted by device.</p>
+     *
+     * @param deviceId an ID of a device.
+     * @param configurationId an ID of the configuration of the device.
+     * @param info the device info.
+     */
+    @Transactional
+    public void recalcDeviceStatuses(int deviceId, Integer configurationId, DeviceInfo info) {
+        updateDeviceStatuses(deviceId, configurationId, info);
+    }
+
+    /**
+     * <p>Recalculates the statuses of the specified devices using the device info stored in database. The devices are
+     * processed in chunks, each chunk is loaded by a single query and saved by a single statement.</p>
+     *
+     * @param deviceIds a list of device IDs.
+     */
+    public void recalcDeviceStatuses(List<Integer> deviceIds) {
+        for (int from = 0; from < deviceIds.size(); from += RECALC_CHUNK_SIZE) {
+            final List<Integer> chunk = deviceIds.subList(from, Math.min(from + RECALC_CHUNK_SIZE, deviceIds.size()));
+            try {
+                recalcDeviceStatusesChunk(chunk);
+            } catch (Exception e) {
+                logger.warn("Failed to recalculate statuses for {} devices starting from device: {}",
+                        chunk.size(), chunk.get(0), e);
+            }
+        }
+    }
+
+    /**
+     * <p>Recalculates the statuses of the devices whose info, configuration or the data common for all configurations
+     * have changed since their statuses were evaluated.</p>
+     */
+    public void recalcOutdatedDeviceStatuses() {
+        final long start = System.currentTimeMillis();
+        final List<Integer> deviceIds = this.deviceMapper.getDeviceIdsWithOutdatedStatuses();
+        if (deviceIds.isEmpty()) {
+            logger.info("Device statuses are up to date");
+            return;
+        }
+        logger.info("Recalculating statuses for {} devices", deviceIds.size());
+        recalcDeviceStatuses(deviceIds);
+        logger.info("Statuses for {} devices recalculated in {} ms", deviceIds.size(),
+                System.currentTimeMillis() - start);
+    }
 
+    private void recalcDeviceStatusesChunk(List<Integer> deviceIds) {
+        final List<DeviceStatusRecord> records = this.deviceMapper.getDeviceStatusSources(deviceIds);
+        for (DeviceStatusRecord record : records) {
+            DeviceInfo info = null;
+            if (record.getInfo() != null && !record.getInfo().trim().isEmpty()) {
+                try {
+                    info = jsonMapper.readValue(record.getInfo(), DeviceInfo.class);
+                } catch (IOException e) {
+                    logger.error("Failed to parse JSON data from info property of device: {}", record.getDeviceId(), e);
+                }
+            }
+            // The info is not needed anymore and is not saved
+            record.setInfo(null);
+            evaluateDeviceStatuses(record, record.getConfigurationId(), info);
         }
+        if (!records.isEmpty()) {
+            this.deviceMapper.updateDeviceStatusesBatch(records);
+        }
+    }
+
+    private void updateDeviceStatuses(int deviceId, Integer configurationId, DeviceInfo info) {
+        final DeviceStatusRecord record = new DeviceStatusRecord();
+        evaluateDeviceStatuses(record, configurationId, info);
+        this.deviceMapper.updateDeviceStatuses(deviceId, record.getConfigFilesStatus(), record.getApplicationsStatus());
     }
 
-    private DeviceApplicationsStatus evaluateDeviceApplicationsStatus(Device dbDevice, DeviceInfo info) {
-        AtomicInteger versionMismatchCount = new AtomicInteger();
-        AtomicInteger notRemovedCount = new AtomicInteger();
-        AtomicInteger notInstalledCount = new AtomicInteger();
+    /**
+     * <p>Evaluates the statuses of the device against the specified configuration and sets them to the specified
+     * record.</p>
+     */
+    private void evaluateDeviceStatuses(DeviceStatusRecord record, Integer configurationId, DeviceInfo info) {
+        DeviceConfigFilesStatus deviceConfigFilesStatus = DeviceConfigFilesStatus.OTHER;
+        DeviceApplicationsStatus deviceApplicatiosStatus = DeviceApplicationsStatus.FAILURE;
+
+        if (info != null && configurationId != null) {
+            final Requirements requirements = getRequirements(configurationId);
+            deviceConfigFilesStatus = evaluateDeviceConfigurationFilesStatus(requirements, info);
+            deviceApplicatiosStatus = evaluateDeviceApplicationsStatus(requirements, info);
+        }
+
+        record.setConfigFilesStatus(deviceConfigFilesStatus);
+        record.setApplicationsStatus(deviceApplicatiosStatus);
+    }
 
-        final List<Application> configApplications = this.configurationMapper.getPlainConfigurationAppsOptimized(dbDevice.getConfigurationId());
+    /**
+     * <p>Gets the requirements of the specified configuration loading them from database if they are not cached yet
+     * or are outdated.</p>
+     */
+    private Requirements getRequirements(int configurationId) {
+        final long revision = this.configurationRevisionService.getRevision(configurationId);
+        final Requirements cached = this.requirementsCache.getIfPresent(configurationId);
+        if (cached != null && cached.revision == revision) {
+            return cached;
+        }
 
-        configApplications.forEach(configApp -> {
+        final Requirements requirements = new Requirements(revision);
+        this.configurationMapper.getPlainConfigurationAppsOptimized(configurationId).forEach(configApp -> {
             // Do not test apps without URL (they are mostly system apps) as well as web pages
             if ((configApp.getUrl() == null && configApp.getUrlArm64() == null && configApp.getUrlArmeabi() == null)
                     || configApp.getType() != ApplicationType.app) {
                 return;
             }
+            // Each of the applications with the same package is verified separately
+            requirements.applications.computeIfAbsent(configApp.getPkg(), pkg -> new ArrayList<>()).add(configApp);
+            if (configApp.getAction() == 1) {
+                requirements.installedApplicationsCount++;
+            }
+        });
+        this.configurationFileMapper.getConfigurationFiles(configurationId).forEach(configFile -> {
+            requirements.files.computeIfAbsent(configFile.getDevicePath(), path -> new ArrayList<>()).add(configFile);
+            requirements.filesCount++;
+            if (!configFile.isRemove()) {
+                requirements.installedFilesCount++;
+            }
+        });
 
-            final List<Application> deviceApps = info.getApplications();
-            boolean foundOnDevice = false;
-            for (int i = 0; i < deviceApps.size(); i++) {
-                final Application deviceApp = deviceApps.get(i);
-                if (deviceApp.getPkg().equals(configApp.getPkg())) {
-                    foundOnDevice = true;
-
-                    if (configApp.getAction() == 2) {
-                        if (configApp.getVersion().equals(deviceApp.getVersion())) {
-                            // Needs to be removed but not removed
-                            notRemovedCount.incrementAndGet();
-                        }
-                    } else if (!configApp.getVersion().equals("0")
-                            && !configApp.isSkipVersion()
-                            && !isVersionUpToDate.test(deviceApp.getVersion(), configApp.getVersion())) {
-                        // Version mismatch
-                        versionMismatchCount.incrementAndGet();
-                    }
-                    break;
-                }
+        this.requirementsCache.put(configurationId, requirements);
+        return requirements;
+    }
+
+    private DeviceApplicationsStatus evaluateDeviceApplicationsStatus(Requirements requirements, DeviceInfo info) {
+        int versionMismatchCount = 0;
+        int notRemovedCount = 0;
+        int installedCount = 0;
+
+        final List<Application> deviceApps = info.getApplications() != null
+                ? info.getApplications() : Collections.emptyList();
+        final Set<String> seenPackages = new HashSet<>();
+        for (Application deviceApp : deviceApps) {
+            // Only the first application with the same package is taken into account
+            if (deviceApp.getPkg() == null || !seenPackages.add(deviceApp.getPkg())) {
+                continue;
+            }
+            final List<Application> configApps = requirements.applications.get(deviceApp.getPkg());
+            if (configApps == null) {
+                continue;
             }
 
-            if (!foundOnDevice && configApp.getAction() == 1) {
-                notInstalledCount.incrementAndGet();
+            for (Application configApp : configApps) {
+                if (configApp.getAction() == 1) {
+                    installedCount++;
+                }
+                if (configApp.getAction() == 2) {
+                    if (configApp.getVersion().equals(deviceApp.getVersion())) {
+                        // Needs to be removed but not removed
+                        notRemovedCount++;
+                    }
+                } else if (!configApp.getVersion().equals("0")
+                        && !configApp.isSkipVersion()
+                        && !isVersionUpToDate.test(deviceApp.getVersion(), configApp.getVersion())) {
+                    // Version mismatch
+                    versionMismatchCount++;
+                }
             }
-        });
+        }
 
-        if (notInstalledCount.get() > 0) {
+        if (installedCount < requirements.installedApplicationsCount) {
             return DeviceApplicationsStatus.FAILURE;
-        } else if (versionMismatchCount.get() > 0 || notRemovedCount.get() > 0) {
+        } else if (versionMismatchCount > 0 || notRemovedCount > 0) {
             return DeviceApplicationsStatus.VERSION_MISMATCH;
         } else {
             return DeviceApplicationsStatus.SUCCESS;
         }
     }
 
-    private DeviceConfigFilesStatus evaluateDeviceConfigurationFilesStatus(Device dbDevice, DeviceInfo info) {
-        final List<ConfigurationFile> configurationFiles
-                = this.configurationFileMapper.getConfigurationFiles(dbDevice.getConfigurationId());
-
-        AtomicInteger correctCount = new AtomicInteger();
-        AtomicInteger notInstalledCount = new AtomicInteger();
-        AtomicInteger lastUpdateMismatchCount = new AtomicInteger();
-
-        configurationFiles.forEach(configFile -> {
-            final List<DeviceConfigurationFile> deviceFiles = info.getFiles();
-            boolean foundOnDevice = false;
-            boolean skip = false;
-            for (int i = 0; i < deviceFiles.size(); i++) {
-                final DeviceConfigurationFile deviceFile = deviceFiles.get(i);
-                if (deviceFile.getPath().equals(configFile.getDevicePath())) {
-                    foundOnDevice = true;
-                    if (!configFile.getLastUpdate().equals(deviceFile.getLastUpdate())
-                            && Math.abs(configFile.getLastUpdate() - deviceFile.getLastUpdate()) > 1 * 60 * 60 * 1000) {
-                        lastUpdateMismatchCount.incrementAndGet();
-                        skip = true;
-                    }
-                    break;
-                }
+    private DeviceConfigFilesStatus evaluateDeviceConfigurationFilesStatus(Requirements requirements, DeviceInfo info) {
+        int correctCount = 0;
+        int installedCount = 0;
+
+        final List<DeviceConfigurationFile> deviceFiles = info.getFiles() != null
+                ? info.getFiles() : Collections.emptyList();
+        final Set<String> seenPaths = new HashSet<>();
+        for (DeviceConfigurationFile deviceFile : deviceFiles) {
+            // Only the first file with the same path is taken into account
+            if (deviceFile.getPath() == null || !seenPaths.add(deviceFile.getPath())) {
+                continue;
+            }
+            final List<ConfigurationFile> configFiles = requirements.files.get(deviceFile.getPath());
+            if (configFiles == null) {
+                continue;
             }
 
-            if (!foundOnDevice && !configFile.isRemove()) {
-                notInstalledCount.incrementAndGet();
-            } else if (foundOnDevice && !skip) {
-                correctCount.incrementAndGet();
+            for (ConfigurationFile configFile : configFiles) {
+                if (!configFile.isRemove()) {
+                    installedCount++;
+                }
+                if (configFile.getLastUpdate().equals(deviceFile.getLastUpdate())
+                        || Math.abs(configFile.getLastUpdate() - deviceFile.getLastUpdate()) <= 1 * 60 * 60 * 1000) {
+                    correctCount++;
+                }
             }
-        });
+        }
 
-        if (correctCount.get() == configurationFiles.size()) {
+        if (correctCount == requirements.filesCount) {
             return DeviceConfigFilesStatus.UP_TO_DATE;
-        } else if (notInstalledCount.get() > 0) {
+        } else if (installedCount < requirements.installedFilesCount) {
             return DeviceConfigFilesStatus.MISSING;
         } else {
             return DeviceConfigFilesStatus.OTHER;
         }
     }
 
-
     /**
      * <p>Checks if specified application versions are equal. Removes all non-digit characters from version numbers when
      * analyzing.</p>
@@ -240,4 +398,39 @@ public class DeviceStatusService {
         return 0;
     }
 
+    /**
+     * <p>The applications and files required by configuration.</p>
+     */
+    private static class Requirements {
+
+        /**
+         * <p>A revision of the configuration the requirements have been loaded for.</p>
+         */
+        private final long revision;
+
+        /**
+         * <p>A mapping from packages to the applications which are verified on device.</p>
+         */
+        private final Map<String, List<Application>> applications = new LinkedHashMap<>();
+
+        /**
+         * <p>A mapping from device paths to the configuration files.</p>
+         */
+        private final Map<String, List<ConfigurationFile>> files = new LinkedHashMap<>();
+
+        /**
+         * <p>A number of configuration files.</p>
+         */
+        private int filesCount;
+
+        /**
+         * <p>A number of applications and files which must be installed on device.</p>
+         */
+        private int installedApplicationsCount;
+        private int installedFilesCount;
+
+        private Requirements(long revision) {
+            this.revision = revision;
+        }
+    }
 }
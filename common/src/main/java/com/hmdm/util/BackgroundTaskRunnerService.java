@@ -21,19 +21,37 @@
 
 package com.hmdm.util;
 
+import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.Executors;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>A service used for running the standalone tasks in background.</p>
  *
+ * <p>The tasks are run in separate lanes, so a burst of tasks of one kind (e.g. events fired on device info updates)
+ * doesn't delay the tasks of other kinds. Each lane has its own threads and a bounded queue; when the queue is full the
+ * task is either run by the submitting thread or discarded as configured by <code>task.rejection.policy</code>.</p>
+ *
+ * <p>The service collects the wait and run times per task type.</p>
+ *
  * @author isv
  */
 @Singleton
@@ -41,22 +59,78 @@ public class BackgroundTaskRunnerService {
 
     private final static Logger logger = LoggerFactory.getLogger(BackgroundTaskRunnerService.class);
 
+    public static final String POLICY_CALLER_RUNS = "caller-runs";
+    public static final String POLICY_DISCARD = "discard";
+
     /**
-     * <p>An executor for the tasks to be executed in background.</p>
+     * <p>A maximum number of tasks waiting in the lane for long-running tasks.</p>
      */
-    private final ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(10);
+    private static final int SERVICE_QUEUE_SIZE = 1000;
+
+    /**
+     * <p>The lanes for running the tasks.</p>
+     */
+    public enum Lane {
+        /**
+         * <p>The tasks which do not belong to any other lane.</p>
+         */
+        DEFAULT,
+        /**
+         * <p>The tasks notifying the listeners on events.</p>
+         */
+        EVENTS,
+        /**
+         * <p>The tasks saving the data submitted by devices and users (logs, audit records).</p>
+         */
+        INGEST,
+        /**
+         * <p>The long-running tasks (startup tasks, bulk processing).</p>
+         */
+        SERVICES
+    }
+
+    /**
+     * <p>The executors for the tasks to be executed in background, one per lane.</p>
+     */
+    private final Map<Lane, ThreadPoolExecutor> executors = new EnumMap<>(Lane.class);
 
     /**
      * <p>An executor for the repeatable tasks to be executed in background.</p>
      */
-    private final ScheduledThreadPoolExecutor scheduledExecutor
-            = (ScheduledThreadPoolExecutor) Executors.newScheduledThreadPool(2);
+    private final ScheduledThreadPoolExecutor scheduledExecutor;
+
+    /**
+     * <p>A flag indicating if the task is run by the submitting thread when the lane queue is full.</p>
+     */
+    private final boolean callerRuns;
+
+    /**
+     * <p>A mapping from task types to statistics for the tasks of those types.</p>
+     */
+    private final ConcurrentMap<String, TaskStats> stats = new ConcurrentHashMap<>();
 
     /**
      * <p>Constructs new <code>BackgroundTaskRunnerService</code> instance. This implementation does nothing.</p>
      */
-    public BackgroundTaskRunnerService() {
-        Runtime.getRuntime().addShutdownHook(new Thread(executor::shutdown));
+    @Inject
+    public BackgroundTaskRunnerService(@Named("task.threads") int threads,
+                                       @Named("task.queue.size") int queueSize,
+                                       @Named("task.event.threads") int eventThreads,
+                                       @Named("task.event.queue.size") int eventQueueSize,
+                                       @Named("task.ingest.threads") int ingestThreads,
+                                       @Named("task.ingest.queue.size") int ingestQueueSize,
+                                       @Named("task.service.threads") int serviceThreads,
+                                       @Named("task.scheduled.threads") int scheduledThreads,
+                                       @Named("task.rejection.policy") String rejectionPolicy) {
+        this.callerRuns = !POLICY_DISCARD.equalsIgnoreCase(rejectionPolicy);
+        this.executors.put(Lane.DEFAULT, createExecutor(Lane.DEFAULT, threads, queueSize));
+        this.executors.put(Lane.EVENTS, createExecutor(Lane.EVENTS, eventThreads, eventQueueSize));
+        this.executors.put(Lane.INGEST, createExecutor(Lane.INGEST, ingestThreads, ingestQueueSize));
+        this.executors.put(Lane.SERVICES, createExecutor(Lane.SERVICES, serviceThreads, SERVICE_QUEUE_SIZE));
+        this.scheduledExecutor = new ScheduledThreadPoolExecutor(Math.max(scheduledThreads, 1),
+                new LaneThreadFactory("scheduled"));
+
+        this.executors.values().forEach(executor -> Runtime.getRuntime().addShutdownHook(new Thread(executor::shutdown)));
         Runtime.getRuntime().addShutdownHook(new Thread(scheduledExecutor::shutdown));
     }
 
@@ -66,10 +140,32 @@ public class BackgroundTaskRunnerService {
      * @param task a task to be executed in background.
      */
     public void submitTask(Runnable task) {
-        logger.debug("Submitting task for execution: {}. The current state of executor: active tasks: {}, " +
+        submitTask(Lane.DEFAULT, task);
+    }
+
+    /**
+     * <p>Submits the specified task for execution in the background thread of the specified lane.</p>
+     *
+     * @param lane a lane to run the task in.
+     * @param task a task to be executed in background.
+     */
+    public void submitTask(Lane lane, Runnable task) {
+        submitTask(lane, getTaskType(task), task);
+    }
+
+    /**
+     * <p>Submits the specified task for execution in the background thread of the specified lane.</p>
+     *
+     * @param lane a lane to run the task in.
+     * @param taskType a type of the task to collect the statistics for.
+     * @param task a task to be executed in background.
+     */
+    public void submitTask(Lane lane, String taskType, Runnable task) {
+        final ThreadPoolExecutor executor = this.executors.get(lane);
+        logger.debug("Submitting task for execution: {}. The current state of {} executor: active tasks: {}, " +
                         "tasks count: {}, queue size: {}",
-                task, executor.getActiveCount(), executor.getTaskCount(), executor.getQueue().size());
-        this.executor.submit(task);
+                task, lane, executor.getActiveCount(), executor.getTaskCount(), executor.getQueue().size());
+        executor.execute(new InstrumentedTask(taskType, task));
     }
 
     /**
@@ -86,8 +182,194 @@ public class BackgroundTaskRunnerService {
     public Future<?> submitRepeatableTask(Runnable task, long initialDelay, long period, TimeUnit unit) {
         logger.debug("Submitting task for repeatable execution: {}. The current state of executor: active tasks: {}, " +
                         "tasks count: {}, queue size: {}",
-                task, executor.getActiveCount(), executor.getTaskCount(), executor.getQueue().size());
-        return this.scheduledExecutor.scheduleAtFixedRate(task, initialDelay, period, unit);
+                task, scheduledExecutor.getActiveCount(), scheduledExecutor.getTaskCount(),
+                scheduledExecutor.getQueue().size());
+        final String taskType = getTaskType(task);
+        return this.scheduledExecutor.scheduleAtFixedRate(() -> {
+            final long start = System.currentTimeMillis();
+            try {
+                task.run();
+            } finally {
+                getStats(taskType).onRun(0, System.currentTimeMillis() - start);
+            }
+        }, initialDelay, period, unit);
+    }
+
+    /**
+     * <p>Gets the number of tasks waiting for execution in the specified lane.</p>
+     *
+     * @param lane a lane.
+     * @return a number of waiting tasks.
+     */
+    public int getQueueDepth(Lane lane) {
+        return this.executors.get(lane).getQueue().size();
+    }
+
+    /**
+     * <p>Gets the statistics for the tasks executed so far.</p>
+     *
+     * @return a mapping from task types to statistics for the tasks of those types.
+     */
+    public Map<String, TaskStats> getStats() {
+        return Collections.unmodifiableMap(new TreeMap<>(this.stats));
     }
 
+    /**
+     * <p>Outputs the statistics for lanes and tasks to log.</p>
+     */
+    public void logStats() {
+        this.executors.forEach((lane, executor) -> logger.info("Background tasks lane {}: threads: {}, active: {}, " +
+                        "queue depth: {}, completed: {}",
+                lane, executor.getPoolSize(), executor.getActiveCount(), executor.getQueue().size(),
+                executor.getCompletedTaskCount()));
+        getStats().forEach((taskType, taskStats) -> logger.info("Background task {}: {}", taskType, taskStats));
+    }
+
+    private ThreadPoolExecutor createExecutor(Lane lane, int threads, int queueSize) {
+        final int poolSize = Math.max(threads, 1);
+        return new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(queueSize, 1)), new LaneThreadFactory(lane.name().toLowerCase()),
+                new LaneRejectionHandler(lane));
+    }
+
+    private TaskStats getStats(String taskType) {
+        return this.stats.computeIfAbsent(taskType, t -> new TaskStats());
+    }
+
+    /**
+     * <p>Gets the type of the task to collect the statistics for. The lambdas are identified by the classes they are
+     * defined in.</p>
+     */
+    private static String getTaskType(Runnable task) {
+        final String name = task.getClass().getName();
+        final int lambdaIndex = name.indexOf("$$Lambda");
+        return lambdaIndex >= 0 ? name.substring(0, lambdaIndex) : name;
+    }
+
+    /**
+     * <p>A wrapper for the task collecting the statistics.</p>
+     */
+    private class InstrumentedTask implements Runnable {
+        private final String taskType;
+        private final Runnable task;
+        private final long submitTime = System.currentTimeMillis();
+
+        private InstrumentedTask(String taskType, Runnable task) {
+            this.taskType = taskType;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            final long start = System.currentTimeMillis();
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.error("Unexpected error when executing the background task {}", taskType, e);
+            } finally {
+                getStats(taskType).onRun(start - submitTime, System.currentTimeMillis() - start);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return task.toString();
+        }
+    }
+
+    /**
+     * <p>A handler for the tasks which do not fit the lane queue.</p>
+     */
+    private class LaneRejectionHandler implements RejectedExecutionHandler {
+        private final Lane lane;
+
+        private LaneRejectionHandler(Lane lane) {
+            this.lane = lane;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            final InstrumentedTask task = (InstrumentedTask) r;
+            final long rejected = getStats(task.taskType).rejected.incrementAndGet();
+            if (executor.isShutdown()) {
+                return;
+            }
+            if (callerRuns) {
+                task.run();
+            } else if (rejected % 1000 == 1) {
+                logger.warn("Background tasks lane {} is full, discarding the task {} (discarded so far: {})",
+                        lane, task.taskType, rejected);
+            }
+        }
+    }
+
+    /**
+     * <p>A factory for the named threads of the lane.</p>
+     */
+    private static class LaneThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        private LaneThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "background-" + name + "-" + counter.incrementAndGet());
+        }
+    }
+
+    /**
+     * <p>The statistics for the tasks of the same type.</p>
+     */
+    public static class TaskStats {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong totalWaitTime = new AtomicLong();
+        private final AtomicLong maxWaitTime = new AtomicLong();
+        private final AtomicLong totalRunTime = new AtomicLong();
+        private final AtomicLong maxRunTime = new AtomicLong();
+
+        private void onRun(long waitTime, long runTime) {
+            count.incrementAndGet();
+            totalWaitTime.addAndGet(waitTime);
+            totalRunTime.addAndGet(runTime);
+            maxWaitTime.accumulateAndGet(waitTime, Math::max);
+            maxRunTime.accumulateAndGet(runTime, Math::max);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getRejected() {
+            return rejected.get();
+        }
+
+        public long getAverageWaitTime() {
+            final long n = count.get();
+            return n > 0 ? totalWaitTime.get() / n : 0;
+        }
+
+        public long getMaxWaitTime() {
+            return maxWaitTime.get();
+        }
+
+        public long getAverageRunTime() {
+            final long n = count.get();
+            return n > 0 ? totalRunTime.get() / n : 0;
+        }
+
+        public long getMaxRunTime() {
+            return maxRunTime.get();
+        }
+
+        @Override
+        public String toString() {
+            return "count: " + getCount() + ", rejected: " + getRejected() +
+                    ", avg/max wait: " + getAverageWaitTime() + "/" + getMaxWaitTime() + " ms" +
+                    ", avg/max run: " + getAverageRunTime() + "/" + getMaxRunTime() + " ms";
+        }
+    }
 }
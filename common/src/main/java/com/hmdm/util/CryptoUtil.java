@@ -133,9 +133,42 @@ public class CryptoUtil {
         } catch (Exception e) {
             e.printStackTrace();
         }
-        s = s.replaceAll("\\s", "");
-        String signature = CryptoUtil.getSHA1String(hashSecret + s);
-        return signature;
+        return getJsonSignature(hashSecret, s);
+    }
+
+    /**
+     * <p>Gets the signature for the data which has been already serialized to JSON. The result is the same as for
+     * {@link #getDataSignature(String, Object)} for the object serialized to the specified JSON.</p>
+     *
+     * @param hashSecret a shared secret.
+     * @param json a JSON representation of the data.
+     * @return a signature of the data.
+     */
+    public static String getJsonSignature(String hashSecret, String json) {
+        return CryptoUtil.getSHA1String(hashSecret + removeWhitespaces(json));
+    }
+
+    /**
+     * <p>Removes all whitespace characters (same as <code>\s</code> regular expression class) from the
+     * string.</p>
+     */
+    private static String removeWhitespaces(String s) {
+        final StringBuilder result = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\013':
+                case '\f':
+                case '\r':
+                    break;
+                default:
+                    result.append(c);
+            }
+        }
+        return result.toString();
     }
 
     public static boolean checkRequestSignature(String signature, String value) {
@@ -0,0 +1,167 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.event;
+
+import com.hmdm.util.BackgroundTaskRunnerService;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * <p>A test suite for {@link EventService} class.</p>
+ */
+public class EventServiceTests {
+
+    /**
+     * <p>Constructs new <code>EventServiceTests</code> instance. This implementation does nothing.</p>
+     */
+    public EventServiceTests() {
+    }
+
+    @Test
+    public void testCoalescingEventsWithSameKeyAreHandledOnce() {
+        final QueuingTaskRunner taskRunner = new QueuingTaskRunner();
+        final EventService service = new EventService(taskRunner);
+        final List<Event> handled = addListener(service, EventType.DEVICE_INFO_UPDATED);
+
+        final DeviceInfoUpdatedEvent first = new DeviceInfoUpdatedEvent(1, 10, null);
+        final DeviceInfoUpdatedEvent latest = new DeviceInfoUpdatedEvent(1, 20, null);
+        service.fireEvent(first);
+        service.fireEvent(latest);
+        Assert.assertEquals("Only one task should be submitted for the same key", 1, taskRunner.tasks.size());
+
+        taskRunner.runAll();
+        Assert.assertEquals(1, handled.size());
+        Assert.assertSame("Listener should be notified on the latest event", latest, handled.get(0));
+    }
+
+    @Test
+    public void testCoalescingEventsWithDifferentKeysAreHandledSeparately() {
+        final QueuingTaskRunner taskRunner = new QueuingTaskRunner();
+        final EventService service = new EventService(taskRunner);
+        final List<Event> handled = addListener(service, EventType.DEVICE_INFO_UPDATED);
+
+        service.fireEvent(new DeviceInfoUpdatedEvent(1));
+        service.fireEvent(new DeviceInfoUpdatedEvent(2));
+        Assert.assertEquals(2, taskRunner.tasks.size());
+
+        taskRunner.runAll();
+        Assert.assertEquals(2, handled.size());
+    }
+
+    @Test
+    public void testCoalescingEventFiredAfterHandlingIsSubmittedAgain() {
+        final QueuingTaskRunner taskRunner = new QueuingTaskRunner();
+        final EventService service = new EventService(taskRunner);
+        final List<Event> handled = addListener(service, EventType.DEVICE_INFO_UPDATED);
+
+        service.fireEvent(new DeviceInfoUpdatedEvent(1));
+        taskRunner.runAll();
+        service.fireEvent(new DeviceInfoUpdatedEvent(1));
+        Assert.assertEquals(1, taskRunner.tasks.size());
+
+        taskRunner.runAll();
+        Assert.assertEquals(2, handled.size());
+    }
+
+    @Test
+    public void testFailedListenerDoesNotAffectOthers() {
+        final QueuingTaskRunner taskRunner = new QueuingTaskRunner();
+        final EventService service = new EventService(taskRunner);
+        service.addEventListener(new TestListener(EventType.DEVICE_INFO_UPDATED, event -> {
+            throw new IllegalStateException("Expected failure");
+        }));
+        final List<Event> handled = addListener(service, EventType.DEVICE_INFO_UPDATED);
+
+        service.fireEvent(new DeviceInfoUpdatedEvent(1));
+        taskRunner.runAll();
+
+        Assert.assertEquals(1, handled.size());
+    }
+
+    @Test
+    public void testPlainEventsAreNotCoalesced() {
+        final QueuingTaskRunner taskRunner = new QueuingTaskRunner();
+        final EventService service = new EventService(taskRunner);
+        final List<Event> handled = addListener(service, EventType.CONFIGURATION_UPDATED);
+
+        service.fireEvent(new ConfigurationUpdatedEvent(1));
+        service.fireEvent(new ConfigurationUpdatedEvent(1));
+        taskRunner.runAll();
+
+        Assert.assertEquals(2, handled.size());
+    }
+
+    private static List<Event> addListener(EventService service, EventType type) {
+        final List<Event> handled = new ArrayList<>();
+        service.addEventListener(new TestListener(type, handled::add));
+        return handled;
+    }
+
+    /**
+     * <p>A listener passing the events to the specified consumer.</p>
+     */
+    private static class TestListener implements EventListener<Event> {
+        private final EventType type;
+        private final Consumer<Event> consumer;
+
+        private TestListener(EventType type, Consumer<Event> consumer) {
+            this.type = type;
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void onEvent(Event event) {
+            consumer.accept(event);
+        }
+
+        @Override
+        public EventType getSupportedEventType() {
+            return type;
+        }
+    }
+
+    /**
+     * <p>A task runner which queues the submitted tasks until they are run explicitly.</p>
+     */
+    private static class QueuingTaskRunner extends BackgroundTaskRunnerService {
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        private QueuingTaskRunner() {
+            super(1, 1, 1, 1, 1, 1, 1, 1, POLICY_CALLER_RUNS);
+        }
+
+        @Override
+        public void submitTask(Lane lane, String taskType, Runnable task) {
+            tasks.add(task);
+        }
+
+        private void runAll() {
+            final List<Runnable> submitted = new ArrayList<>(tasks);
+            tasks.clear();
+            submitted.forEach(Runnable::run);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.persistence;
+
+import com.hmdm.persistence.domain.DeviceSearchRequest;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>A test suite for {@link DeviceDAO} class.</p>
+ */
+public class DeviceDAOTests {
+
+    /**
+     * <p>Constructs new <code>DeviceDAOTests</code> instance. This implementation does nothing.</p>
+     */
+    public DeviceDAOTests() {
+    }
+
+    private static DeviceSearchRequest parse(String pageKey) {
+        final DeviceSearchRequest request = new DeviceSearchRequest();
+        request.setIndexedSearch(true);
+        request.setPageKey(pageKey);
+        DeviceDAO.setLastDevice(request);
+        return request;
+    }
+
+    @Test
+    public void testPageKeyIsParsed() {
+        final DeviceSearchRequest request = parse("[\"h0001\", 16, \"h0001\", 25]");
+
+        Assert.assertTrue(request.isKeysetPaging());
+        Assert.assertEquals("h0001", request.getLastSortingValue());
+        Assert.assertEquals(Integer.valueOf(16), request.getLastSearchPriority());
+        Assert.assertEquals("h0001", request.getLastNumber());
+        Assert.assertEquals(Integer.valueOf(25), request.getLastId());
+    }
+
+    @Test
+    public void testPageKeyKeepsTextValuesAsIs() {
+        final DeviceSearchRequest request = parse("[\"\", 0, \"dev \\\"1\\\", [x]\", 7]");
+
+        Assert.assertTrue(request.isKeysetPaging());
+        Assert.assertEquals("", request.getLastSortingValue());
+        Assert.assertEquals("dev \"1\", [x]", request.getLastNumber());
+    }
+
+    @Test
+    public void testNumericSortingValueIsReadAsText() {
+        final DeviceSearchRequest request = parse("[\"1700000000000\", 0, \"a\", 3]");
+
+        Assert.assertEquals("1700000000000", request.getLastSortingValue());
+    }
+
+    @Test
+    public void testInvalidPageKeysAreIgnored() {
+        final String[] keys = {
+                "", "not json", "{\"id\": 1}", "[\"a\", 0, \"b\"]", "[\"a\", 0, \"b\", 1, 2]",
+                "[\"a\", \"0\", \"b\", 1]", "[\"a\", 0, \"b\", \"1\"]", "[\"a\", 0, \"b\", 1.5]", "[\"a\", 0"
+        };
+        for (String key : keys) {
+            final DeviceSearchRequest request = parse(key);
+            Assert.assertFalse(key, request.isKeysetPaging());
+            Assert.assertNull(key, request.getLastId());
+        }
+    }
+
+    @Test
+    public void testPageKeyIsIgnoredByLegacySearch() {
+        final DeviceSearchRequest request = parse("[\"a\", 0, \"b\", 1]");
+        request.setIndexedSearch(false);
+
+        Assert.assertFalse(request.isKeysetPaging());
+    }
+}
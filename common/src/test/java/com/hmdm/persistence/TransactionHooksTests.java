@@ -0,0 +1,109 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.persistence;
+
+import org.apache.ibatis.transaction.Transaction;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>A test suite for {@link TransactionHooks} class.</p>
+ */
+public class TransactionHooksTests {
+
+    /**
+     * <p>Constructs new <code>TransactionHooksTests</code> instance. This implementation does nothing.</p>
+     */
+    public TransactionHooksTests() {
+    }
+
+    private static Transaction openTransaction() {
+        return new TransactionHooks.TransactionFactory().newTransaction((DataSource) null, null, false);
+    }
+
+    @Test
+    public void testActionIsPerformedImmediatelyOutsideOfTransaction() {
+        final List<String> performed = new ArrayList<>();
+        TransactionHooks.afterCommit(() -> performed.add("action"));
+        Assert.assertEquals(1, performed.size());
+    }
+
+    @Test
+    public void testActionIsPerformedAfterCommit() throws Exception {
+        final List<String> performed = new ArrayList<>();
+        final Transaction transaction = openTransaction();
+        try {
+            TransactionHooks.afterCommit(() -> performed.add("action"));
+            Assert.assertTrue("Action should not be performed before commit", performed.isEmpty());
+
+            transaction.commit();
+            Assert.assertEquals(1, performed.size());
+        } finally {
+            transaction.close();
+        }
+        Assert.assertEquals("Action should be performed once", 1, performed.size());
+
+        TransactionHooks.afterCommit(() -> performed.add("action"));
+        Assert.assertEquals("Closed transaction should not defer actions", 2, performed.size());
+    }
+
+    @Test
+    public void testActionIsDroppedOnRollback() throws Exception {
+        final List<String> performed = new ArrayList<>();
+        final Transaction transaction = openTransaction();
+        try {
+            TransactionHooks.afterCommit(() -> performed.add("action"));
+            transaction.rollback();
+        } finally {
+            transaction.close();
+        }
+        Assert.assertTrue(performed.isEmpty());
+    }
+
+    @Test
+    public void testActionIsBoundToInnermostTransaction() throws Exception {
+        final List<String> performed = new ArrayList<>();
+        final Transaction outer = openTransaction();
+        try {
+            TransactionHooks.afterCommit(() -> performed.add("outer"));
+
+            final Transaction inner = openTransaction();
+            try {
+                TransactionHooks.afterCommit(() -> performed.add("inner"));
+                inner.commit();
+            } finally {
+                inner.close();
+            }
+            Assert.assertEquals(1, performed.size());
+            Assert.assertEquals("inner", performed.get(0));
+
+            outer.rollback();
+        } finally {
+            outer.close();
+        }
+        Assert.assertEquals(1, performed.size());
+    }
+}
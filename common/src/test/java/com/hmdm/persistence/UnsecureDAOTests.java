@@ -0,0 +1,133 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.persistence;
+
+import com.hmdm.persistence.domain.Device;
+import com.hmdm.persistence.mapper.DeviceMapper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>A test suite for {@link UnsecureDAO} class.</p>
+ */
+public class UnsecureDAOTests {
+
+    private final List<String> updates = new ArrayList<>();
+    private final List<String> lookups = new ArrayList<>();
+    private int maxDeviceId;
+
+    private UnsecureDAO dao;
+
+    /**
+     * <p>Constructs new <code>UnsecureDAOTests</code> instance. This implementation does nothing.</p>
+     */
+    public UnsecureDAOTests() {
+    }
+
+    @Before
+    public void setUp() {
+        final DeviceMapper deviceMapper = (DeviceMapper) Proxy.newProxyInstance(DeviceMapper.class.getClassLoader(),
+                new Class<?>[] {DeviceMapper.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getMaxDeviceId":
+                            return maxDeviceId;
+                        case "updateOutdatedDeviceInfoColumns":
+                        case "updateMissingDeviceSearchText":
+                            updates.add(method.getName() + " " + args[0] + ".." + args[1]);
+                            // Only the devices in the first chunk are outdated
+                            return (int) args[0] == 0 ? 10 : 0;
+                        case "getDeviceByImeiOrSerial":
+                            lookups.add(method.getName());
+                            return null;
+                        case "getDeviceBySerialInInfo":
+                            lookups.add(method.getName());
+                            return new Device();
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        this.dao = new UnsecureDAO(deviceMapper, null, null, null, null, null, null, null, null, null, null, null, null,
+                null, null, null, "", 0, "");
+    }
+
+    @Test
+    public void testDeviceInfoColumnsAreUpdatedInChunks() {
+        maxDeviceId = 2500;
+
+        dao.updateDeviceInfoColumns();
+
+        Assert.assertEquals(Arrays.asList(
+                "updateOutdatedDeviceInfoColumns 0..1000",
+                "updateOutdatedDeviceInfoColumns 1000..2000",
+                "updateOutdatedDeviceInfoColumns 2000..3000"), updates);
+    }
+
+    @Test
+    public void testLastDeviceIsUpdatedWhenMaxIdIsChunkBoundary() {
+        maxDeviceId = 1000;
+
+        dao.updateDeviceInfoColumns();
+
+        Assert.assertEquals(Arrays.asList("updateOutdatedDeviceInfoColumns 0..1000"), updates);
+    }
+
+    @Test
+    public void testNothingIsUpdatedWithoutDevices() {
+        maxDeviceId = 0;
+
+        dao.updateDeviceInfoColumns();
+        dao.updateDeviceSearchText();
+
+        Assert.assertTrue(updates.isEmpty());
+    }
+
+    @Test
+    public void testDeviceSearchTextIsFilledInChunks() {
+        maxDeviceId = 1001;
+
+        dao.updateDeviceSearchText();
+
+        Assert.assertEquals(Arrays.asList(
+                "updateMissingDeviceSearchText 0..1000",
+                "updateMissingDeviceSearchText 1000..2000"), updates);
+    }
+
+    @Test
+    public void testSerialIsLookedUpInInfoUntilColumnsAreFilled() {
+        maxDeviceId = 0;
+
+        Assert.assertNotNull(dao.getDeviceByImeiOrSerial("S1"));
+        Assert.assertEquals(Arrays.asList("getDeviceByImeiOrSerial", "getDeviceBySerialInInfo"), lookups);
+
+        lookups.clear();
+        dao.updateDeviceInfoColumns();
+
+        Assert.assertNull(dao.getDeviceByImeiOrSerial("S1"));
+        Assert.assertEquals(Arrays.asList("getDeviceByImeiOrSerial"), lookups);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.persistence.domain;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>A test suite for {@link DeviceSearchRequest} class.</p>
+ */
+public class DeviceSearchRequestTests {
+
+    /**
+     * <p>Constructs new <code>DeviceSearchRequestTests</code> instance. This implementation does nothing.</p>
+     */
+    public DeviceSearchRequestTests() {
+    }
+
+    private static DeviceSearchRequest request(String value, boolean indexedSearch, boolean fastSearch) {
+        final DeviceSearchRequest request = new DeviceSearchRequest();
+        request.setValue(value);
+        request.setIndexedSearch(indexedSearch);
+        request.setFastSearch(fastSearch);
+        return request;
+    }
+
+    @Test
+    public void testWildcardsAreEscapedForIndexedSearch() {
+        Assert.assertEquals("%abc%", request("abc", true, false).getValue());
+        Assert.assertEquals("%a\\_b\\%c%", request("a_b%c", true, false).getValue());
+        Assert.assertEquals("%a\\\\b%", request("a\\b", true, false).getValue());
+        Assert.assertEquals("%\\%%", request("%", true, false).getValue());
+    }
+
+    @Test
+    public void testSeparatorIsRemovedForIndexedSearch() {
+        Assert.assertEquals("%ab%", request("a\u0001b", true, false).getValue());
+    }
+
+    @Test
+    public void testLegacySearchValueIsNotEscaped() {
+        Assert.assertEquals("%a_b%c%", request("a_b%c", false, false).getValue());
+    }
+
+    @Test
+    public void testFastSearchValueIsNotChanged() {
+        Assert.assertEquals("a_b", request("a_b", true, true).getValue());
+    }
+
+    @Test
+    public void testBlankValueIsNotSearched() {
+        Assert.assertNull(request("  ", true, false).getValue());
+        Assert.assertNull(request(null, true, false).getValue());
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.persistence.mapper;
+
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.session.Configuration;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <p>A test suite for the SQL statements of {@link ConfigurationMapper}.</p>
+ */
+public class ConfigurationMapperTests {
+
+    private static final String RESOURCE = "com/hmdm/persistence/mapper/ConfigurationMapper.xml";
+
+    private Configuration configuration;
+
+    /**
+     * <p>Constructs new <code>ConfigurationMapperTests</code> instance. This implementation does nothing.</p>
+     */
+    public ConfigurationMapperTests() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        this.configuration = new Configuration();
+        this.configuration.getTypeAliasRegistry().registerAliases("com.hmdm.persistence.domain");
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream(RESOURCE)) {
+            new XMLMapperBuilder(input, this.configuration, RESOURCE, this.configuration.getSqlFragments()).parse();
+        }
+    }
+
+    private String getSql(String statement, Object parameters) {
+        return this.configuration.getMappedStatement(ConfigurationMapper.class.getName() + "." + statement)
+                .getBoundSql(parameters).getSql().replaceAll("\\s+", " ").trim();
+    }
+
+    private String getConfigurationApplicationsSql() {
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put("customerId", 1);
+        parameters.put("id", 7);
+        parameters.put("tempTable", "ca0");
+        return getSql("getConfigurationApplications", parameters);
+    }
+
+    private String getConfigurationsApplicationsLiteSql() {
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put("customerId", 1);
+        parameters.put("ids", Collections.singletonList(7));
+        return getSql("getConfigurationsApplicationsLite", parameters);
+    }
+
+    /**
+     * <p>Splits the select list of the specified query into the column expressions.</p>
+     */
+    private static List<String> getSelectedColumns(String sql, String from) {
+        final String select = sql.substring(sql.lastIndexOf("SELECT ", sql.indexOf(from)) + "SELECT ".length(),
+                sql.indexOf(from));
+        final List<String> columns = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < select.length(); i++) {
+            final char c = select.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                columns.add(select.substring(start, i).trim().toLowerCase(Locale.ROOT));
+                start = i + 1;
+            }
+        }
+        columns.add(select.substring(start).trim().toLowerCase(Locale.ROOT));
+        return columns;
+    }
+
+    @Test
+    public void testBatchedApplicationsAreSelectedAsForSingleConfiguration() {
+        final String single = getConfigurationApplicationsSql();
+        final String batched = getConfigurationsApplicationsLiteSql();
+
+        final String singleSource = single.substring(single.indexOf(" FROM applications INNER JOIN") + " FROM ".length());
+        final String batchedSource = batched.substring(batched.indexOf(" CROSS JOIN ") + " CROSS JOIN ".length(),
+                batched.indexOf(" AND cfg.customerId = ?"));
+
+        Assert.assertTrue(singleSource.contains("LEFT JOIN ca0 configurationApplications "));
+        Assert.assertEquals("The batched query must join and filter the applications as the query for a single " +
+                        "configuration does",
+                singleSource
+                        .replace("LEFT JOIN ca0 configurationApplications ",
+                                "LEFT JOIN configurationApplications configurationApplications ")
+                        .replace("configurationId = ?", "configurationId = cfg.id"),
+                batchedSource);
+    }
+
+    @Test
+    public void testBatchedApplicationsAreLimitedToCustomerConfigurations() {
+        final String batched = getConfigurationsApplicationsLiteSql();
+
+        Assert.assertTrue(batched.startsWith("SELECT cfg.id AS configurationId,"));
+        Assert.assertTrue(batched.contains(" FROM configurations cfg CROSS JOIN applications "));
+        Assert.assertTrue(batched.endsWith(" AND cfg.customerId = ? AND cfg.id IN ( ? )"));
+    }
+
+    @Test
+    public void testBatchedApplicationsHaveSamePropertiesAsForSingleConfiguration() {
+        final List<String> singleColumns = getSelectedColumns(getConfigurationApplicationsSql(),
+                " FROM applications INNER JOIN");
+        final List<String> batchedColumns = getSelectedColumns(getConfigurationsApplicationsLiteSql(),
+                " FROM configurations cfg");
+
+        Assert.assertEquals("cfg.id as configurationid", batchedColumns.remove(0));
+        for (String column : batchedColumns) {
+            Assert.assertTrue("Not selected for single configuration: " + column, singleColumns.contains(column));
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.persistence.mapper;
+
+import com.hmdm.persistence.domain.DeviceListSortBy;
+import com.hmdm.persistence.domain.DeviceSearchRequest;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.session.Configuration;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * <p>A test suite for the SQL statements of {@link DeviceMapper}.</p>
+ */
+public class DeviceMapperTests {
+
+    private static final String RESOURCE = "com/hmdm/persistence/mapper/DeviceMapper.xml";
+
+    private Configuration configuration;
+
+    /**
+     * <p>Constructs new <code>DeviceMapperTests</code> instance. This implementation does nothing.</p>
+     */
+    public DeviceMapperTests() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        this.configuration = new Configuration();
+        this.configuration.getTypeAliasRegistry().registerAliases("com.hmdm.persistence.domain");
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream(RESOURCE)) {
+            new XMLMapperBuilder(input, this.configuration, RESOURCE, this.configuration.getSqlFragments()).parse();
+        }
+    }
+
+    private BoundSql getBoundSql(String statement, Object parameter) {
+        return this.configuration.getMappedStatement(DeviceMapper.class.getName() + "." + statement)
+                .getBoundSql(parameter);
+    }
+
+    private static String normalize(BoundSql boundSql) {
+        return boundSql.getSql().replaceAll("\\s+", " ").replace(" ,", ",").trim();
+    }
+
+    private static List<String> getParameters(BoundSql boundSql) {
+        return boundSql.getParameterMappings().stream().map(ParameterMapping::getProperty)
+                .collect(Collectors.toList());
+    }
+
+    private static DeviceSearchRequest request(String sortDir) {
+        final DeviceSearchRequest request = new DeviceSearchRequest();
+        request.setIndexedSearch(true);
+        request.setValue("dev");
+        request.setSortBy(DeviceListSortBy.NUMBER);
+        request.setSortDir(sortDir);
+        return request;
+    }
+
+    @Test
+    public void testFirstPageIsRetrievedByOffset() {
+        final String sql = normalize(getBoundSql("getAllDevices", request("ASC")));
+
+        Assert.assertTrue(sql.contains(" OFFSET (? - 1) * ? LIMIT ?"));
+        Assert.assertFalse(sql.contains("sortingValue > ?"));
+    }
+
+    @Test
+    public void testNextPageStartsAfterLastDeviceOfPreviousPage() {
+        final DeviceSearchRequest request = request("ASC");
+        request.setLastDevice("dev0050", 16, "dev0050", 50);
+        final BoundSql boundSql = getBoundSql("getAllDevices", request);
+        final String sql = normalize(boundSql);
+
+        Assert.assertFalse(sql.contains("OFFSET"));
+        // The page is seeked past the key by the same columns and in the same order as the devices are sorted
+        Assert.assertTrue(sql.contains(") allowedDevicesInner WHERE sortingValue > ? OR sortingValue = ? AND ( " +
+                "searchPriority < ? OR searchPriority = ? AND ( LOWER(deviceNumber) > ? " +
+                "OR LOWER(deviceNumber) = ? AND deviceId > ?)) " +
+                "ORDER BY sortingValue, searchPriority DESC, LOWER(deviceNumber), deviceId LIMIT ?"));
+        // The key of the last device lists these columns in the same order
+        Assert.assertTrue(sql.contains("json_build_array(allowedDevices.sortingValue, allowedDevices.searchPriority, " +
+                "allowedDevices.deviceNumber, allowedDevices.deviceId)::TEXT AS pageKey"));
+
+        final List<String> parameters = getParameters(boundSql);
+        final int seek = parameters.indexOf("lastSortingValue");
+        Assert.assertEquals(parameters.subList(seek, seek + 8).toString(), "[lastSortingValue, lastSortingValue, " +
+                "lastSearchPriority, lastSearchPriority, lastNumber, lastNumber, lastId, pageSize]");
+    }
+
+    @Test
+    public void testNextPageIsSeekedBackwardsForDescendingOrder() {
+        final DeviceSearchRequest request = request("desc");
+        request.setLastDevice("dev0050", 16, "dev0050", 50);
+        final String sql = normalize(getBoundSql("getAllDevices", request));
+
+        Assert.assertTrue(sql.contains(") allowedDevicesInner WHERE sortingValue < ? OR sortingValue = ? AND ("));
+        Assert.assertTrue(sql.contains(" ORDER BY sortingValue DESC, searchPriority DESC, LOWER(deviceNumber), " +
+                "deviceId LIMIT ?"));
+    }
+
+    @Test
+    public void testSortingValueIsNotNullForKeysetPaging() {
+        final DeviceSearchRequest request = request("ASC");
+        request.setSortBy(DeviceListSortBy.CUSTOM1);
+        final String sql = normalize(getBoundSql("getAllDevices", request));
+
+        Assert.assertTrue(sql.contains("COALESCE( LOWER(devices.custom1)::VARCHAR(100), '') AS sortingValue"));
+    }
+
+    @Test
+    public void testIndexedSearchMatchesEscapedValue() {
+        final DeviceSearchRequest request = request("ASC");
+        request.setValue("a_b");
+        final BoundSql boundSql = getBoundSql("countAllDevices", request);
+
+        Assert.assertTrue(normalize(boundSql).contains("devices.searchText ILIKE ?"));
+        Assert.assertEquals("%a\\_b%", request.getValue());
+    }
+
+    @Test
+    public void testOutdatedDeviceInfoColumnsAreUpdatedInRange() {
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put("fromId", 1000);
+        parameters.put("toId", 2000);
+        final BoundSql boundSql = getBoundSql("updateOutdatedDeviceInfoColumns", parameters);
+        final String sql = normalize(boundSql);
+
+        final String columns = "( infoModel, infoBatteryLevel, infoAndroidVersion, infoSerial, infoMdmMode, " +
+                "infoKioskMode, infoDefaultLauncher )";
+        final String values = "( (devices.infojson) ->> 'model', ((devices.infojson) ->> 'batteryLevel')::INT, " +
+                "(devices.infojson) ->> 'androidVersion', (devices.infojson) ->> 'serial', " +
+                "((devices.infojson) ->> 'mdmMode')::BOOLEAN, ((devices.infojson) ->> 'kioskMode')::BOOLEAN, " +
+                "((devices.infojson) ->> 'defaultLauncher')::BOOLEAN )";
+        Assert.assertEquals("UPDATE devices SET " + columns + " = " + values +
+                " WHERE id > ? AND id <= ? AND infojson IS NOT NULL AND " + columns + " IS DISTINCT FROM " + values,
+                sql);
+        Assert.assertEquals(Arrays.asList("fromId", "toId"), getParameters(boundSql));
+    }
+
+    @Test
+    public void testDeviceIsFoundBySerialColumn() {
+        final String sql = normalize(getBoundSql("getDeviceByImeiOrSerial",
+                Collections.singletonMap("number", "S1")));
+
+        Assert.assertTrue(sql, sql.endsWith("WHERE devices.imei = ? OR devices.infojson ->> 'imei' = ? " +
+                "OR devices.infoSerial = ?"));
+    }
+
+    @Test
+    public void testDeviceIsFoundBySerialInInfoOnlyIfColumnIsNotFilled() {
+        final String sql = normalize(getBoundSql("getDeviceBySerialInInfo",
+                Collections.singletonMap("number", "S1")));
+
+        Assert.assertTrue(sql, sql.endsWith("WHERE devices.infoSerial IS NULL AND devices.infojson ->> 'serial' = ?"));
+    }
+
+    @Test
+    public void testSummaryRowsAreKindedByGroupingSet() {
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put("userId", 1);
+        parameters.put("customerId", 2);
+        parameters.put("onlineSince", 3L);
+        parameters.put("idleSince", 4L);
+        parameters.put("enrolledSince", 5L);
+        parameters.put("monthBounds", Arrays.asList(10L, 20L, 30L));
+        final BoundSql boundSql = getBoundSql("getDeviceSummary", parameters);
+        final String sql = normalize(boundSql);
+
+        // The configuration grouping set is checked first: its rows have no enrollment month either
+        Assert.assertTrue(sql, sql.startsWith("SELECT CASE WHEN GROUPING(configurations.id, configurations.name) = 0 " +
+                "THEN 'CONFIG' WHEN GROUPING(summaryDevices.enrollMonth) = 0 THEN 'MONTH' ELSE 'TOTAL' END AS kind,"));
+        Assert.assertTrue(sql, sql.endsWith("GROUP BY GROUPING SETS ((), (configurations.id, configurations.name), " +
+                "(summaryDevices.enrollMonth))"));
+        Assert.assertTrue(sql, sql.contains("width_bucket(devices.enrollTime, ARRAY[ ?, ?, ? ]::BIGINT[]) - 1 AS enrollMonth"));
+        Assert.assertEquals(3, getParameters(boundSql).stream().filter(name -> name.startsWith("__frch_bound")).count());
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.service;
+
+import com.hmdm.persistence.TransactionHooks;
+import com.hmdm.persistence.domain.Device;
+import org.apache.ibatis.transaction.Transaction;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * <p>A test suite for {@link DeviceIdentityCache} class.</p>
+ */
+public class DeviceIdentityCacheTests {
+
+    /**
+     * <p>Constructs new <code>DeviceIdentityCacheTests</code> instance. This implementation does nothing.</p>
+     */
+    public DeviceIdentityCacheTests() {
+    }
+
+    private static Supplier<Device> loader(int deviceId, String number, AtomicInteger loads) {
+        return () -> {
+            loads.incrementAndGet();
+            final Device device = new Device();
+            device.setId(deviceId);
+            device.setNumber(number);
+            return device;
+        };
+    }
+
+    @Test
+    public void testInvalidateDropsAllKeysOfDevice() {
+        final DeviceIdentityCache cache = new DeviceIdentityCache(100, 300);
+        final AtomicInteger loads = new AtomicInteger();
+
+        cache.getByNumber("d1", loader(1, "d1", loads));
+        cache.getByOldNumber("old1", loader(1, "d1", loads));
+        cache.getByNumber("d2", loader(2, "d2", loads));
+        cache.getByNumber("d1", loader(1, "d1", loads));
+        Assert.assertEquals(3, loads.get());
+
+        cache.invalidate(1);
+
+        cache.getByNumber("d1", loader(1, "d1", loads));
+        cache.getByOldNumber("old1", loader(1, "d1", loads));
+        Assert.assertEquals("Both keys of invalidated device should be loaded again", 5, loads.get());
+        cache.getByNumber("d2", loader(2, "d2", loads));
+        Assert.assertEquals("Other devices should stay cached", 5, loads.get());
+    }
+
+    @Test
+    public void testMissingDevicesAreNotCached() {
+        final DeviceIdentityCache cache = new DeviceIdentityCache(100, 300);
+        final AtomicInteger loads = new AtomicInteger();
+
+        Assert.assertNull(cache.getByNumber("none", () -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        cache.getByNumber("none", loader(3, "none", loads));
+        Assert.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testEvictedEntryCanBeInvalidated() {
+        final DeviceIdentityCache cache = new DeviceIdentityCache(1, 300);
+        final AtomicInteger loads = new AtomicInteger();
+
+        cache.getByNumber("d1", loader(1, "d1", loads));
+        // Evicts the identity of device 1
+        cache.getByNumber("d2", loader(2, "d2", loads));
+        cache.invalidate(1);
+        cache.invalidate(2);
+
+        cache.getByNumber("d2", loader(2, "d2", loads));
+        Assert.assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testIdentityIsDroppedOnceChangesAreCommitted() throws Exception {
+        final DeviceIdentityCache cache = new DeviceIdentityCache(100, 300);
+        final AtomicInteger loads = new AtomicInteger();
+
+        cache.getByNumber("d1", loader(1, "d1", loads));
+
+        final Transaction transaction = new TransactionHooks.TransactionFactory()
+                .newTransaction((DataSource) null, null, false);
+        try {
+            cache.invalidate(1);
+            // An identity loaded before commit would be reloaded from the outdated data
+            cache.getByNumber("d1", loader(1, "d1", loads));
+            Assert.assertEquals(1, loads.get());
+
+            transaction.commit();
+        } finally {
+            transaction.close();
+        }
+
+        cache.getByNumber("d1", loader(1, "d1", loads));
+        Assert.assertEquals("Identity should be loaded again once the changes are committed", 2, loads.get());
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.service;
+
+import com.hmdm.persistence.domain.Application;
+import com.hmdm.persistence.domain.ApplicationType;
+import com.hmdm.persistence.domain.ConfigurationFile;
+import com.hmdm.persistence.domain.DeviceStatusRecord;
+import com.hmdm.persistence.mapper.ConfigurationFileMapper;
+import com.hmdm.persistence.mapper.ConfigurationMapper;
+import com.hmdm.persistence.mapper.DeviceMapper;
+import com.hmdm.persistence.mapper.SyncRevisionMapper;
+import com.hmdm.rest.json.DeviceConfigurationFile;
+import com.hmdm.rest.json.DeviceInfo;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>A test suite for {@link DeviceStatusService} class.</p>
+ */
+public class DeviceStatusServiceTests {
+
+    private static final int CONFIGURATION_ID = 10;
+
+    private final List<Application> configApps = new ArrayList<>();
+    private final List<ConfigurationFile> configFiles = new ArrayList<>();
+    private final AtomicInteger requirementLoads = new AtomicInteger();
+
+    private final List<Integer> outdatedDeviceIds = new ArrayList<>();
+    private final List<List<Integer>> sourceRequests = new ArrayList<>();
+    private final List<List<DeviceStatusRecord>> savedBatches = new ArrayList<>();
+    private Integer failingDeviceId;
+
+    private DeviceApplicationsStatus appsStatus;
+    private DeviceConfigFilesStatus filesStatus;
+
+    private ConfigurationRevisionService revisionService;
+    private DeviceStatusService service;
+
+    /**
+     * <p>Constructs new <code>DeviceStatusServiceTests</code> instance. This implementation does nothing.</p>
+     */
+    public DeviceStatusServiceTests() {
+    }
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        final DeviceMapper deviceMapper = stub(DeviceMapper.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "updateDeviceStatuses":
+                    filesStatus = (DeviceConfigFilesStatus) args[1];
+                    appsStatus = (DeviceApplicationsStatus) args[2];
+                    return 1;
+                case "getDeviceIdsWithOutdatedStatuses":
+                    return new ArrayList<>(outdatedDeviceIds);
+                case "getDeviceStatusSources":
+                    return statusSources((List<Integer>) args[0]);
+                case "updateDeviceStatusesBatch":
+                    savedBatches.add(new ArrayList<>((List<DeviceStatusRecord>) args[0]));
+                    return null;
+                default:
+                    return 1;
+            }
+        });
+        final ConfigurationMapper configurationMapper = stub(ConfigurationMapper.class, (proxy, method, args) -> {
+            requirementLoads.incrementAndGet();
+            return new ArrayList<>(configApps);
+        });
+        final ConfigurationFileMapper configurationFileMapper = stub(ConfigurationFileMapper.class,
+                (proxy, method, args) -> new ArrayList<>(configFiles));
+        final SyncRevisionMapper syncRevisionMapper = stub(SyncRevisionMapper.class, (proxy, method, args) ->
+                method.getReturnType() == int.class ? 0 : null);
+
+        revisionService = new ConfigurationRevisionService(syncRevisionMapper);
+        service = new DeviceStatusService(deviceMapper, configurationMapper, configurationFileMapper, revisionService);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    /**
+     * <p>Emulates loading the devices of a chunk: odd devices have the application installed, even devices have no
+     * applications at all.</p>
+     */
+    private List<DeviceStatusRecord> statusSources(List<Integer> deviceIds) {
+        sourceRequests.add(new ArrayList<>(deviceIds));
+        if (failingDeviceId != null && deviceIds.contains(failingDeviceId)) {
+            throw new IllegalStateException("Failed to load devices");
+        }
+        final List<DeviceStatusRecord> records = new ArrayList<>();
+        for (Integer deviceId : deviceIds) {
+            final DeviceStatusRecord record = new DeviceStatusRecord();
+            record.setDeviceId(deviceId);
+            record.setConfigurationId(CONFIGURATION_ID);
+            record.setInfoTime(1000L + deviceId);
+            record.setInfo(deviceId % 2 == 1
+                    ? "{\"applications\":[{\"pkg\":\"com.a\",\"version\":\"1.0\"}]}"
+                    : "{\"applications\":[]}");
+            records.add(record);
+        }
+        return records;
+    }
+
+    private static List<Integer> deviceIds(int from, int to) {
+        final List<Integer> ids = new ArrayList<>();
+        for (int id = from; id <= to; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private static Application app(String pkg, String version, int action) {
+        final Application app = new Application();
+        app.setPkg(pkg);
+        app.setVersion(version);
+        app.setAction(action);
+        app.setType(ApplicationType.app);
+        app.setUrl("https://example.com/" + pkg + ".apk");
+        return app;
+    }
+
+    private static ConfigurationFile configFile(String path, long lastUpdate, boolean remove) {
+        final ConfigurationFile file = new ConfigurationFile();
+        file.setDevicePath(path);
+        file.setLastUpdate(lastUpdate);
+        file.setRemove(remove);
+        return file;
+    }
+
+    private static DeviceConfigurationFile deviceFile(String path, long lastUpdate) {
+        final DeviceConfigurationFile file = new DeviceConfigurationFile();
+        file.setPath(path);
+        file.setLastUpdate(lastUpdate);
+        return file;
+    }
+
+    private static DeviceInfo info(List<Application> apps, List<DeviceConfigurationFile> files) {
+        final DeviceInfo info = new DeviceInfo();
+        info.setApplications(apps);
+        info.setFiles(files);
+        return info;
+    }
+
+    @Test
+    public void testAllApplicationsInstalled() {
+        configApps.add(app("com.a", "1.0", 1));
+        configApps.add(app("com.b", "2.0", 1));
+
+        service.recalcDeviceStatuses(1, CONFIGURATION_ID, info(Arrays.asList(
+                app("com.b", "2.1", 0), app("com.a", "1.0", 0), app("com.other", "1.0", 0)), null));
+
+        Assert.assertEquals(DeviceApplicationsStatus.SUCCESS, appsStatus);
+    }
+
+    @Test
+    public void testMissingApplication() {
+        configApps.add(app("com.a", "1.0", 1));
+        configApps.add(app("com.b", "2.0", 1));
+
+        // The duplicate of the same package must not be counted twice
+        service.recalcDeviceStatuses(1, CONFIGURATION_ID, info(Arrays.asList(
+                app("com.a", "1.0", 0), app("com.a", "1.0", 0)), null));
+
+        Assert.assertEquals(DeviceApplicationsStatus.FAILURE, appsStatus);
+    }
+
+    @Test
+    public void testVersionMismatch() {
+        configApps.add(app("com.a", "1.2", 1));
+        final Application removed = app("com.b", "3.0", 2);
+        configApps.add(removed);
+
+        service.recalcDeviceStatuses(1, CONFIGURATION_ID, info(Arrays.asList(app("com.a", "1.1", 0)), null));
+        Assert.assertEquals(DeviceApplicationsStatus.VERSION_MISMATCH, appsStatus);
+
+        service.recalcDeviceStatuses(1, CONFIGURATION_ID, info(Arrays.asList(
+                app("com.a", "1.2", 0), app("com.b", "3.0", 0)), null));
+        Assert.assertEquals("Application to be removed is still installed",
+                DeviceApplicationsStatus.VERSION_MISMATCH, appsStatus);
+    }
+
+    @Test
+    public void testApplicationsWithoutUrlAreNotVerified() {
+        final Application system = app("com.system", "1.0", 1);
+        system.setUrl(null);
+        configApps.add(system);
+        final Application web = app("com.web", "1.0", 1);
+        web.setType(ApplicationType.web);
+        configApps.add(web);
+
+        service.recalcDeviceStatuses(1, CONFIGURATION_ID, info(new ArrayList<>(), null));
+
+        Assert.assertEquals(DeviceApplicationsStatus.SUCCESS, appsStatus);
+    }
+
+    @Test
+    public void testFilesStatus() {
+        configFiles.add(configFile("/sdcard/a.txt", 100000000L, false));
+        configFiles.add(configFile("/sdcard/b.txt", 200000000L, false));
+
+        service.recalcDeviceStatuses(1, CONFIGURATION_ID, info(null, Arrays.asList(
+                deviceFile("/sdcard/a.txt", 100000000L), deviceFile("/sdcard/b.txt", 200000000L + 60000))));
+        Assert.assertEquals(DeviceConfigFilesStatus.UP_TO_DATE, filesStatus);
+
+        service.recalcDeviceStatuses(1, CONFIGURATION_ID, info(null, Arrays.asList(
+                deviceFile("/sdcard/a.txt", 100000000L))));
+        Assert.assertEquals(DeviceConfigFilesStatus.MISSING, filesStatus);
+    }
+
+    @Test
+    public void testEntriesWithSamePackageOrPathAreVerifiedSeparately() {
+        configApps.add(app("com.a", "1.0", 1));
+        configApps.add(app("com.a", "2.0", 1));
+        configFiles.add(configFile("/sdcard/a.txt", 100000000L, false));
+        configFiles.add(configFile("/sdcard/a.txt", 300000000L, false));
+
+        service.recalcDeviceStatuses(1, CONFIGURATION_ID, info(
+                Arrays.asList(app("com.a", "1.0", 0)), Arrays.asList(deviceFile("/sdcard/a.txt", 100000000L))));
+
+        Assert.assertEquals(DeviceApplicationsStatus.VERSION_MISMATCH, appsStatus);
+        Assert.assertEquals(DeviceConfigFilesStatus.OTHER, filesStatus);
+    }
+
+    @Test
+    public void testNoInfo() {
+        service.recalcDeviceStatuses(1, CONFIGURATION_ID, null);
+
+        Assert.assertEquals(DeviceApplicationsStatus.FAILURE, appsStatus);
+        Assert.assertEquals(DeviceConfigFilesStatus.OTHER, filesStatus);
+    }
+
+    @Test
+    public void testRequirementsAreCachedUntilConfigurationChanged() {
+        configApps.add(app("com.a", "1.0", 1));
+        final DeviceInfo info = info(Arrays.asList(app("com.a", "1.0", 0)), null);
+
+        service.recalcDeviceStatuses(1, CONFIGURATION_ID, info);
+        service.recalcDeviceStatuses(2, CONFIGURATION_ID, info);
+        Assert.assertEquals(1, requirementLoads.get());
+        Assert.assertEquals(DeviceApplicationsStatus.SUCCESS, appsStatus);
+
+        configApps.add(app("com.b", "1.0", 1));
+        revisionService.onConfigurationChanged(CONFIGURATION_ID);
+        service.recalcDeviceStatuses(1, CONFIGURATION_ID, info);
+        Assert.assertEquals(2, requirementLoads.get());
+        Assert.assertEquals(DeviceApplicationsStatus.FAILURE, appsStatus);
+    }
+
+    @Test
+    public void testOutdatedStatusesAreRecalculatedInChunks() {
+        configApps.add(app("com.a", "1.0", 1));
+        outdatedDeviceIds.addAll(deviceIds(1, 1201));
+
+        service.recalcOutdatedDeviceStatuses();
+
+        Assert.assertEquals(3, sourceRequests.size());
+        Assert.assertEquals(deviceIds(1, 500), sourceRequests.get(0));
+        Assert.assertEquals(deviceIds(501, 1000), sourceRequests.get(1));
+        Assert.assertEquals(deviceIds(1001, 1201), sourceRequests.get(2));
+        Assert.assertEquals("Requirements are loaded once for all chunks", 1, requirementLoads.get());
+
+        Assert.assertEquals(3, savedBatches.size());
+        Assert.assertEquals(500, savedBatches.get(0).size());
+        Assert.assertEquals(201, savedBatches.get(2).size());
+        for (List<DeviceStatusRecord> batch : savedBatches) {
+            for (DeviceStatusRecord record : batch) {
+                Assert.assertEquals(record.getDeviceId() % 2 == 1
+                        ? DeviceApplicationsStatus.SUCCESS
+                        : DeviceApplicationsStatus.FAILURE, record.getApplicationsStatus());
+                Assert.assertEquals(DeviceConfigFilesStatus.UP_TO_DATE, record.getConfigFilesStatus());
+                Assert.assertEquals("The statuses are saved along with the info time they were evaluated from",
+                        Long.valueOf(1000L + record.getDeviceId()), record.getInfoTime());
+                Assert.assertNull("The info is not saved", record.getInfo());
+            }
+        }
+    }
+
+    @Test
+    public void testNothingIsRecalculatedWhenStatusesAreUpToDate() {
+        service.recalcOutdatedDeviceStatuses();
+
+        Assert.assertTrue(sourceRequests.isEmpty());
+        Assert.assertTrue(savedBatches.isEmpty());
+    }
+
+    @Test
+    public void testFailedChunkDoesNotStopOtherChunks() {
+        failingDeviceId = 600;
+
+        service.recalcDeviceStatuses(deviceIds(1, 1100));
+
+        Assert.assertEquals(3, sourceRequests.size());
+        Assert.assertEquals(2, savedBatches.size());
+        Assert.assertEquals(1, savedBatches.get(0).get(0).getDeviceId());
+        Assert.assertEquals(1001, savedBatches.get(1).get(0).getDeviceId());
+    }
+}
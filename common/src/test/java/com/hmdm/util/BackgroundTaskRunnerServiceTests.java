@@ -0,0 +1,121 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>A test suite for {@link BackgroundTaskRunnerService} class.</p>
+ */
+public class BackgroundTaskRunnerServiceTests {
+
+    /**
+     * <p>Constructs new <code>BackgroundTaskRunnerServiceTests</code> instance. This implementation does nothing.</p>
+     */
+    public BackgroundTaskRunnerServiceTests() {
+    }
+
+    private static BackgroundTaskRunnerService createService(String rejectionPolicy) {
+        return new BackgroundTaskRunnerService(1, 1, 1, 1, 1, 1, 1, 1, rejectionPolicy);
+    }
+
+    @Test
+    public void testFullLaneRunsTaskInCallerThread() throws Exception {
+        final BackgroundTaskRunnerService service = createService(BackgroundTaskRunnerService.POLICY_CALLER_RUNS);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+
+        // Occupy the single thread and the single queue slot of the lane
+        service.submitTask(BackgroundTaskRunnerService.Lane.EVENTS, "blocking", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        service.submitTask(BackgroundTaskRunnerService.Lane.EVENTS, "queued", () -> {});
+
+        final Thread caller = Thread.currentThread();
+        final AtomicInteger runInCaller = new AtomicInteger();
+        service.submitTask(BackgroundTaskRunnerService.Lane.EVENTS, "overflow", () -> {
+            if (Thread.currentThread() == caller) {
+                runInCaller.incrementAndGet();
+            }
+        });
+        Assert.assertEquals("Task should be run by the submitting thread", 1, runInCaller.get());
+        Assert.assertEquals("Rejection should be counted", 1, service.getStats().get("overflow").getRejected());
+
+        // The other lanes are not affected
+        final CountDownLatch otherLane = new CountDownLatch(1);
+        service.submitTask(BackgroundTaskRunnerService.Lane.INGEST, "ingest", otherLane::countDown);
+        Assert.assertTrue("Task in other lane should run", otherLane.await(5, TimeUnit.SECONDS));
+
+        release.countDown();
+    }
+
+    @Test
+    public void testFullLaneDiscardsTask() throws Exception {
+        final BackgroundTaskRunnerService service = createService(BackgroundTaskRunnerService.POLICY_DISCARD);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+
+        service.submitTask(BackgroundTaskRunnerService.Lane.DEFAULT, "blocking", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        service.submitTask(BackgroundTaskRunnerService.Lane.DEFAULT, "queued", () -> {});
+
+        final AtomicInteger runs = new AtomicInteger();
+        service.submitTask(BackgroundTaskRunnerService.Lane.DEFAULT, "overflow", runs::incrementAndGet);
+        Assert.assertEquals("Task should be discarded", 0, runs.get());
+        Assert.assertEquals(1, service.getQueueDepth(BackgroundTaskRunnerService.Lane.DEFAULT));
+
+        release.countDown();
+    }
+
+    @Test
+    public void testStatsAreCollectedPerTaskType() throws Exception {
+        final BackgroundTaskRunnerService service = createService(BackgroundTaskRunnerService.POLICY_CALLER_RUNS);
+        final CountDownLatch done = new CountDownLatch(2);
+        service.submitTask(BackgroundTaskRunnerService.Lane.DEFAULT, "task", done::countDown);
+        service.submitTask(BackgroundTaskRunnerService.Lane.DEFAULT, "task", done::countDown);
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        // The statistics are updated right after the task is finished
+        for (int i = 0; i < 50 && service.getStats().get("task").getCount() < 2; i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(2, service.getStats().get("task").getCount());
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdm.rest.json.LookupItem;
+import com.hmdm.rest.json.RawJson;
+import com.hmdm.rest.json.Response;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>A test suite for {@link CryptoUtil} class.</p>
+ */
+public class CryptoUtilTests {
+
+    /**
+     * <p>Constructs new <code>CryptoUtilTests</code> instance. This implementation does nothing.</p>
+     */
+    public CryptoUtilTests() {
+    }
+
+    @Test
+    public void testJsonSignatureMatchesDataSignature() throws Exception {
+        final LookupItem data = new LookupItem(1, "Some name\twith\nwhitespaces");
+        final String json = new ObjectMapper().writeValueAsString(data);
+
+        Assert.assertEquals("Signatures should be equal",
+                CryptoUtil.getDataSignature("secret", data), CryptoUtil.getJsonSignature("secret", json));
+        Assert.assertEquals("Whitespaces should be ignored",
+                CryptoUtil.getSHA1String("secret" + json.replaceAll("\\s", "")),
+                CryptoUtil.getJsonSignature("secret", json));
+    }
+
+    @Test
+    public void testRawJsonIsWrittenAsIs() throws Exception {
+        final ObjectMapper objectMapper = new ObjectMapper();
+        final LookupItem data = new LookupItem(1, "Name");
+        final String json = objectMapper.writeValueAsString(data);
+
+        Assert.assertEquals("Raw JSON should be serialized same way as the original data",
+                objectMapper.writeValueAsString(Response.OK(data)),
+                objectMapper.writeValueAsString(Response.OK(new RawJson(json))));
+    }
+}
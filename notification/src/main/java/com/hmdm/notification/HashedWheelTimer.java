@@ -0,0 +1,200 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.notification;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>A timer for the large number of tasks with approximate deadlines. The tasks are kept in a wheel of buckets, one
+ * bucket per tick, and a single thread expires the tasks from the current bucket on each tick, so scheduling and
+ * cancelling a task costs O(1) regardless of the number of scheduled tasks.</p>
+ *
+ * <p>The tasks are executed by the timer thread and therefore must be short.</p>
+ */
+public class HashedWheelTimer {
+
+    private static final Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    /**
+     * <p>A duration of single tick (in milliseconds).</p>
+     */
+    private final long tickDuration;
+
+    /**
+     * <p>The buckets of the wheel. Accessed by timer thread only.</p>
+     */
+    private final Queue<Timeout>[] wheel;
+
+    private final int mask;
+
+    /**
+     * <p>The newly scheduled timeouts which are not yet put to the wheel.</p>
+     */
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+
+    private final ScheduledExecutorService ticker;
+
+    private final LongSupplier clock;
+
+    private final long startTime;
+
+    /**
+     * <p>A number of ticks passed since the timer has been started.</p>
+     */
+    private volatile long tick;
+
+    /**
+     * <p>Constructs new <code>HashedWheelTimer</code> instance and starts the timer thread.</p>
+     *
+     * @param name a name of the timer thread.
+     * @param tickDuration a duration of single tick (in milliseconds).
+     * @param wheelSize a number of buckets in the wheel; rounded up to the power of 2.
+     */
+    public HashedWheelTimer(String name, long tickDuration, int wheelSize) {
+        this(tickDuration, wheelSize, System::currentTimeMillis, Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        }));
+        this.ticker.scheduleAtFixedRate(this::onTick, tickDuration, tickDuration, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * <p>Constructs new <code>HashedWheelTimer</code> instance. The ticks are not scheduled by this constructor.</p>
+     *
+     * @param tickDuration a duration of single tick (in milliseconds).
+     * @param wheelSize a number of buckets in the wheel; rounded up to the power of 2.
+     * @param clock a source of current time (in milliseconds).
+     * @param ticker an executor to run the ticks by; may be <code>null</code> if ticks are triggered manually.
+     */
+    @SuppressWarnings("unchecked")
+    HashedWheelTimer(long tickDuration, int wheelSize, LongSupplier clock, ScheduledExecutorService ticker) {
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        this.tickDuration = tickDuration;
+        this.wheel = new Queue[size];
+        for (int i = 0; i < size; i++) {
+            this.wheel[i] = new ArrayDeque<>();
+        }
+        this.mask = size - 1;
+        this.clock = clock;
+        this.startTime = clock.getAsLong();
+        this.ticker = ticker;
+    }
+
+    /**
+     * <p>Schedules the specified task for execution after the specified delay.</p>
+     *
+     * @param task a task to execute.
+     * @param delay a delay (in milliseconds).
+     * @return a handle which can be used for cancelling the task.
+     */
+    public Timeout newTimeout(Runnable task, long delay) {
+        final long elapsed = this.clock.getAsLong() - this.startTime + Math.max(delay, 0);
+        final Timeout timeout = new Timeout(task, (elapsed + this.tickDuration - 1) / this.tickDuration);
+        this.incoming.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * <p>Stops the timer. The pending tasks are never executed.</p>
+     */
+    public void stop() {
+        if (this.ticker != null) {
+            this.ticker.shutdownNow();
+        }
+    }
+
+    /**
+     * <p>Advances the wheel by one tick and executes the expired tasks.</p>
+     */
+    void onTick() {
+        try {
+            final long current = ++this.tick;
+
+            Timeout timeout;
+            while ((timeout = this.incoming.poll()) != null) {
+                if (!timeout.cancelled) {
+                    this.wheel[(int) (Math.max(timeout.deadline, current) & this.mask)].add(timeout);
+                }
+            }
+
+            final Queue<Timeout> bucket = this.wheel[(int) (current & this.mask)];
+            for (int i = bucket.size(); i > 0; i--) {
+                timeout = bucket.poll();
+                if (timeout.cancelled) {
+                    continue;
+                }
+                if (timeout.deadline > current) {
+                    // Belongs to one of the next rounds of the wheel
+                    bucket.add(timeout);
+                    continue;
+                }
+                try {
+                    timeout.task.run();
+                } catch (Exception e) {
+                    logger.error("Unexpected error when executing the timer task", e);
+                }
+            }
+        } catch (Throwable e) {
+            logger.error("Unexpected error in timer", e);
+        }
+    }
+
+    /**
+     * <p>A handle to a task scheduled for execution.</p>
+     */
+    public static class Timeout {
+
+        private final Runnable task;
+
+        /**
+         * <p>A tick on which the task is to be executed.</p>
+         */
+        private final long deadline;
+
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * <p>Cancels the task. The cancelled task is dropped from the wheel on the next visit of its bucket.</p>
+         */
+        public void cancel() {
+            this.cancelled = true;
+        }
+    }
+}
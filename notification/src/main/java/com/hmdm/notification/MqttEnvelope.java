@@ -2,9 +2,12 @@ package com.hmdm.notification;
 
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 
+import java.nio.charset.StandardCharsets;
+
 public class MqttEnvelope {
     private String address;
     private MqttMessage message;
+    private final long createTime = System.currentTimeMillis();
 
     public MqttEnvelope() {}
 
@@ -28,4 +31,22 @@ public class MqttEnvelope {
     public void setAddress(String address) {
         this.address = address;
     }
+
+    /**
+     * <p>Gets the time of creating this envelope.</p>
+     *
+     * @return a time of creating this envelope (in milliseconds since epoch).
+     */
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    /**
+     * <p>Gets the key identifying the equal messages to the same address.</p>
+     *
+     * @return a key of the message.
+     */
+    public String getKey() {
+        return address + "\n" + message.getQos() + "\n" + new String(message.getPayload(), StandardCharsets.UTF_8);
+    }
 }
@@ -1,65 +1,312 @@
 package com.hmdm.notification;
 
 import com.google.inject.Inject;
+import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import org.eclipse.paho.client.mqttv3.MqttClient;
-import org.eclipse.paho.client.mqttv3.MqttException;
-import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class MqttThrottledSender implements Runnable {
+/**
+ * <p>A publisher of MQTT messages limiting the rate of publishing to avoid congestion when many devices are notified
+ * at the same time.</p>
+ *
+ * <p>The rate is limited by a token bucket: up to <code>mqtt.rate.burst</code> messages are published at once, and the
+ * sustained rate is one message per <code>mqtt.message.delay</code> milliseconds. The messages are published by
+ * several workers, each using its own connection; the messages to the same device are always published by the same
+ * worker, so their order is kept.</p>
+ *
+ * <p>A message which is equal to the message to the same device waiting for publishing is dropped. If the queue of a
+ * worker is full then either the oldest waiting message or the new message is dropped as configured by
+ * <code>mqtt.queue.overflow</code>.</p>
+ */
+@Singleton
+public class MqttThrottledSender {
 
-    private BlockingQueue<MqttEnvelope> queue = new LinkedBlockingQueue<>();
-    private long mqttDelay;
-    private MqttClient mqttClient;
     private static final Logger log = LoggerFactory.getLogger(MqttThrottledSender.class);
 
+    public static final String OVERFLOW_DROP_OLDEST = "oldest";
+    public static final String OVERFLOW_DROP_NEWEST = "newest";
+
+    /**
+     * <p>A period for checking whether the worker is to be stopped while waiting for messages (in milliseconds).</p>
+     */
+    private static final long POLL_TIMEOUT = 1000;
+
+    /**
+     * <p>A maximum time for publishing the waiting messages on stop (in milliseconds).</p>
+     */
+    private static final long STOP_TIMEOUT = 10000;
+
+    private long mqttDelay;
+    private int workerCount;
+    private int queueSize;
+    private boolean dropOldest;
+    private TokenBucket tokenBucket;
+
+    private volatile List<Worker> workers = Collections.emptyList();
+
+    private volatile boolean stopping;
+
+    /**
+     * <p>The keys of the messages waiting for publishing.</p>
+     */
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong totalQueueTime = new AtomicLong();
+    private final AtomicLong maxQueueTime = new AtomicLong();
+    private final AtomicLong totalPublishTime = new AtomicLong();
+    private final AtomicLong maxPublishTime = new AtomicLong();
+
     public MqttThrottledSender() {}
 
     @Inject
-    public MqttThrottledSender(@Named("mqtt.message.delay") long mqttDelay) {
+    public MqttThrottledSender(@Named("mqtt.message.delay") long mqttDelay,
+                               @Named("mqtt.rate.burst") int burst,
+                               @Named("mqtt.publish.workers") int workerCount,
+                               @Named("mqtt.queue.size") int queueSize,
+                               @Named("mqtt.queue.overflow") String overflowPolicy) {
         this.mqttDelay = mqttDelay;
+        this.workerCount = Math.max(workerCount, 1);
+        this.queueSize = Math.max(queueSize / this.workerCount, 1);
+        this.dropOldest = !OVERFLOW_DROP_NEWEST.equalsIgnoreCase(overflowPolicy);
+        if (mqttDelay > 0) {
+            this.tokenBucket = new TokenBucket(1000.0 / mqttDelay, Math.max(burst, 1));
+        }
     }
 
-    public void setClient(MqttClient mqttClient) {
-        this.mqttClient = mqttClient;
+    /**
+     * <p>Gets the number of workers publishing the messages.</p>
+     *
+     * @return a number of workers.
+     */
+    public int getWorkerCount() {
+        return workerCount;
     }
 
-    public void send(MqttEnvelope msg) {
-        try {
-            queue.put(msg);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+    /**
+     * <p>Starts the workers publishing the messages.</p>
+     *
+     * @param clients the connections to MQTT broker, one per worker.
+     */
+    public synchronized void start(List<MqttClient> clients) {
+        if (!workers.isEmpty()) {
+            return;
+        }
+        log.info("Push message sending throttled, delay=" + mqttDelay + "ms, burst="
+                + (tokenBucket != null ? (long) tokenBucket.capacity : 0) + ", workers=" + clients.size());
+        final List<Worker> started = new ArrayList<>();
+        for (int i = 0; i < clients.size(); i++) {
+            final Worker worker = new Worker(clients.get(i), "mqtt-publisher-" + i);
+            worker.thread.start();
+            started.add(worker);
         }
+        workers = started;
     }
 
-    @Override
-    public void run() {
-        log.info("Push message sending throttled, delay=" + mqttDelay + "ms");
-        while (true) {
+    /**
+     * <p>Stops the workers. The messages waiting in queues are published without delay; the messages which are not
+     * published within the timeout are dropped.</p>
+     */
+    public synchronized void stop() {
+        final List<Worker> stopped = workers;
+        if (stopped.isEmpty()) {
+            return;
+        }
+        stopping = true;
+        workers = Collections.emptyList();
+
+        final long deadline = System.currentTimeMillis() + STOP_TIMEOUT;
+        for (Worker worker : stopped) {
             try {
-                MqttEnvelope msg = queue.take();
-                if (mqttClient != null) {
-                    mqttClient.publish(msg.getAddress(), msg.getMessage());
-                    log.debug("Sending MQTT message to " + msg.getAddress());
-                } else {
-                    log.error("MQTT client not initialized");
-                }
-                Thread.sleep(mqttDelay);
+                worker.thread.join(Math.max(deadline - System.currentTimeMillis(), 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        int lost = 0;
+        for (Worker worker : stopped) {
+            if (worker.thread.isAlive()) {
+                worker.thread.interrupt();
+            }
+            lost += worker.queue.size();
+        }
+        if (lost > 0) {
+            log.warn("MQTT publishing stopped, {} waiting messages dropped", lost);
+        }
+        logStats();
+    }
+
+    public void send(MqttEnvelope msg) {
+        final List<Worker> workers = this.workers;
+        if (workers.isEmpty()) {
+            if (!stopping) {
+                log.error("MQTT client not initialized");
             }
-            catch (InterruptedException e) {
-                e.printStackTrace();
+            return;
+        }
+        if (!pendingKeys.add(msg.getKey())) {
+            // The same message to the same device is already waiting
+            coalesced.incrementAndGet();
+            return;
+        }
+
+        final BlockingQueue<MqttEnvelope> queue
+                = workers.get(Math.floorMod(msg.getAddress().hashCode(), workers.size())).queue;
+        while (!queue.offer(msg)) {
+            if (!dropOldest) {
+                pendingKeys.remove(msg.getKey());
+                onDropped(msg);
                 return;
-            } catch (MqttPersistenceException e) {
-                e.printStackTrace();
-            } catch (MqttException e) {
-                e.printStackTrace();
+            }
+            final MqttEnvelope oldest = queue.poll();
+            if (oldest != null) {
+                pendingKeys.remove(oldest.getKey());
+                onDropped(oldest);
+            }
+        }
+    }
+
+    /**
+     * <p>Gets the number of messages waiting for publishing.</p>
+     *
+     * @return a number of messages in queues of all workers.
+     */
+    public int getQueueDepth() {
+        int result = 0;
+        for (Worker worker : workers) {
+            result += worker.queue.size();
+        }
+        return result;
+    }
+
+    /**
+     * <p>Outputs the statistics of publishing to log.</p>
+     */
+    public void logStats() {
+        final long count = published.get();
+        log.info("MQTT publishing stats: queue depth: {}, published: {}, failed: {}, coalesced: {}, dropped: {}, " +
+                        "avg/max queue time: {}/{} ms, avg/max publish time: {}/{} ms",
+                getQueueDepth(), count, failed.get(), coalesced.get(), dropped.get(),
+                count > 0 ? totalQueueTime.get() / count : 0, maxQueueTime.get(),
+                count > 0 ? totalPublishTime.get() / count : 0, maxPublishTime.get());
+    }
+
+    private void onDropped(MqttEnvelope msg) {
+        if (dropped.incrementAndGet() % 1000 == 1) {
+            log.warn("MQTT publishing queue is full, dropping the messages (dropped so far: {}), last dropped for {}",
+                    dropped.get(), msg.getAddress());
+        }
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Retry
+        }
+    }
+
+    /**
+     * <p>A worker publishing the messages from its queue using its own connection.</p>
+     */
+    private class Worker implements Runnable {
+        private final MqttClient client;
+        private final BlockingQueue<MqttEnvelope> queue = new ArrayBlockingQueue<>(queueSize);
+        private final Thread thread;
+
+        private Worker(MqttClient client, String name) {
+            this.client = client;
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                MqttEnvelope msg;
+                try {
+                    msg = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                    if (msg == null) {
+                        if (stopping) {
+                            return;
+                        }
+                        continue;
+                    }
+                    // Messages equal to this one are queued again from now on
+                    pendingKeys.remove(msg.getKey());
+                    // The waiting messages are published without delay on stop
+                    final long wait = tokenBucket != null && !stopping ? tokenBucket.reserve() : 0;
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                final long start = System.currentTimeMillis();
+                try {
+                    client.publish(msg.getAddress(), msg.getMessage());
+                    log.debug("Sending MQTT message to " + msg.getAddress());
+                    final long publishTime = System.currentTimeMillis() - start;
+                    final long queueTime = start - msg.getCreateTime();
+                    published.incrementAndGet();
+                    totalPublishTime.addAndGet(publishTime);
+                    totalQueueTime.addAndGet(queueTime);
+                    updateMax(maxPublishTime, publishTime);
+                    updateMax(maxQueueTime, queueTime);
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    log.error("Failed to send MQTT message to {}: {}", msg.getAddress(), e.getMessage());
+                }
             }
         }
+    }
+
+    /**
+     * <p>A token bucket limiting the rate of publishing. The bucket holds up to <code>capacity</code> tokens and is
+     * refilled at the sustained rate; each message takes a token, waiting for it if the bucket is empty.</p>
+     */
+    static class TokenBucket {
+        private final double ratePerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill;
 
+        TokenBucket(double ratePerSecond, int capacity) {
+            this.ratePerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.lastRefill = System.nanoTime();
+        }
+
+        /**
+         * <p>Takes a token from the bucket.</p>
+         *
+         * @return a time to wait until the token becomes available (in nanoseconds).
+         */
+        synchronized long reserve() {
+            final long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * ratePerNano);
+            lastRefill = now;
+            // The bucket may go into debt, so the concurrent callers wait for the subsequent tokens
+            tokens -= 1;
+            return tokens >= 0 ? 0 : (long) (-tokens / ratePerNano);
+        }
     }
 }
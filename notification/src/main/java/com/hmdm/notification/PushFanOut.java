@@ -0,0 +1,140 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.notification;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>A progress of sending the same push message to many devices in background.</p>
+ */
+@ApiModel(description = "A progress of sending the push message to many devices")
+public class PushFanOut {
+
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_DONE = "DONE";
+    public static final String STATUS_FAILED = "FAILED";
+
+    @ApiModelProperty("An ID of the sending")
+    private final int id;
+
+    @JsonIgnore
+    private final int customerId;
+
+    @ApiModelProperty("A type of the message")
+    private final String messageType;
+
+    @ApiModelProperty("A number of target devices")
+    private final int total;
+
+    private final AtomicInteger sent = new AtomicInteger();
+
+    private final AtomicInteger failed = new AtomicInteger();
+
+    @ApiModelProperty("A time of starting the sending (in milliseconds since epoch)")
+    private final long startTime = System.currentTimeMillis();
+
+    private volatile long finishTime;
+
+    private volatile String status = STATUS_RUNNING;
+
+    public PushFanOut(int id, int customerId, String messageType, int total) {
+        this.id = id;
+        this.customerId = customerId;
+        this.messageType = messageType;
+        this.total = total;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getCustomerId() {
+        return customerId;
+    }
+
+    public String getMessageType() {
+        return messageType;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    @ApiModelProperty("A number of devices the message has been sent to")
+    public int getSent() {
+        return sent.get();
+    }
+
+    @ApiModelProperty("A number of messages which have failed to be sent")
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    @ApiModelProperty("A time of finishing the sending (in milliseconds since epoch) or 0 if still running")
+    public long getFinishTime() {
+        return finishTime;
+    }
+
+    @ApiModelProperty(value = "A status of the sending", allowableValues = "RUNNING, DONE, FAILED")
+    public String getStatus() {
+        return status;
+    }
+
+    @JsonIgnore
+    public boolean isFinished() {
+        return !STATUS_RUNNING.equals(status);
+    }
+
+    void addSent(int count) {
+        this.sent.addAndGet(count);
+    }
+
+    void addFailed(int count) {
+        this.failed.addAndGet(count);
+    }
+
+    void finish(String status) {
+        this.finishTime = System.currentTimeMillis();
+        this.status = status;
+    }
+
+    @Override
+    public String toString() {
+        return "PushFanOut{" +
+                "id=" + id +
+                ", customerId=" + customerId +
+                ", messageType='" + messageType + '\'' +
+                ", total=" + total +
+                ", sent=" + sent +
+                ", failed=" + failed +
+                ", status='" + status + '\'' +
+                '}';
+    }
+}
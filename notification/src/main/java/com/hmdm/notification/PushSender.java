@@ -1,8 +1,27 @@
 package com.hmdm.notification;
 
 import com.hmdm.notification.persistence.domain.PushMessage;
+import com.hmdm.persistence.domain.Device;
+
+import java.util.List;
 
 public interface PushSender {
     public void init();
     public int send(PushMessage message);
+
+    /**
+     * <p>Sends the same message to each of specified devices.</p>
+     *
+     * @param messageType a type of the message.
+     * @param payload a payload of the message.
+     * @param devices a list of devices with <code>id</code>, <code>number</code> and <code>oldNumber</code> properties
+     *                set.
+     * @return a number of devices the message has failed to be sent to.
+     */
+    public default int sendBulk(String messageType, String payload, List<Device> devices) {
+        for (Device device : devices) {
+            send(new PushMessage(messageType, payload, device.getId()));
+        }
+        return 0;
+    }
 }
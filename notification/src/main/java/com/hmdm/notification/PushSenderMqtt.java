@@ -9,37 +9,70 @@ import com.hmdm.persistence.UnsecureDAO;
 import com.hmdm.persistence.domain.Device;
 import com.hmdm.util.BackgroundTaskRunnerService;
 import com.hmdm.util.CryptoUtil;
+import com.hmdm.util.StringUtil;
 import org.apache.activemq.ActiveMQConnectionFactory;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
 import org.eclipse.paho.client.mqttv3.MqttClient;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 import org.fusesource.mqtt.client.MQTTException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.jms.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Singleton
 public class PushSenderMqtt implements PushSender {
+
+    private static final Logger log = LoggerFactory.getLogger(PushSenderMqtt.class);
+
+    /**
+     * <p>A maximum number of messages being published at the same time.</p>
+     */
+    private static final int MAX_INFLIGHT = 100;
+
+    /**
+     * <p>A number of messages published by bulk sending before waiting for their delivery to broker.</p>
+     */
+    private static final int BULK_BATCH_SIZE = 50;
+
     private String serverUri;
     private String clientTag;
     private boolean mqttAuth;
     private String mqttAdminPassword;
     private UnsecureDAO unsecureDAO;
     private MqttClient client;
+    private final List<MqttClient> workerClients = new ArrayList<>();
     private MqttThrottledSender throttledSender;
     private BackgroundTaskRunnerService taskRunner;
-    private MemoryPersistence persistence = new MemoryPersistence();
     private long mqttDelay;
 
+    /**
+     * <p>A QoS for the messages of the types which have no specific QoS.</p>
+     */
+    private int defaultQos;
+
+    /**
+     * <p>A mapping from message types to QoS for the messages of those types.</p>
+     */
+    private final Map<String, Integer> qosByType = new HashMap<>();
+
     @Inject
     public PushSenderMqtt(@Named("mqtt.server.uri") String serverUri,
                           @Named("mqtt.client.tag") String clientTag,
                           @Named("mqtt.auth") boolean mqttAuth,
                           @Named("mqtt.admin.password") String mqttAdminPassword,
                           @Named("mqtt.message.delay") long mqttDelay,
+                          @Named("mqtt.qos") int defaultQos,
+                          @Named("mqtt.qos.by.type") String qosByType,
                           MqttThrottledSender throttledSender,
                           BackgroundTaskRunnerService taskRunner,
                           UnsecureDAO unsecureDAO) {
@@ -48,6 +81,18 @@ public class PushSenderMqtt implements PushSender {
         this.mqttAuth = mqttAuth;
         this.mqttAdminPassword = mqttAdminPassword;
         this.mqttDelay = mqttDelay;
+        this.defaultQos = defaultQos;
+        // The format is: type1:qos1,type2:qos2
+        for (String entry : qosByType.split(",")) {
+            final String[] parts = entry.split(":");
+            if (parts.length == 2) {
+                try {
+                    this.qosByType.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+                } catch (NumberFormatException e) {
+                    log.error("Invalid QoS for message type in mqtt.qos.by.type, ignored: {}", entry);
+                }
+            }
+        }
         this.throttledSender = throttledSender;
         this.taskRunner = taskRunner;
         this.unsecureDAO = unsecureDAO;
@@ -56,25 +101,64 @@ public class PushSenderMqtt implements PushSender {
     @Override
     public void init() {
         try {
-            client = new MqttClient("tcp://" + serverUri, "HMDMServer" + clientTag, persistence);
-            MqttConnectOptions options = new MqttConnectOptions();
-            options.setCleanSession(true);
-            options.setAutomaticReconnect(true);
-            if (mqttAuth) {
-                options.setUserName(NotificationMqttTaskModule.MQTT_ADMIN_USERNAME);
-                options.setPassword(mqttAdminPassword.toCharArray());
-            }
-            client.connect(options);
+            client = connect("HMDMServer" + clientTag);
 
             if (mqttDelay > 0) {
-                throttledSender.setClient(client);
-                taskRunner.submitTask(throttledSender);
+                // Each publishing worker uses its own connection, the first one shares the main connection
+                final List<MqttClient> clients = new ArrayList<>();
+                clients.add(client);
+                for (int i = 1; i < throttledSender.getWorkerCount(); i++) {
+                    final MqttClient workerClient = connect("HMDMServer" + clientTag + "-" + i);
+                    workerClients.add(workerClient);
+                    clients.add(workerClient);
+                }
+                throttledSender.start(clients);
+                taskRunner.submitRepeatableTask(throttledSender::logStats, 10, 10, TimeUnit.MINUTES);
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * <p>Publishes the messages waiting in the queue of delayed messages and disconnects from MQTT broker.</p>
+     */
+    public void shutdown() {
+        throttledSender.stop();
+        for (MqttClient workerClient : workerClients) {
+            disconnect(workerClient);
+        }
+        workerClients.clear();
+        if (client != null) {
+            disconnect(client);
+        }
+    }
+
+    private static void disconnect(MqttClient mqttClient) {
+        try {
+            if (mqttClient.isConnected()) {
+                mqttClient.disconnect();
+            }
+            mqttClient.close();
+        } catch (MqttException e) {
+            log.warn("Failed to disconnect MQTT client {}: {}", mqttClient.getClientId(), e.getMessage());
+        }
+    }
+
+    private MqttClient connect(String clientId) throws MqttException {
+        MqttClient mqttClient = new MqttClient("tcp://" + serverUri, clientId, new MemoryPersistence());
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(true);
+        options.setAutomaticReconnect(true);
+        options.setMaxInflight(MAX_INFLIGHT);
+        if (mqttAuth) {
+            options.setUserName(NotificationMqttTaskModule.MQTT_ADMIN_USERNAME);
+            options.setPassword(mqttAdminPassword.toCharArray());
+        }
+        mqttClient.connect(options);
+        return mqttClient;
+    }
+
     @Override
     public int send(PushMessage message) {
         if (client == null || !client.isConnected()) {
@@ -89,15 +173,9 @@ public class PushSenderMqtt implements PushSender {
             return 0;
         }
         try {
-            String strMessage = "{messageType: \"" + message.getMessageType() + "\"";
-            if (message.getPayload() != null) {
-                strMessage += ", payload: " + message.getPayload();
-            }
-            strMessage += "}";
-
-            MqttMessage mqttMessage = new MqttMessage(strMessage.getBytes());
-            mqttMessage.setQos(2);
-            String number = device.getOldNumber() == null ? device.getNumber() : device.getOldNumber();
+            MqttMessage mqttMessage = new MqttMessage(encode(message.getMessageType(), message.getPayload()));
+            mqttMessage.setQos(getQos(message.getMessageType()));
+            String number = getAddress(device);
             if (mqttDelay == 0) {
                 client.publish(number, mqttMessage);
             } else {
@@ -109,4 +187,98 @@ public class PushSenderMqtt implements PushSender {
         }
         return 0;
     }
+
+    /**
+     * <p>Sends the same message to each of specified devices. The messages are published in batches without waiting
+     * for delivery of each single message.</p>
+     */
+    @Override
+    public int sendBulk(String messageType, String payload, List<Device> devices) {
+        if (client == null || !client.isConnected()) {
+            // Not initialized
+            return 0;
+        }
+        final byte[] data = encode(messageType, payload);
+        final int qos = getQos(messageType);
+        final List<IMqttDeliveryToken> tokens = new ArrayList<>(BULK_BATCH_SIZE);
+        final List<String> addresses = new ArrayList<>(BULK_BATCH_SIZE);
+        int failed = 0;
+        for (Device device : devices) {
+            MqttMessage mqttMessage = new MqttMessage(data);
+            mqttMessage.setQos(qos);
+            String number = getAddress(device);
+            try {
+                if (mqttDelay > 0) {
+                    throttledSender.send(new MqttEnvelope(number, mqttMessage));
+                    continue;
+                }
+                try {
+                    tokens.add(client.getTopic(number).publish(mqttMessage));
+                } catch (MqttException e) {
+                    if (e.getReasonCode() != MqttException.REASON_CODE_MAX_INFLIGHT) {
+                        throw e;
+                    }
+                    // The other messages are being published at the same time, so retry once they are delivered
+                    failed += waitForDelivery(tokens, addresses);
+                    tokens.add(client.getTopic(number).publish(mqttMessage));
+                }
+                addresses.add(number);
+                if (tokens.size() >= BULK_BATCH_SIZE) {
+                    failed += waitForDelivery(tokens, addresses);
+                }
+            } catch (Exception e) {
+                failed++;
+                log.error("Failed to publish MQTT message '{}' to {}: {}", messageType, number, e.getMessage());
+            }
+        }
+        failed += waitForDelivery(tokens, addresses);
+        if (failed > 0) {
+            log.warn("Failed to publish MQTT message '{}' to {} of {} devices", messageType, failed, devices.size());
+        }
+        return failed;
+    }
+
+    /**
+     * <p>Waits for delivery of the published messages to broker.</p>
+     *
+     * @param tokens the tokens of the published messages; cleared by this method.
+     * @param addresses the addresses of the published messages, in the same order as tokens; cleared by this method.
+     * @return a number of messages which have failed to be delivered.
+     */
+    private int waitForDelivery(List<IMqttDeliveryToken> tokens, List<String> addresses) {
+        int failed = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            try {
+                tokens.get(i).waitForCompletion();
+            } catch (MqttException e) {
+                failed++;
+                log.error("Failed to deliver MQTT message to {}: {}", addresses.get(i), e.getMessage());
+            }
+        }
+        tokens.clear();
+        addresses.clear();
+        return failed;
+    }
+
+    private int getQos(String messageType) {
+        return qosByType.getOrDefault(messageType, defaultQos);
+    }
+
+    /**
+     * <p>Encodes the message. The format with unquoted keys is kept as is, since it is expected by the devices; the
+     * payload is expected to be a JSON object already.</p>
+     */
+    private static byte[] encode(String messageType, String payload) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append("{messageType: \"").append(StringUtil.jsonEscape(messageType)).append('"');
+        if (payload != null) {
+            sb.append(", payload: ").append(payload);
+        }
+        sb.append('}');
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String getAddress(Device device) {
+        return device.getOldNumber() == null ? device.getNumber() : device.getOldNumber();
+    }
 }
@@ -5,19 +5,88 @@ import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import com.hmdm.notification.persistence.NotificationDAO;
 import com.hmdm.notification.persistence.domain.PushMessage;
+import com.hmdm.persistence.domain.Device;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.servlet.AsyncContext;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * <p>A sender of push messages to the devices using long polling.</p>
+ *
+ * <p>Each device waiting for messages has a mailbox holding the request of the device. The messages sent to such
+ * device are delivered from memory and are recorded in database asynchronously once delivered. The messages sent to
+ * the devices which are not waiting are queued in database and delivered on the next request of the device.</p>
+ *
+ * <p>The idle requests are completed by single timer rather than by container timers.</p>
+ */
 @Singleton
 public class PushSenderPolling implements PushSender {
+
+    private static final Logger logger = LoggerFactory.getLogger(PushSenderPolling.class);
+
+    /**
+     * <p>An interval for recording the delivered messages in database (in milliseconds).</p>
+     */
+    private static final long ACK_INTERVAL = 1000;
+
+    /**
+     * <p>A maximum number of messages marked as delivered by single statement.</p>
+     */
+    private static final int ACK_BATCH_SIZE = 1000;
+
     private final NotificationDAO notificationDAO;
-    private final Map<Integer, DeviceEntry> deviceIdMap = new HashMap<>();
-    private final Map<AsyncContext, DeviceEntry> deviceContextMap = new HashMap<>();
+
+    /**
+     * <p>A mapping from device IDs to mailboxes of the devices waiting for messages.</p>
+     */
+    private final ConcurrentMap<Integer, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    /**
+     * <p>A timer completing the idle requests.</p>
+     */
+    private final HashedWheelTimer timer = new HashedWheelTimer("push-polling-timer", 100, 1024);
+
+    /**
+     * <p>A timeout for idle requests (in milliseconds).</p>
+     */
+    private final long pollingTimeout;
+
+    /**
+     * <p>The IDs of queued messages which have been delivered but are not yet marked as delivered in database.</p>
+     */
+    private final Queue<Integer> deliveredIds = new ConcurrentLinkedQueue<>();
+
+    /**
+     * <p>The same IDs as in {@link #deliveredIds} used for filtering out the delivered messages when loading the
+     * queued messages from database.</p>
+     */
+    private final Set<Integer> deliveredIdSet = ConcurrentHashMap.newKeySet();
+
+    /**
+     * <p>The messages which have been delivered from memory but are not yet recorded in database.</p>
+     */
+    private final Queue<PushMessage> deliveredMessages = new ConcurrentLinkedQueue<>();
+
+    private final ScheduledExecutorService ackService = Executors.newSingleThreadScheduledExecutor();
 
     @Inject
-    public PushSenderPolling(NotificationDAO notificationDAO) {
+    public PushSenderPolling(NotificationDAO notificationDAO,
+                             @Named("polling.timeout") long pollingTimeout) {
         this.notificationDAO = notificationDAO;
+        this.pollingTimeout = pollingTimeout * 1000L;
+        this.ackService.scheduleWithFixedDelay(this::flushSafely, ACK_INTERVAL, ACK_INTERVAL, TimeUnit.MILLISECONDS);
     }
 
     @Override
@@ -27,71 +96,256 @@ public class PushSenderPolling implements PushSender {
 
     @Override
     public int send(PushMessage message) {
-        DeviceEntry deviceEntry = deviceIdMap.get(message.getDeviceId());
-        if (deviceEntry == null) {
+        final PolledMessage polledMessage = new PolledMessage(message);
+        final Mailbox mailbox = mailboxes.computeIfPresent(message.getDeviceId(), (deviceId, existing) -> {
+            // Offered under the lock of the mapping, so the mailbox can't be dropped with this message left in it
+            existing.messages.add(polledMessage);
+            return existing;
+        });
+        if (mailbox == null) {
             // Device is offline,
             return notificationDAO.send(message);
         }
-        List<PushMessage> pendingMessages = notificationDAO.getPendingMessagesForDelivery(message.getDeviceId());
-        synchronized (deviceEntry.messages) {
-            for (PushMessage pending : pendingMessages) {
-                deviceEntry.messages.add(pending);
+        mailbox.wakeUp();
+        return 0;
+    }
+
+    /**
+     * <p>Sends the same message to each of specified devices. The messages for devices which are not waiting are
+     * queued in database by a single statement.</p>
+     */
+    @Override
+    public int sendBulk(String messageType, String payload, List<Device> devices) {
+        final List<PushMessage> offlineMessages = new ArrayList<>();
+        // The JSON representation doesn't depend on device, so it's encoded once
+        final byte[] json = new PushMessage(messageType, payload, 0).toJsonBytes();
+        for (Device device : devices) {
+            final PushMessage message = new PushMessage(messageType, payload, device.getId());
+            final PolledMessage polledMessage = new PolledMessage(message, json);
+            final Mailbox mailbox = mailboxes.computeIfPresent(device.getId(), (deviceId, existing) -> {
+                existing.messages.add(polledMessage);
+                return existing;
+            });
+            if (mailbox == null) {
+                offlineMessages.add(message);
+            } else {
+                mailbox.wakeUp();
             }
-            deviceEntry.messages.add(message);
         }
-        deviceEntry.context.complete();
+        notificationDAO.sendBatch(offlineMessages);
         return 0;
     }
 
-    public void sendPending(int deviceId, List<PushMessage> messages) {
-        DeviceEntry deviceEntry = deviceIdMap.get(deviceId);
-        if (deviceEntry == null) {
-            // We shouldn't be here as this method is called from LongPollingServlet when a device is online
-            return;
+    /**
+     * <p>Registers the request of the device waiting for messages. The messages queued in database for the device
+     * are delivered immediately if there are any.</p>
+     *
+     * @param mailbox a mailbox holding the request of the device.
+     */
+    public void register(Mailbox mailbox) {
+        final int deviceId = mailbox.deviceId;
+        mailbox.timeout = timer.newTimeout(mailbox::wakeUp, pollingTimeout);
+
+        final Mailbox previous = mailboxes.put(deviceId, mailbox);
+        if (previous != null) {
+            // The device has re-connected, so the previous request is not needed anymore
+            previous.wakeUp();
         }
-        synchronized (deviceEntry.messages) {
-            for (PushMessage pending : messages) {
-                deviceEntry.messages.add(pending);
+
+        final List<PushMessage> queued = notificationDAO.getPendingMessages(deviceId);
+        if (!queued.isEmpty()) {
+            for (PushMessage message : queued) {
+                if (!deliveredIdSet.contains(message.getId())) {
+                    mailbox.messages.add(new PolledMessage(message));
+                }
             }
+            mailbox.wakeUp();
         }
-        deviceEntry.context.complete();
+    }
 
+    /**
+     * <p>Takes the messages to be delivered in response to the completed request.</p>
+     *
+     * @param mailbox a mailbox of the device.
+     * @return a list of messages to be delivered to device.
+     */
+    public List<PolledMessage> getPendingMessages(Mailbox mailbox) {
+        final List<PolledMessage> result = new ArrayList<>();
+        PolledMessage message;
+        while ((message = mailbox.messages.poll()) != null) {
+            result.add(message);
+        }
+        return result;
     }
 
-    public List<PushMessage> getPendingMessages(AsyncContext asyncContext) {
-        DeviceEntry deviceEntry = deviceContextMap.get(asyncContext);
-        List<PushMessage> result = new LinkedList<>();
-        if (deviceEntry != null) {
-            synchronized (deviceEntry.messages) {
-                result.addAll(deviceEntry.messages);
-                deviceEntry.messages.clear();
+    /**
+     * <p>Signals on successful delivery of the specified messages. The messages are recorded as delivered in
+     * database asynchronously.</p>
+     *
+     * @param messages a list of delivered messages.
+     */
+    public void onDelivered(List<PolledMessage> messages) {
+        for (PolledMessage polledMessage : messages) {
+            final Integer id = polledMessage.message.getId();
+            if (id != null) {
+                deliveredIdSet.add(id);
+                deliveredIds.add(id);
+            } else {
+                deliveredMessages.add(polledMessage.message);
             }
         }
-        return result;
     }
 
-    public void register(Integer deviceId, AsyncContext asyncContext) {
-        DeviceEntry deviceEntry = new DeviceEntry(deviceId, asyncContext);
-        deviceIdMap.put(deviceId, deviceEntry);
-        deviceContextMap.put(asyncContext, deviceEntry);
+    /**
+     * <p>Signals on failed delivery of the specified messages. The messages are queued in database to be delivered
+     * on the next request of the device.</p>
+     *
+     * @param messages a list of messages which have not been delivered.
+     */
+    public void onDeliveryFailed(List<PolledMessage> messages) {
+        for (PolledMessage polledMessage : messages) {
+            // The messages loaded from database are still pending there
+            if (polledMessage.message.getId() == null) {
+                notificationDAO.send(polledMessage.message);
+            }
+        }
+    }
+
+    /**
+     * <p>Unregisters the completed request of the device. The messages sent to the device after the response has been
+     * prepared are queued in database.</p>
+     *
+     * @param mailbox a mailbox of the device.
+     */
+    public void unregister(Mailbox mailbox) {
+        mailbox.wakeUp();
+        mailboxes.computeIfPresent(mailbox.deviceId, (deviceId, existing) -> existing == mailbox ? null : existing);
+        onDeliveryFailed(getPendingMessages(mailbox));
+    }
+
+    /**
+     * <p>Stops the timer and records the delivered messages in database.</p>
+     */
+    public void shutdown() {
+        timer.stop();
+        ackService.shutdown();
+        try {
+            ackService.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushSafely();
     }
 
-    public void unregister(AsyncContext asyncContext) {
-        DeviceEntry deviceEntry = deviceContextMap.get(asyncContext);
-        if (deviceEntry != null) {
-            deviceIdMap.remove(deviceEntry.deviceId);
-            deviceContextMap.remove(asyncContext);
+    /**
+     * <p>Records the delivered messages in database. If recording fails then the remaining messages are kept queued
+     * to be recorded on next attempt.</p>
+     */
+    private synchronized void flush() {
+        List<Integer> ids = new ArrayList<>();
+        Integer id;
+        while ((id = deliveredIds.poll()) != null) {
+            ids.add(id);
+            if (ids.size() >= ACK_BATCH_SIZE || deliveredIds.isEmpty()) {
+                try {
+                    notificationDAO.markMessagesAsDelivered(ids);
+                } catch (RuntimeException e) {
+                    // The IDs are still in deliveredIdSet, so the messages are not delivered again meanwhile
+                    deliveredIds.addAll(ids);
+                    throw e;
+                }
+                deliveredIdSet.removeAll(ids);
+                ids = new ArrayList<>();
+            }
+        }
+
+        final List<PushMessage> messages = new ArrayList<>();
+        PushMessage message;
+        while ((message = deliveredMessages.poll()) != null) {
+            messages.add(message);
+        }
+        if (!messages.isEmpty()) {
+            try {
+                notificationDAO.saveDeliveredMessages(messages);
+            } catch (RuntimeException e) {
+                deliveredMessages.addAll(messages);
+                throw e;
+            }
         }
     }
 
-    public class DeviceEntry {
-        public Integer deviceId;
-        public AsyncContext context;
-        public final List<PushMessage> messages = new LinkedList<>();
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("Unexpected error when recording the delivered push messages", e);
+        }
+    }
+
+    /**
+     * <p>A mailbox of the device waiting for messages.</p>
+     */
+    public static class Mailbox {
+        private final int deviceId;
+        private final Queue<PolledMessage> messages = new ConcurrentLinkedQueue<>();
 
-        public DeviceEntry(Integer deviceId, AsyncContext context) {
+        /**
+         * <p>A context of the waiting request. Set to <code>null</code> by the thread completing the request.</p>
+         */
+        private final AtomicReference<AsyncContext> context;
+        private volatile HashedWheelTimer.Timeout timeout;
+
+        public Mailbox(int deviceId, AsyncContext context) {
             this.deviceId = deviceId;
-            this.context = context;
+            this.context = new AtomicReference<>(context);
+        }
+
+        /**
+         * <p>Completes the waiting request unless it has already been completed.</p>
+         */
+        private void wakeUp() {
+            final AsyncContext asyncContext = context.getAndSet(null);
+            if (asyncContext != null) {
+                if (timeout != null) {
+                    timeout.cancel();
+                }
+                try {
+                    asyncContext.complete();
+                } catch (IllegalStateException e) {
+                    // The request has been completed or failed by container
+                    logger.debug("Failed to complete the request of device #{}: {}", deviceId, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>A message along with its JSON representation encoded once when the message is queued.</p>
+     */
+    public static class PolledMessage {
+        private final PushMessage message;
+        private final byte[] json;
+
+        private PolledMessage(PushMessage message) {
+            this(message, message.toJsonBytes());
+        }
+
+        private PolledMessage(PushMessage message, byte[] json) {
+            this.message = message;
+            this.json = json;
+        }
+
+        public PushMessage getMessage() {
+            return message;
+        }
+
+        public byte[] getJson() {
+            return json;
+        }
+
+        @Override
+        public String toString() {
+            return message.toString();
         }
     }
 }
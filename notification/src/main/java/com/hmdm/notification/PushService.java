@@ -9,25 +9,59 @@ import com.hmdm.persistence.ConfigurationDAO;
 import com.hmdm.persistence.DeviceDAO;
 import com.hmdm.persistence.domain.Configuration;
 import com.hmdm.persistence.domain.Device;
+import com.hmdm.util.BackgroundTaskRunnerService;
 import org.mybatis.guice.transactional.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 @Singleton
 public class PushService {
 
+    private static final Logger logger = LoggerFactory.getLogger(PushService.class);
+
+    /**
+     * <p>A number of devices the message is sent to at once by bulk sending.</p>
+     */
+    private static final int BULK_BATCH_SIZE = 1000;
+
+    /**
+     * <p>A period for keeping the progress of finished bulk sending (in milliseconds).</p>
+     */
+    private static final long FAN_OUT_RETENTION = TimeUnit.HOURS.toMillis(1);
+
     private final PushSender pushSenderMqtt;
     private final PushSender pushSenderPolling;
     private final ConfigurationDAO configurationDAO;
     private final DeviceDAO deviceDAO;
+    private final BackgroundTaskRunnerService taskRunner;
+
+    /**
+     * <p>A sequence for issuing the IDs of bulk sending.</p>
+     */
+    private final AtomicInteger fanOutSequence = new AtomicInteger();
+
+    /**
+     * <p>A mapping from IDs to progress of the recent bulk sending.</p>
+     */
+    private final ConcurrentMap<Integer, PushFanOut> fanOuts = new ConcurrentHashMap<>();
 
     @Inject
     public PushService(@Named("MQTT") PushSender pushSenderMqtt, @Named("Polling") PushSender pushSenderPolling,
-                       ConfigurationDAO configurationDAO, DeviceDAO deviceDAO) {
+                       ConfigurationDAO configurationDAO, DeviceDAO deviceDAO,
+                       BackgroundTaskRunnerService taskRunner) {
         this.pushSenderMqtt = pushSenderMqtt;
         this.pushSenderPolling = pushSenderPolling;
         this.configurationDAO = configurationDAO;
         this.deviceDAO = deviceDAO;
+        this.taskRunner = taskRunner;
     }
 
     // Use both ways to send a message, because the decision how to receive messages is done on the device (configuration)
@@ -37,24 +71,84 @@ public class PushService {
     }
 
     /**
-     * <p>Sends the messages on configuration update for the devices related to specified configuration.</p>
+     * <p>Sends the messages on configuration update for the devices related to specified configuration. The messages
+     * are sent in background.</p>
      *
      * @param configurationId an ID of updated configuration.
+     * @return a progress of sending the messages or <code>null</code> if there is no such configuration.
      */
     @Transactional
-    public void notifyDevicesOnUpdate(Integer configurationId) {
+    public PushFanOut notifyDevicesOnUpdate(Integer configurationId) {
         final Configuration configuration = this.configurationDAO.getConfigurationById(configurationId);
         if (configuration != null) {
             final List<Device> devices
-                    = this.deviceDAO.getDeviceIdsByConfigurationId(configurationId);
-            devices.forEach(device -> {
-                PushMessage message = new PushMessage();
-                message.setDeviceId(device.getId());
-                message.setMessageType(PushMessage.TYPE_CONFIG_UPDATED);
-
-                this.send(message);
-            });
+                    = this.deviceDAO.getDeviceNumbersByConfigurationId(configurationId);
+            return sendBulk(configuration.getCustomerId(), PushMessage.TYPE_CONFIG_UPDATED, null, devices);
         }
+        return null;
+    }
+
+    /**
+     * <p>Sends the same message to each of specified devices in background. The devices are processed in batches, so
+     * each batch results in a few database statements and MQTT messages published without waiting for each other.</p>
+     *
+     * @param customerId an ID of a customer account owning the devices.
+     * @param messageType a type of the message.
+     * @param payload a payload of the message.
+     * @param devices a list of devices with <code>id</code>, <code>number</code> and <code>oldNumber</code> properties
+     *                set.
+     * @return a progress of sending the messages.
+     */
+    public PushFanOut sendBulk(int customerId, String messageType, String payload, List<Device> devices) {
+        final PushFanOut fanOut = new PushFanOut(this.fanOutSequence.incrementAndGet(), customerId, messageType,
+                devices.size());
+
+        final long now = System.currentTimeMillis();
+        this.fanOuts.values().removeIf(f -> f.isFinished() && now - f.getFinishTime() > FAN_OUT_RETENTION);
+        this.fanOuts.put(fanOut.getId(), fanOut);
+
+        this.taskRunner.submitTask(BackgroundTaskRunnerService.Lane.SERVICES, "Push fan-out", () -> {
+            try {
+                for (int from = 0; from < devices.size(); from += BULK_BATCH_SIZE) {
+                    final List<Device> batch = devices.subList(from, Math.min(from + BULK_BATCH_SIZE, devices.size()));
+                    fanOut.addFailed(this.pushSenderMqtt.sendBulk(messageType, payload, batch));
+                    fanOut.addFailed(this.pushSenderPolling.sendBulk(messageType, payload, batch));
+                    fanOut.addSent(batch.size());
+                }
+                fanOut.finish(PushFanOut.STATUS_DONE);
+                logger.info("Sent push message '{}' to {} devices in {} ms, failed: {}", messageType, fanOut.getSent(),
+                        fanOut.getFinishTime() - fanOut.getStartTime(), fanOut.getFailed());
+            } catch (Exception e) {
+                fanOut.finish(PushFanOut.STATUS_FAILED);
+                logger.error("Failed to send push message '{}' to devices: {}", messageType, fanOut, e);
+            }
+        });
+
+        return fanOut;
+    }
+
+    /**
+     * <p>Gets the progress of the recent bulk sending.</p>
+     *
+     * @param id an ID of the sending.
+     * @return a progress of sending or <code>null</code> if there is no such sending.
+     */
+    public PushFanOut getFanOut(int id) {
+        return this.fanOuts.get(id);
+    }
+
+    /**
+     * <p>Gets the progress of the recent bulk sending for the specified customer account.</p>
+     *
+     * @param customerId an ID of a customer account.
+     * @return a list of recent sending.
+     */
+    public List<PushFanOut> getFanOuts(int customerId) {
+        return this.fanOuts.values()
+                .stream()
+                .filter(f -> f.getCustomerId() == customerId)
+                .sorted(Comparator.comparing(PushFanOut::getId).reversed())
+                .collect(Collectors.toList());
     }
 
     /**
@@ -66,6 +66,24 @@ public class NotificationMqttConfigModule extends AbstractModule {
         }
         this.bindConstant().annotatedWith(Names.named("mqtt.message.delay")).to(mqttDelay);
 
+        this.bindConstant().annotatedWith(Names.named("mqtt.rate.burst")).to(getIntParameter("mqtt.rate.burst", 50));
+        this.bindConstant().annotatedWith(Names.named("mqtt.publish.workers")).to(getIntParameter("mqtt.publish.workers", 4));
+        this.bindConstant().annotatedWith(Names.named("mqtt.queue.size")).to(getIntParameter("mqtt.queue.size", 100000));
+
+        String mqttQueueOverflow = context.getInitParameter("mqtt.queue.overflow");
+        if (mqttQueueOverflow == null || "".equals(mqttQueueOverflow)) {
+            mqttQueueOverflow = "oldest";
+        }
+        this.bindConstant().annotatedWith(Names.named("mqtt.queue.overflow")).to(mqttQueueOverflow);
+
+        this.bindConstant().annotatedWith(Names.named("mqtt.qos")).to(getIntParameter("mqtt.qos", 2));
+
+        String mqttQosByType = context.getInitParameter("mqtt.qos.by.type");
+        if (mqttQosByType == null) {
+            mqttQosByType = "";
+        }
+        this.bindConstant().annotatedWith(Names.named("mqtt.qos.by.type")).to(mqttQosByType);
+
         String pollTimeoutTag = this.context.getInitParameter("polling.timeout");
         long pollTimeout = 60;
         try {
@@ -78,4 +96,16 @@ public class NotificationMqttConfigModule extends AbstractModule {
         this.bindConstant().annotatedWith(Names.named("polling.timeout")).to(pollTimeout);
 
     }
+
+    private int getIntParameter(String name, int defaultValue) {
+        String value = this.context.getInitParameter(name);
+        try {
+            if (value != null && !value.equals("")) {
+                return Integer.parseInt(value);
+            }
+        } catch (NumberFormatException e) {
+            e.printStackTrace();
+        }
+        return defaultValue;
+    }
 }
@@ -25,6 +25,7 @@ import com.google.inject.Scopes;
 import com.google.inject.servlet.ServletModule;
 import com.hmdm.notification.rest.LongPollingServlet;
 import com.hmdm.notification.rest.NotificationResource;
+import com.hmdm.notification.rest.PushFanOutResource;
 import com.hmdm.rest.filter.AuthFilter;
 
 /**
@@ -48,6 +49,7 @@ public class NotificationRestModule extends ServletModule {
         this.filter("/rest/notification/private/*").through(AuthFilter.class);
         this.serve(LongPollingServlet.BASE_PATH + "*").with(LongPollingServlet.class);
         this.bind(NotificationResource.class);
+        this.bind(PushFanOutResource.class);
     }
 
 }
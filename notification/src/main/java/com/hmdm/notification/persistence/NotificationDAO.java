@@ -82,6 +82,41 @@ public class NotificationDAO {
         return messages;
     }
 
+    /**
+     * <p>Gets the list of messages to be delivered to specified device. Unlike
+     * {@link #getPendingMessagesForDelivery(int)} the returned messages are not marked as delivered.</p>
+     *
+     * @param deviceId a device id in the database.
+     * @return a list of messages to be delivered to device.
+     */
+    public List<PushMessage> getPendingMessages(int deviceId) {
+        return this.notificationMapper.getPendingMessagesById(deviceId);
+    }
+
+    /**
+     * <p>Marks the specified pending messages as delivered.</p>
+     *
+     * @param messageIds a list of IDs of delivered messages.
+     */
+    public void markMessagesAsDelivered(List<Integer> messageIds) {
+        if (!messageIds.isEmpty()) {
+            this.notificationMapper.markMessagesAsDelivered(messageIds);
+        }
+    }
+
+    /**
+     * <p>Records the specified messages which have been delivered to devices without being queued.</p>
+     *
+     * @param messages a list of delivered messages.
+     */
+    @Transactional
+    public void saveDeliveredMessages(List<PushMessage> messages) {
+        for (PushMessage message : messages) {
+            this.notificationMapper.insertPushMessage(message);
+            this.notificationMapper.insertDeliveredPush(message.getId());
+        }
+    }
+
     /**
      * <p>Sends the specified notification message. This implementation puts it to queue to be retrieved by device later.</p>
      *
@@ -95,6 +130,18 @@ public class NotificationDAO {
         return message.getId();
     }
 
+    /**
+     * <p>Sends the specified notification messages. This implementation puts them to queue to be retrieved by devices
+     * later using a single statement.</p>
+     *
+     * @param messages a list of messages to send.
+     */
+    public void sendBatch(List<PushMessage> messages) {
+        if (!messages.isEmpty()) {
+            this.notificationMapper.insertPendingPushesBatch(messages);
+        }
+    }
+
     /**
      * <p>Gets the current status of delivery for the specified message.</p>
      *
@@ -25,6 +25,7 @@ import com.hmdm.persistence.domain.CustomerData;
 import com.hmdm.util.StringUtil;
 
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 
 /**
  * <p>A single message to be pushed to a single device.</p>
@@ -112,4 +113,8 @@ public class PushMessage implements Serializable {
         sb.append("}");
         return sb.toString();
     }
+
+    public byte[] toJsonBytes() {
+        return toJsonString().getBytes(StandardCharsets.UTF_8);
+    }
 }
@@ -65,6 +65,12 @@ public interface NotificationMapper {
             "VALUES (#{messageId}, 0, EXTRACT(EPOCH FROM NOW()) * 1000)")
     void insertPendingPush(int messageId);
 
+    @Insert("INSERT INTO pendingPushes (messageId, status, createTime, sendTime) " +
+            "VALUES (#{messageId}, 1, EXTRACT(EPOCH FROM NOW()) * 1000, EXTRACT(EPOCH FROM NOW()) * 1000)")
+    void insertDeliveredPush(int messageId);
+
+    void insertPendingPushesBatch(@Param("messages") List<PushMessage> messages);
+
     @Select("SELECT status FROM pendingPushes WHERE messageId = #{messageId}")
     Integer getDeliveryStatus(@Param("messageId") int messageId);
 
@@ -22,11 +22,9 @@
 package com.hmdm.notification.rest;
 
 import com.hmdm.notification.PushSenderPolling;
-import com.hmdm.notification.persistence.NotificationDAO;
-import com.hmdm.notification.persistence.domain.PushMessage;
 import com.hmdm.notification.rest.json.PlainPushMessage;
 import com.hmdm.persistence.UnsecureDAO;
-import com.hmdm.persistence.domain.Device;
+import com.hmdm.persistence.domain.DeviceIdentity;
 import com.hmdm.rest.filter.PublicIPFilter;
 import com.hmdm.rest.json.Response;
 import com.hmdm.util.CryptoUtil;
@@ -51,10 +49,10 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 /**
@@ -68,16 +66,16 @@ public class LongPollingServlet extends HttpServlet {
 
     private static final Logger log = LoggerFactory.getLogger(LongPollingServlet.class);
     private UnsecureDAO unsecureDAO;
-    private NotificationDAO notificationDAO;
     private PushSenderPolling pushSenderPolling;
     private String hashSecret;
     private boolean secureEnrollment;
     private PublicIPFilter publicIPFilter;
-    private long pollingTimeout;
     private static final String HEADER_SIGNATURE = "X-Request-Signature";
     public static final String BASE_PATH = "/rest/notification/polling/";
 
-    private final ExecutorService executorService = Executors.newFixedThreadPool(10);
+    private static final byte[] RESPONSE_PREFIX = "{\"status\":\"OK\",\"message\":null,\"data\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RESPONSE_SUFFIX = "]}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EMPTY_RESPONSE = "{\"status\":\"OK\",\"message\":null,\"data\":[]}".getBytes(StandardCharsets.UTF_8);
 
     /**
      * <p>A constructor required by Swagger.</p>
@@ -91,18 +89,14 @@ public class LongPollingServlet extends HttpServlet {
      */
     @Inject
     public LongPollingServlet(UnsecureDAO unsecureDAO,
-                              NotificationDAO notificationDAO,
                               PushSenderPolling pushSenderPolling,
                               PublicIPFilter publicIPFilter,
-                              @Named("polling.timeout") long pollingTimeout,
                               @Named("secure.enrollment") boolean secureEnrollment,
                               @Named("hash.secret") String hashSecret) {
         this.unsecureDAO = unsecureDAO;
-        this.notificationDAO = notificationDAO;
         this.pushSenderPolling = pushSenderPolling;
         this.publicIPFilter = publicIPFilter;
         this.hashSecret = hashSecret;
-        this.pollingTimeout = pollingTimeout * 1000L;
         this.secureEnrollment = secureEnrollment;
     }
 
@@ -135,7 +129,7 @@ public class LongPollingServlet extends HttpServlet {
             }
         }
 
-        Device device = unsecureDAO.getDeviceByNumber(deviceNumber);
+        DeviceIdentity device = unsecureDAO.getDeviceIdentityByNumber(deviceNumber);
         if (device == null) {
             log.warn("No device with number: " + deviceNumber);
             resp.sendError(404);
@@ -151,42 +145,43 @@ public class LongPollingServlet extends HttpServlet {
         //resp.setBufferSize(0);
         req.setAttribute("org.apache.catalina.ASYNC_SUPPORTED", true);
         final AsyncContext asyncContext = req.startAsync();
-        asyncContext.setTimeout(pollingTimeout);
+        // The idle request is completed by the timer of push sender, so the container doesn't track it
+        asyncContext.setTimeout(0);
+        final PushSenderPolling.Mailbox mailbox = new PushSenderPolling.Mailbox(device.getId(), asyncContext);
         asyncContext.addListener(new AsyncListener() {
             @Override
             public void onComplete(AsyncEvent event) throws IOException {
                 log.debug("onComplete");
-                List<PushMessage> messages = pushSenderPolling.getPendingMessages(event.getAsyncContext());
+                List<PushSenderPolling.PolledMessage> messages = pushSenderPolling.getPendingMessages(mailbox);
                 if (messages.size() > 0) {
                     log.info("Delivering push-messages to device '{}': {}", deviceNumber, messages);
                 }
-                StringBuilder sb = new StringBuilder();
-                sb.append("{\"status\":\"OK\",\"message\":null,\"data\":[");
-                boolean firstEntry = true;
-                for (PushMessage m : messages) {
-                    if (firstEntry) {
-                        firstEntry = false;
-                    } else {
-                        sb.append(",");
-                    }
-                    sb.append(m.toJsonString());
-                }
-                sb.append("]}");
                 try {
                     log.debug("Buffer size: " + resp.getBufferSize());
                     resp.setStatus(200);
                     resp.setContentType("application/json");
-                    resp.getOutputStream().write(sb.toString().getBytes("UTF-8"));
-                    resp.getOutputStream().flush();
+                    final OutputStream out = resp.getOutputStream();
+                    if (messages.isEmpty()) {
+                        out.write(EMPTY_RESPONSE);
+                    } else {
+                        out.write(RESPONSE_PREFIX);
+                        for (int i = 0; i < messages.size(); i++) {
+                            if (i > 0) {
+                                out.write(',');
+                            }
+                            out.write(messages.get(i).getJson());
+                        }
+                        out.write(RESPONSE_SUFFIX);
+                    }
+                    out.flush();
                     log.debug("Succesfully delivered");
+                    pushSenderPolling.onDelivered(messages);
                 } catch (Exception e) {
                     log.warn("Failed to deliver push messages to device '{}': {}", deviceNumber, e.getMessage());
                     // Put pending messages back to the database
-                    for (PushMessage m : messages) {
-                        notificationDAO.send(m);
-                    }
+                    pushSenderPolling.onDeliveryFailed(messages);
                 }
-                pushSenderPolling.unregister(event.getAsyncContext());
+                pushSenderPolling.unregister(mailbox);
             }
 
             @Override
@@ -198,7 +193,7 @@ public class LongPollingServlet extends HttpServlet {
             @Override
             public void onError(AsyncEvent event) throws IOException {
                 log.debug("onError");
-                pushSenderPolling.unregister(event.getAsyncContext());
+                pushSenderPolling.unregister(mailbox);
             }
 
             @Override
@@ -207,11 +202,7 @@ public class LongPollingServlet extends HttpServlet {
             }
         });
 
-        pushSenderPolling.register(device.getId(), asyncContext);
-        List<PushMessage> offlineMessages = notificationDAO.getPendingMessagesForDelivery(device.getId());
-        if (offlineMessages.size() > 0) {
-            // This function completes the inquiry
-            pushSenderPolling.sendPending(device.getId(), offlineMessages);
-        }
+        // Delivers the messages queued in database immediately if there are any
+        pushSenderPolling.register(mailbox);
     }
 }
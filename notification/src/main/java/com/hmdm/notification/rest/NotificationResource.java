@@ -27,7 +27,7 @@ import com.hmdm.notification.persistence.NotificationDAO;
 import com.hmdm.notification.persistence.domain.PushMessage;
 import com.hmdm.notification.rest.json.PlainPushMessage;
 import com.hmdm.persistence.UnsecureDAO;
-import com.hmdm.persistence.domain.Device;
+import com.hmdm.persistence.domain.DeviceIdentity;
 import com.hmdm.rest.json.Response;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -88,9 +88,9 @@ public class NotificationResource {
                                                 String deviceNumber) {
         log.debug("#getPushMessages: deviceNumber = {}", deviceNumber);
         try {
-            Device dbDevice = this.unsecureDAO.getDeviceByNumber(deviceNumber);
+            DeviceIdentity dbDevice = this.unsecureDAO.getDeviceIdentityByNumber(deviceNumber);
             if (dbDevice == null) {
-                dbDevice = this.unsecureDAO.getDeviceByOldNumber(deviceNumber);
+                dbDevice = this.unsecureDAO.getDeviceIdentityByOldNumber(deviceNumber);
             }
             if (dbDevice != null) {
                 List<PushMessage> messages = this.notificationDAO.getPendingMessagesForDelivery(deviceNumber);
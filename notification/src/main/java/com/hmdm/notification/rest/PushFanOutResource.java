@@ -0,0 +1,112 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.notification.rest;
+
+import com.hmdm.notification.PushFanOut;
+import com.hmdm.notification.PushService;
+import com.hmdm.rest.json.Response;
+import com.hmdm.security.SecurityContext;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.Authorization;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import java.util.Collections;
+
+/**
+ * <p>A resource to be used for tracking the progress of sending the push messages to many devices.</p>
+ */
+@Api(tags = {"Notifications"}, authorizations = {@Authorization("Bearer Token")})
+@Singleton
+@Path("/private/notifications/fanout")
+public class PushFanOutResource {
+
+    private static final Logger log = LoggerFactory.getLogger(PushFanOutResource.class);
+
+    private PushService pushService;
+
+    /**
+     * <p>A constructor required by Swagger.</p>
+     */
+    public PushFanOutResource() {
+    }
+
+    /**
+     * <p>Constructs new <code>PushFanOutResource</code> instance. This implementation does nothing.</p>
+     */
+    @Inject
+    public PushFanOutResource(PushService pushService) {
+        this.pushService = pushService;
+    }
+
+    // =================================================================================================================
+    @ApiOperation(
+            value = "Get recent sending",
+            notes = "Gets the progress of recent sending of push messages to many devices.",
+            response = PushFanOut.class,
+            responseContainer = "List"
+    )
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getFanOuts() {
+        try {
+            return Response.OK(SecurityContext.get().getCurrentCustomerId()
+                    .map(customerId -> this.pushService.getFanOuts(customerId))
+                    .orElse(Collections.emptyList()));
+        } catch (Exception e) {
+            log.error("Unexpected error when getting the progress of push messages sending", e);
+            return Response.INTERNAL_ERROR();
+        }
+    }
+
+    // =================================================================================================================
+    @ApiOperation(
+            value = "Get sending",
+            notes = "Gets the progress of sending of push messages to many devices.",
+            response = PushFanOut.class
+    )
+    @GET
+    @Path("/{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getFanOut(@PathParam("id") @ApiParam("An ID of the sending") Integer id) {
+        try {
+            final PushFanOut fanOut = this.pushService.getFanOut(id);
+            if (fanOut == null || !SecurityContext.get().getCurrentCustomerId()
+                    .map(customerId -> customerId == fanOut.getCustomerId()).orElse(false)) {
+                return Response.OBJECT_NOT_FOUND_ERROR();
+            }
+            return Response.OK(fanOut);
+        } catch (Exception e) {
+            log.error("Unexpected error when getting the progress of push messages sending #{}", id, e);
+            return Response.INTERNAL_ERROR();
+        }
+    }
+}
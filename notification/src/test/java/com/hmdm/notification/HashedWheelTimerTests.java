@@ -0,0 +1,157 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.notification;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A test suite for {@link HashedWheelTimer} class.</p>
+ */
+public class HashedWheelTimerTests {
+
+    private static final long TICK = 10;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * <p>Constructs new <code>HashedWheelTimerTests</code> instance. This implementation does nothing.</p>
+     */
+    public HashedWheelTimerTests() {
+    }
+
+    private HashedWheelTimer newTimer(int wheelSize) {
+        return new HashedWheelTimer(TICK, wheelSize, clock::get, null);
+    }
+
+    private void tick(HashedWheelTimer timer, int count) {
+        for (int i = 0; i < count; i++) {
+            clock.addAndGet(TICK);
+            timer.onTick();
+        }
+    }
+
+    @Test
+    public void testTaskIsExecutedOnDeadlineTick() {
+        final HashedWheelTimer timer = newTimer(4);
+        final AtomicInteger executed = new AtomicInteger();
+
+        timer.newTimeout(executed::incrementAndGet, 25);
+        tick(timer, 2);
+        Assert.assertEquals(0, executed.get());
+        tick(timer, 1);
+        Assert.assertEquals(1, executed.get());
+        tick(timer, 8);
+        Assert.assertEquals("Task must be executed once", 1, executed.get());
+    }
+
+    @Test
+    public void testTaskIsExecutedAfterSeveralRounds() {
+        final HashedWheelTimer timer = newTimer(4);
+        final AtomicInteger executed = new AtomicInteger();
+
+        // 10 ticks on the wheel of 4 buckets: the bucket is visited on ticks 2 and 6 before the deadline
+        timer.newTimeout(executed::incrementAndGet, 95);
+        tick(timer, 9);
+        Assert.assertEquals(0, executed.get());
+        tick(timer, 1);
+        Assert.assertEquals(1, executed.get());
+        tick(timer, 20);
+        Assert.assertEquals(1, executed.get());
+    }
+
+    @Test
+    public void testWheelSizeIsRoundedUpToPowerOfTwo() {
+        final HashedWheelTimer timer = newTimer(3);
+        final AtomicInteger executed = new AtomicInteger();
+
+        timer.newTimeout(executed::incrementAndGet, 50);
+        tick(timer, 4);
+        Assert.assertEquals(0, executed.get());
+        tick(timer, 1);
+        Assert.assertEquals(1, executed.get());
+    }
+
+    @Test
+    public void testCancelledTaskIsNotExecuted() {
+        final HashedWheelTimer timer = newTimer(4);
+        final AtomicInteger executed = new AtomicInteger();
+
+        // Cancelled before it is put to the wheel
+        timer.newTimeout(executed::incrementAndGet, 20).cancel();
+        // Cancelled while waiting in the wheel for the next round
+        final HashedWheelTimer.Timeout timeout = timer.newTimeout(executed::incrementAndGet, 70);
+        tick(timer, 3);
+        timeout.cancel();
+        tick(timer, 10);
+
+        Assert.assertEquals(0, executed.get());
+    }
+
+    @Test
+    public void testTaskScheduledAfterTickRollover() {
+        final HashedWheelTimer timer = newTimer(4);
+        final AtomicInteger executed = new AtomicInteger();
+
+        tick(timer, 13);
+        // The deadline is tick 15 which is mapped to the bucket 3 of the next round
+        timer.newTimeout(executed::incrementAndGet, 20);
+        tick(timer, 1);
+        Assert.assertEquals(0, executed.get());
+        tick(timer, 1);
+        Assert.assertEquals(1, executed.get());
+        tick(timer, 4);
+        Assert.assertEquals(1, executed.get());
+    }
+
+    @Test
+    public void testOverdueTaskIsExecutedOnNextTick() {
+        final HashedWheelTimer timer = newTimer(4);
+        final AtomicInteger executed = new AtomicInteger();
+
+        // The ticks run ahead of the clock, so the deadline of the task is already passed when it is put to the wheel
+        for (int i = 0; i < 5; i++) {
+            timer.onTick();
+        }
+        timer.newTimeout(executed::incrementAndGet, 10);
+        timer.onTick();
+
+        Assert.assertEquals(1, executed.get());
+    }
+
+    @Test
+    public void testFailedTaskDoesNotAffectOthers() {
+        final HashedWheelTimer timer = newTimer(4);
+        final AtomicInteger executed = new AtomicInteger();
+
+        timer.newTimeout(() -> {
+            throw new IllegalStateException("Expected failure");
+        }, 10);
+        timer.newTimeout(executed::incrementAndGet, 10);
+        tick(timer, 1);
+
+        Assert.assertEquals(1, executed.get());
+    }
+}
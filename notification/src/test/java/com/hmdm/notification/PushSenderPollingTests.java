@@ -0,0 +1,89 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.notification;
+
+import com.hmdm.notification.persistence.NotificationDAO;
+import com.hmdm.notification.persistence.domain.PushMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>A test suite for {@link PushSenderPolling} class.</p>
+ */
+public class PushSenderPollingTests {
+
+    /**
+     * <p>Constructs new <code>PushSenderPollingTests</code> instance. This implementation does nothing.</p>
+     */
+    public PushSenderPollingTests() {
+    }
+
+    @Test
+    public void testDeliveredMessagesAreKeptUntilRecorded() {
+        final PushMessage message = new PushMessage();
+        message.setId(5);
+        message.setDeviceId(1);
+        message.setMessageType(PushMessage.TYPE_CONFIG_UPDATED);
+
+        final AtomicInteger attempts = new AtomicInteger();
+        final List<Integer> recorded = new ArrayList<>();
+        final NotificationDAO notificationDAO = new NotificationDAO(null) {
+            @Override
+            public List<PushMessage> getPendingMessages(int deviceId) {
+                // The message stays pending in database until it is marked as delivered
+                return recorded.contains(message.getId())
+                        ? Collections.emptyList() : Collections.singletonList(message);
+            }
+
+            @Override
+            public void markMessagesAsDelivered(List<Integer> messageIds) {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new IllegalStateException("Database is not available");
+                }
+                recorded.addAll(messageIds);
+            }
+        };
+        final PushSenderPolling sender = new PushSenderPolling(notificationDAO, 30);
+
+        final PushSenderPolling.Mailbox mailbox = new PushSenderPolling.Mailbox(1, null);
+        sender.register(mailbox);
+        sender.onDelivered(sender.getPendingMessages(mailbox));
+
+        // The first attempt to record the delivered messages fails
+        sender.shutdown();
+        Assert.assertEquals(1, attempts.get());
+        Assert.assertTrue(recorded.isEmpty());
+
+        final PushSenderPolling.Mailbox nextMailbox = new PushSenderPolling.Mailbox(1, null);
+        sender.register(nextMailbox);
+        Assert.assertTrue("Delivered message should not be delivered again",
+                sender.getPendingMessages(nextMailbox).isEmpty());
+
+        sender.shutdown();
+        Assert.assertEquals(Collections.singletonList(5), recorded);
+    }
+}
@@ -6,6 +6,11 @@ import com.google.inject.name.Names;
 import javax.servlet.ServletContext;
 
 public class AuditConfigureModule extends AbstractModule {
+    private final String queueSizeParameter = "plugin.audit.queue.size";
+    private final String batchSizeParameter = "plugin.audit.batch.size";
+    private final String flushIntervalParameter = "plugin.audit.flush.interval";
+    private final String payloadLimitParameter = "plugin.audit.payload.limit";
+
     private final ServletContext context;
 
     public AuditConfigureModule(ServletContext context) {
@@ -18,5 +23,18 @@ public class AuditConfigureModule extends AbstractModule {
         this.bindConstant().annotatedWith(Names.named(displayForwardedIp)).to(
                 displayForwardedIpTag != null && (displayForwardedIpTag.equals("1") || displayForwardedIpTag.equalsIgnoreCase("true"))
         );
+        this.bindConstant().annotatedWith(Names.named(queueSizeParameter))
+                .to(getIntParameter(queueSizeParameter, 10000));
+        this.bindConstant().annotatedWith(Names.named(batchSizeParameter))
+                .to(getIntParameter(batchSizeParameter, 500));
+        this.bindConstant().annotatedWith(Names.named(flushIntervalParameter))
+                .to((long) getIntParameter(flushIntervalParameter, 1000));
+        this.bindConstant().annotatedWith(Names.named(payloadLimitParameter))
+                .to(getIntParameter(payloadLimitParameter, 16384));
+    }
+
+    private int getIntParameter(String name, int defaultValue) {
+        final String value = this.context.getInitParameter(name);
+        return value != null && !value.equals("") ? Integer.parseInt(value) : defaultValue;
     }
 }
@@ -0,0 +1,81 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.audit.guice.module;
+
+import com.google.inject.Inject;
+import com.hmdm.plugin.PluginTaskModule;
+import com.hmdm.plugins.audit.persistence.AuditLogPipeline;
+import com.hmdm.plugins.audit.rest.filter.AuditRouteMatcher;
+import com.hmdm.util.BackgroundTaskRunnerService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A module used for initializing the tasks to be executed in background.</p>
+ */
+public class AuditTaskModule implements PluginTaskModule {
+
+    /**
+     * <p>A pipeline inserting the audit log records.</p>
+     */
+    private final AuditLogPipeline auditLogPipeline;
+
+    /**
+     * <p>A matcher of the requests against the audit rules.</p>
+     */
+    private final AuditRouteMatcher routeMatcher;
+
+    /**
+     * <p>A runner for the repeatable tasks.</p>
+     */
+    private final BackgroundTaskRunnerService taskRunner;
+
+    /**
+     * <p>Constructs new <code>AuditTaskModule</code> instance. This implementation does nothing.</p>
+     */
+    @Inject
+    public AuditTaskModule(AuditLogPipeline auditLogPipeline, AuditRouteMatcher routeMatcher,
+                           BackgroundTaskRunnerService taskRunner) {
+        this.auditLogPipeline = auditLogPipeline;
+        this.routeMatcher = routeMatcher;
+        this.taskRunner = taskRunner;
+    }
+
+    /**
+     * <p>Initializes this module. Starts the pipeline inserting the audit log records and schedules logging of its
+     * statistics and of the numbers of audited requests per rule.</p>
+     */
+    @Override
+    public void init() {
+        auditLogPipeline.start();
+        taskRunner.submitRepeatableTask(auditLogPipeline::logStats, 10, 10, TimeUnit.MINUTES);
+        taskRunner.submitRepeatableTask(routeMatcher::logStats, 10, 10, TimeUnit.MINUTES);
+    }
+
+    /**
+     * <p>Stops the pipeline inserting the audit log records. The records waiting in its queue are inserted.</p>
+     */
+    @Override
+    public void destroy() {
+        auditLogPipeline.stop();
+    }
+}
@@ -55,12 +55,14 @@ public class AuditDAO extends AbstractDAO<AuditLogRecord> {
     }
 
     /**
-     * <p>Inserts an audit log record into database.</p>
+     * <p>Inserts the audit log records into database by single statement.</p>
      *
-     * @param logRecord a log record to be inserted.
+     * @param logRecords a list of log records to be inserted.
      */
-    public void insertAuditLogRecord(AuditLogRecord logRecord) {
-        this.mapper.insertAuditLogRecord(logRecord);
+    public void insertAuditLogRecords(List<AuditLogRecord> logRecords) {
+        if (!logRecords.isEmpty()) {
+            this.mapper.insertAuditLogRecords(logRecords);
+        }
     }
 
     /**
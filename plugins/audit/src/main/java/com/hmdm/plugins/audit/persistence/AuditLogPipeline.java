@@ -0,0 +1,231 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.audit.persistence;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.hmdm.plugins.audit.persistence.domain.AuditLogRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A pipeline collecting the audit log records into a single bounded queue and inserting them into database by
+ * multi-row statements in batches.</p>
+ *
+ * <p>A batch is inserted once it reaches <code>plugin.audit.batch.size</code> records or once
+ * <code>plugin.audit.flush.interval</code> milliseconds have passed since its first record was taken from the queue.
+ * If the queue is full then the oldest waiting record is dropped, so the requests being audited are never delayed by
+ * database. The records waiting in the queue are inserted when the pipeline is stopped on shutdown.</p>
+ */
+@Singleton
+public class AuditLogPipeline {
+
+    /**
+     * <p>A logger to be used for logging the events.</p>
+     */
+    private static final Logger logger = LoggerFactory.getLogger(AuditLogPipeline.class);
+
+    /**
+     * <p>A maximum time for inserting the records waiting in the queue on stop (in milliseconds).</p>
+     */
+    private static final long STOP_TIMEOUT = 30000;
+
+    /**
+     * <p>A maximum time for waiting for the records before checking whether the pipeline is stopped (in
+     * milliseconds).</p>
+     */
+    private static final long STOP_CHECK_INTERVAL = 100;
+
+    private final AuditDAO auditDAO;
+    private final int batchSize;
+    private final long flushInterval;
+
+    /**
+     * <p>A queue of the records waiting for insertion.</p>
+     */
+    private final BlockingQueue<AuditLogRecord> queue;
+
+    private Thread writerThread;
+
+    private volatile boolean running;
+
+    private final AtomicLong acceptedRecords = new AtomicLong();
+    private final AtomicLong droppedRecords = new AtomicLong();
+    private final AtomicLong writtenRecords = new AtomicLong();
+    private final AtomicLong failedRecords = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong totalWriteTime = new AtomicLong();
+    private final AtomicLong maxWriteTime = new AtomicLong();
+
+    /**
+     * <p>Constructs new <code>AuditLogPipeline</code> instance. This implementation does nothing.</p>
+     */
+    @Inject
+    public AuditLogPipeline(AuditDAO auditDAO,
+                            @Named("plugin.audit.queue.size") int queueSize,
+                            @Named("plugin.audit.batch.size") int batchSize,
+                            @Named("plugin.audit.flush.interval") long flushInterval) {
+        this.auditDAO = auditDAO;
+        this.queue = new ArrayBlockingQueue<>(Math.max(queueSize, 1));
+        this.batchSize = Math.max(batchSize, 1);
+        this.flushInterval = Math.max(flushInterval, 1);
+    }
+
+    /**
+     * <p>Starts the thread inserting the records from the queue.</p>
+     */
+    public synchronized void start() {
+        if (writerThread == null) {
+            running = true;
+            writerThread = new Thread(this::writeLoop, "audit-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+
+    /**
+     * <p>Stops the thread inserting the records and waits for the records waiting in the queue to be inserted.</p>
+     */
+    public void stop() {
+        final Thread thread;
+        synchronized (this) {
+            thread = writerThread;
+            writerThread = null;
+            running = false;
+        }
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join(STOP_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            logger.warn("Audit log records are not inserted on stop in {} ms, {} records are lost", STOP_TIMEOUT,
+                    queue.size());
+            thread.interrupt();
+        }
+        logStats();
+    }
+
+    /**
+     * <p>Submits the specified audit log record for insertion. If the queue is full then the oldest waiting record is
+     * dropped.</p>
+     *
+     * @param logRecord an audit log record to be inserted.
+     */
+    public void submit(AuditLogRecord logRecord) {
+        while (!queue.offer(logRecord)) {
+            if (queue.poll() != null && droppedRecords.incrementAndGet() % 1000 == 1) {
+                logger.warn("Audit log queue is full, dropping the oldest records (dropped so far: {})",
+                        droppedRecords.get());
+            }
+        }
+        acceptedRecords.incrementAndGet();
+    }
+
+    /**
+     * <p>Outputs the statistics of the pipeline to log.</p>
+     */
+    public void logStats() {
+        final long batchCount = batches.get();
+        logger.info("Audit log stats: queue: {}/{}, records accepted: {}, dropped: {}, written: {}, failed: {}, " +
+                        "batches: {}, avg/max batch write time: {}/{} ms",
+                queue.size(), queue.size() + queue.remainingCapacity(), acceptedRecords.get(), droppedRecords.get(),
+                writtenRecords.get(), failedRecords.get(), batchCount,
+                batchCount > 0 ? totalWriteTime.get() / batchCount : 0, maxWriteTime.get());
+    }
+
+    private void writeLoop() {
+        final List<AuditLogRecord> batch = new ArrayList<>(batchSize);
+        while (running && !Thread.currentThread().isInterrupted()) {
+            try {
+                final AuditLogRecord first = queue.poll(Math.min(flushInterval, STOP_CHECK_INTERVAL),
+                        TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                final long deadline = System.currentTimeMillis() + flushInterval;
+                while (batch.size() < batchSize && running) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) == 0) {
+                        final long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            break;
+                        }
+                        final AuditLogRecord next = queue.poll(Math.min(remaining, STOP_CHECK_INTERVAL),
+                                TimeUnit.MILLISECONDS);
+                        if (next != null) {
+                            batch.add(next);
+                        }
+                    }
+                }
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.error("Unexpected error when inserting the audit log records", e);
+            } finally {
+                batch.clear();
+            }
+        }
+
+        // The records left in the queue on stop are inserted without waiting for the batch to be filled
+        while (!Thread.currentThread().isInterrupted() && queue.drainTo(batch, batchSize) > 0) {
+            try {
+                writeBatch(batch);
+            } catch (Exception e) {
+                logger.error("Unexpected error when inserting the audit log records", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<AuditLogRecord> batch) {
+        final long start = System.currentTimeMillis();
+        try {
+            auditDAO.insertAuditLogRecords(batch);
+            writtenRecords.addAndGet(batch.size());
+        } catch (Exception e) {
+            failedRecords.addAndGet(batch.size());
+            logger.error("Failed to insert {} audit log records. These records will be skipped.", batch.size(), e);
+        }
+
+        final long writeTime = System.currentTimeMillis() - start;
+        batches.incrementAndGet();
+        totalWriteTime.addAndGet(writeTime);
+        long max;
+        while (writeTime > (max = maxWriteTime.get()) && !maxWriteTime.compareAndSet(max, writeTime)) {
+            // Retry
+        }
+    }
+}
@@ -23,7 +23,7 @@ package com.hmdm.plugins.audit.persistence.mapper;
 
 import com.hmdm.plugins.audit.persistence.domain.AuditLogRecord;
 import com.hmdm.plugins.audit.rest.json.AuditLogFilter;
-import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
 
 import java.util.List;
 
@@ -34,27 +34,7 @@ import java.util.List;
  */
 public interface AuditMapper {
 
-    @Insert({"INSERT INTO plugin_audit_log (" +
-            "    createTime," +
-            "    customerId," +
-            "    userId," +
-            "    login," +
-            "    action," +
-            "    payload," +
-            "    ipAddress," +
-            "    errorCode" +
-            ") " +
-            "VALUES (" +
-            "    #{createTime}," +
-            "    #{customerId}," +
-            "    #{userId}," +
-            "    #{login}," +
-            "    #{action}," +
-            "    #{payload}," +
-            "    #{ipAddress}," +
-            "    #{errorCode}" +
-            ")"})
-    int insertAuditLogRecord(AuditLogRecord logRecord);
+    int insertAuditLogRecords(@Param("records") List<AuditLogRecord> logRecords);
 
     List<AuditLogRecord> findAllLogRecordsByCustomerId(AuditLogFilter filter);
 
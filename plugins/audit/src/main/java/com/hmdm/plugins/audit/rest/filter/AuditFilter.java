@@ -25,9 +25,8 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.hmdm.plugin.service.PluginStatusCache;
 import com.hmdm.plugins.audit.AuditPluginConfigurationImpl;
-import com.hmdm.plugins.audit.persistence.AuditDAO;
+import com.hmdm.plugins.audit.persistence.AuditLogPipeline;
 import com.hmdm.plugins.audit.persistence.domain.AuditLogRecord;
-import com.hmdm.util.BackgroundTaskRunnerService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,14 +60,14 @@ public class AuditFilter implements Filter {
     private static final Logger logger = LoggerFactory.getLogger(AuditFilter.class);
 
     /**
-     * <p>A DAO to be used for inserting audit log records into database.</p>
+     * <p>A pipeline inserting the audit log records into database in background.</p>
      */
-    private final AuditDAO auditDAO;
+    private final AuditLogPipeline auditLogPipeline;
 
     /**
-     * <p>A runner for the audit log record insertion tasks.</p>
+     * <p>A matcher of the requests against the audit rules.</p>
      */
-    private final BackgroundTaskRunnerService backgroundTaskRunnerService;
+    private final AuditRouteMatcher routeMatcher;
 
     /**
      * <p>The current status of installed plugins.</p>
@@ -85,16 +84,23 @@ public class AuditFilter implements Filter {
      */
     private final String ipHeader;
 
+    /**
+     * <p>A maximum length of the request body saved in the audit log record.</p>
+     */
+    private final int payloadLimit;
+
     /**
      * <p>Constructs new <code>AuditFilter</code> instance. This implementation does nothing.</p>
      */
     @Inject
-    public AuditFilter(AuditDAO auditDAO, BackgroundTaskRunnerService backgroundTaskRunnerService,
+    public AuditFilter(AuditLogPipeline auditLogPipeline,
+                       AuditRouteMatcher routeMatcher,
                        PluginStatusCache pluginStatusCache,
                        @Named("proxy.addresses") String proxyIps,
-                       @Named("proxy.ip.header") String ipHeader) {
-        this.auditDAO = auditDAO;
-        this.backgroundTaskRunnerService = backgroundTaskRunnerService;
+                       @Named("proxy.ip.header") String ipHeader,
+                       @Named("plugin.audit.payload.limit") int payloadLimit) {
+        this.auditLogPipeline = auditLogPipeline;
+        this.routeMatcher = routeMatcher;
         this.pluginStatusCache = pluginStatusCache;
         this.proxyIps = proxyIps;
         if (!"".equals(ipHeader)) {
@@ -103,6 +109,7 @@ public class AuditFilter implements Filter {
             // Defaults to Nginx IP header
             this.ipHeader = "X-Real-IP";
         }
+        this.payloadLimit = payloadLimit;
     }
 
     /**
@@ -129,7 +136,7 @@ public class AuditFilter implements Filter {
             return;
         }
 
-        final Optional<ResourceAuditInfo> auditInfo = ResourceAuditInfo.findAuditInfo(httpRequest.getMethod(), requestURI.substring(context.length()));
+        final Optional<ResourceAuditInfo> auditInfo = routeMatcher.findAuditInfo(httpRequest.getMethod(), requestURI.substring(context.length()));
         boolean needAudit = auditInfo.isPresent();
 
         ResourceAuditor resourceAuditor = null;
@@ -139,7 +146,8 @@ public class AuditFilter implements Filter {
                     logger.trace("Will audit request {}", requestURI.substring(context.length()));
                 }
 
-                resourceAuditor = auditInfo.get().getResourceAuditor(request, response, chain, proxyIps, ipHeader);
+                resourceAuditor = auditInfo.get().getResourceAuditor(request, response, chain, proxyIps, ipHeader,
+                        payloadLimit);
                 resourceAuditor.doProcess();
             } else {
                 chain.doFilter(request, response);
@@ -151,7 +159,8 @@ public class AuditFilter implements Filter {
                 AuditLogRecord logRecord = resourceAuditor.getAuditLogRecord();
                 if (logRecord != null) {
                     auditLogger.info(logRecord.toLogString());
-                    this.backgroundTaskRunnerService.submitTask(new Task(logRecord));
+                    this.auditLogPipeline.submit(logRecord);
+                    this.routeMatcher.onAudited(auditInfo.get());
                 }
 
             }
@@ -165,31 +174,4 @@ public class AuditFilter implements Filter {
     public void destroy() {
 
     }
-
-    /**
-     * <p>A task to be used for inserting the audit log record into database in the background.</p>
-     */
-    private class Task implements Runnable {
-
-        /**
-         * <p>An audit log record to be inserted.</p>
-         */
-        private final AuditLogRecord logRecord;
-
-        private Task(AuditLogRecord logRecord) {
-            this.logRecord = logRecord;
-        }
-
-        /**
-         * <pInserts the audit log record into database.</p>
-         */
-        @Override
-        public void run() {
-            try {
-                auditDAO.insertAuditLogRecord(logRecord);
-            } catch (Exception e) {
-                logger.error("Unexpected error when inserting audit log record into database", e);
-            }
-        }
-    }
 }
@@ -0,0 +1,163 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.audit.rest.filter;
+
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>A matcher of the requests against the audit rules listed by {@link ResourceAuditInfo}.</p>
+ *
+ * <p>The rules are compiled once into a routing table: for each request method there is a mapping for the rules
+ * requiring the exact URI match and a mapping for the prefix rules along with the lengths of these prefixes. A request
+ * URI is looked up by the exact mapping first and then by its leading parts of each prefix length, the longest first,
+ * so the lookup cost doesn't depend on the number of rules and the most specific rule wins.</p>
+ *
+ * <p>The number of the audited requests is counted for each rule.</p>
+ */
+@Singleton
+public class AuditRouteMatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditRouteMatcher.class);
+
+    /**
+     * <p>A mapping from the request methods to the routes for these methods.</p>
+     */
+    private final Map<String, Routes> routes = new HashMap<>();
+
+    /**
+     * <p>The numbers of the audited requests per rule.</p>
+     */
+    private final Map<ResourceAuditInfo, LongAdder> counters = new EnumMap<>(ResourceAuditInfo.class);
+
+    /**
+     * <p>Constructs new <code>AuditRouteMatcher</code> instance. Compiles the routing table for all audit rules.</p>
+     */
+    public AuditRouteMatcher() {
+        for (ResourceAuditInfo info : ResourceAuditInfo.values()) {
+            final Routes methodRoutes = this.routes.computeIfAbsent(info.getMethod().toUpperCase(Locale.ROOT),
+                    method -> new Routes());
+            if (info.isUriExactMatch()) {
+                methodRoutes.exact.putIfAbsent(info.getUri(), info);
+            } else {
+                methodRoutes.prefixes.putIfAbsent(info.getUri(), info);
+                methodRoutes.prefixLengthSet.add(info.getUri().length());
+            }
+            this.counters.put(info, new LongAdder());
+        }
+        this.routes.values().forEach(Routes::compile);
+    }
+
+    /**
+     * <p>Finds the audit rule (if any) to be applied to the specified request.</p>
+     *
+     * @param requestMethod a method of the current request.
+     * @param requestUri an URI for the current request relative to application context.
+     * @return the details for audit process to apply to processed request.
+     */
+    public Optional<ResourceAuditInfo> findAuditInfo(String requestMethod, String requestUri) {
+        Routes methodRoutes = this.routes.get(requestMethod);
+        if (methodRoutes == null) {
+            methodRoutes = this.routes.get(requestMethod.toUpperCase(Locale.ROOT));
+            if (methodRoutes == null) {
+                return Optional.empty();
+            }
+        }
+        return Optional.ofNullable(methodRoutes.find(requestUri));
+    }
+
+    /**
+     * <p>Counts the request audited by the specified rule.</p>
+     *
+     * @param info an audit rule applied to request.
+     */
+    public void onAudited(ResourceAuditInfo info) {
+        this.counters.get(info).increment();
+    }
+
+    /**
+     * <p>Gets the numbers of the audited requests per rule.</p>
+     *
+     * @return a mapping from the audit rules to the numbers of requests audited by them.
+     */
+    public Map<ResourceAuditInfo, Long> getAuditCounts() {
+        final Map<ResourceAuditInfo, Long> result = new EnumMap<>(ResourceAuditInfo.class);
+        this.counters.forEach((info, counter) -> result.put(info, counter.sum()));
+        return result;
+    }
+
+    /**
+     * <p>Outputs the numbers of the audited requests per rule to log.</p>
+     */
+    public void logStats() {
+        final StringBuilder stats = new StringBuilder();
+        getAuditCounts().forEach((info, count) -> {
+            if (count > 0) {
+                stats.append(stats.length() > 0 ? ", " : "").append(info.name()).append(": ").append(count);
+            }
+        });
+        logger.info("Audited requests per rule: {}", stats.length() > 0 ? stats : "none");
+    }
+
+    /**
+     * <p>The routes for a single request method.</p>
+     */
+    private static class Routes {
+        private final Map<String, ResourceAuditInfo> exact = new HashMap<>();
+        private final Map<String, ResourceAuditInfo> prefixes = new HashMap<>();
+        private final TreeSet<Integer> prefixLengthSet = new TreeSet<>();
+
+        /**
+         * <p>The distinct lengths of the prefixes, the longest first.</p>
+         */
+        private int[] prefixLengths;
+
+        private void compile() {
+            this.prefixLengths = this.prefixLengthSet.descendingSet().stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        private ResourceAuditInfo find(String requestUri) {
+            final ResourceAuditInfo info = this.exact.get(requestUri);
+            if (info != null) {
+                return info;
+            }
+            for (int length : this.prefixLengths) {
+                if (length <= requestUri.length()) {
+                    final ResourceAuditInfo prefixInfo = this.prefixes.get(requestUri.substring(0, length));
+                    if (prefixInfo != null) {
+                        return prefixInfo;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -24,10 +24,7 @@ package com.hmdm.plugins.audit.rest.filter;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
-import java.awt.image.ImagingOpException;
 import java.io.IOException;
-import java.util.Optional;
-import java.util.stream.Stream;
 
 /**
  * <p>An enumeration over the resources which are targets for audit tracking.</p>
@@ -116,36 +113,20 @@ public enum ResourceAuditInfo {
      * @return an auditor for the specified request/response chain.
      */
     public ResourceAuditor getResourceAuditor(ServletRequest request, ServletResponse response, FilterChain chain,
-                                              String proxyIps, String ipHeader) throws IOException {
-        return new ResourceAuditor(auditLogAction, request, response, chain, payload, checkResponse, proxyIps, ipHeader);
+                                              String proxyIps, String ipHeader, int payloadLimit) throws IOException {
+        return new ResourceAuditor(auditLogAction, request, response, chain, payload, checkResponse, proxyIps, ipHeader,
+                payloadLimit);
     }
 
-    /**
-     * <p>Checks if specified request URI matches this audit rule.</p>
-     *
-     * @param requestUri an URI for the current request being processed by application.
-     * @return <code>true</code> if there is a match; <code>false</code> otherwise.
-     */
-    private boolean matches(String requestMethod, String requestUri) {
-        if (!this.method.equalsIgnoreCase(requestMethod)) {
-            return false;
-        }
-        if (this.uriExactMatch) {
-            return this.uri.equals(requestUri);
-        } else {
-            return requestUri.startsWith(this.uri);
-        }
+    String getMethod() {
+        return method;
     }
 
-    /**
-     * <p>Finds the details for audit process (if any) to be performed against specified request URI.</p>
-     *
-     * @param requestUri an URI for the current request being processed by application.
-     * @return the details for audit process to apply to processed request.
-     */
-    public static Optional<ResourceAuditInfo> findAuditInfo(String requestMethod, String requestUri) {
-        return Stream.of(ResourceAuditInfo.values())
-                .filter(info -> info.matches(requestMethod, requestUri))
-                .findAny();
+    String getUri() {
+        return uri;
+    }
+
+    boolean isUriExactMatch() {
+        return uriExactMatch;
     }
 }
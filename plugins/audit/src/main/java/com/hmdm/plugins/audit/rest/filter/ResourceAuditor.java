@@ -21,7 +21,9 @@
 
 package com.hmdm.plugins.audit.rest.filter;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.hmdm.persistence.domain.User;
 import com.hmdm.plugins.audit.persistence.domain.AuditLogRecord;
 import com.hmdm.plugins.audit.rest.AuditResource;
@@ -56,6 +58,17 @@ class ResourceAuditor {
      */
     private static final String sessionCredentials = "credentials";
 
+    /**
+     * <p>A maximum number of bytes of response captured for checking the status. The status is the first field of the
+     * response, so the beginning of the response is enough.</p>
+     */
+    private static final int RESPONSE_CAPTURE_LIMIT = 4096;
+
+    /**
+     * <p>A factory for parsers used for reading the status of the response.</p>
+     */
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
     /**
      * <p>A key in message resource bundle referring to description of action mapped to audited request.</p>
      */
@@ -88,11 +101,17 @@ class ResourceAuditor {
 
     private final BaseIPFilter remoteAddrResolver;
 
+    /**
+     * <p>A maximum length of the request body saved in the payload.</p>
+     */
+    private final int payloadLimit;
+
     /**
      * <p>Constructs new <code>ResourceAuditor</code> instance. This implementation does nothing.</p>
      */
     ResourceAuditor(String auditLogActionKey, ServletRequest request, ServletResponse response,
-                    FilterChain chain, boolean payload, boolean checkResponse, String proxyIps, String ipHeader) throws IOException {
+                    FilterChain chain, boolean payload, boolean checkResponse, String proxyIps, String ipHeader,
+                    int payloadLimit) throws IOException {
         this.auditLogActionKey = auditLogActionKey;
         if (payload) {
             // Wrap request only if we need to log it
@@ -100,11 +119,14 @@ class ResourceAuditor {
         } else {
             this.request = request;
         }
-        this.response = new ServletResponseAuditWrapper((HttpServletResponse)response);
+        // The response content is used only for checking the status
+        this.response = new ServletResponseAuditWrapper((HttpServletResponse)response,
+                checkResponse ? RESPONSE_CAPTURE_LIMIT : 0);
         this.chain = chain;
         this.payload = payload;
         this.checkResponse = checkResponse;
         this.remoteAddrResolver = new BaseIPFilter("", proxyIps, ipHeader);
+        this.payloadLimit = payloadLimit;
     }
 
     /**
@@ -147,7 +169,8 @@ class ResourceAuditor {
                     body = response.result;
                     requestedLogin = response.login;
                 }
-                payloadString += "\nBody: " + body;
+                // Truncated after stripping the passwords since the truncated JSON can't be parsed
+                payloadString += "\nBody: " + truncatePayload(body, payloadLimit);
             }
             payloadString += "\nUser-Agent: " + httpRequest.getHeader("User-Agent");
         }
@@ -167,11 +190,8 @@ class ResourceAuditor {
             }
         }
         if (this.response.getStatus() == 200) {
-            final byte[] content = this.response.getContent();
-            ObjectMapper objectMapper = new ObjectMapper();
-            final Response response = objectMapper.readValue(content, Response.class);
-            if (checkResponse &&
-                    (response == null || response.getStatus() != Response.ResponseStatus.OK)) {
+            if (checkResponse
+                    && !Response.ResponseStatus.OK.name().equals(readResponseStatus(this.response.getContent()))) {
                 logRecord.setErrorCode(1);
             } else {
                 logRecord.setErrorCode(0);
@@ -187,6 +207,46 @@ class ResourceAuditor {
         return logRecord;
     }
 
+    /**
+     * <p>Truncates the specified request body to the specified number of characters.</p>
+     *
+     * @param body  a request body.
+     * @param limit a maximum number of characters of the body to be kept.
+     * @return the body if it does not exceed the limit or its beginning along with the length of the body.
+     */
+    static String truncatePayload(String body, int limit) {
+        if (body.length() > limit) {
+            return body.substring(0, limit) + "... (truncated, " + body.length() + " characters)";
+        }
+        return body;
+    }
+
+    /**
+     * <p>Reads the status from the captured beginning of the response without parsing the whole response.</p>
+     *
+     * @param content a captured beginning of the response.
+     * @return a status of the response or <code>null</code> if the response is not in Headwind MDM standard format.
+     */
+    static String readResponseStatus(byte[] content) {
+        try (JsonParser parser = jsonFactory.createParser(content)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("status".equals(field)) {
+                    return parser.getValueAsString();
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException e) {
+            // The response is either not a JSON or is truncated before the status
+            logger.debug("Failed to read the status of response: {}", e.getMessage());
+        }
+        return null;
+    }
+
     private boolean needStripPassword(String action) {
         return "plugin.audit.action.user.login".equals(action) ||
                "plugin.audit.action.jwt.login".equals(action) ||
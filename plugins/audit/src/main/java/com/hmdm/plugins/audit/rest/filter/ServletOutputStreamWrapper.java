@@ -29,6 +29,9 @@ import java.io.OutputStream;
 /**
  * <p>A wrapper around the servlet response stream used for capturing the content of the response.</p>
  *
+ * <p>Only the first bytes of the response up to the configured limit are captured, the rest of the content is passed
+ * to the original stream only.</p>
+ *
  * @author isv
  */
 public class ServletOutputStreamWrapper extends ServletOutputStream {
@@ -43,21 +46,43 @@ public class ServletOutputStreamWrapper extends ServletOutputStream {
      */
     private ByteArrayOutputStream copy;
 
-    public ServletOutputStreamWrapper(OutputStream outputStream) {
+    /**
+     * <p>A maximum number of bytes to be captured.</p>
+     */
+    private final int limit;
+
+    public ServletOutputStreamWrapper(OutputStream outputStream, int limit) {
         this.outputStream = outputStream;
-        this.copy = new ByteArrayOutputStream(1024);
+        this.limit = Math.max(limit, 0);
+        this.copy = new ByteArrayOutputStream(Math.min(this.limit, 1024));
     }
 
     @Override
     public void write(int b) throws IOException {
         outputStream.write(b);
-        copy.write(b);
+        if (copy.size() < limit) {
+            copy.write(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        outputStream.write(b, off, len);
+        final int captured = Math.min(len, limit - copy.size());
+        if (captured > 0) {
+            copy.write(b, off, captured);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        outputStream.flush();
     }
 
     /**
-     * <p>Gets the content of the response.</p>
+     * <p>Gets the captured content of the response.</p>
      *
-     * @return a content of the response.
+     * @return a content of the response, possibly truncated.
      */
     public byte[] getContent() {
         return copy.toByteArray();
@@ -4,61 +4,69 @@ import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 public class ServletRequestAuditWrapper extends HttpServletRequestWrapper {
-    private final String body;
+    private final byte[] body;
+    private final Charset charset;
 
     public ServletRequestAuditWrapper(HttpServletRequest request) throws IOException {
         //So that other request method behave just like before
         super(request);
 
-        StringBuilder stringBuilder = new StringBuilder();
-        BufferedReader bufferedReader = null;
-        try {
-            InputStream inputStream = request.getInputStream();
+        // The body is read once in bulk and kept as bytes, it's decoded only if the audit record needs it
+        final ByteArrayOutputStream content = new ByteArrayOutputStream(Math.max(request.getContentLength(), 256));
+        try (InputStream inputStream = request.getInputStream()) {
             if (inputStream != null) {
-                bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
-                char[] charBuffer = new char[1024];
-                int bytesRead = -1;
-                while ((bytesRead = bufferedReader.read(charBuffer)) > 0) {
-                    stringBuilder.append(charBuffer, 0, bytesRead);
+                final byte[] buffer = new byte[8192];
+                int bytesRead;
+                while ((bytesRead = inputStream.read(buffer)) > 0) {
+                    content.write(buffer, 0, bytesRead);
                 }
-            } else {
-                stringBuilder.append("");
             }
-        } catch (IOException ex) {
-            throw ex;
-        } finally {
-            if (bufferedReader != null) {
-                try {
-                    bufferedReader.close();
-                } catch (IOException ex) {
-                    throw ex;
-                }
+        }
+        body = content.toByteArray();
+
+        Charset requestCharset = StandardCharsets.UTF_8;
+        try {
+            if (request.getCharacterEncoding() != null) {
+                requestCharset = Charset.forName(request.getCharacterEncoding());
             }
+        } catch (IllegalArgumentException e) {
+            // Unknown encoding, UTF-8 is used
         }
-        //Store request pody content in 'body' variable
-        body = stringBuilder.toString();
+        charset = requestCharset;
     }
 
     @Override
     public ServletInputStream getInputStream() throws IOException {
-        final ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(body.getBytes());
+        final ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(body);
         ServletInputStream servletInputStream = new ServletInputStream() {
             public int read() throws IOException {
                 return byteArrayInputStream.read();
             }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return byteArrayInputStream.read(b, off, len);
+            }
+
+            @Override
+            public int available() throws IOException {
+                return byteArrayInputStream.available();
+            }
         };
         return servletInputStream;
     }
 
     @Override
     public BufferedReader getReader() throws IOException {
-        return new BufferedReader(new InputStreamReader(this.getInputStream()));
+        return new BufferedReader(new InputStreamReader(this.getInputStream(), charset));
     }
 
     //Use this method to read the request body N times
     public String getBody() {
-        return this.body;
+        return new String(this.body, charset);
     }
 }
@@ -56,11 +56,17 @@ public class ServletResponseAuditWrapper extends HttpServletResponseWrapper {
      */
     private ServletOutputStreamWrapper copier;
 
+    /**
+     * <p>A maximum number of bytes of the response content to be captured.</p>
+     */
+    private final int captureLimit;
+
     /**
      * <p>Constructs new <code>ServletResponseAuditWrapper</code> instance. This implementation does nothing.</p>
      */
-    public ServletResponseAuditWrapper(HttpServletResponse original) {
+    public ServletResponseAuditWrapper(HttpServletResponse original, int captureLimit) {
         super(original);
+        this.captureLimit = captureLimit;
     }
 
     // Intercepted method.
@@ -100,7 +106,7 @@ public class ServletResponseAuditWrapper extends HttpServletResponseWrapper {
 
         if (outputStream == null) {
             outputStream = getResponse().getOutputStream();
-            copier = new ServletOutputStreamWrapper(outputStream);
+            copier = new ServletOutputStreamWrapper(outputStream, captureLimit);
         }
 
         return copier;
@@ -114,7 +120,7 @@ public class ServletResponseAuditWrapper extends HttpServletResponseWrapper {
         }
 
         if (writer == null) {
-            copier = new ServletOutputStreamWrapper(getResponse().getOutputStream());
+            copier = new ServletOutputStreamWrapper(getResponse().getOutputStream(), captureLimit);
             writer = new PrintWriter(new OutputStreamWriter(copier, getResponse().getCharacterEncoding()), true);
         }
 
@@ -132,9 +138,9 @@ public class ServletResponseAuditWrapper extends HttpServletResponseWrapper {
     }
 
     /**
-     * <p>Gets the content of the response.</p>
+     * <p>Gets the captured content of the response.</p>
      *
-     * @return a response content.
+     * @return a response content, possibly truncated.
      */
     public byte[] getContent() {
         if (copier != null) {
@@ -0,0 +1,181 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.audit.persistence;
+
+import com.hmdm.plugins.audit.persistence.domain.AuditLogRecord;
+import com.hmdm.plugins.audit.persistence.mapper.AuditMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A test suite for {@link AuditLogPipeline} class.</p>
+ */
+public class AuditLogPipelineTests {
+
+    private final List<List<AuditLogRecord>> batches = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * <p>A latch signalled once the first batch is being inserted.</p>
+     */
+    private final CountDownLatch insertStarted = new CountDownLatch(1);
+
+    /**
+     * <p>A latch holding the insertion of the first batch until released by test.</p>
+     */
+    private CountDownLatch insertReleased = new CountDownLatch(0);
+
+    /**
+     * <p>Constructs new <code>AuditLogPipelineTests</code> instance. This implementation does nothing.</p>
+     */
+    public AuditLogPipelineTests() {
+    }
+
+    private AuditLogPipeline createPipeline(int queueSize, int batchSize, long flushInterval) {
+        final AuditMapper mapper = (AuditMapper) Proxy.newProxyInstance(AuditMapper.class.getClassLoader(),
+                new Class<?>[] {AuditMapper.class}, (proxy, method, args) -> {
+                    if ("insertAuditLogRecords".equals(method.getName())) {
+                        @SuppressWarnings("unchecked")
+                        final List<AuditLogRecord> records = (List<AuditLogRecord>) args[0];
+                        batches.add(new ArrayList<>(records));
+                        insertStarted.countDown();
+                        insertReleased.await();
+                        return records.size();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        return new AuditLogPipeline(new AuditDAO(mapper), queueSize, batchSize, flushInterval);
+    }
+
+    private static AuditLogRecord record(String action) {
+        final AuditLogRecord record = new AuditLogRecord();
+        record.setCustomerId(1);
+        record.setAction(action);
+        return record;
+    }
+
+    private List<String> insertedActions() {
+        final List<String> result = new ArrayList<>();
+        synchronized (batches) {
+            batches.forEach(batch -> batch.forEach(r -> result.add(r.getAction())));
+        }
+        return result;
+    }
+
+    @Test
+    public void testStopInsertsQueuedRecordsAsFinalBatch() {
+        final AuditLogPipeline pipeline = createPipeline(100, 50, 60000);
+        pipeline.start();
+        for (int i = 0; i < 5; i++) {
+            pipeline.submit(record("a" + i));
+        }
+
+        final long start = System.currentTimeMillis();
+        pipeline.stop();
+
+        Assert.assertTrue("Stop should not wait for the flush interval", System.currentTimeMillis() - start < 10000);
+        Assert.assertEquals(Arrays.asList("a0", "a1", "a2", "a3", "a4"), insertedActions());
+
+        // Stopping again does nothing
+        pipeline.stop();
+        Assert.assertEquals(5, insertedActions().size());
+    }
+
+    @Test
+    public void testOldestRecordsAreDroppedWhileWriterIsBusy() throws InterruptedException {
+        final int queueSize = 10;
+        final int producers = 4;
+        final int recordsPerProducer = 500;
+
+        insertReleased = new CountDownLatch(1);
+        final AuditLogPipeline pipeline = createPipeline(queueSize, 1, 60000);
+        pipeline.start();
+
+        // The writer takes the first record and is blocked by database
+        pipeline.submit(record("first"));
+        Assert.assertTrue(insertStarted.await(10, TimeUnit.SECONDS));
+
+        final List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            final Thread thread = new Thread(() -> {
+                for (int i = 0; i < recordsPerProducer; i++) {
+                    pipeline.submit(record(producer + ":" + i));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(10000);
+            Assert.assertFalse("Submitting should not be blocked by the writer", thread.isAlive());
+        }
+
+        insertReleased.countDown();
+        pipeline.stop();
+
+        final List<String> inserted = insertedActions();
+        Assert.assertEquals("first", inserted.get(0));
+        Assert.assertEquals("The queue should hold the newest records only", queueSize + 1, inserted.size());
+        Assert.assertEquals("No record should be inserted twice", inserted.size(), new HashSet<>(inserted).size());
+
+        // The records of each producer are queued in order, so the kept ones are the latest records of producer
+        for (int p = 0; p < producers; p++) {
+            final List<Integer> kept = new ArrayList<>();
+            for (String action : inserted.subList(1, inserted.size())) {
+                if (action.startsWith(p + ":")) {
+                    kept.add(Integer.parseInt(action.substring(action.indexOf(':') + 1)));
+                }
+            }
+            for (int i = 0; i < kept.size(); i++) {
+                Assert.assertEquals("Records of producer " + p + ": " + kept,
+                        Integer.valueOf(recordsPerProducer - kept.size() + i), kept.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testRecordsAreBatchedUpToBatchSize() {
+        final AuditLogPipeline pipeline = createPipeline(100, 3, 60000);
+        for (int i = 0; i < 7; i++) {
+            pipeline.submit(record("a" + i));
+        }
+        pipeline.start();
+        pipeline.stop();
+
+        final Set<Integer> sizes = new HashSet<>();
+        synchronized (batches) {
+            batches.forEach(batch -> sizes.add(batch.size()));
+        }
+        Assert.assertEquals(7, insertedActions().size());
+        Assert.assertTrue("Batch sizes: " + sizes, sizes.stream().allMatch(size -> size <= 3));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.audit.rest.filter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * <p>A benchmark comparing {@link AuditRouteMatcher} against the linear scan over the audit rules which was used to
+ * find the audit rule for a request before.</p>
+ *
+ * <p>Run by the <code>main</code> method from the test classpath, e.g. from IDE.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuditRouteMatcherBenchmark {
+
+    /**
+     * <p>A request to look up: a not audited read, an exact match, a prefix match and a miss of the audited URIs.</p>
+     */
+    @Param({"GET /rest/private/devices/search", "PUT /rest/private/devices", "DELETE /rest/private/users/25",
+            "POST /rest/private/settings/misc"})
+    public String request;
+
+    private String method;
+    private String uri;
+    private AuditRouteMatcher matcher;
+
+    /**
+     * <p>Constructs new <code>AuditRouteMatcherBenchmark</code> instance. This implementation does nothing.</p>
+     */
+    public AuditRouteMatcherBenchmark() {
+    }
+
+    @Setup
+    public void setUp() {
+        final int separator = this.request.indexOf(' ');
+        this.method = this.request.substring(0, separator);
+        this.uri = this.request.substring(separator + 1);
+        this.matcher = new AuditRouteMatcher();
+    }
+
+    @Benchmark
+    public Optional<ResourceAuditInfo> routeMatcher() {
+        return this.matcher.findAuditInfo(this.method, this.uri);
+    }
+
+    @Benchmark
+    public Optional<ResourceAuditInfo> linearScan() {
+        return linearScan(this.method, this.uri);
+    }
+
+    /**
+     * <p>Finds the audit rule for the request by checking the rules one by one as it was done before
+     * {@link AuditRouteMatcher} was introduced.</p>
+     */
+    static Optional<ResourceAuditInfo> linearScan(String requestMethod, String requestUri) {
+        return Stream.of(ResourceAuditInfo.values())
+                .filter(info -> info.getMethod().equalsIgnoreCase(requestMethod))
+                .filter(info -> info.isUriExactMatch()
+                        ? info.getUri().equals(requestUri)
+                        : requestUri.startsWith(info.getUri()))
+                .findAny();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AuditRouteMatcherBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.audit.rest.filter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * <p>A test suite for {@link AuditRouteMatcher} class.</p>
+ */
+public class AuditRouteMatcherTests {
+
+    private final AuditRouteMatcher matcher = new AuditRouteMatcher();
+
+    /**
+     * <p>Constructs new <code>AuditRouteMatcherTests</code> instance. This implementation does nothing.</p>
+     */
+    public AuditRouteMatcherTests() {
+    }
+
+    private ResourceAuditInfo find(String method, String uri) {
+        return this.matcher.findAuditInfo(method, uri).orElse(null);
+    }
+
+    @Test
+    public void testLongestPrefixWins() {
+        Assert.assertEquals(ResourceAuditInfo.REMOVE_APP_VERSION,
+                find("DELETE", "/rest/private/applications/versions/12"));
+        Assert.assertEquals(ResourceAuditInfo.REMOVE_APP, find("DELETE", "/rest/private/applications/12"));
+        Assert.assertEquals("The prefix doesn't need to end at a path separator",
+                ResourceAuditInfo.REMOVE_APP, find("DELETE", "/rest/private/applications"));
+    }
+
+    @Test
+    public void testExactRuleWinsOverPrefixRule() {
+        Assert.assertEquals(ResourceAuditInfo.UPDATE_APP_VERSION, find("PUT", "/rest/private/applications/versions"));
+        Assert.assertEquals(ResourceAuditInfo.COPY_CONFIG, find("PUT", "/rest/private/configurations/copy"));
+        Assert.assertEquals(ResourceAuditInfo.UPDATE_CONFIG, find("PUT", "/rest/private/configurations"));
+    }
+
+    @Test
+    public void testExactRuleDoesNotMatchLongerUri() {
+        Assert.assertNull(find("PUT", "/rest/private/configurations/copy/1"));
+        Assert.assertNull(find("PUT", "/rest/private/devices/1"));
+        Assert.assertNull(find("PUT", "/rest/private/device"));
+    }
+
+    @Test
+    public void testMethodIsMatched() {
+        Assert.assertEquals(ResourceAuditInfo.REMOVE_DEVICE, find("DELETE", "/rest/private/devices/1"));
+        Assert.assertEquals(ResourceAuditInfo.REMOVE_DEVICE, find("delete", "/rest/private/devices/1"));
+        Assert.assertNull(find("GET", "/rest/private/devices/1"));
+        Assert.assertNull(find("PATCH", "/rest/private/devices"));
+        Assert.assertNull(find("POST", "/rest/private/devices"));
+    }
+
+    @Test
+    public void testSameResultAsLinearScanWhereRulesDoNotOverlap() {
+        for (ResourceAuditInfo info : ResourceAuditInfo.values()) {
+            for (String uri : new String[]{info.getUri(), info.getUri() + "/1", info.getUri() + "x"}) {
+                final Optional<ResourceAuditInfo> linear = AuditRouteMatcherBenchmark.linearScan(info.getMethod(), uri);
+                final Optional<ResourceAuditInfo> routed = this.matcher.findAuditInfo(info.getMethod(), uri);
+                final long matchingRules = Stream.of(ResourceAuditInfo.values())
+                        .filter(rule -> rule.getMethod().equals(info.getMethod()))
+                        .filter(rule -> rule.isUriExactMatch() ? rule.getUri().equals(uri) : uri.startsWith(rule.getUri()))
+                        .count();
+                if (matchingRules <= 1) {
+                    Assert.assertEquals(info.getMethod() + " " + uri, linear, routed);
+                } else {
+                    Assert.assertTrue(info.getMethod() + " " + uri, routed.isPresent());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAuditedRequestsAreCounted() {
+        this.matcher.onAudited(ResourceAuditInfo.LOGIN);
+        this.matcher.onAudited(ResourceAuditInfo.LOGIN);
+        this.matcher.onAudited(ResourceAuditInfo.REMOVE_USER);
+
+        final Map<ResourceAuditInfo, Long> counts = this.matcher.getAuditCounts();
+        Assert.assertEquals(Long.valueOf(2), counts.get(ResourceAuditInfo.LOGIN));
+        Assert.assertEquals(Long.valueOf(1), counts.get(ResourceAuditInfo.REMOVE_USER));
+        Assert.assertEquals(Long.valueOf(0), counts.get(ResourceAuditInfo.DEVICE_LOCK));
+        Assert.assertEquals(ResourceAuditInfo.values().length, counts.size());
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.audit.rest.filter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>A test suite for {@link ResourceAuditor} class.</p>
+ */
+public class ResourceAuditorTests {
+
+    /**
+     * <p>Constructs new <code>ResourceAuditorTests</code> instance. This implementation does nothing.</p>
+     */
+    public ResourceAuditorTests() {
+    }
+
+    private static String status(String content) {
+        return ResourceAuditor.readResponseStatus(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testStatusIsReadFromCompleteResponse() {
+        Assert.assertEquals("OK", status("{\"status\":\"OK\",\"message\":null,\"data\":{\"id\":1}}"));
+        Assert.assertEquals("ERROR", status("{\"message\":\"error.duplicate\",\"status\":\"ERROR\"}"));
+    }
+
+    @Test
+    public void testNestedStatusFieldsAreSkipped() {
+        Assert.assertEquals("ERROR", status("{\"data\":{\"status\":\"OK\",\"items\":[{\"status\":\"OK\"}]}," +
+                "\"status\":\"ERROR\"}"));
+        Assert.assertNull(status("{\"data\":{\"status\":\"OK\"}}"));
+    }
+
+    @Test
+    public void testStatusIsReadFromTruncatedResponse() {
+        Assert.assertEquals("Status before the truncation point", "OK",
+                status("{\"status\":\"OK\",\"data\":[{\"id\":1,\"name\":\"devi"));
+        Assert.assertNull("Truncated before status", status("{\"data\":[{\"id\":1,\"name\":\"devi"));
+        Assert.assertNull("Truncated within status", status("{\"status\":\"O"));
+    }
+
+    @Test
+    public void testNonJsonResponseHasNoStatus() {
+        Assert.assertNull(status(""));
+        Assert.assertNull(status("<html><body>Internal error</body></html>"));
+        Assert.assertNull(status("[{\"status\":\"OK\"}]"));
+        Assert.assertNull(status("\"OK\""));
+        Assert.assertNull(status("{\"status\":{\"code\":\"OK\"}}"));
+    }
+
+    @Test
+    public void testPayloadIsTruncatedToLimit() {
+        Assert.assertEquals("", ResourceAuditor.truncatePayload("", 5));
+        Assert.assertEquals("12345", ResourceAuditor.truncatePayload("12345", 5));
+        Assert.assertEquals("12345... (truncated, 6 characters)", ResourceAuditor.truncatePayload("123456", 5));
+        Assert.assertEquals("... (truncated, 3 characters)", ResourceAuditor.truncatePayload("abc", 0));
+    }
+
+    @Test
+    public void testResponseCaptureIsLimited() throws Exception {
+        final ByteArrayOutputStream original = new ByteArrayOutputStream();
+        final ServletOutputStreamWrapper wrapper = new ServletOutputStreamWrapper(original, 4);
+        wrapper.write('a');
+        wrapper.write("bcdef".getBytes(StandardCharsets.UTF_8), 0, 5);
+        wrapper.write('g');
+
+        Assert.assertEquals("abcdefg", original.toString("UTF-8"));
+        Assert.assertEquals("abcd", new String(wrapper.getContent(), StandardCharsets.UTF_8));
+    }
+}
@@ -1,7 +1,7 @@
 package com.hmdm.plugins.calllog.rest.resource;
 
 import com.hmdm.persistence.UnsecureDAO;
-import com.hmdm.persistence.domain.Device;
+import com.hmdm.persistence.domain.DeviceIdentity;
 import com.hmdm.plugins.calllog.model.CallLogRecord;
 import com.hmdm.plugins.calllog.model.CallLogSettings;
 import com.hmdm.plugins.calllog.persistence.CallLogDAO;
@@ -49,7 +49,7 @@ public class CallLogPublicResource {
     ) {
         try {
             // Find device by number
-            Device device = unsecureDAO.getDeviceByNumber(deviceNumber);
+            DeviceIdentity device = unsecureDAO.getDeviceIdentityByNumber(deviceNumber);
             if (device == null) {
                 log.warn("Call log submission failed: device not found: {}", deviceNumber);
                 return Response.ERROR("error.device.not.found");
@@ -98,7 +98,7 @@ public class CallLogPublicResource {
             @ApiParam("Device number") @PathParam("deviceNumber") String deviceNumber
     ) {
         try {
-            Device device = unsecureDAO.getDeviceByNumber(deviceNumber);
+            DeviceIdentity device = unsecureDAO.getDeviceIdentityByNumber(deviceNumber);
             if (device == null) {
                 return Response.ERROR("error.device.not.found");
             }
@@ -24,6 +24,7 @@ package com.hmdm.plugins.deviceinfo;
 import com.google.inject.Module;
 import com.hmdm.plugin.PluginConfiguration;
 import com.hmdm.plugin.PluginTaskModule;
+import com.hmdm.plugins.deviceinfo.guice.module.DeviceInfoConfigureModule;
 import com.hmdm.plugins.deviceinfo.guice.module.DeviceInfoLiquibaseModule;
 import com.hmdm.plugins.deviceinfo.guice.module.DeviceInfoPersistenceModule;
 import com.hmdm.plugins.deviceinfo.guice.module.DeviceInfoRestModule;
@@ -80,6 +81,7 @@ public class DeviceInfoPluginConfigurationImpl implements PluginConfiguration {
     public List<Module> getPluginModules(ServletContext context) {
         List<Module> modules = new ArrayList<>();
 
+        modules.add(new DeviceInfoConfigureModule(context));
         modules.add(new DeviceInfoLiquibaseModule(context));
         modules.add(new DeviceInfoPersistenceModule(context));
         modules.add(new DeviceInfoRestModule());
@@ -0,0 +1,64 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.deviceinfo.guice.module;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.name.Names;
+
+import javax.servlet.ServletContext;
+
+/**
+ * <p>A module used for binding the configuration parameters of the <code>Device Info</code> plugin.</p>
+ */
+public class DeviceInfoConfigureModule extends AbstractModule {
+
+    private final String purgeChunkSizeParameter = "plugin.deviceinfo.purge.chunk.size";
+    private final String purgeChunkPauseParameter = "plugin.deviceinfo.purge.chunk.pause";
+
+    /**
+     * <p>A context for module usage.</p>
+     */
+    private final ServletContext context;
+
+    /**
+     * <p>Constructs new <code>DeviceInfoConfigureModule</code> instance. This implementation does nothing.</p>
+     */
+    public DeviceInfoConfigureModule(ServletContext context) {
+        this.context = context;
+    }
+
+    /**
+     * <p>Binds the configuration parameters to the values set in context or to the default values.</p>
+     */
+    @Override
+    protected void configure() {
+        this.bindConstant().annotatedWith(Names.named(purgeChunkSizeParameter))
+                .to(getIntParameter(purgeChunkSizeParameter, 10000));
+        this.bindConstant().annotatedWith(Names.named(purgeChunkPauseParameter))
+                .to((long) getIntParameter(purgeChunkPauseParameter, 200));
+    }
+
+    private int getIntParameter(String name, int defaultValue) {
+        final String value = this.context.getInitParameter(name);
+        return value != null && !value.equals("") ? Integer.parseInt(value) : defaultValue;
+    }
+}
@@ -25,8 +25,9 @@ import com.google.inject.Inject;
 import com.hmdm.event.EventService;
 import com.hmdm.plugin.PluginTaskModule;
 import com.hmdm.plugins.deviceinfo.persistence.CustomerCreatedEventListener;
-import com.hmdm.plugins.deviceinfo.persistence.DeviceInfoDAO;
 import com.hmdm.plugins.deviceinfo.persistence.DeviceInfoSettingsDAO;
+import com.hmdm.plugins.deviceinfo.service.DeviceInfoPurgeService;
+import com.hmdm.plugins.deviceinfo.service.DeviceInfoRollupBackfillService;
 import com.hmdm.util.BackgroundTaskRunnerService;
 
 import java.util.concurrent.TimeUnit;
@@ -43,9 +44,14 @@ public class DeviceInfoTaskModule implements PluginTaskModule {
     private final EventService eventService;
 
     /**
-     * <p>An interface to persistence layer.</p>
+     * <p>A service purging the outdated device info records.</p>
      */
-    private final DeviceInfoDAO deviceInfoDAO;
+    private final DeviceInfoPurgeService purgeService;
+
+    /**
+     * <p>A service aggregating the device info records saved before the aggregates have been introduced.</p>
+     */
+    private final DeviceInfoRollupBackfillService backfillService;
 
     private final DeviceInfoSettingsDAO settingsDAO;
     /**
@@ -58,22 +64,28 @@ public class DeviceInfoTaskModule implements PluginTaskModule {
      */
     @Inject
     public DeviceInfoTaskModule(EventService eventService,
-                                DeviceInfoDAO deviceInfoDAO,
+                                DeviceInfoPurgeService purgeService,
+                                DeviceInfoRollupBackfillService backfillService,
                                 DeviceInfoSettingsDAO settingsDAO,
                                 BackgroundTaskRunnerService taskRunner) {
         this.eventService = eventService;
-        this.deviceInfoDAO = deviceInfoDAO;
+        this.purgeService = purgeService;
+        this.backfillService = backfillService;
         this.settingsDAO = settingsDAO;
         this.taskRunner = taskRunner;
     }
 
     /**
      * <p>Initializes this module. Schedules the task for purging the outdated device info records from DB on a daily
-     * basis.</p>
+     * basis. The purge may take long, so it is run in the lane for service tasks rather than by the scheduler. The
+     * existing device info records which are not aggregated yet are aggregated in the same lane.</p>
      */
     @Override
     public void init() {
-        taskRunner.submitRepeatableTask(deviceInfoDAO::purgeDeviceInfoRecords, 1, 24, TimeUnit.HOURS);
+        taskRunner.submitTask(BackgroundTaskRunnerService.Lane.SERVICES, "deviceinfo-rollup-backfill",
+                backfillService::backfillRollups);
+        taskRunner.submitRepeatableTask(() -> taskRunner.submitTask(BackgroundTaskRunnerService.Lane.SERVICES,
+                "deviceinfo-purge", purgeService::purgeDeviceInfoRecords), 1, 24, TimeUnit.HOURS);
 
         this.eventService.addEventListener(new CustomerCreatedEventListener(this.settingsDAO));
     }
@@ -29,6 +29,7 @@ import com.hmdm.persistence.DeviceDAO;
 import com.hmdm.persistence.UnsecureDAO;
 import com.hmdm.persistence.domain.*;
 import com.hmdm.plugins.deviceinfo.persistence.domain.DeviceDynamicInfo;
+import com.hmdm.plugins.deviceinfo.persistence.domain.DeviceInfoRollup;
 import com.hmdm.plugins.deviceinfo.persistence.mapper.DeviceInfoMapper;
 import com.hmdm.plugins.deviceinfo.rest.json.DeviceDynamicInfoRecord;
 import com.hmdm.plugins.deviceinfo.rest.json.DeviceInfo;
@@ -40,13 +41,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 
 /**
@@ -59,6 +63,33 @@ public class DeviceInfoDAO {
 
     private static final Logger logger = LoggerFactory.getLogger(DeviceInfoDAO.class);
 
+    private static final Comparator<List<Long>> ROLLUP_KEY_ORDER = (k1, k2) -> {
+        for (int i = 0; i < k1.size(); i++) {
+            final int result = Long.compare(k1.get(i), k2.get(i));
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    };
+
+    /**
+     * <p>A maximum number of rows inserted by single statement. Keeps the number of statement parameters within the
+     * limit of the database driver.</p>
+     */
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    /**
+     * <p>The longest period for which the raw records are searched if the resolution is chosen automatically.</p>
+     */
+    private static final long RAW_DATA_MAX_PERIOD = 7 * DeviceInfoRollup.DAY;
+
+    /**
+     * <p>The longest period for which the hourly aggregates are searched if the resolution is chosen
+     * automatically.</p>
+     */
+    private static final long HOURLY_DATA_MAX_PERIOD = 92 * DeviceInfoRollup.DAY;
+
     /**
      * <p>An interface to persistence layer.</p>
      */
@@ -98,81 +129,122 @@ public class DeviceInfoDAO {
     }
 
     /**
-     * <p>Saves the specified list of device info records.</p>
+     * <p>Saves the specified list of device info records. The IDs for the records are allocated by single query, then
+     * each of the tables is populated by multi-row inserts, so the number of statements doesn't depend on the number
+     * of records.</p>
      *
      * @param data a list of records to be saved.
      */
     @Transactional
     public void saveDeviceDynamicData(List<DeviceDynamicInfo> data) {
-        AtomicInteger countMain = new AtomicInteger(0);
-        AtomicInteger countDevice = new AtomicInteger(0);
-        AtomicInteger countWifi = new AtomicInteger(0);
-        AtomicInteger countGps = new AtomicInteger(0);
-        AtomicInteger countMobile1 = new AtomicInteger(0);
-        AtomicInteger countMobile2 = new AtomicInteger(0);
-
-        data.forEach(record -> {
-            countMain.addAndGet(
-                    this.deviceInfoMapper.insertDeviceInfoMain(record)
-            );
-            if (record.getDevice() != null) {
-                countDevice.addAndGet(
-                    this.deviceInfoMapper.insertDeviceInfoGroupDevice(record.getId(), record.getDevice())
-                );
-            }
-            if (record.getWifi() != null) {
-                countWifi.addAndGet(
-                    this.deviceInfoMapper.insertDeviceInfoGroupWifi(record.getId(), record.getWifi())
-                );
-            }
-            if (record.getGps() != null) {
-                countGps.addAndGet(
-                    this.deviceInfoMapper.insertDeviceInfoGroupGps(record.getId(), record.getGps())
-                );
-            }
-            if (record.getMobile() != null) {
-                countMobile1.addAndGet(
-                        this.deviceInfoMapper.insertDeviceInfoGroupMobile(record.getId(), record.getMobile())
-                );
-            }
-            if (record.getMobile2() != null) {
-                countMobile2.addAndGet(
-                        this.deviceInfoMapper.insertDeviceInfoGroupMobile2(record.getId(), record.getMobile2())
-                );
-            }
-        });
+        if (data.isEmpty()) {
+            return;
+        }
+
+        final List<Integer> ids = this.deviceInfoMapper.allocateDeviceInfoIds(data.size());
+        for (int i = 0; i < data.size(); i++) {
+            data.get(i).setId(ids.get(i));
+        }
+
+        final int countMain = insertBatches(data, r -> true, this.deviceInfoMapper::insertDeviceInfoMainBatch);
+        final int countDevice = insertBatches(data, r -> r.getDevice() != null,
+                this.deviceInfoMapper::insertDeviceInfoGroupDeviceBatch);
+        final int countWifi = insertBatches(data, r -> r.getWifi() != null,
+                this.deviceInfoMapper::insertDeviceInfoGroupWifiBatch);
+        final int countGps = insertBatches(data, r -> r.getGps() != null,
+                this.deviceInfoMapper::insertDeviceInfoGroupGpsBatch);
+        final int countMobile1 = insertBatches(data, r -> r.getMobile() != null,
+                this.deviceInfoMapper::insertDeviceInfoGroupMobileBatch);
+        final int countMobile2 = insertBatches(data, r -> r.getMobile2() != null,
+                this.deviceInfoMapper::insertDeviceInfoGroupMobile2Batch);
 
         logger.debug("Number of records inserted: main {}, device group: {}, wi-fi group: {}, gps group: {}, " +
                         "mobile data group 1: {}, mobile data group 2: {} ",
-                countMain.get(),
-                countDevice.get(),
-                countWifi.get(),
-                countGps.get(),
-                countMobile1.get(),
-                countMobile2.get()
-        );
+                countMain, countDevice, countWifi, countGps, countMobile1, countMobile2);
+
+        updateRollups(data);
     }
 
     /**
-     * <p>Deletes the device info records which are older than number of days configured in customer's profile.</p>
+     * <p>Adds the specified records to the hourly and daily aggregates. The records are aggregated in memory first, so
+     * each of the affected aggregates is updated once.</p>
+     *
+     * @param data a list of saved records.
      */
-    public void purgeDeviceInfoRecords() {
-        try {
-            logger.info("Deleting outdated device parameter records...");
-
-            List<Customer> customers = unsecureDAO.getAllCustomersUnsecure();
-            for (Customer c : customers) {
-                final int count = this.deviceInfoMapper.purgeDeviceInfoRecords(c.getId());
-                if (count > 0) {
-                    logger.info("Deleted {} records from the device info for customer {}", count, c.getId());
-                }
+    private void updateRollups(List<DeviceDynamicInfo> data) {
+        final Map<List<Long>, DeviceInfoRollup> rollups = new TreeMap<>(ROLLUP_KEY_ORDER);
+        for (DeviceDynamicInfo record : data) {
+            for (long bucketSize : new long[] {DeviceInfoRollup.HOUR, DeviceInfoRollup.DAY}) {
+                final DeviceInfoRollup rollup = new DeviceInfoRollup(
+                        record.getDeviceId(), record.getCustomerId(), bucketSize, record.getTs());
+                rollups.computeIfAbsent(
+                        Arrays.asList((long) rollup.getDeviceId(), bucketSize, rollup.getBucketStart()), key -> rollup
+                ).add(record);
             }
+        }
 
-        } catch (Exception e) {
-            logger.error("Unexpected error when purging the device info records", e);
+        // The aggregates are updated in the same order by all transactions to avoid deadlocks
+        final List<DeviceInfoRollup> list = new ArrayList<>(rollups.values());
+        for (int i = 0; i < list.size(); i += INSERT_BATCH_SIZE) {
+            this.deviceInfoMapper.upsertDeviceInfoRollups(list.subList(i, Math.min(i + INSERT_BATCH_SIZE, list.size())));
         }
     }
 
+    /**
+     * <p>Adds the next chunk of the device info records saved before the aggregates have been introduced to the
+     * aggregates. The backfill state is locked by the transaction, so the chunk is aggregated once even if several
+     * servers run the backfill.</p>
+     *
+     * @param chunkSize a maximum number of record IDs to process.
+     * @return a number of record IDs left to process; <code>0</code> if all records have been aggregated.
+     */
+    @Transactional
+    public int backfillRollupsChunk(int chunkSize) {
+        final Integer lastRecordId = this.deviceInfoMapper.lockRollupBackfillPosition();
+        if (lastRecordId == null) {
+            return 0;
+        }
+        final int maxRecordId = this.deviceInfoMapper.getRollupBackfillEnd();
+        final int toId = (int) Math.min((long) lastRecordId + chunkSize, maxRecordId);
+        if (toId > lastRecordId) {
+            this.deviceInfoMapper.backfillDeviceInfoRollups(lastRecordId, toId);
+        }
+        if (toId >= maxRecordId) {
+            this.deviceInfoMapper.deleteRollupBackfillState();
+            return 0;
+        }
+        this.deviceInfoMapper.updateRollupBackfillPosition(toId);
+        return maxRecordId - toId;
+    }
+
+    /**
+     * <p>Inserts the records matching the specified filter by multi-row inserts of limited size.</p>
+     *
+     * @param data   a list of records.
+     * @param filter a filter selecting the records having the data for the table.
+     * @param insert a multi-row insert into the table.
+     * @return a number of inserted rows.
+     */
+    private static int insertBatches(List<DeviceDynamicInfo> data,
+                                     Predicate<DeviceDynamicInfo> filter,
+                                     ToIntFunction<List<DeviceDynamicInfo>> insert) {
+        int count = 0;
+        final List<DeviceDynamicInfo> batch = new ArrayList<>();
+        for (DeviceDynamicInfo record : data) {
+            if (filter.test(record)) {
+                batch.add(record);
+                if (batch.size() >= INSERT_BATCH_SIZE) {
+                    count += insert.applyAsInt(batch);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            count += insert.applyAsInt(batch);
+        }
+        return count;
+    }
+
     /**
      * <p>Gets the current detailed info for the specified device.</p>
      *
@@ -237,11 +309,61 @@ public class DeviceInfoDAO {
         return deviceInfo;
     }
 
+    /**
+     * <p>Finds the dynamic info records matching the specified filter. Depending on the requested resolution, either
+     * the raw records or the hourly or daily aggregates are returned.</p>
+     *
+     * @param filter a filter used to narrowing down the search results.
+     * @return a list of records or aggregates matching the specified filter.
+     */
     public List<DeviceDynamicInfoRecord> searchDynamicData(DynamicInfoFilter filter) {
+        filter.setRollupBucketSize(getRollupBucketSize(filter));
+        if (filter.getRollupBucketSize() != null) {
+            return this.deviceInfoMapper.searchRollupData(filter);
+        }
         return this.deviceInfoMapper.searchDynamicData(filter);
     }
 
     public long countAllDynamicData(DynamicInfoFilter filter) {
+        filter.setRollupBucketSize(getRollupBucketSize(filter));
+        if (filter.getRollupBucketSize() != null) {
+            return this.deviceInfoMapper.countAllRollupData(filter);
+        }
         return this.deviceInfoMapper.countAllDynamicData(filter);
     }
+
+    /**
+     * <p>Gets the size of the aggregation period to be used for searching the records matching the specified filter.
+     * The raw records are searched unless the aggregates are requested explicitly. For the automatic resolution, the
+     * aggregates are used for the periods longer than 7 days.</p>
+     *
+     * @param filter a filter used to narrowing down the search results.
+     * @return a size of aggregation period (in milliseconds) or <code>null</code> if raw records are to be searched.
+     */
+    static Long getRollupBucketSize(DynamicInfoFilter filter) {
+        final String resolution = filter.getResolution() == null
+                ? DynamicInfoFilter.RESOLUTION_RAW : filter.getResolution();
+        switch (resolution) {
+            case DynamicInfoFilter.RESOLUTION_HOUR:
+                return DeviceInfoRollup.HOUR;
+            case DynamicInfoFilter.RESOLUTION_DAY:
+                return DeviceInfoRollup.DAY;
+            case DynamicInfoFilter.RESOLUTION_AUTO:
+                final long period;
+                if (filter.isUseFixedInterval()) {
+                    period = filter.getFixedInterval() == null ? 0 : filter.getFixedInterval() * 1000L;
+                } else if (filter.getDateFrom() == null) {
+                    period = Long.MAX_VALUE;
+                } else {
+                    final long to = filter.getDateTo() == null ? System.currentTimeMillis() : filter.getDateToMillis();
+                    period = to - filter.getDateFromMillis();
+                }
+                if (period <= RAW_DATA_MAX_PERIOD) {
+                    return null;
+                }
+                return period <= HOURLY_DATA_MAX_PERIOD ? DeviceInfoRollup.HOUR : DeviceInfoRollup.DAY;
+            default:
+                return null;
+        }
+    }
 }
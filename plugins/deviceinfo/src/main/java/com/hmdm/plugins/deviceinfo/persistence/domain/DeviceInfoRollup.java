@@ -0,0 +1,195 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.deviceinfo.persistence.domain;
+
+/**
+ * <p>An aggregate of the device info records of a single device received within a single time bucket (hour or
+ * day). The aggregates are stored along with the raw records and are used for viewing the data over long periods.</p>
+ */
+public class DeviceInfoRollup {
+
+    public static final long HOUR = 3600 * 1000L;
+    public static final long DAY = 24 * HOUR;
+
+    private final int deviceId;
+    private final int customerId;
+    private final long bucketSize;
+    private final long bucketStart;
+
+    /**
+     * <p>A number of records aggregated into this bucket.</p>
+     */
+    private int samples;
+
+    private final Stats battery = new Stats();
+    private final Stats memoryAvailable = new Stats();
+    private Integer memoryTotal;
+    private final Stats wifiRssi = new Stats();
+    private final Stats mobileRssi = new Stats();
+
+    /**
+     * <p>A number of records reporting GPS as enabled.</p>
+     */
+    private int gpsEnabledSamples;
+
+    /**
+     * <p>The most recent location reported within the bucket.</p>
+     */
+    private Long locationTs;
+    private Double lat;
+    private Double lon;
+
+    /**
+     * <p>Constructs new <code>DeviceInfoRollup</code> instance for the bucket of specified size containing the
+     * specified time.</p>
+     */
+    public DeviceInfoRollup(int deviceId, int customerId, long bucketSize, long ts) {
+        this.deviceId = deviceId;
+        this.customerId = customerId;
+        this.bucketSize = bucketSize;
+        this.bucketStart = ts - Math.floorMod(ts, bucketSize);
+    }
+
+    /**
+     * <p>Adds the specified record to this aggregate.</p>
+     *
+     * @param record a record received within the time bucket of this aggregate.
+     */
+    public void add(DeviceDynamicInfo record) {
+        this.samples++;
+        final DeviceData device = record.getDevice();
+        if (device != null) {
+            this.battery.add(device.getBatteryLevel());
+            this.memoryAvailable.add(device.getMemoryAvailable());
+            if (device.getMemoryTotal() != null) {
+                this.memoryTotal = device.getMemoryTotal();
+            }
+            if (Boolean.TRUE.equals(device.getGps())) {
+                this.gpsEnabledSamples++;
+            }
+        }
+        if (record.getWifi() != null) {
+            this.wifiRssi.add(record.getWifi().getRssi());
+        }
+        if (record.getMobile() != null) {
+            this.mobileRssi.add(record.getMobile().getRssi());
+        }
+        final GpsData gps = record.getGps();
+        if (gps != null && gps.getLat() != null && gps.getLon() != null
+                && (this.locationTs == null || record.getTs() >= this.locationTs)) {
+            this.locationTs = record.getTs();
+            this.lat = gps.getLat();
+            this.lon = gps.getLon();
+        }
+    }
+
+    public int getDeviceId() {
+        return deviceId;
+    }
+
+    public int getCustomerId() {
+        return customerId;
+    }
+
+    public long getBucketSize() {
+        return bucketSize;
+    }
+
+    public long getBucketStart() {
+        return bucketStart;
+    }
+
+    public int getSamples() {
+        return samples;
+    }
+
+    public Stats getBattery() {
+        return battery;
+    }
+
+    public Stats getMemoryAvailable() {
+        return memoryAvailable;
+    }
+
+    public Integer getMemoryTotal() {
+        return memoryTotal;
+    }
+
+    public Stats getWifiRssi() {
+        return wifiRssi;
+    }
+
+    public Stats getMobileRssi() {
+        return mobileRssi;
+    }
+
+    public int getGpsEnabledSamples() {
+        return gpsEnabledSamples;
+    }
+
+    public Long getLocationTs() {
+        return locationTs;
+    }
+
+    public Double getLat() {
+        return lat;
+    }
+
+    public Double getLon() {
+        return lon;
+    }
+
+    /**
+     * <p>A count, minimum, maximum and sum of the values of single parameter.</p>
+     */
+    public static class Stats {
+        private int count;
+        private Integer min;
+        private Integer max;
+        private long sum;
+
+        private void add(Integer value) {
+            if (value != null) {
+                this.count++;
+                this.sum += value;
+                this.min = this.min == null ? value : Math.min(this.min, value);
+                this.max = this.max == null ? value : Math.max(this.max, value);
+            }
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public Integer getMin() {
+            return min;
+        }
+
+        public Integer getMax() {
+            return max;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+    }
+}
@@ -21,12 +21,9 @@
 
 package com.hmdm.plugins.deviceinfo.persistence.mapper;
 
-import com.hmdm.plugins.deviceinfo.persistence.domain.DeviceData;
 import com.hmdm.plugins.deviceinfo.persistence.domain.DeviceDynamicInfo;
 import com.hmdm.plugins.deviceinfo.persistence.domain.DeviceInfoPluginSettings;
-import com.hmdm.plugins.deviceinfo.persistence.domain.GpsData;
-import com.hmdm.plugins.deviceinfo.persistence.domain.MobileData;
-import com.hmdm.plugins.deviceinfo.persistence.domain.WifiData;
+import com.hmdm.plugins.deviceinfo.persistence.domain.DeviceInfoRollup;
 import com.hmdm.plugins.deviceinfo.rest.json.DeviceDynamicInfoRecord;
 import com.hmdm.plugins.deviceinfo.rest.json.DeviceInfo;
 import com.hmdm.plugins.deviceinfo.rest.json.DynamicInfoExportFilter;
@@ -36,7 +33,7 @@ import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
-import org.apache.ibatis.annotations.SelectKey;
+import org.apache.ibatis.annotations.Update;
 import org.apache.ibatis.cursor.Cursor;
 
 import java.util.List;
@@ -69,138 +66,66 @@ public interface DeviceInfoMapper {
     })
     void savePluginSettings(DeviceInfoPluginSettings settings);
 
-    @Insert("INSERT INTO plugin_deviceinfo_deviceParams (deviceId, customerId, ts) VALUES (#{deviceId}, #{customerId}, #{ts})")
-    @SelectKey(statement = "SELECT currval('plugin_deviceinfo_deviceParams_id_seq')",
-            keyColumn = "id", keyProperty = "id", before = false, resultType = int.class)
-    int insertDeviceInfoMain(DeviceDynamicInfo record);
+    /**
+     * <p>Allocates the IDs for the specified number of device info records by single call to the sequence.</p>
+     *
+     * @param count a number of IDs to allocate.
+     * @return a list of allocated IDs.
+     */
+    @Select("SELECT NEXTVAL('plugin_deviceinfo_deviceParams_id_seq') FROM generate_series(1, #{count})")
+    List<Integer> allocateDeviceInfoIds(@Param("count") int count);
+
+    int insertDeviceInfoMainBatch(@Param("records") List<DeviceDynamicInfo> records);
 
-    @Insert("INSERT INTO plugin_deviceinfo_deviceParams_device (" +
-            "  recordId," +
-            "  batteryLevel," +
-            "  batteryCharging," +
-            "  ip," +
-            "  keyguard," +
-            "  ringVolume," +
-            "  wifi," +
-            "  mobileData," +
-            "  gps," +
-            "  bluetooth," +
-            "  usbStorage," +
-            "  memoryTotal," +
-            "  memoryAvailable" +
-            ") VALUES (" +
-            "  #{recordId}," +
-            "  #{item.batteryLevel}," +
-            "  #{item.batteryCharging}," +
-            "  #{item.ip}," +
-            "  #{item.keyguard}," +
-            "  #{item.ringVolume}," +
-            "  #{item.wifi}," +
-            "  #{item.mobileData}," +
-            "  #{item.gps}," +
-            "  #{item.bluetooth}," +
-            "  #{item.usbStorage}," +
-            "  #{item.memoryTotal}," +
-            "  #{item.memoryAvailable}" +
-            ")")
-    int insertDeviceInfoGroupDevice(@Param("recordId") Integer recordId, @Param("item") DeviceData device);
+    int insertDeviceInfoGroupDeviceBatch(@Param("records") List<DeviceDynamicInfo> records);
 
-    @Insert("INSERT INTO plugin_deviceinfo_deviceParams_wifi (" +
-            "  recordId," +
-            "  rssi," +
-            "  ssid," +
-            "  security," +
-            "  state," +
-            "  ip," +
-            "  tx," +
-            "  rx" +
-            ") VALUES (" +
-            "  #{recordId}," +
-            "  #{item.rssi}," +
-            "  #{item.ssid}," +
-            "  #{item.security}," +
-            "  #{item.state}," +
-            "  #{item.ip}," +
-            "  #{item.tx}," +
-            "  #{item.rx}" +
-            ")")
-    int insertDeviceInfoGroupWifi(@Param("recordId") Integer recordId, @Param("item") WifiData wifi);
+    int insertDeviceInfoGroupWifiBatch(@Param("records") List<DeviceDynamicInfo> records);
 
-    @Insert("INSERT INTO plugin_deviceinfo_deviceParams_gps (" +
-            "  recordId," +
-            "  state," +
-            "  lat," +
-            "  lon," +
-            "  alt," +
-            "  speed," +
-            "  course" +
-            ") VALUES (" +
-            "  #{recordId}," +
-            "  #{item.state}," +
-            "  #{item.lat}," +
-            "  #{item.lon}," +
-            "  #{item.alt}," +
-            "  #{item.speed}," +
-            "  #{item.course}" +
-            ")")
-    int insertDeviceInfoGroupGps(@Param("recordId") Integer recordId, @Param("item") GpsData gps);
+    int insertDeviceInfoGroupGpsBatch(@Param("records") List<DeviceDynamicInfo> records);
 
-    @Insert("INSERT INTO plugin_deviceinfo_deviceParams_mobile (" +
-            "  recordId," +
-            "  rssi," +
-            "  carrier," +
-            "  data," +
-            "  ip," +
-            "  state," +
-            "  simState," +
-            "  tx," +
-            "  rx" +
-            ") VALUES (" +
-            "  #{recordId}," +
-            "  #{item.rssi}," +
-            "  #{item.carrier}," +
-            "  #{item.data}," +
-            "  #{item.ip}," +
-            "  #{item.state}," +
-            "  #{item.simState}," +
-            "  #{item.tx}," +
-            "  #{item.rx}" +
-            ")")
-    int insertDeviceInfoGroupMobile(@Param("recordId") Integer recordId, @Param("item") MobileData mobile);
+    int insertDeviceInfoGroupMobileBatch(@Param("records") List<DeviceDynamicInfo> records);
 
-    @Insert("INSERT INTO plugin_deviceinfo_deviceParams_mobile2 (" +
-            "  recordId," +
-            "  rssi," +
-            "  carrier," +
-            "  data," +
-            "  ip," +
-            "  state," +
-            "  simState," +
-            "  tx," +
-            "  rx" +
-            ") VALUES (" +
-            "  #{recordId}," +
-            "  #{item.rssi}," +
-            "  #{item.carrier}," +
-            "  #{item.data}," +
-            "  #{item.ip}," +
-            "  #{item.state}," +
-            "  #{item.simState}," +
-            "  #{item.tx}," +
-            "  #{item.rx}" +
-            ")")
-    int insertDeviceInfoGroupMobile2(@Param("recordId") Integer recordId, @Param("item") MobileData mobile);
+    int insertDeviceInfoGroupMobile2Batch(@Param("records") List<DeviceDynamicInfo> records);
+
+    /**
+     * <p>Gets the time before which the device info records of the specified customer are to be deleted.</p>
+     *
+     * @param customerId an ID of a customer.
+     * @return a time (in milliseconds since epoch) or <code>null</code> if customer has no plugin settings.
+     */
+    @Select("SELECT (EXTRACT(EPOCH FROM DATE_TRUNC('day', NOW() - (pds.dataPreservePeriod || ' day')::INTERVAL)) * 1000)::BIGINT " +
+            "FROM plugin_deviceinfo_settings pds " +
+            "WHERE pds.customerId = #{customerId}")
+    Long getPurgeCutoffTime(@Param("customerId") int customerId);
 
     /**
-     * <p>Deletes the device info records which are older than number of days configured in customer's profile.</p>
+     * <p>Deletes a limited number of device info records of the specified customer which are older than the specified
+     * time. The related records in the parameter group tables are deleted by cascade.</p>
      *
      * @return a number of deleted records.
      */
     @Delete("DELETE FROM plugin_deviceinfo_deviceParams " +
-            "WHERE ts < (SELECT EXTRACT(EPOCH FROM DATE_TRUNC('day', NOW() - (pds.dataPreservePeriod || ' day')::INTERVAL)) * 1000 " +
-            "            FROM plugin_deviceinfo_settings pds " +
-            "            WHERE pds.customerId =  #{customerId})")
-    int purgeDeviceInfoRecords(@Param("customerId") int customerId);
+            "WHERE id IN (SELECT id FROM plugin_deviceinfo_deviceParams " +
+            "             WHERE customerId = #{customerId} AND ts < #{cutoff} " +
+            "             LIMIT #{limit})")
+    int purgeDeviceInfoRecordsChunk(@Param("customerId") int customerId,
+                                    @Param("cutoff") long cutoff,
+                                    @Param("limit") int limit);
+
+    /**
+     * <p>Deletes a limited number of aggregates of device info records of the specified customer for the periods which
+     * end before the specified time.</p>
+     *
+     * @return a number of deleted records.
+     */
+    @Delete("DELETE FROM plugin_deviceinfo_rollup " +
+            "WHERE (deviceId, bucketSize, bucketStart) IN (" +
+            "    SELECT deviceId, bucketSize, bucketStart FROM plugin_deviceinfo_rollup " +
+            "    WHERE customerId = #{customerId} AND bucketStart < #{cutoff} AND bucketStart + bucketSize <= #{cutoff} " +
+            "    LIMIT #{limit})")
+    int purgeDeviceInfoRollupsChunk(@Param("customerId") int customerId,
+                                    @Param("cutoff") long cutoff,
+                                    @Param("limit") int limit);
 
     @Select("SELECT " +
             "    devices.id AS id," +
@@ -309,4 +234,41 @@ public interface DeviceInfoMapper {
     Cursor<DeviceDynamicInfoRecord> searchDynamicDataForExport(DynamicInfoExportFilter filter);
 
     long countAllDynamicData(DynamicInfoFilter filter);
+
+    int upsertDeviceInfoRollups(@Param("rollups") List<DeviceInfoRollup> rollups);
+
+    /**
+     * <p>Gets the ID of the last device info record aggregated by the background backfill and locks the backfill
+     * state until the end of transaction.</p>
+     *
+     * @return an ID of the last aggregated record or <code>null</code> if there are no records left to aggregate.
+     */
+    @Select("SELECT lastRecordId FROM plugin_deviceinfo_rollup_backfill FOR UPDATE")
+    Integer lockRollupBackfillPosition();
+
+    /**
+     * <p>Gets the ID of the last device info record saved before the aggregates have been introduced.</p>
+     */
+    @Select("SELECT maxRecordId FROM plugin_deviceinfo_rollup_backfill")
+    Integer getRollupBackfillEnd();
+
+    @Update("UPDATE plugin_deviceinfo_rollup_backfill SET lastRecordId = #{lastRecordId}")
+    void updateRollupBackfillPosition(@Param("lastRecordId") int lastRecordId);
+
+    @Delete("DELETE FROM plugin_deviceinfo_rollup_backfill")
+    void deleteRollupBackfillState();
+
+    /**
+     * <p>Adds the device info records having the IDs within the specified range to the hourly and daily
+     * aggregates.</p>
+     *
+     * @param fromId an ID of the record preceding the range (exclusive).
+     * @param toId   an ID of the last record of the range (inclusive).
+     * @return a number of affected aggregates.
+     */
+    int backfillDeviceInfoRollups(@Param("fromId") int fromId, @Param("toId") int toId);
+
+    List<DeviceDynamicInfoRecord> searchRollupData(DynamicInfoFilter filter);
+
+    long countAllRollupData(DynamicInfoFilter filter);
 }
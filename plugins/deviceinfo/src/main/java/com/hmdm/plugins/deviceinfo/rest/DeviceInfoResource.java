@@ -28,6 +28,7 @@ import com.hmdm.notification.PushService;
 
 import com.hmdm.persistence.UnsecureDAO;
 import com.hmdm.persistence.domain.Device;
+import com.hmdm.persistence.domain.DeviceIdentity;
 import com.hmdm.plugin.service.PluginStatusCache;
 import com.hmdm.plugins.deviceinfo.persistence.DeviceInfoDAO;
 import com.hmdm.plugins.deviceinfo.persistence.domain.DeviceDynamicInfo;
@@ -147,7 +148,7 @@ public class DeviceInfoResource {
     public Response saveDeviceInfo(@PathParam("deviceNumber") String deviceNumber, List<DeviceDynamicInfo> data) {
         try {
             // Find device and set the device ID for records
-            Device dbDevice = this.unsecureDAO.getDeviceByNumber(deviceNumber);
+            DeviceIdentity dbDevice = this.unsecureDAO.getDeviceIdentityByNumber(deviceNumber);
             if (dbDevice == null) {
                 logger.error("Device {} was not found", deviceNumber);
                 return Response.DEVICE_NOT_FOUND_ERROR();
@@ -168,6 +168,39 @@ public class DeviceDynamicInfoRecord {
     @ApiModelProperty("A number of received bytes since previous data exhange")
     private Long mobile2Rx;
 
+    @ApiModelProperty("A length of the period aggregated into this record (in milliseconds); not set for raw records")
+    private Long aggregationPeriod;
+
+    @ApiModelProperty("A number of raw records aggregated into this record")
+    private Integer samples;
+
+    @ApiModelProperty("A minimum battery level within the aggregated period")
+    private Integer deviceBatteryLevelMin;
+
+    @ApiModelProperty("A maximum battery level within the aggregated period")
+    private Integer deviceBatteryLevelMax;
+
+    @ApiModelProperty("A minimum available memory within the aggregated period")
+    private Integer deviceMemoryAvailableMin;
+
+    @ApiModelProperty("A maximum available memory within the aggregated period")
+    private Integer deviceMemoryAvailableMax;
+
+    @ApiModelProperty("An estimated time with GPS enabled within the aggregated period (in milliseconds)")
+    private Long deviceGpsEnabledTime;
+
+    @ApiModelProperty("A minimum Wi-Fi signal level within the aggregated period")
+    private Integer wifiRssiMin;
+
+    @ApiModelProperty("A maximum Wi-Fi signal level within the aggregated period")
+    private Integer wifiRssiMax;
+
+    @ApiModelProperty("A minimum mobile signal level within the aggregated period")
+    private Integer mobile1RssiMin;
+
+    @ApiModelProperty("A maximum mobile signal level within the aggregated period")
+    private Integer mobile1RssiMax;
+
 
     /**
      * <p>Constructs new <code>DeviceDynamicInfoRecord</code> instance. This implementation does nothing.</p>
@@ -536,6 +569,94 @@ public class DeviceDynamicInfoRecord {
         this.mobile2Rx = mobile2Rx;
     }
 
+    public Long getAggregationPeriod() {
+        return aggregationPeriod;
+    }
+
+    public void setAggregationPeriod(Long aggregationPeriod) {
+        this.aggregationPeriod = aggregationPeriod;
+    }
+
+    public Integer getSamples() {
+        return samples;
+    }
+
+    public void setSamples(Integer samples) {
+        this.samples = samples;
+    }
+
+    public Integer getDeviceBatteryLevelMin() {
+        return deviceBatteryLevelMin;
+    }
+
+    public void setDeviceBatteryLevelMin(Integer deviceBatteryLevelMin) {
+        this.deviceBatteryLevelMin = deviceBatteryLevelMin;
+    }
+
+    public Integer getDeviceBatteryLevelMax() {
+        return deviceBatteryLevelMax;
+    }
+
+    public void setDeviceBatteryLevelMax(Integer deviceBatteryLevelMax) {
+        this.deviceBatteryLevelMax = deviceBatteryLevelMax;
+    }
+
+    public Integer getDeviceMemoryAvailableMin() {
+        return deviceMemoryAvailableMin;
+    }
+
+    public void setDeviceMemoryAvailableMin(Integer deviceMemoryAvailableMin) {
+        this.deviceMemoryAvailableMin = deviceMemoryAvailableMin;
+    }
+
+    public Integer getDeviceMemoryAvailableMax() {
+        return deviceMemoryAvailableMax;
+    }
+
+    public void setDeviceMemoryAvailableMax(Integer deviceMemoryAvailableMax) {
+        this.deviceMemoryAvailableMax = deviceMemoryAvailableMax;
+    }
+
+    public Long getDeviceGpsEnabledTime() {
+        return deviceGpsEnabledTime;
+    }
+
+    public void setDeviceGpsEnabledTime(Long deviceGpsEnabledTime) {
+        this.deviceGpsEnabledTime = deviceGpsEnabledTime;
+    }
+
+    public Integer getWifiRssiMin() {
+        return wifiRssiMin;
+    }
+
+    public void setWifiRssiMin(Integer wifiRssiMin) {
+        this.wifiRssiMin = wifiRssiMin;
+    }
+
+    public Integer getWifiRssiMax() {
+        return wifiRssiMax;
+    }
+
+    public void setWifiRssiMax(Integer wifiRssiMax) {
+        this.wifiRssiMax = wifiRssiMax;
+    }
+
+    public Integer getMobile1RssiMin() {
+        return mobile1RssiMin;
+    }
+
+    public void setMobile1RssiMin(Integer mobile1RssiMin) {
+        this.mobile1RssiMin = mobile1RssiMin;
+    }
+
+    public Integer getMobile1RssiMax() {
+        return mobile1RssiMax;
+    }
+
+    public void setMobile1RssiMax(Integer mobile1RssiMax) {
+        this.mobile1RssiMax = mobile1RssiMax;
+    }
+
     public boolean isDeviceDataIncluded() {
         return deviceBatteryLevel != null
                 || deviceBatteryCharging != null
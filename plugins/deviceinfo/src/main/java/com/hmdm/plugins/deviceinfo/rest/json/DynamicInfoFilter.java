@@ -34,10 +34,15 @@ import java.util.Date;
  * @author isv
  */
 @ApiModel(description = "A request for searching the dynamic info records for device")
-@JsonIgnoreProperties(value = {"deviceId"}, ignoreUnknown = true)
+@JsonIgnoreProperties(value = {"deviceId", "rollupBucketSize"}, ignoreUnknown = true)
 public class DynamicInfoFilter implements Serializable {
 
     private static final long serialVersionUID = 1321492463446573290L;
+
+    public static final String RESOLUTION_AUTO = "auto";
+    public static final String RESOLUTION_RAW = "raw";
+    public static final String RESOLUTION_HOUR = "hour";
+    public static final String RESOLUTION_DAY = "day";
     @ApiModelProperty(hidden = true)
     private int deviceId;
 
@@ -77,6 +82,14 @@ public class DynamicInfoFilter implements Serializable {
     @ApiModelProperty("A flag indicating if a fixed interval is to be used for searching the records")
     private boolean useFixedInterval = true;
 
+    @ApiModelProperty(value = "A resolution of the records: raw records (default), hourly or daily aggregates, or " +
+            "chosen by the length of the requested period (auto: aggregates for the periods longer than 7 days). The " +
+            "aggregates are bucketed by UTC hours and days", allowableValues = "raw,auto,hour,day")
+    private String resolution = RESOLUTION_RAW;
+
+    @ApiModelProperty(hidden = true)
+    private Long rollupBucketSize;
+
     /**
      * <p>Constructs new <code>DynamicInfoFilter</code> instance. This implementation does nothing.</p>
      */
@@ -162,4 +175,20 @@ public class DynamicInfoFilter implements Serializable {
     public void setUseFixedInterval(boolean useFixedInterval) {
         this.useFixedInterval = useFixedInterval;
     }
+
+    public String getResolution() {
+        return resolution;
+    }
+
+    public void setResolution(String resolution) {
+        this.resolution = resolution;
+    }
+
+    public Long getRollupBucketSize() {
+        return rollupBucketSize;
+    }
+
+    public void setRollupBucketSize(Long rollupBucketSize) {
+        this.rollupBucketSize = rollupBucketSize;
+    }
 }
@@ -0,0 +1,175 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.deviceinfo.service;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.hmdm.persistence.UnsecureDAO;
+import com.hmdm.persistence.domain.Customer;
+import com.hmdm.plugins.deviceinfo.persistence.mapper.DeviceInfoMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntSupplier;
+
+/**
+ * <p>A service deleting the device info records which are older than number of days configured in customer's profile.
+ * </p>
+ *
+ * <p>The records and their hourly and daily aggregates are deleted in chunks of limited size, each chunk in a separate
+ * transaction, with a pause between the chunks. So the locks are held for a short time only and the records
+ * uploaded by devices are saved without waiting for the whole purge to complete.</p>
+ */
+@Singleton
+public class DeviceInfoPurgeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceInfoPurgeService.class);
+
+    /**
+     * <p>An interval for reporting the progress of deleting the records of single customer.</p>
+     */
+    private static final long PROGRESS_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private final DeviceInfoMapper mapper;
+
+    private final UnsecureDAO unsecureDAO;
+
+    /**
+     * <p>A maximum number of records deleted by single statement.</p>
+     */
+    private final int chunkSize;
+
+    /**
+     * <p>A pause between deleting the chunks (in milliseconds).</p>
+     */
+    private final long chunkPause;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * <p>Constructs new <code>DeviceInfoPurgeService</code> instance. This implementation does nothing.</p>
+     */
+    @Inject
+    public DeviceInfoPurgeService(DeviceInfoMapper mapper,
+                                  UnsecureDAO unsecureDAO,
+                                  @Named("plugin.deviceinfo.purge.chunk.size") int chunkSize,
+                                  @Named("plugin.deviceinfo.purge.chunk.pause") long chunkPause) {
+        this.mapper = mapper;
+        this.unsecureDAO = unsecureDAO;
+        this.chunkSize = Math.max(chunkSize, 1);
+        this.chunkPause = chunkPause;
+    }
+
+    /**
+     * <p>Deletes the outdated device info records of all customers. Does nothing if the previous purge is still
+     * running.</p>
+     */
+    public void purgeDeviceInfoRecords() {
+        if (!this.running.compareAndSet(false, true)) {
+            logger.info("Skipping the purge of device info records as the previous purge is still running");
+            return;
+        }
+        try {
+            logger.info("Deleting outdated device parameter records...");
+
+            final List<Customer> customers = this.unsecureDAO.getAllCustomersUnsecure();
+            for (Customer c : customers) {
+                try {
+                    purgeCustomerRecords(c.getId());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    logger.info("The purge of device info records has been interrupted");
+                    return;
+                } catch (Exception e) {
+                    logger.error("Unexpected error when purging the device info records for customer {}",
+                            c.getId(), e);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Unexpected error when purging the device info records", e);
+        } finally {
+            this.running.set(false);
+        }
+    }
+
+    /**
+     * <p>Deletes the outdated device info records and their aggregates of the specified customer.</p>
+     *
+     * @param customerId an ID of a customer.
+     * @throws InterruptedException if interrupted while pausing between the chunks.
+     */
+    private void purgeCustomerRecords(int customerId) throws InterruptedException {
+        final Long cutoff = this.mapper.getPurgeCutoffTime(customerId);
+        if (cutoff == null) {
+            return;
+        }
+
+        purgeChunks(customerId, "records",
+                () -> this.mapper.purgeDeviceInfoRecordsChunk(customerId, cutoff, this.chunkSize));
+        purgeChunks(customerId, "aggregates",
+                () -> this.mapper.purgeDeviceInfoRollupsChunk(customerId, cutoff, this.chunkSize));
+    }
+
+    /**
+     * <p>Deletes the outdated rows of the specified customer by chunks until a chunk of less than maximum size is
+     * deleted.</p>
+     *
+     * @param customerId an ID of a customer.
+     * @param kind       a kind of the deleted rows used for logging.
+     * @param purge      a statement deleting a single chunk and returning the number of deleted rows.
+     * @throws InterruptedException if interrupted while pausing between the chunks.
+     */
+    private void purgeChunks(int customerId, String kind, IntSupplier purge) throws InterruptedException {
+        final long start = System.currentTimeMillis();
+        long lastReport = start;
+        long total = 0;
+        int count;
+        do {
+            count = purge.getAsInt();
+            total += count;
+
+            final long now = System.currentTimeMillis();
+            if (now - lastReport >= PROGRESS_INTERVAL) {
+                logger.info("Deleting {} from the device info for customer {}: {} deleted so far, {} rows/s",
+                        kind, customerId, total, getRate(total, now - start));
+                lastReport = now;
+            }
+            if (count >= this.chunkSize && this.chunkPause > 0) {
+                Thread.sleep(this.chunkPause);
+            }
+        } while (count >= this.chunkSize);
+
+        if (total > 0) {
+            final long duration = System.currentTimeMillis() - start;
+            logger.info("Deleted {} {} from the device info for customer {} in {} ms ({} rows/s)",
+                    total, kind, customerId, duration, getRate(total, duration));
+        }
+    }
+
+    private static long getRate(long count, long duration) {
+        return duration > 0 ? count * 1000 / duration : count;
+    }
+}
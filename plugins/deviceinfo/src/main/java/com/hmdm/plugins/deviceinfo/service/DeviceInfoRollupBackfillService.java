@@ -0,0 +1,107 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.deviceinfo.service;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.hmdm.plugins.deviceinfo.persistence.DeviceInfoDAO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A service adding the device info records saved before the hourly and daily aggregates have been introduced to
+ * those aggregates.</p>
+ *
+ * <p>The records are aggregated by the ranges of their IDs, each range in a separate transaction, with a pause between
+ * the ranges. The position is saved along with each range, so the backfill is resumed after restart.</p>
+ */
+@Singleton
+public class DeviceInfoRollupBackfillService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceInfoRollupBackfillService.class);
+
+    /**
+     * <p>An interval for reporting the progress of the backfill.</p>
+     */
+    private static final long PROGRESS_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private final DeviceInfoDAO deviceInfoDAO;
+
+    /**
+     * <p>A maximum number of record IDs processed by single statement.</p>
+     */
+    private final int chunkSize;
+
+    /**
+     * <p>A pause between processing the chunks (in milliseconds).</p>
+     */
+    private final long chunkPause;
+
+    /**
+     * <p>Constructs new <code>DeviceInfoRollupBackfillService</code> instance. This implementation does nothing.</p>
+     */
+    @Inject
+    public DeviceInfoRollupBackfillService(DeviceInfoDAO deviceInfoDAO,
+                                           @Named("plugin.deviceinfo.purge.chunk.size") int chunkSize,
+                                           @Named("plugin.deviceinfo.purge.chunk.pause") long chunkPause) {
+        this.deviceInfoDAO = deviceInfoDAO;
+        this.chunkSize = Math.max(chunkSize, 1);
+        this.chunkPause = chunkPause;
+    }
+
+    /**
+     * <p>Aggregates the remaining device info records saved before the aggregates have been introduced.</p>
+     */
+    public void backfillRollups() {
+        try {
+            final long start = System.currentTimeMillis();
+            long lastReport = start;
+            int chunks = 0;
+            int remaining;
+            while ((remaining = this.deviceInfoDAO.backfillRollupsChunk(this.chunkSize)) > 0) {
+                if (chunks++ == 0) {
+                    logger.info("Aggregating the existing device info records...");
+                }
+                final long now = System.currentTimeMillis();
+                if (now - lastReport >= PROGRESS_INTERVAL) {
+                    logger.info("Aggregating the existing device info records: {} record IDs left", remaining);
+                    lastReport = now;
+                }
+                if (this.chunkPause > 0) {
+                    Thread.sleep(this.chunkPause);
+                }
+            }
+            if (chunks > 0) {
+                logger.info("Aggregated the existing device info records in {} ms",
+                        System.currentTimeMillis() - start);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.info("Aggregating the existing device info records has been interrupted");
+        } catch (Exception e) {
+            logger.error("Unexpected error when aggregating the existing device info records", e);
+        }
+    }
+}
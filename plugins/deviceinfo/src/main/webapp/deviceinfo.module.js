@@ -628,6 +628,7 @@ angular.module('plugin-deviceinfo', ['ngResource', 'ui.bootstrap', 'ui.router',
             deviceNumber: $stateParams.deviceNumber,
             useFixedInterval: true,
             fixedInterval: 24 * 3600,
+            resolution: 'raw',
             dateFrom: new Date(),
             dateTo: new Date(),
             timeFrom: new Date(),
@@ -643,6 +644,9 @@ angular.module('plugin-deviceinfo', ['ngResource', 'ui.bootstrap', 'ui.router',
                 var formData = JSON.parse(storedFormData);
                 formData.deviceNumber = $stateParams.deviceNumber;
                 formData.fixedInterval = parseInt(formData.fixedInterval);
+                if (!formData.resolution) {
+                    formData.resolution = 'raw';
+                }
                 if (formData.dateFrom) {
                     formData.dateFrom = new Date(formData.dateFrom);
                 } else {
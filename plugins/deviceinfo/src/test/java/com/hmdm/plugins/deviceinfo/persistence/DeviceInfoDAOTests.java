@@ -0,0 +1,289 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.deviceinfo.persistence;
+
+import com.hmdm.plugins.deviceinfo.persistence.domain.DeviceData;
+import com.hmdm.plugins.deviceinfo.persistence.domain.DeviceDynamicInfo;
+import com.hmdm.plugins.deviceinfo.persistence.domain.DeviceInfoRollup;
+import com.hmdm.plugins.deviceinfo.persistence.domain.WifiData;
+import com.hmdm.plugins.deviceinfo.persistence.mapper.DeviceInfoMapper;
+import com.hmdm.plugins.deviceinfo.rest.json.DynamicInfoFilter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * <p>A test suite for {@link DeviceInfoDAO} class.</p>
+ */
+public class DeviceInfoDAOTests {
+
+    /**
+     * <p>A mapping from the names of the called mapper methods to the lists of their arguments.</p>
+     */
+    private final Map<String, List<List<?>>> calls = new HashMap<>();
+
+    /**
+     * <p>A next value of the emulated ID sequence. The sequence is shared by several servers, so the allocated IDs are
+     * not necessarily consecutive.</p>
+     */
+    private int nextId = 500;
+
+    /**
+     * <p>The emulated state of the backfill of aggregates: the last processed and the last record ID. Both are
+     * <code>null</code> once the state is deleted.</p>
+     */
+    private Integer backfillPosition;
+    private Integer backfillEnd;
+
+    /**
+     * <p>The ranges of record IDs passed to backfill.</p>
+     */
+    private final List<String> backfilledRanges = new ArrayList<>();
+
+    private final DeviceInfoDAO dao;
+
+    /**
+     * <p>Constructs new <code>DeviceInfoDAOTests</code> instance. This implementation does nothing.</p>
+     */
+    public DeviceInfoDAOTests() {
+        final DeviceInfoMapper mapper = (DeviceInfoMapper) Proxy.newProxyInstance(
+                DeviceInfoMapper.class.getClassLoader(), new Class<?>[] {DeviceInfoMapper.class},
+                (proxy, method, args) -> {
+                    if ("allocateDeviceInfoIds".equals(method.getName())) {
+                        final int count = (Integer) args[0];
+                        calls.computeIfAbsent(method.getName(), k -> new ArrayList<>())
+                                .add(Collections.singletonList(count));
+                        final List<Integer> ids = new ArrayList<>();
+                        for (int i = 0; i < count; i++) {
+                            ids.add(nextId);
+                            nextId += 3;
+                        }
+                        return ids;
+                    }
+                    switch (method.getName()) {
+                        case "lockRollupBackfillPosition":
+                            return backfillPosition;
+                        case "getRollupBackfillEnd":
+                            return backfillEnd;
+                        case "updateRollupBackfillPosition":
+                            backfillPosition = (Integer) args[0];
+                            return null;
+                        case "deleteRollupBackfillState":
+                            backfillPosition = null;
+                            backfillEnd = null;
+                            return null;
+                        case "backfillDeviceInfoRollups":
+                            backfilledRanges.add(args[0] + ".." + args[1]);
+                            return 1;
+                        default:
+                            break;
+                    }
+                    if (method.getName().startsWith("insertDeviceInfo")
+                            || "upsertDeviceInfoRollups".equals(method.getName())) {
+                        final List<?> records = new ArrayList<>((List<?>) args[0]);
+                        calls.computeIfAbsent(method.getName(), k -> new ArrayList<>()).add(records);
+                        return records.size();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        this.dao = new DeviceInfoDAO(mapper, null, null, null, null);
+    }
+
+    private static DeviceDynamicInfo record(int deviceId, long ts, boolean withWifi) {
+        final DeviceDynamicInfo record = new DeviceDynamicInfo();
+        record.setDeviceId(deviceId);
+        record.setCustomerId(1);
+        record.setTs(ts);
+        final DeviceData device = new DeviceData();
+        device.setBatteryLevel(50);
+        record.setDevice(device);
+        if (withWifi) {
+            final WifiData wifi = new WifiData();
+            wifi.setRssi(-60);
+            record.setWifi(wifi);
+        }
+        return record;
+    }
+
+    private List<Integer> batchSizes(String method) {
+        return this.calls.getOrDefault(method, Collections.emptyList()).stream()
+                .map(List::size)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testEmptyListIsNotSaved() {
+        dao.saveDeviceDynamicData(new ArrayList<>());
+
+        Assert.assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    public void testIdsAreAllocatedBySingleCallInOrderOfRecords() {
+        final List<DeviceDynamicInfo> data = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            data.add(record(i + 1, DeviceInfoRollup.HOUR * i, i % 2 == 0));
+        }
+
+        dao.saveDeviceDynamicData(data);
+
+        Assert.assertEquals(Collections.singletonList(Collections.singletonList(5)), calls.get("allocateDeviceInfoIds"));
+        for (int i = 0; i < data.size(); i++) {
+            Assert.assertEquals(Integer.valueOf(500 + 3 * i), data.get(i).getId());
+        }
+
+        // The group records refer to the IDs of the main records, so the main records must be inserted first
+        Assert.assertEquals(data, calls.get("insertDeviceInfoMainBatch").get(0));
+        Assert.assertEquals(data, calls.get("insertDeviceInfoGroupDeviceBatch").get(0));
+    }
+
+    @Test
+    public void testRecordsAreInsertedInBoundedBatchesPerGroup() {
+        final List<DeviceDynamicInfo> data = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            data.add(record(i % 10 + 1, 1000L * i, i < 1200));
+        }
+
+        dao.saveDeviceDynamicData(data);
+
+        Assert.assertEquals(Collections.singletonList(Collections.singletonList(2500)), calls.get("allocateDeviceInfoIds"));
+        Assert.assertEquals(Arrays.asList(1000, 1000, 500), batchSizes("insertDeviceInfoMainBatch"));
+        Assert.assertEquals(Arrays.asList(1000, 1000, 500), batchSizes("insertDeviceInfoGroupDeviceBatch"));
+        Assert.assertEquals(Arrays.asList(1000, 200), batchSizes("insertDeviceInfoGroupWifiBatch"));
+        Assert.assertTrue(batchSizes("insertDeviceInfoGroupGpsBatch").isEmpty());
+        Assert.assertTrue(batchSizes("insertDeviceInfoGroupMobileBatch").isEmpty());
+        Assert.assertTrue(batchSizes("insertDeviceInfoGroupMobile2Batch").isEmpty());
+    }
+
+    @Test
+    public void testRollupsAreUpdatedOncePerBucketInStableOrder() {
+        final List<DeviceDynamicInfo> data = new ArrayList<>();
+        data.add(record(2, DeviceInfoRollup.HOUR + 10, false));
+        data.add(record(1, DeviceInfoRollup.HOUR + 20, false));
+        data.add(record(2, DeviceInfoRollup.HOUR + 30, false));
+        data.add(record(1, 5, false));
+
+        dao.saveDeviceDynamicData(data);
+
+        final List<List<?>> upserts = calls.get("upsertDeviceInfoRollups");
+        Assert.assertEquals(1, upserts.size());
+        final List<String> keys = upserts.get(0).stream()
+                .map(r -> (DeviceInfoRollup) r)
+                .map(r -> r.getDeviceId() + "/" + r.getBucketSize() + "/" + r.getBucketStart() + "/" + r.getSamples())
+                .collect(Collectors.toList());
+        Assert.assertEquals(Arrays.asList(
+                "1/" + DeviceInfoRollup.HOUR + "/0/1",
+                "1/" + DeviceInfoRollup.HOUR + "/" + DeviceInfoRollup.HOUR + "/1",
+                "1/" + DeviceInfoRollup.DAY + "/0/2",
+                "2/" + DeviceInfoRollup.HOUR + "/" + DeviceInfoRollup.HOUR + "/2",
+                "2/" + DeviceInfoRollup.DAY + "/0/2"
+        ), keys);
+    }
+
+    @Test
+    public void testBackfillProcessesRecordsInChunksUntilTheEnd() {
+        backfillPosition = 99;
+        backfillEnd = 350;
+
+        Assert.assertEquals(151, dao.backfillRollupsChunk(100));
+        Assert.assertEquals(Integer.valueOf(199), backfillPosition);
+        Assert.assertEquals(51, dao.backfillRollupsChunk(100));
+        Assert.assertEquals(0, dao.backfillRollupsChunk(100));
+        Assert.assertEquals(Arrays.asList("99..199", "199..299", "299..350"), backfilledRanges);
+        Assert.assertNull("The state is deleted once all records are processed", backfillPosition);
+
+        Assert.assertEquals(0, dao.backfillRollupsChunk(100));
+        Assert.assertEquals(3, backfilledRanges.size());
+    }
+
+    @Test
+    public void testBackfillOfEmptyTableDeletesState() {
+        backfillPosition = 0;
+        backfillEnd = 0;
+
+        Assert.assertEquals(0, dao.backfillRollupsChunk(100));
+        Assert.assertTrue(backfilledRanges.isEmpty());
+        Assert.assertNull(backfillPosition);
+    }
+
+    @Test
+    public void testBackfillChunkDoesNotOverflow() {
+        backfillPosition = Integer.MAX_VALUE - 10;
+        backfillEnd = Integer.MAX_VALUE - 5;
+
+        Assert.assertEquals(0, dao.backfillRollupsChunk(Integer.MAX_VALUE));
+        Assert.assertEquals(Collections.singletonList((Integer.MAX_VALUE - 10) + ".." + (Integer.MAX_VALUE - 5)),
+                backfilledRanges);
+    }
+
+    private static DynamicInfoFilter filter(String resolution, boolean useFixedInterval, Integer fixedInterval,
+                                            Long from, Long to) {
+        final DynamicInfoFilter filter = new DynamicInfoFilter();
+        filter.setResolution(resolution);
+        filter.setUseFixedInterval(useFixedInterval);
+        filter.setFixedInterval(fixedInterval);
+        filter.setDateFrom(from == null ? null : new Date(from));
+        filter.setDateTo(to == null ? null : new Date(to));
+        return filter;
+    }
+
+    @Test
+    public void testRawRecordsAreSearchedUnlessAggregatesAreRequested() {
+        Assert.assertNull(DeviceInfoDAO.getRollupBucketSize(new DynamicInfoFilter()));
+        Assert.assertNull(DeviceInfoDAO.getRollupBucketSize(filter(null, false, null, 0L, 365 * DeviceInfoRollup.DAY)));
+        Assert.assertNull(DeviceInfoDAO.getRollupBucketSize(filter("raw", false, null, null, null)));
+        Assert.assertNull(DeviceInfoDAO.getRollupBucketSize(filter("unknown", false, null, null, null)));
+        Assert.assertEquals(Long.valueOf(DeviceInfoRollup.HOUR),
+                DeviceInfoDAO.getRollupBucketSize(filter("hour", true, 3600, null, null)));
+        Assert.assertEquals(Long.valueOf(DeviceInfoRollup.DAY),
+                DeviceInfoDAO.getRollupBucketSize(filter("day", true, 3600, null, null)));
+    }
+
+    @Test
+    public void testAutomaticResolutionDependsOnLengthOfPeriod() {
+        final long day = DeviceInfoRollup.DAY;
+        final long now = System.currentTimeMillis();
+
+        Assert.assertNull(DeviceInfoDAO.getRollupBucketSize(filter("auto", true, 48 * 3600, null, null)));
+        Assert.assertNull(DeviceInfoDAO.getRollupBucketSize(filter("auto", true, null, null, null)));
+        Assert.assertNull(DeviceInfoDAO.getRollupBucketSize(filter("auto", false, null, 0L, 7 * day)));
+        Assert.assertEquals(Long.valueOf(DeviceInfoRollup.HOUR),
+                DeviceInfoDAO.getRollupBucketSize(filter("auto", false, null, 0L, 7 * day + 1)));
+        Assert.assertEquals(Long.valueOf(DeviceInfoRollup.HOUR),
+                DeviceInfoDAO.getRollupBucketSize(filter("auto", false, null, 0L, 92 * day)));
+        Assert.assertEquals(Long.valueOf(DeviceInfoRollup.DAY),
+                DeviceInfoDAO.getRollupBucketSize(filter("auto", false, null, 0L, 92 * day + 1)));
+        Assert.assertEquals("Open period ends now", Long.valueOf(DeviceInfoRollup.HOUR),
+                DeviceInfoDAO.getRollupBucketSize(filter("auto", false, null, now - 30 * day, null)));
+        Assert.assertEquals("Period without start is unbounded", Long.valueOf(DeviceInfoRollup.DAY),
+                DeviceInfoDAO.getRollupBucketSize(filter("auto", false, null, null, now)));
+    }
+}
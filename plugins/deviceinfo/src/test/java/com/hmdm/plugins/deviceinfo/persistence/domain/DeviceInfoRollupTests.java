@@ -0,0 +1,144 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.deviceinfo.persistence.domain;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>A test suite for {@link DeviceInfoRollup} class.</p>
+ */
+public class DeviceInfoRollupTests {
+
+    /**
+     * <p>Constructs new <code>DeviceInfoRollupTests</code> instance. This implementation does nothing.</p>
+     */
+    public DeviceInfoRollupTests() {
+    }
+
+    private static DeviceDynamicInfo record(long ts, Integer battery, Integer memoryAvailable, Integer memoryTotal,
+                                            Boolean gpsEnabled, Integer wifiRssi, Integer mobileRssi,
+                                            Double lat, Double lon) {
+        final DeviceDynamicInfo record = new DeviceDynamicInfo();
+        record.setDeviceId(1);
+        record.setCustomerId(2);
+        record.setTs(ts);
+        final DeviceData device = new DeviceData();
+        device.setBatteryLevel(battery);
+        device.setMemoryAvailable(memoryAvailable);
+        device.setMemoryTotal(memoryTotal);
+        device.setGps(gpsEnabled);
+        record.setDevice(device);
+        if (wifiRssi != null) {
+            final WifiData wifi = new WifiData();
+            wifi.setRssi(wifiRssi);
+            record.setWifi(wifi);
+        }
+        if (mobileRssi != null) {
+            final MobileData mobile = new MobileData();
+            mobile.setRssi(mobileRssi);
+            record.setMobile(mobile);
+        }
+        if (lat != null || lon != null) {
+            final GpsData gps = new GpsData();
+            gps.setLat(lat);
+            gps.setLon(lon);
+            record.setGps(gps);
+        }
+        return record;
+    }
+
+    @Test
+    public void testBucketIsAlignedToUtcBoundaries() {
+        final long ts = 1760000000000L + 12345L;
+        final DeviceInfoRollup hourly = new DeviceInfoRollup(1, 2, DeviceInfoRollup.HOUR, ts);
+        final DeviceInfoRollup daily = new DeviceInfoRollup(1, 2, DeviceInfoRollup.DAY, ts);
+
+        Assert.assertEquals(0, hourly.getBucketStart() % DeviceInfoRollup.HOUR);
+        Assert.assertTrue(hourly.getBucketStart() <= ts && ts < hourly.getBucketStart() + DeviceInfoRollup.HOUR);
+        Assert.assertEquals(0, daily.getBucketStart() % DeviceInfoRollup.DAY);
+        Assert.assertTrue(daily.getBucketStart() <= ts && ts < daily.getBucketStart() + DeviceInfoRollup.DAY);
+
+        Assert.assertEquals(DeviceInfoRollup.HOUR, new DeviceInfoRollup(1, 2, DeviceInfoRollup.HOUR,
+                DeviceInfoRollup.HOUR).getBucketStart());
+        Assert.assertEquals(-DeviceInfoRollup.HOUR, new DeviceInfoRollup(1, 2, DeviceInfoRollup.HOUR, -1)
+                .getBucketStart());
+    }
+
+    @Test
+    public void testStatisticsSkipMissingValues() {
+        final DeviceInfoRollup rollup = new DeviceInfoRollup(1, 2, DeviceInfoRollup.HOUR, 0);
+        rollup.add(record(10, 80, 1000, 4000, true, -50, null, null, null));
+        rollup.add(record(20, null, 3000, null, false, -70, -90, null, null));
+        rollup.add(record(30, 60, null, 8000, null, null, -80, null, null));
+
+        Assert.assertEquals(3, rollup.getSamples());
+
+        Assert.assertEquals(2, rollup.getBattery().getCount());
+        Assert.assertEquals(Integer.valueOf(60), rollup.getBattery().getMin());
+        Assert.assertEquals(Integer.valueOf(80), rollup.getBattery().getMax());
+        Assert.assertEquals(140, rollup.getBattery().getSum());
+
+        Assert.assertEquals(2, rollup.getMemoryAvailable().getCount());
+        Assert.assertEquals(4000, rollup.getMemoryAvailable().getSum());
+        Assert.assertEquals("Last reported total memory is kept", Integer.valueOf(8000), rollup.getMemoryTotal());
+
+        Assert.assertEquals(2, rollup.getWifiRssi().getCount());
+        Assert.assertEquals(Integer.valueOf(-70), rollup.getWifiRssi().getMin());
+        Assert.assertEquals(Integer.valueOf(-50), rollup.getWifiRssi().getMax());
+        Assert.assertEquals(2, rollup.getMobileRssi().getCount());
+        Assert.assertEquals(-170, rollup.getMobileRssi().getSum());
+
+        Assert.assertEquals(1, rollup.getGpsEnabledSamples());
+        Assert.assertNull(rollup.getLocationTs());
+    }
+
+    @Test
+    public void testMostRecentLocationIsKept() {
+        final DeviceInfoRollup rollup = new DeviceInfoRollup(1, 2, DeviceInfoRollup.HOUR, 0);
+        rollup.add(record(20, null, null, null, true, null, null, 1.0, 2.0));
+        rollup.add(record(10, null, null, null, true, null, null, 3.0, 4.0));
+        rollup.add(record(30, null, null, null, true, null, null, 5.0, null));
+
+        Assert.assertEquals("Records may come out of order", Long.valueOf(20), rollup.getLocationTs());
+        Assert.assertEquals(Double.valueOf(1.0), rollup.getLat());
+        Assert.assertEquals(Double.valueOf(2.0), rollup.getLon());
+
+        rollup.add(record(40, null, null, null, true, null, null, 7.0, 8.0));
+        Assert.assertEquals(Long.valueOf(40), rollup.getLocationTs());
+        Assert.assertEquals(Double.valueOf(7.0), rollup.getLat());
+        Assert.assertEquals(Double.valueOf(8.0), rollup.getLon());
+    }
+
+    @Test
+    public void testRecordWithoutGroupsIsCounted() {
+        final DeviceInfoRollup rollup = new DeviceInfoRollup(1, 2, DeviceInfoRollup.DAY, 0);
+        final DeviceDynamicInfo record = new DeviceDynamicInfo();
+        record.setTs(100);
+        rollup.add(record);
+
+        Assert.assertEquals(1, rollup.getSamples());
+        Assert.assertEquals(0, rollup.getBattery().getCount());
+        Assert.assertNull(rollup.getBattery().getMin());
+        Assert.assertEquals(0, rollup.getGpsEnabledSamples());
+    }
+}
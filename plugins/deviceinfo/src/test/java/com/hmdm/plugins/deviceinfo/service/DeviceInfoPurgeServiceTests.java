@@ -0,0 +1,224 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.deviceinfo.service;
+
+import com.hmdm.persistence.UnsecureDAO;
+import com.hmdm.persistence.domain.Customer;
+import com.hmdm.plugins.deviceinfo.persistence.mapper.DeviceInfoMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>A test suite for {@link DeviceInfoPurgeService} class.</p>
+ */
+public class DeviceInfoPurgeServiceTests {
+
+    private static final int CHUNK_SIZE = 10;
+
+    /**
+     * <p>A mapping from customer IDs to the purge cutoff times. The customers without plugin settings are not
+     * mapped.</p>
+     */
+    private final Map<Integer, Long> cutoffs = new HashMap<>();
+
+    /**
+     * <p>A mapping from customer IDs to the numbers of outdated records of those customers.</p>
+     */
+    private final Map<Integer, Integer> records = new HashMap<>();
+
+    /**
+     * <p>A mapping from customer IDs to the numbers of outdated aggregates of those customers.</p>
+     */
+    private final Map<Integer, Integer> rollups = new HashMap<>();
+
+    /**
+     * <p>The calls of the deleting statements in format <code>method:customerId:cutoff:limit</code>.</p>
+     */
+    private final List<String> deletes = new ArrayList<>();
+
+    private final List<Customer> customers = new ArrayList<>();
+
+    private Runnable onCutoffRequest = () -> {};
+
+    /**
+     * <p>Constructs new <code>DeviceInfoPurgeServiceTests</code> instance. This implementation does nothing.</p>
+     */
+    public DeviceInfoPurgeServiceTests() {
+    }
+
+    private DeviceInfoPurgeService createService(long chunkPause) {
+        final DeviceInfoMapper mapper = (DeviceInfoMapper) Proxy.newProxyInstance(
+                DeviceInfoMapper.class.getClassLoader(), new Class<?>[] {DeviceInfoMapper.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getPurgeCutoffTime":
+                            onCutoffRequest.run();
+                            final Long cutoff = cutoffs.get((Integer) args[0]);
+                            if (cutoff != null && cutoff < 0) {
+                                throw new IllegalStateException("Database is not available");
+                            }
+                            return cutoff;
+                        case "purgeDeviceInfoRecordsChunk":
+                            return deleteChunk(method.getName(), records, args);
+                        case "purgeDeviceInfoRollupsChunk":
+                            return deleteChunk(method.getName(), rollups, args);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        return new DeviceInfoPurgeService(mapper, new CustomerDAO(), CHUNK_SIZE, chunkPause);
+    }
+
+    private int deleteChunk(String method, Map<Integer, Integer> rows, Object[] args) {
+        final int customerId = (Integer) args[0];
+        final int limit = (Integer) args[2];
+        deletes.add(method + ":" + customerId + ":" + args[1] + ":" + limit);
+        final int count = Math.min(rows.getOrDefault(customerId, 0), limit);
+        rows.merge(customerId, -count, Integer::sum);
+        return count;
+    }
+
+    private void addCustomer(int id, Long cutoff, int recordCount, int rollupCount) {
+        final Customer customer = new Customer();
+        customer.setId(id);
+        customers.add(customer);
+        if (cutoff != null) {
+            cutoffs.put(id, cutoff);
+        }
+        records.put(id, recordCount);
+        rollups.put(id, rollupCount);
+    }
+
+    @Test
+    public void testRecordsAndAggregatesAreDeletedInChunks() {
+        addCustomer(1, 1000L, 25, 10);
+
+        createService(0).purgeDeviceInfoRecords();
+
+        Assert.assertEquals(Arrays.asList(
+                "purgeDeviceInfoRecordsChunk:1:1000:10",
+                "purgeDeviceInfoRecordsChunk:1:1000:10",
+                "purgeDeviceInfoRecordsChunk:1:1000:10",
+                "purgeDeviceInfoRollupsChunk:1:1000:10",
+                "purgeDeviceInfoRollupsChunk:1:1000:10"
+        ), deletes);
+        Assert.assertEquals(Integer.valueOf(0), records.get(1));
+        Assert.assertEquals(Integer.valueOf(0), rollups.get(1));
+    }
+
+    @Test
+    public void testCustomersWithoutSettingsAreSkipped() {
+        addCustomer(1, null, 5, 5);
+        addCustomer(2, 2000L, 5, 0);
+
+        createService(0).purgeDeviceInfoRecords();
+
+        Assert.assertEquals(Arrays.asList(
+                "purgeDeviceInfoRecordsChunk:2:2000:10",
+                "purgeDeviceInfoRollupsChunk:2:2000:10"
+        ), deletes);
+        Assert.assertEquals(Integer.valueOf(5), records.get(1));
+    }
+
+    @Test
+    public void testFailureForCustomerDoesNotStopPurge() {
+        addCustomer(1, -1L, 5, 5);
+        addCustomer(2, 2000L, 5, 0);
+
+        final DeviceInfoPurgeService service = createService(0);
+        service.purgeDeviceInfoRecords();
+
+        Assert.assertEquals(Integer.valueOf(0), records.get(2));
+
+        // The purge is not left in running state after the failure
+        deletes.clear();
+        records.put(2, 3);
+        service.purgeDeviceInfoRecords();
+        Assert.assertEquals(Integer.valueOf(0), records.get(2));
+    }
+
+    @Test
+    public void testPurgeIsSkippedWhilePreviousOneIsRunning() {
+        addCustomer(1, 1000L, 5, 0);
+        final DeviceInfoPurgeService service = createService(0);
+        final List<Integer> nestedDeletes = new ArrayList<>();
+        onCutoffRequest = () -> {
+            onCutoffRequest = () -> {};
+            final int before = deletes.size();
+            service.purgeDeviceInfoRecords();
+            nestedDeletes.add(deletes.size() - before);
+        };
+
+        service.purgeDeviceInfoRecords();
+
+        Assert.assertEquals(Collections.singletonList(0), nestedDeletes);
+        Assert.assertEquals(2, deletes.size());
+    }
+
+    @Test
+    public void testInterruptedPurgeStopsAndCanBeRestarted() {
+        addCustomer(1, 1000L, 25, 0);
+        addCustomer(2, 2000L, 5, 0);
+        final DeviceInfoPurgeService service = createService(10000);
+
+        Thread.currentThread().interrupt();
+        try {
+            service.purgeDeviceInfoRecords();
+            Assert.assertTrue("Interrupted status should be kept", Thread.interrupted());
+        } finally {
+            Thread.interrupted();
+        }
+
+        Assert.assertEquals(Collections.singletonList("purgeDeviceInfoRecordsChunk:1:1000:10"), deletes);
+        Assert.assertEquals(Integer.valueOf(5), records.get(2));
+
+        // The purge is not left in running state; the chunks smaller than maximum are deleted without pauses
+        deletes.clear();
+        records.put(1, 5);
+        service.purgeDeviceInfoRecords();
+        Assert.assertEquals(Integer.valueOf(0), records.get(1));
+        Assert.assertEquals(Integer.valueOf(0), records.get(2));
+    }
+
+    /**
+     * <p>A DAO providing the list of the test customers.</p>
+     */
+    private class CustomerDAO extends UnsecureDAO {
+        private CustomerDAO() {
+            super(null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null,
+                    "", 0, "");
+        }
+
+        @Override
+        public List<Customer> getAllCustomersUnsecure() {
+            return customers;
+        }
+    }
+}
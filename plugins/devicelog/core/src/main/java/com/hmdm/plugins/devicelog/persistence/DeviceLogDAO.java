@@ -21,12 +21,14 @@
 
 package com.hmdm.plugins.devicelog.persistence;
 
+import com.hmdm.persistence.domain.DeviceIdentity;
 import com.hmdm.plugins.devicelog.model.DeviceLogRecord;
-import com.hmdm.plugins.devicelog.rest.json.AppliedDeviceLogRule;
+import com.hmdm.plugins.devicelog.rest.json.AppliedDeviceLogRules;
 import com.hmdm.plugins.devicelog.rest.json.DeviceLogFilter;
 import com.hmdm.plugins.devicelog.rest.json.UploadedDeviceLogRecord;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * <p>An interface for DAO to be used for managing the device log records in persistence layer.</p>
@@ -51,6 +53,15 @@ public interface DeviceLogDAO {
      */
     long countAll(DeviceLogFilter filter);
 
+    /**
+     * <p>Passes the log records matching the specified filter to specified consumer one by one as they are read from
+     * persistent data store. The records are not paginated and are not held in memory.</p>
+     *
+     * @param filter   a filter used to narrowing down the search results.
+     * @param consumer a consumer of the log records.
+     */
+    void exportAll(DeviceLogFilter filter, Consumer<DeviceLogRecord> consumer);
+
     /**
      * <p>Inserts the specified log records uploaded by the specified device into underlying persistent data store.</p>
      *
@@ -64,8 +75,8 @@ public interface DeviceLogDAO {
     /**
      * <p>Gets the list of log rules applicable to specified device.</p>
      *
-     * @param deviceNumber an identifier of device.
-     * @return a list of applicable log rules for device.
+     * @param device a device to get the rules for.
+     * @return a list of applicable log rules for device along with the tag identifying that list.
      */
-    List<AppliedDeviceLogRule> getDeviceLogRules(String deviceNumber);
+    AppliedDeviceLogRules getDeviceLogRules(DeviceIdentity device);
 }
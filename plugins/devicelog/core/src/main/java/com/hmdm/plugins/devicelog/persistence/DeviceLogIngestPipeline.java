@@ -0,0 +1,53 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.devicelog.persistence;
+
+import com.hmdm.plugins.devicelog.rest.json.UploadedDeviceLogRecord;
+
+import java.util.List;
+
+/**
+ * <p>An interface for the pipeline collecting the log records uploaded by devices and saving them to persistent data
+ * store in background.</p>
+ */
+public interface DeviceLogIngestPipeline {
+
+    /**
+     * <p>Submits the specified log records uploaded by the specified device for saving. The records are either all
+     * accepted or all rejected.</p>
+     *
+     * @param customerId an ID of the customer owning the device.
+     * @param deviceId   an ID of the device.
+     * @param ipAddress  an IP-address of the device.
+     * @param logs       a list of log records to be saved.
+     * @return <code>true</code> if the records have been accepted; <code>false</code> if the pipeline is full and the
+     *         device has to retry later.
+     */
+    boolean submit(int customerId, int deviceId, String ipAddress, List<UploadedDeviceLogRecord> logs);
+
+    /**
+     * <p>Gets the time after which the device should retry uploading the rejected records.</p>
+     *
+     * @return a time to retry after (in seconds).
+     */
+    int getRetryAfter();
+}
@@ -0,0 +1,66 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.devicelog.rest.json;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>A list of log rules resolved for device along with the tag identifying that list. The same tag is returned for
+ * the same rules until the rules are changed, so the tag can be used as an entity tag of the response.</p>
+ */
+public class AppliedDeviceLogRules {
+
+    /**
+     * <p>A list of rules applicable to device.</p>
+     */
+    private final List<AppliedDeviceLogRule> rules;
+
+    /**
+     * <p>A tag identifying the list of rules.</p>
+     */
+    private final String tag;
+
+    /**
+     * <p>Constructs new <code>AppliedDeviceLogRules</code> instance. This implementation does nothing.</p>
+     */
+    public AppliedDeviceLogRules(List<AppliedDeviceLogRule> rules, String tag) {
+        this.rules = Collections.unmodifiableList(rules);
+        this.tag = tag;
+    }
+
+    public List<AppliedDeviceLogRule> getRules() {
+        return rules;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    @Override
+    public String toString() {
+        return "AppliedDeviceLogRules{" +
+                "rules=" + rules +
+                ", tag='" + tag + '\'' +
+                '}';
+    }
+}
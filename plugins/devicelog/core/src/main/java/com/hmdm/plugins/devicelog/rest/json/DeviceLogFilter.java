@@ -23,6 +23,7 @@ package com.hmdm.plugins.devicelog.rest.json;
 
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import java.io.Serializable;
@@ -93,6 +94,19 @@ public class DeviceLogFilter implements Serializable {
     @ApiModelProperty("A name of sorting column")
     private String sortValue = "createTime";
 
+    /**
+     * <p>A creation time of the last record of the previous page for keyset pagination.</p>
+     */
+    @ApiModelProperty("A creation time of the last record of the previous page. If set along with lastId, the page " +
+            "following that record is retrieved regardless of page number (for sorting by createTime only)")
+    private Long lastCreateTime;
+
+    /**
+     * <p>An ID of the last record of the previous page for keyset pagination.</p>
+     */
+    @ApiModelProperty("An ID of the last record of the previous page")
+    private Integer lastId;
+
     /**
      * <p>An ID of a customer.</p>
      */
@@ -111,6 +125,19 @@ public class DeviceLogFilter implements Serializable {
     @ApiModelProperty(hidden = true)
     private boolean export = false;
 
+    /**
+     * <p>A maximum number of records to be counted; if greater than zero then the count is capped by this value.</p>
+     */
+    @ApiModelProperty(hidden = true)
+    private int countLimit;
+
+    /**
+     * <p>A flag indicating if the text filters have been converted to the patterns used by database queries.</p>
+     */
+    @JsonIgnore
+    @ApiModelProperty(hidden = true)
+    private boolean prepared;
+
     /**
      * <p>Constructs new <code>DeviceLogFilter</code> instance. This implementation does nothing.</p>
      */
@@ -222,6 +249,22 @@ public class DeviceLogFilter implements Serializable {
         }
     }
 
+    public Long getLastCreateTime() {
+        return lastCreateTime;
+    }
+
+    public void setLastCreateTime(Long lastCreateTime) {
+        this.lastCreateTime = lastCreateTime;
+    }
+
+    public Integer getLastId() {
+        return lastId;
+    }
+
+    public void setLastId(Integer lastId) {
+        this.lastId = lastId;
+    }
+
     public boolean isExport() {
         return export;
     }
@@ -230,6 +273,24 @@ public class DeviceLogFilter implements Serializable {
         this.export = export;
     }
 
+    public int getCountLimit() {
+        return countLimit;
+    }
+
+    public void setCountLimit(int countLimit) {
+        this.countLimit = countLimit;
+    }
+
+    @JsonIgnore
+    public boolean isPrepared() {
+        return prepared;
+    }
+
+    @JsonIgnore
+    public void setPrepared(boolean prepared) {
+        this.prepared = prepared;
+    }
+
     @Override
     public String toString() {
         return "DeviceLogFilter{" +
@@ -242,9 +303,12 @@ public class DeviceLogFilter implements Serializable {
                 ", applicationFilter=" + applicationFilter +
                 ", severity='" + severity + '\'' +
                 ", sortValue='" + sortValue + '\'' +
+                ", lastCreateTime=" + lastCreateTime +
+                ", lastId=" + lastId +
                 ", customerId=" + customerId +
                 ", userId=" + userId +
                 ", export=" + export +
+                ", countLimit=" + countLimit +
                 '}';
     }
 }
@@ -0,0 +1,122 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.devicelog.rest.resource;
+
+import com.hmdm.plugins.devicelog.model.DeviceLogRecord;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * <p>A writer of the device log records to CSV stream. The records are written directly to the buffered output without
+ * building the intermediate strings; the fields containing commas, quotes or line breaks are quoted.</p>
+ */
+class DeviceLogCsvWriter implements Flushable, Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DateTimeFormatter dateFormat
+            = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private final Writer writer;
+
+    /**
+     * <p>Constructs new <code>DeviceLogCsvWriter</code> instance writing to the specified stream.</p>
+     */
+    DeviceLogCsvWriter(OutputStream output) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * <p>Writes the specified record as a single CSV line.</p>
+     *
+     * @param record a record to write.
+     * @throws UncheckedIOException if an I/O error occurs.
+     */
+    void write(DeviceLogRecord record) {
+        try {
+            writeField(record.getDeviceNumber());
+            writer.write(',');
+            if (record.getCreateTime() != null) {
+                dateFormat.formatTo(Instant.ofEpochMilli(record.getCreateTime()), writer);
+            }
+            writer.write(',');
+            writeField(record.getApplicationPkg());
+            writer.write(',');
+            if (record.getSeverity() != null) {
+                writer.write(record.getSeverity().name());
+            }
+            writer.write(',');
+            writeField(record.getMessage());
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeField(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            final char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    /**
+     * <p>Flushes the buffered data. The underlying stream is not closed as it is owned by container.</p>
+     */
+    @Override
+    public void close() throws IOException {
+        writer.flush();
+    }
+}
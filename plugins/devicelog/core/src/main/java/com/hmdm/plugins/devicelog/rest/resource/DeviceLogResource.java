@@ -25,15 +25,16 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import com.hmdm.persistence.UnsecureDAO;
 import com.hmdm.persistence.domain.Device;
+import com.hmdm.persistence.domain.DeviceIdentity;
 import com.hmdm.plugin.service.PluginStatusCache;
 import com.hmdm.plugins.devicelog.model.DeviceLogRecord;
 import com.hmdm.plugins.devicelog.persistence.DeviceLogDAO;
+import com.hmdm.plugins.devicelog.persistence.DeviceLogIngestPipeline;
 import com.hmdm.plugins.devicelog.rest.json.AppliedDeviceLogRule;
+import com.hmdm.plugins.devicelog.rest.json.AppliedDeviceLogRules;
 import com.hmdm.plugins.devicelog.rest.json.DeviceLogFilter;
 import com.hmdm.plugins.devicelog.rest.json.UploadedDeviceLogRecord;
-import com.hmdm.plugins.devicelog.task.InsertDeviceLogRecordsTask;
 import com.hmdm.rest.json.PaginatedData;
-import com.hmdm.rest.json.Response;
 import com.hmdm.security.SecurityContext;
 import org.glassfish.jersey.media.multipart.ContentDisposition;
 
@@ -52,16 +53,13 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
-import java.io.IOException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.hmdm.plugins.devicelog.DeviceLogPluginConfigurationImpl.PLUGIN_ID;
 
@@ -78,9 +76,6 @@ public class DeviceLogResource {
     // A logging service
     private static final Logger logger  = LoggerFactory.getLogger(DeviceLogResource.class);
 
-    // An executor for the log recrods upload tasks
-    private final ExecutorService executor = Executors.newFixedThreadPool(5);
-
     /**
      * <p>An interface to device log records persistence layer.</p>
      */
@@ -93,6 +88,11 @@ public class DeviceLogResource {
      */
     private UnsecureDAO unsecureDAO;
 
+    /**
+     * <p>A pipeline saving the uploaded log records.</p>
+     */
+    private DeviceLogIngestPipeline ingestPipeline;
+
     /**
      * <p>A constructor required by Swagger.</p>
      */
@@ -106,10 +106,12 @@ public class DeviceLogResource {
     @Inject
     public DeviceLogResource(DeviceLogDAO deviceLogDAO,
                              PluginStatusCache pluginStatusCache,
-                             UnsecureDAO unsecureDAO) {
+                             UnsecureDAO unsecureDAO,
+                             DeviceLogIngestPipeline ingestPipeline) {
         this.deviceLogDAO = deviceLogDAO;
         this.pluginStatusCache = pluginStatusCache;
         this.unsecureDAO = unsecureDAO;
+        this.ingestPipeline = ingestPipeline;
     }
 
     /**
@@ -127,20 +129,20 @@ public class DeviceLogResource {
     @POST
     @Path("/private/search")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getLogs(DeviceLogFilter filter) {
+    public com.hmdm.rest.json.Response getLogs(DeviceLogFilter filter) {
         if (!SecurityContext.get().hasPermission("plugin_devicelog_access")) {
             logger.error("Unauthorized attempt to get device logs by user " +
                     SecurityContext.get().getCurrentUserName());
-            return Response.PERMISSION_DENIED();
+            return com.hmdm.rest.json.Response.PERMISSION_DENIED();
         }
         try {
             List<DeviceLogRecord> records = this.deviceLogDAO.findAll(filter);
             long count = this.deviceLogDAO.countAll(filter);
 
-            return Response.OK(new PaginatedData<>(records, count));
+            return com.hmdm.rest.json.Response.OK(new PaginatedData<>(records, count));
         } catch (Exception e) {
             logger.error("Failed to search the log records due to unexpected error. Filter: {}", filter, e);
-            return Response.INTERNAL_ERROR();
+            return com.hmdm.rest.json.Response.INTERNAL_ERROR();
         }
     }
 
@@ -153,58 +155,20 @@ public class DeviceLogResource {
     @POST
     @Path("/private/search/export")
     @Produces(MediaType.APPLICATION_JSON)
-    public javax.ws.rs.core.Response exportLogs(DeviceLogFilter filter) {
+    public Response exportLogs(DeviceLogFilter filter) {
         if (!SecurityContext.get().hasPermission("plugin_devicelog_access")) {
             logger.error("Unauthorized attempt to get device logs by user " +
                     SecurityContext.get().getCurrentUserName());
-            return javax.ws.rs.core.Response.serverError().status(403).build();
+            return Response.serverError().status(403).build();
         }
 
-        filter.setPageNum(1);
         filter.setExport(true);
 
         ContentDisposition contentDisposition = ContentDisposition.type("attachment").fileName("logs.csv").creationDate(new Date()).build();
 
-        DateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss.SSS");
-
-        AtomicBoolean stop = new AtomicBoolean(false);
-
-
-        return javax.ws.rs.core.Response.ok( (StreamingOutput) output -> {
-            try {
-                List<DeviceLogRecord> records = this.deviceLogDAO.findAll(filter);
-                while (!stop.get() && !records.isEmpty()) {
-                    records.forEach(log -> {
-                        StringBuilder b = new StringBuilder();
-                        b.append(log.getDeviceNumber());
-                        b.append(",");
-                        b.append(dateFormat.format(new Date(log.getCreateTime())));
-                        b.append(",");
-                        b.append(log.getApplicationPkg());
-                        b.append(",");
-                        b.append(log.getSeverity());
-                        b.append(",");
-                        b.append(log.getMessage());
-                        b.append('\n');
-
-                        try {
-                            output.write(b.toString().getBytes());
-                        } catch (IOException e) {
-                            logger.error("Failed to write log record {} to output stream. Stopping to export the " +
-                                    "further log records.", log, e);
-                            stop.set(true);
-                        }
-                    });
-
-                    output.flush();
-
-                    if (!stop.get()) {
-                        filter.setPageNum(filter.getPageNum() + 1);
-                        records = this.deviceLogDAO.findAll(filter);
-                    }
-                }
-
-                output.flush();
+        return Response.ok( (StreamingOutput) output -> {
+            try (DeviceLogCsvWriter writer = new DeviceLogCsvWriter(output)) {
+                this.deviceLogDAO.exportAll(filter, writer::write);
             } catch ( Exception e ) {
                 logger.error("Failed to export the device log records due to unexpected error. Filter: {}", filter, e);
             }
@@ -217,78 +181,93 @@ public class DeviceLogResource {
 
     @ApiOperation(
             value = "Upload logs",
-            notes = "Uploads the list of log records from device to server",
-            response = Response.class
+            notes = "Uploads the list of log records from device to server. If the server is overloaded then the " +
+                    "request is rejected with status 429 and Retry-After header, and the device has to retry later.",
+            response = com.hmdm.rest.json.Response.class
     )
     @POST
     @Path("/list/{deviceNumber}")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     public Response uploadLogs(@PathParam("deviceNumber") String deviceNumber,
-                               List<UploadedDeviceLogRecord> logs,
-                               @Context HttpServletRequest httpRequest) {
+                                                List<UploadedDeviceLogRecord> logs,
+                                                @Context HttpServletRequest httpRequest) {
         logger.debug("#uploadLogs: {} => {}", deviceNumber, logs);
         try {
             final Device dbDevice = this.unsecureDAO.getDeviceByNumber(deviceNumber);
             if (dbDevice == null) {
                 logger.error("Device {} was not found", deviceNumber);
-                return Response.DEVICE_NOT_FOUND_ERROR();
+                return Response.ok(com.hmdm.rest.json.Response.DEVICE_NOT_FOUND_ERROR()).build();
             }
 
             SecurityContext.init(dbDevice.getCustomerId());
             try {
                 if (this.pluginStatusCache.isPluginDisabled(PLUGIN_ID)) {
                     logger.error("Rejecting request from device {} due to disabled plugin", deviceNumber);
-                    return Response.PLUGIN_DISABLED();
+                    return Response.ok(com.hmdm.rest.json.Response.PLUGIN_DISABLED()).build();
                 }
 
-                this.executor.submit(
-                        new InsertDeviceLogRecordsTask(deviceNumber, httpRequest.getRemoteAddr(), logs, this.deviceLogDAO)
-                );
-                return Response.OK();
+                if (!this.ingestPipeline.submit(dbDevice.getCustomerId(), dbDevice.getId(),
+                        httpRequest.getRemoteAddr(), logs)) {
+                    logger.debug("Rejecting log records from device {} due to full buffer", deviceNumber);
+                    return Response.status(429)
+                            .header("Retry-After", this.ingestPipeline.getRetryAfter())
+                            .entity(com.hmdm.rest.json.Response.ERROR("error.devicelog.overloaded"))
+                            .build();
+                }
+                return Response.ok(com.hmdm.rest.json.Response.OK()).build();
             } finally {
                 SecurityContext.release();
             }
         } catch (Exception e) {
             logger.error("Unexpected error when handling uploaded log records", e);
-            return Response.INTERNAL_ERROR();
+            return Response.ok(com.hmdm.rest.json.Response.INTERNAL_ERROR()).build();
         }
     }
 
     @ApiOperation(
             value = "Get log rules",
-            notes = "Gets the list of log rules for device",
+            notes = "Gets the list of log rules for device. The response is tagged, so the device may request the " +
+                    "rules conditionally using If-None-Match header",
             response = AppliedDeviceLogRule.class,
-            responseContainer = "List"
+            responseContainer = "List",
+            responseHeaders = {@ResponseHeader(name = "ETag")}
     )
     @GET
     @Path("/rules/{deviceNumber}")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getDeviceLogRules(@PathParam("deviceNumber") String deviceNumber) {
+    public Response getDeviceLogRules(@PathParam("deviceNumber") String deviceNumber,
+                                                       @Context Request request) {
         try {
-            final Device dbDevice = this.unsecureDAO.getDeviceByNumber(deviceNumber);
+            final DeviceIdentity dbDevice = this.unsecureDAO.getDeviceIdentityByNumber(deviceNumber);
             if (dbDevice == null) {
                 logger.error("Device {} was not found", deviceNumber);
-                return Response.DEVICE_NOT_FOUND_ERROR();
+                return Response.ok(com.hmdm.rest.json.Response.DEVICE_NOT_FOUND_ERROR()).build();
             }
 
             SecurityContext.init(dbDevice.getCustomerId());
             try {
                 if (this.pluginStatusCache.isPluginDisabled(PLUGIN_ID)) {
                     logger.error("Rejecting request from device {} due to disabled plugin", deviceNumber);
-                    return Response.PLUGIN_DISABLED();
+                    return Response.ok(com.hmdm.rest.json.Response.PLUGIN_DISABLED()).build();
                 }
 
-                final List<AppliedDeviceLogRule> deviceLogRules = this.deviceLogDAO.getDeviceLogRules(deviceNumber);
+                final AppliedDeviceLogRules deviceLogRules = this.deviceLogDAO.getDeviceLogRules(dbDevice);
                 logger.debug("#getDeviceLogRules: {} => {}", deviceNumber, deviceLogRules);
-                return Response.OK(deviceLogRules);
+
+                final EntityTag tag = new EntityTag(deviceLogRules.getTag());
+                final Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+                if (notModified != null) {
+                    return notModified.build();
+                }
+                return Response.ok(com.hmdm.rest.json.Response.OK(deviceLogRules.getRules())).tag(tag).build();
             } finally {
                 SecurityContext.release();
             }
         } catch (Exception e) {
             logger.error("Unexpected error when handling request for device log rules", e);
-            return Response.INTERNAL_ERROR();
+            return Response.ok(com.hmdm.rest.json.Response.INTERNAL_ERROR()).build();
         }
     }
 
@@ -24,6 +24,7 @@ package com.hmdm.plugins.devicelog.persistence.postgres;
 import com.google.inject.Module;
 import com.hmdm.plugin.PluginTaskModule;
 import com.hmdm.plugins.devicelog.persistence.DeviceLogPersistenceConfiguration;
+import com.hmdm.plugins.devicelog.persistence.postgres.guice.module.DeviceLogPostgresConfigureModule;
 import com.hmdm.plugins.devicelog.persistence.postgres.guice.module.DeviceLogPostgresLiquibaseModule;
 import com.hmdm.plugins.devicelog.persistence.postgres.guice.module.DeviceLogPostgresPersistenceModule;
 import com.hmdm.plugins.devicelog.persistence.postgres.guice.module.DeviceLogPostgresServiceModule;
@@ -58,6 +59,7 @@ public class DeviceLogPostgresPersistenceConfiguration implements DeviceLogPersi
         List<Module> modules = new ArrayList<>();
 
         modules.add(new DeviceLogPostgresLiquibaseModule(context));
+        modules.add(new DeviceLogPostgresConfigureModule(context));
         modules.add(new DeviceLogPostgresServiceModule());
         modules.add(new DeviceLogPostgresPersistenceModule(context));
 
@@ -23,32 +23,34 @@ package com.hmdm.plugins.devicelog.persistence.postgres.dao;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 import com.hmdm.persistence.AbstractDAO;
 import com.hmdm.persistence.CustomerDAO;
 import com.hmdm.persistence.UnsecureDAO;
 import com.hmdm.persistence.domain.Customer;
-import com.hmdm.persistence.domain.Device;
-import com.hmdm.plugins.devicelog.model.DeviceLogPluginSettings;
+import com.hmdm.persistence.domain.DeviceIdentity;
 import com.hmdm.plugins.devicelog.model.DeviceLogRecord;
-import com.hmdm.plugins.devicelog.model.DeviceLogRule;
 import com.hmdm.plugins.devicelog.model.LogLevel;
 import com.hmdm.plugins.devicelog.persistence.DeviceLogDAO;
-import com.hmdm.plugins.devicelog.persistence.DeviceLogPluginSettingsDAO;
 import com.hmdm.plugins.devicelog.persistence.postgres.dao.domain.PostgresDeviceLogRecord;
 import com.hmdm.plugins.devicelog.persistence.postgres.dao.mapper.PostgresDeviceLogMapper;
-import com.hmdm.plugins.devicelog.rest.json.AppliedDeviceLogRule;
+import com.hmdm.plugins.devicelog.rest.json.AppliedDeviceLogRules;
 import com.hmdm.plugins.devicelog.rest.json.DeviceLogFilter;
 import com.hmdm.plugins.devicelog.rest.json.UploadedDeviceLogRecord;
 import com.hmdm.security.SecurityContext;
+import org.apache.ibatis.cursor.Cursor;
 import org.mybatis.guice.transactional.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -68,18 +70,29 @@ public class PostgresDeviceLogDAO extends AbstractDAO<PostgresDeviceLogRecord> i
 
     private final UnsecureDAO unsecureDAO;
 
-    private DeviceLogPluginSettingsDAO deviceLogPluginSettingsDAO;
+    private final PostgresDeviceLogRuleIndex ruleIndex;
+
+    private final PostgresDeviceLogPartitionMaintainer partitionMaintainer;
+
+    /**
+     * <p>A maximum number of log records to be counted for search results; zero means the exact count.</p>
+     */
+    private final int searchCountLimit;
 
     /**
      * <p>Constructs new <code>PostgresDeviceLogDAO</code> instance. This implementation does nothing.</p>
      */
     @Inject
     public PostgresDeviceLogDAO(PostgresDeviceLogMapper deviceLogMapper,
-                                DeviceLogPluginSettingsDAO deviceLogPluginSettingsDAO,
-                                UnsecureDAO unsecureDAO) {
+                                PostgresDeviceLogRuleIndex ruleIndex,
+                                UnsecureDAO unsecureDAO,
+                                PostgresDeviceLogPartitionMaintainer partitionMaintainer,
+                                @Named("plugin.devicelog.search.count.limit") int searchCountLimit) {
         this.deviceLogMapper = deviceLogMapper;
+        this.searchCountLimit = searchCountLimit;
+        this.partitionMaintainer = partitionMaintainer;
         this.unsecureDAO = unsecureDAO;
-        this.deviceLogPluginSettingsDAO = deviceLogPluginSettingsDAO;
+        this.ruleIndex = ruleIndex;
     }
 
     /**
@@ -103,7 +116,8 @@ public class PostgresDeviceLogDAO extends AbstractDAO<PostgresDeviceLogRecord> i
     }
 
     /**
-     * <p>Counts the log records matching the specified filter.</p>
+     * <p>Counts the log records matching the specified filter. If the count limit is configured then the records are
+     * counted up to that limit only, so the counting stops early for the broad filters.</p>
      *
      * @param filter a filter used to narrowing down the search results.
      * @return a number of log records matching the specified filter.
@@ -114,11 +128,35 @@ public class PostgresDeviceLogDAO extends AbstractDAO<PostgresDeviceLogRecord> i
         return SecurityContext.get().getCurrentUser()
                 .map(user -> {
                     filter.setCustomerId(user.getCustomerId());
+                    filter.setUserId(user.getId());
+                    filter.setCountLimit(this.searchCountLimit);
                     return this.deviceLogMapper.countAll(filter);
                 })
                 .orElse(0L);
     }
 
+    /**
+     * <p>Passes the log records matching the specified filter to specified consumer one by one as they are read from
+     * database. The records are read by cursor within single transaction, so the result set is fetched in chunks.</p>
+     *
+     * @param filter   a filter used to narrowing down the search results.
+     * @param consumer a consumer of the log records.
+     */
+    @Override
+    @Transactional
+    public void exportAll(DeviceLogFilter filter, Consumer<DeviceLogRecord> consumer) {
+        prepareFilter(filter);
+        SecurityContext.get().getCurrentUser().ifPresent(currentUser -> {
+            filter.setCustomerId(currentUser.getCustomerId());
+            filter.setUserId(currentUser.getId());
+            try (Cursor<PostgresDeviceLogRecord> records = this.deviceLogMapper.findAllLogRecordsForExport(filter)) {
+                records.forEach(consumer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
     /**
      * <p>Inserts the specified log records uploaded by the specified device into underlying persistent data store.</p>
      *
@@ -129,7 +167,7 @@ public class PostgresDeviceLogDAO extends AbstractDAO<PostgresDeviceLogRecord> i
      */
     @Override
     public int insertDeviceLogRecords(String deviceNumber, String ipAddress, List<UploadedDeviceLogRecord> logs) {
-        final Device dbDevice = this.unsecureDAO.getDeviceByNumber(deviceNumber);
+        final DeviceIdentity dbDevice = this.unsecureDAO.getDeviceIdentityByNumber(deviceNumber);
         if (dbDevice != null) {
             // Build the cache of applications
             final Set<String> appPackages
@@ -142,7 +180,9 @@ public class PostgresDeviceLogDAO extends AbstractDAO<PostgresDeviceLogRecord> i
                     PostgresDeviceLogRecord postgresRecord = new PostgresDeviceLogRecord();
                     postgresRecord.setCustomerId(dbDevice.getCustomerId());
                     postgresRecord.setApplicationId(appCache.get(log.getPackageId()));
-                    postgresRecord.setCreateTime(log.getTimestamp());
+                    // The time is required by the table partitioned by this time
+                    postgresRecord.setCreateTime(log.getTimestamp() != null
+                            ? log.getTimestamp() : System.currentTimeMillis());
                     postgresRecord.setDeviceId(dbDevice.getId());
                     postgresRecord.setMessage(log.getMessage());
                     postgresRecord.setSeverity(LogLevel.byId(log.getLogLevel()).orElse(LogLevel.NONE));
@@ -168,76 +208,27 @@ public class PostgresDeviceLogDAO extends AbstractDAO<PostgresDeviceLogRecord> i
     /**
      * <p>Gets the list of log rules applicable to specified device.</p>
      *
-     * @param deviceNumber an identifier of device.
-     * @return a list of applicable log rules for device.
+     * @param device a device to get the rules for.
+     * @return a list of applicable log rules for device along with the tag identifying that list.
      */
     @Override
-    public List<AppliedDeviceLogRule> getDeviceLogRules(String deviceNumber) {
-        final Device dbDevice = this.unsecureDAO.getDeviceByNumber(deviceNumber);
-        if (dbDevice != null) {
-            final DeviceLogPluginSettings deviceLogSettings
-                    = this.deviceLogPluginSettingsDAO.getPluginSettings(dbDevice.getCustomerId());
-            if (deviceLogSettings != null) {
-                List<DeviceLogRule> rules = deviceLogSettings.getRules();
-                if (rules != null && !rules.isEmpty()) {
-                    rules = rules.stream()
-                            .filter(DeviceLogRule::isActive)
-                            .filter(r -> r.getSeverity() != LogLevel.NONE)
-                            .collect(Collectors.toList());
-
-                    final List<DeviceLogRule> defaultRules = rules.stream()
-                            .filter(r -> r.getConfigurationId() == null)
-                            .filter(r -> r.getGroupId() == null)
-                            .filter(r -> r.getDevices() == null || r.getDevices().isEmpty())
-                            .collect(Collectors.toList());
-
-                    List<DeviceLogRule> resultingRules = defaultRules;
-
-                    if (dbDevice.getConfigurationId() != null) {
-                        final List<DeviceLogRule> configurationRules = rules.stream()
-                                .filter(r -> r.getConfigurationId() != null)
-                                .filter(r -> r.getConfigurationId().equals(dbDevice.getConfigurationId()))
-                                .collect(Collectors.toList());
-
-                        resultingRules = combineDeviceLogRules(resultingRules, configurationRules);
-                    }
-
-                    if (dbDevice.getGroups() != null && !dbDevice.getGroups().isEmpty()) {
-                        final List<DeviceLogRule> groupRules = rules.stream()
-                                .filter(r -> r.getGroupId() != null)
-                                .filter(r -> dbDevice.getGroups().stream().anyMatch(g -> g.getId() == r.getGroupId()))
-                                .collect(Collectors.toList());
-
-                        resultingRules = combineDeviceLogRules(resultingRules, groupRules);
-                    }
-
-                    final List<DeviceLogRule> deviceRules = rules.stream()
-                            .filter(r -> r.getDevices() != null)
-                            .filter(r -> !r.getDevices().isEmpty())
-                            .filter(r -> r.getDevices().stream().anyMatch(d -> d.getId() == dbDevice.getId()))
-                            .collect(Collectors.toList());
-
-                    resultingRules = combineDeviceLogRules(resultingRules, deviceRules);
-
-
-                    final List<AppliedDeviceLogRule> result
-                            = resultingRules.stream().map(AppliedDeviceLogRule::new).collect(Collectors.toList());
-
-                    return result;
-                }
-            }
-        }
-
-        return new ArrayList<>();
+    public AppliedDeviceLogRules getDeviceLogRules(DeviceIdentity device) {
+        return this.ruleIndex.getDeviceLogRules(device);
     }
 
     /**
-     * <p>Deletes the log records which are older than number of days configured in customer's profile.</p>
+     * <p>Deletes the log records which are older than number of days configured in customer's profile. If the log
+     * records table is partitioned then the outdated partitions are dropped as a whole.</p>
      */
     public void purgeLogRecords() {
         try {
             logger.info("Deleting outdated records from the device logs...");
 
+            if (this.partitionMaintainer.isPartitioned()) {
+                this.partitionMaintainer.purgeLogRecords();
+                return;
+            }
+
             List<Customer> customers = unsecureDAO.getAllCustomersUnsecure();
             for (Customer c : customers) {
                 final int count = this.deviceLogMapper.purgeLogRecords(c.getId());
@@ -253,53 +244,37 @@ public class PostgresDeviceLogDAO extends AbstractDAO<PostgresDeviceLogRecord> i
 
 
     /**
-     * <p>Prepares the filter for usage by mapper.</p>
+     * <p>Prepares the filter for usage by mapper. The text filters are converted to the substring patterns with the
+     * wildcard characters escaped, so they are matched literally (and the trigram indexes are used if created). The
+     * filter is prepared only once even if used for several queries.</p>
      *
      * @param filter a filter provided by request.
      */
     private static void prepareFilter(DeviceLogFilter filter) {
-        if (filter.getDeviceFilter() != null) {
-            if (filter.getDeviceFilter().trim().isEmpty()) {
-                filter.setDeviceFilter(null);
-            } else {
-                filter.setDeviceFilter('%' + filter.getDeviceFilter().trim() + '%');
-            }
-        }
-        if (filter.getMessageFilter() != null) {
-            if (filter.getMessageFilter().trim().isEmpty()) {
-                filter.setMessageFilter(null);
-            } else {
-                filter.setMessageFilter('%' + filter.getMessageFilter().trim() + '%');
-            }
-        }
-        if (filter.getApplicationFilter() != null) {
-            if (filter.getApplicationFilter().trim().isEmpty()) {
-                filter.setApplicationFilter(null);
-            } else {
-                filter.setApplicationFilter('%' + filter.getApplicationFilter().trim() + '%');
-            }
+        if (filter.isPrepared()) {
+            return;
         }
+        filter.setDeviceFilter(toSubstringPattern(filter.getDeviceFilter()));
+        filter.setMessageFilter(toSubstringPattern(filter.getMessageFilter()));
+        filter.setApplicationFilter(toSubstringPattern(filter.getApplicationFilter()));
+        filter.setPrepared(true);
     }
 
     /**
-     * <p>Combines the specified list of device log rules into a single list.</p>
+     * <p>Converts the specified text to the pattern for <code>ILIKE</code> matching the values containing that
+     * text.</p>
      *
-     * @param lessPreferred a list of less preferred rules.
-     * @param morePreferred a list of more preferred rules.
-     * @return a resulting list of rules.
+     * @param text a text to search for.
+     * @return a pattern or <code>null</code> if text is empty.
      */
-    private static List<DeviceLogRule> combineDeviceLogRules(List<DeviceLogRule> lessPreferred, List<DeviceLogRule> morePreferred) {
-        final Map<String, DeviceLogRule> moreMapping
-                = morePreferred.stream().collect(Collectors.toMap(DeviceLogRule::getApplicationPkg, r -> r, (r1, r2) -> r1));
-
-        List<DeviceLogRule> result = new ArrayList<>();
-
-        lessPreferred.stream()
-                .filter(less -> !moreMapping.containsKey(less.getApplicationPkg()))
-                .forEach(result::add);
-
-        result.addAll(morePreferred);
-
-        return result;
+    private static String toSubstringPattern(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return null;
+        }
+        final String escaped = text.trim()
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        return '%' + escaped + '%';
     }
 }
@@ -0,0 +1,469 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.devicelog.persistence.postgres.dao;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.hmdm.persistence.UnsecureDAO;
+import com.hmdm.plugins.devicelog.model.LogLevel;
+import com.hmdm.plugins.devicelog.persistence.DeviceLogIngestPipeline;
+import com.hmdm.plugins.devicelog.persistence.postgres.dao.domain.PostgresDeviceLogRecord;
+import com.hmdm.plugins.devicelog.persistence.postgres.dao.mapper.PostgresDeviceLogMapper;
+import com.hmdm.plugins.devicelog.rest.json.UploadedDeviceLogRecord;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A pipeline collecting the log records uploaded by all devices into a single bounded buffer and saving them to
+ * <code>Postgres</code> database by <code>COPY FROM STDIN</code> statements in batches.</p>
+ *
+ * <p>A batch is written once it reaches <code>plugin.devicelog.ingest.batch.size</code> records or once
+ * <code>plugin.devicelog.ingest.flush.interval</code> milliseconds have passed since its first record was taken from
+ * the buffer. The uploads which do not fit the buffer are rejected, so the devices retry them later. The records
+ * waiting in the buffer are saved when the pipeline is stopped on shutdown.</p>
+ */
+@Singleton
+public class PostgresDeviceLogIngestPipeline implements DeviceLogIngestPipeline {
+
+    /**
+     * <p>A logger to be used for logging the events.</p>
+     */
+    private static final Logger logger = LoggerFactory.getLogger(PostgresDeviceLogIngestPipeline.class);
+
+    private static final String COPY_SQL = "COPY plugin_devicelog_log " +
+            "(createTime, customerId, deviceId, applicationId, ipAddress, severity, severityOrder, message) " +
+            "FROM STDIN WITH (FORMAT csv)";
+
+    /**
+     * <p>A value resolved for the packages which are not known to customer.</p>
+     */
+    private static final int UNKNOWN_APPLICATION = 0;
+
+    static final int MAX_RETRY_AFTER = 60;
+
+    /**
+     * <p>A maximum time for saving the records waiting in buffer on stop (in milliseconds).</p>
+     */
+    private static final long STOP_TIMEOUT = 30000;
+
+    /**
+     * <p>A maximum time for waiting for the records before checking whether the pipeline is stopped (in
+     * milliseconds).</p>
+     */
+    private static final long STOP_CHECK_INTERVAL = 100;
+
+    private final DataSource dataSource;
+    private final PostgresDeviceLogMapper deviceLogMapper;
+    private final UnsecureDAO unsecureDAO;
+    private final int batchSize;
+    private final long flushInterval;
+
+    /**
+     * <p>A buffer of the records waiting for saving.</p>
+     */
+    private final BlockingQueue<PendingRecord> buffer;
+
+    /**
+     * <p>A mapping from customer IDs and application packages to the IDs of applications. The packages which are not
+     * known to customer are not cached, so the records are saved as soon as the application is added.</p>
+     */
+    private final Cache<String, Integer> applicationIds = CacheBuilder.newBuilder()
+            .maximumSize(100000)
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .build();
+
+    private Thread writerThread;
+
+    private volatile boolean running;
+
+    private final AtomicLong acceptedUploads = new AtomicLong();
+    private final AtomicLong rejectedUploads = new AtomicLong();
+    private final AtomicLong acceptedRecords = new AtomicLong();
+    private final AtomicLong writtenRecords = new AtomicLong();
+    private final AtomicLong failedRecords = new AtomicLong();
+    private final AtomicLong skippedRecords = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong totalWriteTime = new AtomicLong();
+    private final AtomicLong maxWriteTime = new AtomicLong();
+
+    private long lastStatsTime = System.currentTimeMillis();
+    private long lastStatsAccepted;
+    private long lastStatsWritten;
+
+    /**
+     * <p>Constructs new <code>PostgresDeviceLogIngestPipeline</code> instance. This implementation does nothing.</p>
+     */
+    @Inject
+    public PostgresDeviceLogIngestPipeline(DataSource dataSource,
+                                           PostgresDeviceLogMapper deviceLogMapper,
+                                           UnsecureDAO unsecureDAO,
+                                           @Named("plugin.devicelog.ingest.buffer.size") int bufferSize,
+                                           @Named("plugin.devicelog.ingest.batch.size") int batchSize,
+                                           @Named("plugin.devicelog.ingest.flush.interval") long flushInterval) {
+        this.dataSource = dataSource;
+        this.deviceLogMapper = deviceLogMapper;
+        this.unsecureDAO = unsecureDAO;
+        this.buffer = new ArrayBlockingQueue<>(Math.max(bufferSize, 1));
+        this.batchSize = Math.max(batchSize, 1);
+        this.flushInterval = Math.max(flushInterval, 1);
+    }
+
+    /**
+     * <p>Starts the thread saving the records from the buffer.</p>
+     */
+    public synchronized void start() {
+        if (writerThread == null) {
+            running = true;
+            writerThread = new Thread(this::writeLoop, "devicelog-ingest");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+
+    /**
+     * <p>Stops accepting the uploads and waits for the records waiting in buffer to be saved.</p>
+     */
+    public void stop() {
+        final Thread thread;
+        synchronized (this) {
+            thread = writerThread;
+            writerThread = null;
+            running = false;
+        }
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join(STOP_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            logger.warn("Device log records are not saved on stop in {} ms, {} records are lost", STOP_TIMEOUT,
+                    buffer.size());
+            thread.interrupt();
+        }
+        logStats();
+    }
+
+    /**
+     * <p>Submits the specified log records uploaded by the specified device for saving. The records are either all
+     * accepted or all rejected.</p>
+     *
+     * @param customerId an ID of the customer owning the device.
+     * @param deviceId   an ID of the device.
+     * @param ipAddress  an IP-address of the device.
+     * @param logs       a list of log records to be saved.
+     * @return <code>true</code> if the records have been accepted; <code>false</code> if the buffer is full.
+     */
+    @Override
+    public boolean submit(int customerId, int deviceId, String ipAddress, List<UploadedDeviceLogRecord> logs) {
+        if (logs == null || logs.isEmpty()) {
+            return true;
+        }
+        final List<PendingRecord> records = new ArrayList<>(logs.size());
+        for (UploadedDeviceLogRecord log : logs) {
+            final PostgresDeviceLogRecord record = new PostgresDeviceLogRecord();
+            record.setCustomerId(customerId);
+            record.setDeviceId(deviceId);
+            // The time is required by the table partitioned by this time
+            record.setCreateTime(log.getTimestamp() != null ? log.getTimestamp() : System.currentTimeMillis());
+            record.setIpAddress(ipAddress);
+            record.setMessage(log.getMessage());
+            record.setSeverity(LogLevel.byId(log.getLogLevel()).orElse(LogLevel.NONE));
+            records.add(new PendingRecord(record, log.getPackageId()));
+        }
+
+        // The remaining capacity may only grow between the check and adding since the producers are serialized
+        synchronized (this) {
+            if (writerThread == null || buffer.remainingCapacity() < records.size()) {
+                if (rejectedUploads.incrementAndGet() % 1000 == 1) {
+                    logger.warn("Device log buffer is full, rejecting the uploads (rejected so far: {})",
+                            rejectedUploads.get());
+                }
+                return false;
+            }
+            buffer.addAll(records);
+        }
+        acceptedUploads.incrementAndGet();
+        acceptedRecords.addAndGet(records.size());
+        return true;
+    }
+
+    /**
+     * <p>Gets the time after which the device should retry uploading the rejected records. The time is estimated from
+     * the number of records in buffer and the rate of writing them.</p>
+     *
+     * @return a time to retry after (in seconds).
+     */
+    @Override
+    public int getRetryAfter() {
+        return estimateRetryAfter(buffer.size(), totalWriteTime.get(), writtenRecords.get() + failedRecords.get());
+    }
+
+    /**
+     * <p>Estimates the time needed for writing the specified number of records.</p>
+     *
+     * @param buffered a number of records waiting in buffer.
+     * @param writeTime a total time spent on writing the records so far (in milliseconds).
+     * @param written a number of records written so far.
+     * @return a time to retry after (in seconds).
+     */
+    static int estimateRetryAfter(int buffered, long writeTime, long written) {
+        if (writeTime == 0 || written == 0) {
+            return MAX_RETRY_AFTER;
+        }
+        final long seconds = buffered * writeTime / written / 1000 + 1;
+        return (int) Math.min(seconds, MAX_RETRY_AFTER);
+    }
+
+    /**
+     * <p>Outputs the statistics of the pipeline to log.</p>
+     */
+    public synchronized void logStats() {
+        final long now = System.currentTimeMillis();
+        final long accepted = acceptedRecords.get();
+        final long written = writtenRecords.get();
+        final long batchCount = batches.get();
+        final double seconds = Math.max(now - lastStatsTime, 1) / 1000.0;
+        logger.info("Device log ingest stats: buffer: {}/{}, uploads accepted: {}, rejected: {}, records accepted: {}, " +
+                        "written: {}, failed: {}, skipped: {}, ingest rate: {} records/s, write rate: {} records/s, " +
+                        "batches: {}, avg/max batch write time: {}/{} ms",
+                buffer.size(), buffer.size() + buffer.remainingCapacity(), acceptedUploads.get(),
+                rejectedUploads.get(), accepted, written, failedRecords.get(), skippedRecords.get(),
+                Math.round((accepted - lastStatsAccepted) / seconds), Math.round((written - lastStatsWritten) / seconds),
+                batchCount, batchCount > 0 ? totalWriteTime.get() / batchCount : 0, maxWriteTime.get());
+        lastStatsTime = now;
+        lastStatsAccepted = accepted;
+        lastStatsWritten = written;
+    }
+
+    private void writeLoop() {
+        final List<PendingRecord> batch = new ArrayList<>(batchSize);
+        while (running && !Thread.currentThread().isInterrupted()) {
+            try {
+                final PendingRecord first = buffer.poll(Math.min(flushInterval, STOP_CHECK_INTERVAL),
+                        TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                final long deadline = System.currentTimeMillis() + flushInterval;
+                while (batch.size() < batchSize && running) {
+                    if (buffer.drainTo(batch, batchSize - batch.size()) == 0) {
+                        final long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            break;
+                        }
+                        final PendingRecord next = buffer.poll(Math.min(remaining, STOP_CHECK_INTERVAL),
+                                TimeUnit.MILLISECONDS);
+                        if (next != null) {
+                            batch.add(next);
+                        }
+                    }
+                }
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.error("Unexpected error when saving the device log records", e);
+            } finally {
+                batch.clear();
+            }
+        }
+
+        // The records left in buffer on stop are saved without waiting for the batch to be filled
+        while (!Thread.currentThread().isInterrupted() && buffer.drainTo(batch, batchSize) > 0) {
+            try {
+                writeBatch(batch);
+            } catch (Exception e) {
+                logger.error("Unexpected error when saving the device log records", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<PendingRecord> batch) {
+        final long start = System.currentTimeMillis();
+        final List<PostgresDeviceLogRecord> records = resolveApplications(batch);
+        if (records.isEmpty()) {
+            return;
+        }
+
+        try {
+            copy(records);
+            writtenRecords.addAndGet(records.size());
+        } catch (Exception e) {
+            logger.error("Failed to copy {} device log records, inserting them instead", records.size(), e);
+            try {
+                deviceLogMapper.insertDeviceLogRecords(records);
+                writtenRecords.addAndGet(records.size());
+            } catch (Exception e1) {
+                failedRecords.addAndGet(records.size());
+                logger.error("Failed to insert {} device log records. These records will be skipped.",
+                        records.size(), e1);
+            }
+        }
+
+        final long writeTime = System.currentTimeMillis() - start;
+        batches.incrementAndGet();
+        totalWriteTime.addAndGet(writeTime);
+        long max;
+        while (writeTime > (max = maxWriteTime.get()) && !maxWriteTime.compareAndSet(max, writeTime)) {
+            // Retry
+        }
+    }
+
+    /**
+     * <p>Sets the application IDs to the specified records. The records referring the packages unknown to customer are
+     * skipped.</p>
+     *
+     * @return a list of records ready for saving.
+     */
+    private List<PostgresDeviceLogRecord> resolveApplications(List<PendingRecord> batch) {
+        final Map<String, Integer> resolved = new HashMap<>();
+        final Map<Integer, Set<String>> missing = new HashMap<>();
+        for (PendingRecord pending : batch) {
+            final String key = pending.getCacheKey();
+            if (!resolved.containsKey(key)) {
+                final Integer applicationId = applicationIds.getIfPresent(key);
+                if (applicationId != null) {
+                    resolved.put(key, applicationId);
+                } else {
+                    missing.computeIfAbsent(pending.record.getCustomerId(), k -> new HashSet<>()).add(pending.packageId);
+                }
+            }
+        }
+        missing.forEach((customerId, packages) -> {
+            final Map<String, Integer> mapping = unsecureDAO.buildPackageIdMapping(customerId, packages);
+            packages.forEach(pkg -> {
+                final String key = customerId + ":" + pkg;
+                final Integer applicationId = mapping.get(pkg);
+                if (applicationId != null) {
+                    applicationIds.put(key, applicationId);
+                }
+                resolved.put(key, applicationId != null ? applicationId : UNKNOWN_APPLICATION);
+            });
+        });
+
+        final List<PostgresDeviceLogRecord> result = new ArrayList<>(batch.size());
+        for (PendingRecord pending : batch) {
+            final Integer applicationId = resolved.get(pending.getCacheKey());
+            if (applicationId == null || applicationId == UNKNOWN_APPLICATION) {
+                skippedRecords.incrementAndGet();
+                logger.debug("Skipping the log record for unknown application {}", pending.packageId);
+                continue;
+            }
+            pending.record.setApplicationId(applicationId);
+            result.add(pending.record);
+        }
+        return result;
+    }
+
+    /**
+     * <p>Saves the specified records by single <code>COPY</code> statement.</p>
+     */
+    private void copy(List<PostgresDeviceLogRecord> records) throws Exception {
+        final StringBuilder data = new StringBuilder(records.size() * 128);
+        for (PostgresDeviceLogRecord record : records) {
+            if (record.getCreateTime() != null) {
+                data.append(record.getCreateTime());
+            }
+            data.append(',').append(record.getCustomerId())
+                    .append(',').append(record.getDeviceId())
+                    .append(',').append(record.getApplicationId())
+                    .append(',');
+            appendCsv(data, record.getIpAddress());
+            data.append(',').append(record.getSeverity().name())
+                    .append(',').append(record.getSeverity().getId())
+                    .append(',');
+            appendCsv(data, record.getMessage());
+            data.append('\n');
+        }
+
+        try (Connection connection = dataSource.getConnection()) {
+            final CopyManager copyManager = new CopyManager(connection.unwrap(BaseConnection.class));
+            copyManager.copyIn(COPY_SQL, new StringReader(data.toString()));
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        }
+    }
+
+    /**
+     * <p>Appends the specified value as quoted CSV field. A <code>null</code> value is appended as an empty unquoted
+     * field which is read as <code>NULL</code>.</p>
+     */
+    static void appendCsv(StringBuilder data, String value) {
+        if (value == null) {
+            return;
+        }
+        data.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"') {
+                data.append("\"\"");
+            } else if (c != '\u0000') {
+                // Zero characters are not allowed in text values by Postgres
+                data.append(c);
+            }
+        }
+        data.append('"');
+    }
+
+    /**
+     * <p>A record waiting in buffer along with the package of application which is not resolved yet.</p>
+     */
+    private static class PendingRecord {
+        private final PostgresDeviceLogRecord record;
+        private final String packageId;
+
+        private PendingRecord(PostgresDeviceLogRecord record, String packageId) {
+            this.record = record;
+            this.packageId = packageId;
+        }
+
+        private String getCacheKey() {
+            return record.getCustomerId() + ":" + packageId;
+        }
+    }
+}
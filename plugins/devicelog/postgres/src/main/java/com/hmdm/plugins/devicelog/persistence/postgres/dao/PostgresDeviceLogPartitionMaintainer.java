@@ -0,0 +1,196 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.devicelog.persistence.postgres.dao;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.hmdm.plugins.devicelog.persistence.postgres.dao.domain.PostgresDeviceLogPartition;
+import com.hmdm.plugins.devicelog.persistence.postgres.dao.domain.PostgresDeviceLogPluginSettings;
+import com.hmdm.plugins.devicelog.persistence.postgres.dao.mapper.PostgresDeviceLogMapper;
+import org.mybatis.guice.transactional.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A maintainer of the partitions of the device log records table if the table is partitioned by
+ * <code>createTime</code>.</p>
+ *
+ * <p>The records are stored in daily partitions (UTC days) which are created in advance. The records which do not fit
+ * any daily partition (e.g. sent by a device with wrong clock) are stored in the default partition and moved to the
+ * daily partition once it is created. The partitions which only contain the records of customers whose preserve
+ * period has passed are dropped (or detached if configured), the outdated records of customers are deleted from the
+ * remaining partitions. The records of customers without settings are preserved forever.</p>
+ */
+@Singleton
+public class PostgresDeviceLogPartitionMaintainer {
+
+    /**
+     * <p>A logger to be used for logging the events.</p>
+     */
+    private static final Logger logger = LoggerFactory.getLogger(PostgresDeviceLogPartitionMaintainer.class);
+
+    public static final String EXPIRED_DROP = "drop";
+    public static final String EXPIRED_DETACH = "detach";
+
+    private static final String PARTITION_PREFIX = "plugin_devicelog_log_p";
+
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * <p>A maximum number of the past days to create the missing partitions for.</p>
+     */
+    private static final int MAX_DAYS_BEHIND = 7;
+
+    private final PostgresDeviceLogMapper deviceLogMapper;
+    private final int daysAhead;
+    private final boolean detachExpired;
+
+    private volatile Boolean partitioned;
+
+    /**
+     * <p>Constructs new <code>PostgresDeviceLogPartitionMaintainer</code> instance. This implementation does
+     * nothing.</p>
+     */
+    @Inject
+    public PostgresDeviceLogPartitionMaintainer(PostgresDeviceLogMapper deviceLogMapper,
+                                                @Named("plugin.devicelog.partition.days.ahead") int daysAhead,
+                                                @Named("plugin.devicelog.partition.expired") String expiredAction) {
+        this.deviceLogMapper = deviceLogMapper;
+        this.daysAhead = Math.max(daysAhead, 1);
+        this.detachExpired = EXPIRED_DETACH.equalsIgnoreCase(expiredAction);
+    }
+
+    /**
+     * <p>Checks if the device log records table is partitioned.</p>
+     *
+     * @return <code>true</code> if the table is partitioned; <code>false</code> otherwise.
+     */
+    public boolean isPartitioned() {
+        if (partitioned == null) {
+            partitioned = deviceLogMapper.isLogTablePartitioned();
+        }
+        return partitioned;
+    }
+
+    /**
+     * <p>Creates the daily partitions for the upcoming days. The records for those days are moved from the default
+     * partition to the created partitions.</p>
+     */
+    @Transactional
+    public void createPartitions() {
+        if (!isPartitioned()) {
+            return;
+        }
+
+        final List<PostgresDeviceLogPartition> partitions = deviceLogMapper.getLogPartitions();
+        long start = today() - MAX_DAYS_BEHIND * DAY;
+        final Set<String> names = new HashSet<>();
+        for (PostgresDeviceLogPartition partition : partitions) {
+            names.add(partition.getName());
+            final Long upperBound = partition.getUpperBound();
+            if (upperBound != null && upperBound > start) {
+                start = upperBound;
+            }
+        }
+        // The partitions are aligned to days
+        start = (start + DAY - 1) / DAY * DAY;
+
+        final long end = today() + (daysAhead + 1) * DAY;
+        for (long from = start; from < end; from += DAY) {
+            final String name = PARTITION_PREFIX + PARTITION_SUFFIX.format(
+                    LocalDate.ofEpochDay(from / DAY));
+            if (names.contains(name)) {
+                continue;
+            }
+            deviceLogMapper.createLogPartitionTable(name);
+            final int moved = deviceLogMapper.moveDefaultLogRecords(name, from, from + DAY);
+            deviceLogMapper.attachLogPartition(name, from, from + DAY);
+            logger.info("Created device log partition {}, moved {} records from default partition", name, moved);
+        }
+    }
+
+    /**
+     * <p>Deletes the log records which are older than number of days configured in customer's profile. Drops or
+     * detaches the partitions which are outdated for all customers.</p>
+     */
+    public void purgeLogRecords() {
+        final List<PostgresDeviceLogPluginSettings> settings = deviceLogMapper.getAllPluginSettings();
+        final long today = today();
+
+        if (!settings.isEmpty() && isPartitioned()) {
+            for (PostgresDeviceLogPartition partition : deviceLogMapper.getLogPartitions()) {
+                final Long upperBound = partition.getUpperBound();
+                if (upperBound == null) {
+                    continue;
+                }
+                final List<Integer> expiredCustomerIds = new ArrayList<>();
+                for (PostgresDeviceLogPluginSettings setting : settings) {
+                    if (upperBound <= today - setting.getLogsPreservePeriod() * DAY) {
+                        expiredCustomerIds.add(setting.getCustomerId());
+                    }
+                }
+                // The partition is kept while it contains the records of any customer whose preserve period has not
+                // passed yet, including the customers without settings
+                if (!expiredCustomerIds.isEmpty()
+                        && !deviceLogMapper.hasLogRecordsOfOtherCustomers(partition.getName(), expiredCustomerIds)) {
+                    deviceLogMapper.detachLogPartition(partition.getName());
+                    if (detachExpired) {
+                        logger.info("Detached outdated device log partition {}", partition.getName());
+                    } else {
+                        deviceLogMapper.dropLogPartition(partition.getName());
+                        logger.info("Dropped outdated device log partition {}", partition.getName());
+                    }
+                }
+            }
+        }
+
+        // The remaining partitions may still contain the records of the customers with shorter preserve period
+        for (PostgresDeviceLogPluginSettings setting : settings) {
+            final int count = deviceLogMapper.purgeCustomerLogRecords(setting.getCustomerId(),
+                    today - setting.getLogsPreservePeriod() * DAY);
+            if (count > 0) {
+                logger.info("Deleted {} records from the device logs for customer {}", count, setting.getCustomerId());
+            }
+        }
+    }
+
+    /**
+     * <p>Gets the start of the current UTC day.</p>
+     *
+     * @return a start of the current day (in milliseconds since epoch).
+     */
+    private static long today() {
+        return LocalDate.now(ZoneOffset.UTC).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+}
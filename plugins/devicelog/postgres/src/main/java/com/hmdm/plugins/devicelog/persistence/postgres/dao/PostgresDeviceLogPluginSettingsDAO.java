@@ -55,12 +55,18 @@ public class PostgresDeviceLogPluginSettingsDAO extends AbstractDAO<PostgresDevi
      */
     private final PostgresDeviceLogMapper mapper;
 
+    /**
+     * <p>An index of the rules to be rebuilt when the rules are changed.</p>
+     */
+    private final PostgresDeviceLogRuleIndex ruleIndex;
+
     /**
      * <p>Constructs new <code>PostgresDeviceLogPluginSettingsDAO</code> instance. This implementation does nothing.</p>
      */
     @Inject
-    public PostgresDeviceLogPluginSettingsDAO(PostgresDeviceLogMapper mapper) {
+    public PostgresDeviceLogPluginSettingsDAO(PostgresDeviceLogMapper mapper, PostgresDeviceLogRuleIndex ruleIndex) {
         this.mapper = mapper;
+        this.ruleIndex = ruleIndex;
     }
 
     @Override
@@ -137,6 +143,7 @@ public class PostgresDeviceLogPluginSettingsDAO extends AbstractDAO<PostgresDevi
                         .collect(Collectors.toList());
                 this.mapper.insertPluginSettingsRuleDevices(postgresRule.getId(), deviceIds);
             }
+            this.ruleIndex.invalidate(postgresSettings.getCustomerId());
 
         } else {
             throw new IllegalStateException("Device Log Plugin settings record is required to be created prior " +
@@ -158,6 +165,7 @@ public class PostgresDeviceLogPluginSettingsDAO extends AbstractDAO<PostgresDevi
 
         if (settings != null) {
             this.mapper.deletePluginSettingRule(id);
+            this.ruleIndex.invalidate(settings.getCustomerId());
         }
     }
 
@@ -0,0 +1,235 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.devicelog.persistence.postgres.dao;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.hmdm.persistence.domain.DeviceIdentity;
+import com.hmdm.plugins.devicelog.model.DeviceLogRule;
+import com.hmdm.plugins.devicelog.model.LogLevel;
+import com.hmdm.plugins.devicelog.persistence.postgres.dao.domain.PostgresDeviceLogPluginSettings;
+import com.hmdm.plugins.devicelog.persistence.postgres.dao.domain.PostgresDeviceLogRule;
+import com.hmdm.plugins.devicelog.persistence.postgres.dao.mapper.PostgresDeviceLogMapper;
+import com.hmdm.plugins.devicelog.rest.json.AppliedDeviceLogRule;
+import com.hmdm.plugins.devicelog.rest.json.AppliedDeviceLogRules;
+import com.hmdm.rest.json.LookupItem;
+import com.hmdm.util.CryptoUtil;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * <p>An index of the device log rules of the customers. The active rules of a customer are loaded once and bucketed by
+ * configuration, group and device, so the rules applicable to device are resolved by a few lookups. The resolved lists
+ * are cached for each combination of configuration, groups and device-specific rules.</p>
+ *
+ * <p>The index of a customer is rebuilt when the rules of the customer are changed by this server and also
+ * periodically to pick up the changes made elsewhere (e.g. the rules deleted along with the applications).</p>
+ */
+@Singleton
+public class PostgresDeviceLogRuleIndex {
+
+    /**
+     * <p>A time after which the index of a customer is rebuilt (in milliseconds).</p>
+     */
+    private static final long INDEX_TTL = TimeUnit.MINUTES.toMillis(5);
+
+    private final PostgresDeviceLogMapper mapper;
+
+    /**
+     * <p>A mapping from customer IDs to the rule indexes.</p>
+     */
+    private final ConcurrentMap<Integer, CustomerRules> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * <p>Constructs new <code>PostgresDeviceLogRuleIndex</code> instance. This implementation does nothing.</p>
+     */
+    @Inject
+    public PostgresDeviceLogRuleIndex(PostgresDeviceLogMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * <p>Gets the list of log rules applicable to specified device.</p>
+     *
+     * @param device a device to get the rules for.
+     * @return the rules applicable to device.
+     */
+    public AppliedDeviceLogRules getDeviceLogRules(DeviceIdentity device) {
+        CustomerRules index = this.indexes.get(device.getCustomerId());
+        if (index == null || System.currentTimeMillis() - index.buildTime > INDEX_TTL) {
+            index = build(device.getCustomerId());
+            this.indexes.put(device.getCustomerId(), index);
+        }
+        return index.resolve(device);
+    }
+
+    /**
+     * <p>Drops the index of the specified customer, so it is rebuilt on next request.</p>
+     *
+     * @param customerId an ID of a customer whose rules have been changed.
+     */
+    public void invalidate(int customerId) {
+        this.indexes.remove(customerId);
+    }
+
+    private CustomerRules build(int customerId) {
+        final PostgresDeviceLogPluginSettings settings = this.mapper.findPluginSettingsByCustomerId(customerId);
+        final List<DeviceLogRule> rules = new ArrayList<>();
+        if (settings != null && settings.getRules() != null) {
+            for (DeviceLogRule rule : settings.getRules()) {
+                // A settings record without rules is mapped to a single empty rule
+                if (((PostgresDeviceLogRule) rule).getId() != null
+                        && rule.isActive() && rule.getSeverity() != LogLevel.NONE) {
+                    rules.add(rule);
+                }
+            }
+        }
+        return new CustomerRules(rules);
+    }
+
+    /**
+     * <p>The active rules of a single customer bucketed by the kind of their target.</p>
+     */
+    private static class CustomerRules {
+        private final long buildTime = System.currentTimeMillis();
+
+        private final List<DeviceLogRule> defaultRules = new ArrayList<>();
+        private final Map<Integer, List<DeviceLogRule>> configurationRules = new HashMap<>();
+        private final Map<Integer, List<DeviceLogRule>> groupRules = new HashMap<>();
+        private final Map<Integer, List<DeviceLogRule>> deviceRules = new HashMap<>();
+
+        /**
+         * <p>The positions of the rules in the original list used to keep the order of the rules matching several
+         * groups of device.</p>
+         */
+        private final Map<DeviceLogRule, Integer> positions = new HashMap<>();
+
+        private final ConcurrentMap<String, AppliedDeviceLogRules> resolved = new ConcurrentHashMap<>();
+
+        private CustomerRules(List<DeviceLogRule> rules) {
+            for (DeviceLogRule rule : rules) {
+                this.positions.put(rule, this.positions.size());
+                final boolean hasDevices = rule.getDevices() != null && !rule.getDevices().isEmpty();
+                if (rule.getConfigurationId() == null && rule.getGroupId() == null && !hasDevices) {
+                    this.defaultRules.add(rule);
+                }
+                if (rule.getConfigurationId() != null) {
+                    this.configurationRules.computeIfAbsent(rule.getConfigurationId(), k -> new ArrayList<>()).add(rule);
+                }
+                if (rule.getGroupId() != null) {
+                    this.groupRules.computeIfAbsent(rule.getGroupId(), k -> new ArrayList<>()).add(rule);
+                }
+                if (hasDevices) {
+                    rule.getDevices().stream().map(LookupItem::getId).distinct().forEach(deviceId ->
+                            this.deviceRules.computeIfAbsent(deviceId, k -> new ArrayList<>()).add(rule));
+                }
+            }
+        }
+
+        private AppliedDeviceLogRules resolve(DeviceIdentity device) {
+            final TreeSet<Integer> groupIds = new TreeSet<>();
+            if (device.getGroups() != null) {
+                for (LookupItem group : device.getGroups()) {
+                    if (this.groupRules.containsKey(group.getId())) {
+                        groupIds.add(group.getId());
+                    }
+                }
+            }
+            final Integer configurationId = device.getConfigurationId() != null
+                    && this.configurationRules.containsKey(device.getConfigurationId())
+                    ? device.getConfigurationId() : null;
+            final Integer deviceId = this.deviceRules.containsKey(device.getId()) ? device.getId() : null;
+
+            // Only the targets having rules are included in key, so most of devices share the resolved lists
+            final String key = configurationId + ":" + groupIds + ":" + deviceId;
+            return this.resolved.computeIfAbsent(key, k -> {
+                final List<AppliedDeviceLogRule> rules = resolve(configurationId, groupIds, deviceId);
+                return new AppliedDeviceLogRules(rules, tag(rules));
+            });
+        }
+
+        private List<AppliedDeviceLogRule> resolve(Integer configurationId, TreeSet<Integer> groupIds, Integer deviceId) {
+            List<DeviceLogRule> result = this.defaultRules;
+            if (configurationId != null) {
+                result = combineDeviceLogRules(result, this.configurationRules.get(configurationId));
+            }
+            if (!groupIds.isEmpty()) {
+                final List<DeviceLogRule> rules = new ArrayList<>();
+                groupIds.forEach(groupId -> rules.addAll(this.groupRules.get(groupId)));
+                rules.sort((r1, r2) -> this.positions.get(r1) - this.positions.get(r2));
+                result = combineDeviceLogRules(result, rules);
+            }
+            if (deviceId != null) {
+                result = combineDeviceLogRules(result, this.deviceRules.get(deviceId));
+            }
+            return result.stream().map(AppliedDeviceLogRule::new).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * <p>Builds the tag for the specified list of resolved rules. The tag is a hash of the content of the rules, so it
+     * stays the same across the rebuilds of index and the server nodes as long as the rules are not changed.</p>
+     *
+     * @param rules a list of resolved rules.
+     * @return a tag identifying the content of the rules.
+     */
+    static String tag(List<AppliedDeviceLogRule> rules) {
+        final StringBuilder content = new StringBuilder();
+        for (AppliedDeviceLogRule rule : rules) {
+            content.append(rule.getPackageId()).append('\u0000')
+                    .append(rule.getLogLevel()).append('\u0000')
+                    .append(rule.getFilter()).append('\u0001');
+        }
+        return CryptoUtil.getSHA1String(content.toString());
+    }
+
+    /**
+     * <p>Combines the specified list of device log rules into a single list.</p>
+     *
+     * @param lessPreferred a list of less preferred rules.
+     * @param morePreferred a list of more preferred rules.
+     * @return a resulting list of rules.
+     */
+    private static List<DeviceLogRule> combineDeviceLogRules(List<DeviceLogRule> lessPreferred, List<DeviceLogRule> morePreferred) {
+        final Map<String, DeviceLogRule> moreMapping = new LinkedHashMap<>();
+        morePreferred.forEach(r -> moreMapping.putIfAbsent(r.getApplicationPkg(), r));
+
+        List<DeviceLogRule> result = new ArrayList<>();
+
+        lessPreferred.stream()
+                .filter(less -> !moreMapping.containsKey(less.getApplicationPkg()))
+                .forEach(result::add);
+
+        result.addAll(morePreferred);
+
+        return result;
+    }
+}
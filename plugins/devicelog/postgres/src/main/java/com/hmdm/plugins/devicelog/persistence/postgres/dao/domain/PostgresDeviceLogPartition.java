@@ -0,0 +1,90 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.devicelog.persistence.postgres.dao.domain;
+
+import java.io.Serializable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>A partition of the partitioned table of device log records.</p>
+ */
+public class PostgresDeviceLogPartition implements Serializable {
+
+    private static final long serialVersionUID = 2749175093127468517L;
+
+    private static final Pattern UPPER_BOUND = Pattern.compile("TO \\('?(-?\\d+)'?\\)");
+
+    /**
+     * <p>A name of the partition table.</p>
+     */
+    private String name;
+
+    /**
+     * <p>A partition bound expression, e.g. <code>FOR VALUES FROM ('1700000000000') TO ('1700086400000')</code>.</p>
+     */
+    private String bound;
+
+    /**
+     * <p>Constructs new <code>PostgresDeviceLogPartition</code> instance. This implementation does nothing.</p>
+     */
+    public PostgresDeviceLogPartition() {
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getBound() {
+        return bound;
+    }
+
+    public void setBound(String bound) {
+        this.bound = bound;
+    }
+
+    /**
+     * <p>Gets the upper bound of the partition (exclusive).</p>
+     *
+     * @return an upper bound of the partition or <code>null</code> for default partition or partition without upper
+     *         bound.
+     */
+    public Long getUpperBound() {
+        if (bound == null) {
+            return null;
+        }
+        final Matcher matcher = UPPER_BOUND.matcher(bound);
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : null;
+    }
+
+    @Override
+    public String toString() {
+        return "PostgresDeviceLogPartition{" +
+                "name='" + name + '\'' +
+                ", bound='" + bound + '\'' +
+                '}';
+    }
+}
@@ -21,10 +21,12 @@
 
 package com.hmdm.plugins.devicelog.persistence.postgres.dao.mapper;
 
+import com.hmdm.plugins.devicelog.persistence.postgres.dao.domain.PostgresDeviceLogPartition;
 import com.hmdm.plugins.devicelog.persistence.postgres.dao.domain.PostgresDeviceLogPluginSettings;
 import com.hmdm.plugins.devicelog.persistence.postgres.dao.domain.PostgresDeviceLogRecord;
 import com.hmdm.plugins.devicelog.persistence.postgres.dao.domain.PostgresDeviceLogRule;
 import com.hmdm.plugins.devicelog.rest.json.DeviceLogFilter;
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Param;
@@ -43,6 +45,8 @@ public interface PostgresDeviceLogMapper {
 
     List<PostgresDeviceLogRecord> findAllLogRecordsByCustomerId(DeviceLogFilter filter);
 
+    Cursor<PostgresDeviceLogRecord> findAllLogRecordsForExport(DeviceLogFilter filter);
+
     long countAll(DeviceLogFilter filter);
 
     int insertDeviceLogRecords(@Param("logs") List<PostgresDeviceLogRecord> postgresLogs);
@@ -124,4 +128,50 @@ public interface PostgresDeviceLogMapper {
             "                    FROM plugin_devicelog_settings pds " +
             "                    WHERE pds.customerId = #{customerId})")
     int purgeLogRecords(@Param("customerId") int customerId);
+
+    /**
+     * <p>Deletes the log records of the specified customer which are older than specified time.</p>
+     *
+     * @return a number of deleted records.
+     */
+    @Delete("DELETE FROM plugin_devicelog_log WHERE customerId = #{customerId} AND createTime < #{before}")
+    int purgeCustomerLogRecords(@Param("customerId") int customerId, @Param("before") long before);
+
+    // ------------ partitioned storage ------------------------------------------------------------------------------
+    @Select("SELECT COALESCE((SELECT relkind = 'p' FROM pg_class WHERE oid = TO_REGCLASS('plugin_devicelog_log')), FALSE)")
+    boolean isLogTablePartitioned();
+
+    @Select("SELECT c.relname AS name, PG_GET_EXPR(c.relpartbound, c.oid) AS bound " +
+            "FROM pg_inherits i " +
+            "INNER JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = TO_REGCLASS('plugin_devicelog_log')")
+    List<PostgresDeviceLogPartition> getLogPartitions();
+
+    @Select("SELECT id, customerId, logsPreservePeriod FROM plugin_devicelog_settings")
+    List<PostgresDeviceLogPluginSettings> getAllPluginSettings();
+
+    @Update("CREATE TABLE ${name} (LIKE plugin_devicelog_log INCLUDING DEFAULTS)")
+    void createLogPartitionTable(@Param("name") String name);
+
+    @Insert("WITH moved AS (" +
+            "    DELETE FROM plugin_devicelog_log_default WHERE createTime >= #{from} AND createTime < #{to} RETURNING *" +
+            ") " +
+            "INSERT INTO ${name} SELECT * FROM moved")
+    int moveDefaultLogRecords(@Param("name") String name, @Param("from") long from, @Param("to") long to);
+
+    @Update("ALTER TABLE plugin_devicelog_log ATTACH PARTITION ${name} FOR VALUES FROM (${from}) TO (${to})")
+    void attachLogPartition(@Param("name") String name, @Param("from") long from, @Param("to") long to);
+
+    @Select({"<script>",
+            "SELECT EXISTS (SELECT 1 FROM ${name} WHERE customerId NOT IN ",
+            "<foreach collection='customerIds' item='customerId' open='(' separator=',' close=')'>#{customerId}</foreach>",
+            ")",
+            "</script>"})
+    boolean hasLogRecordsOfOtherCustomers(@Param("name") String name, @Param("customerIds") List<Integer> customerIds);
+
+    @Update("ALTER TABLE plugin_devicelog_log DETACH PARTITION ${name}")
+    void detachLogPartition(@Param("name") String name);
+
+    @Update("DROP TABLE ${name}")
+    void dropLogPartition(@Param("name") String name);
 }
@@ -0,0 +1,78 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.devicelog.persistence.postgres.guice.module;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.name.Names;
+
+import javax.servlet.ServletContext;
+
+/**
+ * <p>A module used for binding the configuration parameters of the <code>Device Log</code> plugin backed by
+ * <code>Postgres</code> database.</p>
+ */
+public class DeviceLogPostgresConfigureModule extends AbstractModule {
+
+    private final String ingestBufferSizeParameter = "plugin.devicelog.ingest.buffer.size";
+    private final String ingestBatchSizeParameter = "plugin.devicelog.ingest.batch.size";
+    private final String ingestFlushIntervalParameter = "plugin.devicelog.ingest.flush.interval";
+    private final String partitionDaysAheadParameter = "plugin.devicelog.partition.days.ahead";
+    private final String partitionExpiredParameter = "plugin.devicelog.partition.expired";
+    private final String searchCountLimitParameter = "plugin.devicelog.search.count.limit";
+
+    /**
+     * <p>A context for module usage.</p>
+     */
+    private final ServletContext context;
+
+    /**
+     * <p>Constructs new <code>DeviceLogPostgresConfigureModule</code> instance. This implementation does nothing.</p>
+     */
+    public DeviceLogPostgresConfigureModule(ServletContext context) {
+        this.context = context;
+    }
+
+    /**
+     * <p>Binds the configuration parameters to the values set in context or to the default values.</p>
+     */
+    @Override
+    protected void configure() {
+        this.bindConstant().annotatedWith(Names.named(ingestBufferSizeParameter))
+                .to(getIntParameter(ingestBufferSizeParameter, 100000));
+        this.bindConstant().annotatedWith(Names.named(ingestBatchSizeParameter))
+                .to(getIntParameter(ingestBatchSizeParameter, 5000));
+        this.bindConstant().annotatedWith(Names.named(ingestFlushIntervalParameter))
+                .to((long) getIntParameter(ingestFlushIntervalParameter, 1000));
+        this.bindConstant().annotatedWith(Names.named(partitionDaysAheadParameter))
+                .to(getIntParameter(partitionDaysAheadParameter, 7));
+        final String partitionExpired = this.context.getInitParameter(partitionExpiredParameter);
+        this.bindConstant().annotatedWith(Names.named(partitionExpiredParameter))
+                .to(partitionExpired != null && !partitionExpired.equals("") ? partitionExpired : "drop");
+        this.bindConstant().annotatedWith(Names.named(searchCountLimitParameter))
+                .to(getIntParameter(searchCountLimitParameter, 0));
+    }
+
+    private int getIntParameter(String name, int defaultValue) {
+        final String value = this.context.getInitParameter(name);
+        return value != null && !value.equals("") ? Integer.parseInt(value) : defaultValue;
+    }
+}
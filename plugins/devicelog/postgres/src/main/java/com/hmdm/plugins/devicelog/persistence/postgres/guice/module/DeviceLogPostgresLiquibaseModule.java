@@ -59,6 +59,32 @@ public class DeviceLogPostgresLiquibaseModule extends AbstractLiquibaseModule {
         return path;
     }
 
+    /**
+     * <p>Gets the list of <code>Liquibaase</code> contexts to be applied based on specified usage scenario. The
+     * <code>partitioned</code> context is added if the log records are configured to be stored in partitioned
+     * table; the <code>search</code> context is added if the indexes for searching the log records by substrings
+     * are enabled.</p>
+     *
+     * @param usageScenario  usage scenario.
+     * @return a comma-separated list of <code>Liquibase</code> contexts to be applied.
+     */
+    @Override
+    protected String getContexts(String usageScenario) {
+        String contexts = super.getContexts(usageScenario);
+        if (isEnabled("plugin.devicelog.partitioned")) {
+            contexts += ",partitioned";
+        }
+        if (isEnabled("plugin.devicelog.search.indexed")) {
+            contexts += ",search";
+        }
+        return contexts;
+    }
+
+    private boolean isEnabled(String parameter) {
+        final String value = this.context.getInitParameter(parameter);
+        return value != null && (value.equals("1") || value.equalsIgnoreCase("true"));
+    }
+
     /**
      * <p>Gets the resource accessor to be used for loading the change log file.</p>
      *
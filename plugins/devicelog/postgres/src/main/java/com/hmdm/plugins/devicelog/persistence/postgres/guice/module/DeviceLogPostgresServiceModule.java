@@ -24,8 +24,10 @@ package com.hmdm.plugins.devicelog.persistence.postgres.guice.module;
 import com.google.inject.AbstractModule;
 import com.google.inject.Singleton;
 import com.hmdm.plugins.devicelog.persistence.DeviceLogDAO;
+import com.hmdm.plugins.devicelog.persistence.DeviceLogIngestPipeline;
 import com.hmdm.plugins.devicelog.persistence.DeviceLogPluginSettingsDAO;
 import com.hmdm.plugins.devicelog.persistence.postgres.dao.PostgresDeviceLogDAO;
+import com.hmdm.plugins.devicelog.persistence.postgres.dao.PostgresDeviceLogIngestPipeline;
 import com.hmdm.plugins.devicelog.persistence.postgres.dao.PostgresDeviceLogPluginSettingsDAO;
 
 /**
@@ -50,5 +52,6 @@ public class DeviceLogPostgresServiceModule extends AbstractModule {
     protected void configure() {
         bind(DeviceLogPluginSettingsDAO.class).to(PostgresDeviceLogPluginSettingsDAO.class).in(Singleton.class);
         bind(DeviceLogDAO.class).to(PostgresDeviceLogDAO.class).in(Singleton.class);
+        bind(DeviceLogIngestPipeline.class).to(PostgresDeviceLogIngestPipeline.class).in(Singleton.class);
     }
 }
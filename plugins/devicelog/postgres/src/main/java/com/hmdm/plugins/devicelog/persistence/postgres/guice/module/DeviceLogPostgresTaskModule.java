@@ -24,7 +24,11 @@ package com.hmdm.plugins.devicelog.persistence.postgres.guice.module;
 import com.google.inject.Inject;
 import com.hmdm.plugin.PluginTaskModule;
 import com.hmdm.plugins.devicelog.persistence.postgres.dao.PostgresDeviceLogDAO;
+import com.hmdm.plugins.devicelog.persistence.postgres.dao.PostgresDeviceLogIngestPipeline;
+import com.hmdm.plugins.devicelog.persistence.postgres.dao.PostgresDeviceLogPartitionMaintainer;
 import com.hmdm.util.BackgroundTaskRunnerService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.TimeUnit;
 
@@ -35,11 +39,23 @@ import java.util.concurrent.TimeUnit;
  */
 public class DeviceLogPostgresTaskModule implements PluginTaskModule {
 
+    private static final Logger logger = LoggerFactory.getLogger(DeviceLogPostgresTaskModule.class);
+
     /**
      * <p>An interface to persistence layer.</p>
      */
     private final PostgresDeviceLogDAO deviceLogDAO;
 
+    /**
+     * <p>A pipeline saving the uploaded log records.</p>
+     */
+    private final PostgresDeviceLogIngestPipeline ingestPipeline;
+
+    /**
+     * <p>A maintainer of the partitions of the log records table.</p>
+     */
+    private final PostgresDeviceLogPartitionMaintainer partitionMaintainer;
+
     /**
      * <p>A runner for the repeatable tasks.</p>
      */
@@ -49,17 +65,42 @@ public class DeviceLogPostgresTaskModule implements PluginTaskModule {
      * <p>Constructs new <code>DeviceLogPostgresTaskModule</code> instance. This implementation does nothing.</p>
      */
     @Inject
-    public DeviceLogPostgresTaskModule(PostgresDeviceLogDAO deviceLogDAO, BackgroundTaskRunnerService taskRunner) {
+    public DeviceLogPostgresTaskModule(PostgresDeviceLogDAO deviceLogDAO,
+                                       PostgresDeviceLogIngestPipeline ingestPipeline,
+                                       PostgresDeviceLogPartitionMaintainer partitionMaintainer,
+                                       BackgroundTaskRunnerService taskRunner) {
+        this.partitionMaintainer = partitionMaintainer;
         this.deviceLogDAO = deviceLogDAO;
+        this.ingestPipeline = ingestPipeline;
         this.taskRunner = taskRunner;
     }
 
     /**
      * <p>Initializes this module. Schedules the task for purging the outdated device log records from DB on a daily
-     * basis.</p>
+     * basis and starts the pipeline saving the uploaded log records. If the log records table is partitioned then the
+     * upcoming partitions are created on startup and hourly.</p>
      */
     @Override
     public void init() {
         taskRunner.submitRepeatableTask(deviceLogDAO::purgeLogRecords, 1, 24, TimeUnit.HOURS);
+        taskRunner.submitRepeatableTask(this::createPartitions, 0, 1, TimeUnit.HOURS);
+        ingestPipeline.start();
+        taskRunner.submitRepeatableTask(ingestPipeline::logStats, 10, 10, TimeUnit.MINUTES);
+    }
+
+    /**
+     * <p>Stops the pipeline saving the uploaded log records. The records waiting for saving are saved.</p>
+     */
+    @Override
+    public void destroy() {
+        ingestPipeline.stop();
+    }
+
+    private void createPartitions() {
+        try {
+            partitionMaintainer.createPartitions();
+        } catch (Exception e) {
+            logger.error("Unexpected error when creating the device log partitions", e);
+        }
     }
 }
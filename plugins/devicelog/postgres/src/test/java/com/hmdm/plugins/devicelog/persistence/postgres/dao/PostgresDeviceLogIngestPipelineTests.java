@@ -0,0 +1,182 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.devicelog.persistence.postgres.dao;
+
+import com.hmdm.persistence.UnsecureDAO;
+import com.hmdm.plugins.devicelog.persistence.postgres.dao.domain.PostgresDeviceLogRecord;
+import com.hmdm.plugins.devicelog.persistence.postgres.dao.mapper.PostgresDeviceLogMapper;
+import com.hmdm.plugins.devicelog.rest.json.UploadedDeviceLogRecord;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>A test suite for {@link PostgresDeviceLogIngestPipeline} class.</p>
+ */
+public class PostgresDeviceLogIngestPipelineTests {
+
+    private static final int CUSTOMER_ID = 1;
+    private static final int KNOWN_APPLICATION_ID = 5;
+
+    private final List<PostgresDeviceLogRecord> inserted = Collections.synchronizedList(new ArrayList<>());
+    private final List<Set<String>> resolvedPackages = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * <p>Constructs new <code>PostgresDeviceLogIngestPipelineTests</code> instance. This implementation does
+     * nothing.</p>
+     */
+    public PostgresDeviceLogIngestPipelineTests() {
+    }
+
+    private PostgresDeviceLogIngestPipeline createPipeline(long flushInterval) {
+        // The COPY statement is not available, so the records are saved by the fallback insert
+        final DataSource dataSource = (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+                new Class<?>[] {DataSource.class}, (proxy, method, args) -> {
+                    throw new SQLException("Not available");
+                });
+        final PostgresDeviceLogMapper mapper = (PostgresDeviceLogMapper) Proxy.newProxyInstance(
+                PostgresDeviceLogMapper.class.getClassLoader(), new Class<?>[] {PostgresDeviceLogMapper.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("insertDeviceLogRecords")) {
+                        @SuppressWarnings("unchecked")
+                        final List<PostgresDeviceLogRecord> records = (List<PostgresDeviceLogRecord>) args[0];
+                        inserted.addAll(records);
+                        return records.size();
+                    }
+                    return null;
+                });
+        return new PostgresDeviceLogIngestPipeline(dataSource, mapper, new PackageDAO(), 1000, 100, flushInterval);
+    }
+
+    private static List<UploadedDeviceLogRecord> logs(String... packages) {
+        final List<UploadedDeviceLogRecord> result = new ArrayList<>();
+        for (String pkg : packages) {
+            final UploadedDeviceLogRecord log = new UploadedDeviceLogRecord();
+            log.setTimestamp(System.currentTimeMillis());
+            log.setPackageId(pkg);
+            log.setLogLevel(1);
+            log.setMessage("Message from " + pkg);
+            result.add(log);
+        }
+        return result;
+    }
+
+    @Test
+    public void testAppendCsv() {
+        final StringBuilder data = new StringBuilder();
+        PostgresDeviceLogIngestPipeline.appendCsv(data, null);
+        data.append(',');
+        PostgresDeviceLogIngestPipeline.appendCsv(data, "");
+        data.append(',');
+        PostgresDeviceLogIngestPipeline.appendCsv(data, "say \"hi\", then\nleave\\");
+        data.append(',');
+        PostgresDeviceLogIngestPipeline.appendCsv(data, "zero\u0000char");
+
+        Assert.assertEquals(",\"\",\"say \"\"hi\"\", then\nleave\\\",\"zerochar\"", data.toString());
+    }
+
+    @Test
+    public void testEstimateRetryAfter() {
+        Assert.assertEquals("No statistics yet", PostgresDeviceLogIngestPipeline.MAX_RETRY_AFTER,
+                PostgresDeviceLogIngestPipeline.estimateRetryAfter(100, 0, 0));
+        Assert.assertEquals(1, PostgresDeviceLogIngestPipeline.estimateRetryAfter(0, 1000, 1000));
+        // 1000 records are written per second
+        Assert.assertEquals(11, PostgresDeviceLogIngestPipeline.estimateRetryAfter(10000, 5000, 5000));
+        Assert.assertEquals(PostgresDeviceLogIngestPipeline.MAX_RETRY_AFTER,
+                PostgresDeviceLogIngestPipeline.estimateRetryAfter(1000000, 5000, 5000));
+    }
+
+    @Test
+    public void testUploadIsRejectedIfNotStarted() {
+        final PostgresDeviceLogIngestPipeline pipeline = createPipeline(60000);
+
+        Assert.assertFalse(pipeline.submit(CUSTOMER_ID, 1, "127.0.0.1", logs("com.known")));
+    }
+
+    @Test
+    public void testStopSavesBufferedRecords() {
+        final PostgresDeviceLogIngestPipeline pipeline = createPipeline(60000);
+        pipeline.start();
+
+        Assert.assertTrue(pipeline.submit(CUSTOMER_ID, 1, "127.0.0.1", logs("com.known", "com.known", "com.unknown")));
+        Assert.assertTrue(pipeline.submit(CUSTOMER_ID, 2, "127.0.0.1", logs("com.known")));
+        pipeline.stop();
+
+        Assert.assertEquals("Records of known application should be saved on stop", 3, inserted.size());
+        for (PostgresDeviceLogRecord record : inserted) {
+            Assert.assertEquals(KNOWN_APPLICATION_ID, record.getApplicationId());
+        }
+        Assert.assertFalse("Uploads should be rejected once stopped",
+                pipeline.submit(CUSTOMER_ID, 1, "127.0.0.1", logs("com.known")));
+    }
+
+    @Test
+    public void testUnknownApplicationsAreNotCached() {
+        final PostgresDeviceLogIngestPipeline pipeline = createPipeline(60000);
+
+        pipeline.start();
+        pipeline.submit(CUSTOMER_ID, 1, "127.0.0.1", logs("com.known", "com.unknown"));
+        pipeline.stop();
+        pipeline.start();
+        pipeline.submit(CUSTOMER_ID, 1, "127.0.0.1", logs("com.known", "com.unknown"));
+        pipeline.stop();
+
+        // The records of single upload may be split into several batches, so only the lookups are counted
+        final Map<String, Integer> lookups = new HashMap<>();
+        resolvedPackages.forEach(packages -> packages.forEach(pkg -> lookups.merge(pkg, 1, Integer::sum)));
+        Assert.assertEquals("Known application should be resolved once", Integer.valueOf(1), lookups.get("com.known"));
+        Assert.assertEquals("Unknown application should be resolved for each upload",
+                Integer.valueOf(2), lookups.get("com.unknown"));
+        Assert.assertEquals(2, inserted.size());
+    }
+
+    /**
+     * <p>A DAO resolving a single known package.</p>
+     */
+    private class PackageDAO extends UnsecureDAO {
+        private PackageDAO() {
+            super(null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null,
+                    "", 0, "");
+        }
+
+        @Override
+        public Map<String, Integer> buildPackageIdMapping(Integer customerId, Collection<String> appPackages) {
+            resolvedPackages.add(new HashSet<>(appPackages));
+            final Map<String, Integer> result = new HashMap<>();
+            if (appPackages.contains("com.known")) {
+                result.put("com.known", KNOWN_APPLICATION_ID);
+            }
+            return result;
+        }
+    }
+}
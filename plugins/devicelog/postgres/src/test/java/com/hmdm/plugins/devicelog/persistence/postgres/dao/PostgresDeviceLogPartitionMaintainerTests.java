@@ -0,0 +1,175 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.devicelog.persistence.postgres.dao;
+
+import com.hmdm.plugins.devicelog.persistence.postgres.dao.domain.PostgresDeviceLogPartition;
+import com.hmdm.plugins.devicelog.persistence.postgres.dao.domain.PostgresDeviceLogPluginSettings;
+import com.hmdm.plugins.devicelog.persistence.postgres.dao.mapper.PostgresDeviceLogMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A test suite for {@link PostgresDeviceLogPartitionMaintainer} class.</p>
+ */
+public class PostgresDeviceLogPartitionMaintainerTests {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private static final long TODAY
+            = LocalDate.now(ZoneOffset.UTC).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+
+    private final List<PostgresDeviceLogPluginSettings> settings = new ArrayList<>();
+
+    /**
+     * <p>A mapping from partition names to the customers having records in those partitions.</p>
+     */
+    private final Map<String, Set<Integer>> partitionCustomers = new HashMap<>();
+
+    private final List<PostgresDeviceLogPartition> partitions = new ArrayList<>();
+
+    private final List<String> detached = new ArrayList<>();
+    private final List<String> dropped = new ArrayList<>();
+
+    /**
+     * <p>Constructs new <code>PostgresDeviceLogPartitionMaintainerTests</code> instance. This implementation does
+     * nothing.</p>
+     */
+    public PostgresDeviceLogPartitionMaintainerTests() {
+    }
+
+    private PostgresDeviceLogPartitionMaintainer createMaintainer(String expiredAction) {
+        final PostgresDeviceLogMapper mapper = (PostgresDeviceLogMapper) Proxy.newProxyInstance(
+                PostgresDeviceLogMapper.class.getClassLoader(), new Class<?>[] {PostgresDeviceLogMapper.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isLogTablePartitioned":
+                            return true;
+                        case "getAllPluginSettings":
+                            return settings;
+                        case "getLogPartitions":
+                            return partitions;
+                        case "hasLogRecordsOfOtherCustomers":
+                            final Set<Integer> others = new HashSet<>(partitionCustomers.get((String) args[0]));
+                            @SuppressWarnings("unchecked")
+                            final List<Integer> customerIds = (List<Integer>) args[1];
+                            others.removeAll(customerIds);
+                            return !others.isEmpty();
+                        case "detachLogPartition":
+                            detached.add((String) args[0]);
+                            return null;
+                        case "dropLogPartition":
+                            dropped.add((String) args[0]);
+                            return null;
+                        case "purgeCustomerLogRecords":
+                            return 0;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        return new PostgresDeviceLogPartitionMaintainer(mapper, 3, expiredAction);
+    }
+
+    private void addSettings(int customerId, int preservePeriod) {
+        final PostgresDeviceLogPluginSettings setting = new PostgresDeviceLogPluginSettings();
+        setting.setCustomerId(customerId);
+        setting.setLogsPreservePeriod(preservePeriod);
+        settings.add(setting);
+    }
+
+    private void addPartition(String name, int daysAgo, Integer... customerIds) {
+        final long to = TODAY - daysAgo * DAY;
+        final PostgresDeviceLogPartition partition = new PostgresDeviceLogPartition();
+        partition.setName(name);
+        partition.setBound("FOR VALUES FROM ('" + (to - DAY) + "') TO ('" + to + "')");
+        partitions.add(partition);
+        partitionCustomers.put(name, new HashSet<>(Arrays.asList(customerIds)));
+    }
+
+    @Test
+    public void testPartitionExpiredForAllCustomersIsDropped() {
+        addSettings(1, 30);
+        addSettings(2, 10);
+        addPartition("p_old", 40, 1, 2);
+        addPartition("p_recent", 20, 1, 2);
+
+        createMaintainer(PostgresDeviceLogPartitionMaintainer.EXPIRED_DROP).purgeLogRecords();
+
+        Assert.assertEquals(Collections.singletonList("p_old"), detached);
+        Assert.assertEquals(Collections.singletonList("p_old"), dropped);
+    }
+
+    @Test
+    public void testPartitionWithRecordsOfCustomerWithoutSettingsIsKept() {
+        addSettings(1, 30);
+        addPartition("p_old", 40, 1, 3);
+
+        createMaintainer(PostgresDeviceLogPartitionMaintainer.EXPIRED_DROP).purgeLogRecords();
+
+        Assert.assertTrue(detached.isEmpty());
+        Assert.assertTrue(dropped.isEmpty());
+    }
+
+    @Test
+    public void testPartitionWithRecordsOfCustomerWithLongerPeriodIsKept() {
+        addSettings(1, 30);
+        addSettings(2, 60);
+        addPartition("p_old", 40, 1, 2);
+        addPartition("p_older", 70, 1, 2);
+
+        createMaintainer(PostgresDeviceLogPartitionMaintainer.EXPIRED_DROP).purgeLogRecords();
+
+        Assert.assertEquals(Collections.singletonList("p_older"), dropped);
+    }
+
+    @Test
+    public void testExpiredPartitionIsDetachedIfConfigured() {
+        addSettings(1, 30);
+        addPartition("p_old", 40, 1);
+
+        createMaintainer(PostgresDeviceLogPartitionMaintainer.EXPIRED_DETACH).purgeLogRecords();
+
+        Assert.assertEquals(Collections.singletonList("p_old"), detached);
+        Assert.assertTrue(dropped.isEmpty());
+    }
+
+    @Test
+    public void testNothingIsDroppedWithoutSettings() {
+        addPartition("p_old", 400, 1);
+
+        createMaintainer(PostgresDeviceLogPartitionMaintainer.EXPIRED_DROP).purgeLogRecords();
+
+        Assert.assertTrue(detached.isEmpty());
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.devicelog.persistence.postgres.dao;
+
+import com.hmdm.persistence.domain.Device;
+import com.hmdm.persistence.domain.DeviceIdentity;
+import com.hmdm.plugins.devicelog.model.DeviceLogRule;
+import com.hmdm.plugins.devicelog.model.LogLevel;
+import com.hmdm.plugins.devicelog.persistence.postgres.dao.domain.PostgresDeviceLogPluginSettings;
+import com.hmdm.plugins.devicelog.persistence.postgres.dao.domain.PostgresDeviceLogRule;
+import com.hmdm.plugins.devicelog.persistence.postgres.dao.mapper.PostgresDeviceLogMapper;
+import com.hmdm.plugins.devicelog.rest.json.AppliedDeviceLogRule;
+import com.hmdm.plugins.devicelog.rest.json.AppliedDeviceLogRules;
+import com.hmdm.rest.json.LookupItem;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * <p>A test suite for {@link PostgresDeviceLogRuleIndex} class.</p>
+ */
+public class PostgresDeviceLogRuleIndexTests {
+
+    private static final int CUSTOMER_ID = 1;
+
+    private final List<DeviceLogRule> rules = new ArrayList<>();
+
+    private int loads;
+
+    private final PostgresDeviceLogRuleIndex index;
+
+    /**
+     * <p>Constructs new <code>PostgresDeviceLogRuleIndexTests</code> instance. This implementation does nothing.</p>
+     */
+    public PostgresDeviceLogRuleIndexTests() {
+        final PostgresDeviceLogMapper mapper = (PostgresDeviceLogMapper) Proxy.newProxyInstance(
+                PostgresDeviceLogMapper.class.getClassLoader(), new Class<?>[] {PostgresDeviceLogMapper.class},
+                (proxy, method, args) -> {
+                    if ("findPluginSettingsByCustomerId".equals(method.getName())) {
+                        loads++;
+                        final PostgresDeviceLogPluginSettings settings = new PostgresDeviceLogPluginSettings();
+                        settings.setCustomerId(CUSTOMER_ID);
+                        settings.setRules(new ArrayList<>(rules));
+                        return settings;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        this.index = new PostgresDeviceLogRuleIndex(mapper);
+    }
+
+    private static PostgresDeviceLogRule rule(String pkg, LogLevel severity, Integer configurationId, Integer groupId,
+                                              Integer... deviceIds) {
+        final PostgresDeviceLogRule rule = new PostgresDeviceLogRule();
+        rule.setId(pkg.hashCode() ^ severity.getId());
+        rule.setActive(true);
+        rule.setApplicationPkg(pkg);
+        rule.setSeverity(severity);
+        rule.setConfigurationId(configurationId);
+        rule.setGroupId(groupId);
+        rule.setDevices(Arrays.stream(deviceIds).map(id -> new LookupItem(id, "d" + id)).collect(Collectors.toList()));
+        return rule;
+    }
+
+    private static DeviceIdentity device(int id, Integer configurationId, Integer... groupIds) {
+        final Device device = new Device();
+        device.setId(id);
+        device.setNumber("d" + id);
+        device.setCustomerId(CUSTOMER_ID);
+        device.setConfigurationId(configurationId);
+        device.setGroups(Arrays.stream(groupIds).map(gid -> new LookupItem(gid, "g" + gid)).collect(Collectors.toList()));
+        return new DeviceIdentity(device);
+    }
+
+    private static List<String> describe(AppliedDeviceLogRules rules) {
+        return rules.getRules().stream()
+                .map(r -> r.getPackageId() + "=" + r.getLogLevel())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testMorePreferredTargetsOverrideLessPreferredOnes() {
+        rules.add(rule("app.a", LogLevel.ERROR, null, null));
+        rules.add(rule("app.b", LogLevel.ERROR, null, null));
+        rules.add(rule("app.c", LogLevel.ERROR, null, null));
+        rules.add(rule("app.a", LogLevel.WARNING, 10, null));
+        rules.add(rule("app.b", LogLevel.INFO, null, 20));
+        rules.add(rule("app.a", LogLevel.INFO, null, 20));
+        rules.add(rule("app.a", LogLevel.VERBOSE, null, null, 100));
+
+        Assert.assertEquals(Arrays.asList("app.a=1", "app.b=1", "app.c=1"),
+                describe(index.getDeviceLogRules(device(1, null))));
+        Assert.assertEquals(Arrays.asList("app.b=1", "app.c=1", "app.a=2"),
+                describe(index.getDeviceLogRules(device(2, 10))));
+        Assert.assertEquals(Arrays.asList("app.c=1", "app.b=3", "app.a=3"),
+                describe(index.getDeviceLogRules(device(3, 10, 20))));
+        Assert.assertEquals(Arrays.asList("app.c=1", "app.b=3", "app.a=5"),
+                describe(index.getDeviceLogRules(device(100, 10, 20))));
+    }
+
+    @Test
+    public void testRulesOfSeveralGroupsKeepTheirOriginalOrder() {
+        rules.add(rule("app.a", LogLevel.WARNING, null, 30));
+        rules.add(rule("app.b", LogLevel.INFO, null, 20));
+        rules.add(rule("app.c", LogLevel.DEBUG, null, 30));
+
+        Assert.assertEquals(Arrays.asList("app.a=2", "app.b=3", "app.c=4"),
+                describe(index.getDeviceLogRules(device(1, null, 20, 30))));
+        Assert.assertEquals(Arrays.asList("app.a=2", "app.b=3", "app.c=4"),
+                describe(index.getDeviceLogRules(device(2, null, 30, 20, 40))));
+    }
+
+    @Test
+    public void testInactiveAndSilentRulesAreSkipped() {
+        final PostgresDeviceLogRule inactive = rule("app.a", LogLevel.ERROR, null, null);
+        inactive.setActive(false);
+        rules.add(inactive);
+        rules.add(rule("app.b", LogLevel.NONE, null, null));
+        rules.add(rule("app.c", LogLevel.ERROR, null, null));
+
+        Assert.assertEquals(Collections.singletonList("app.c=1"), describe(index.getDeviceLogRules(device(1, null))));
+    }
+
+    @Test
+    public void testTagDependsOnContentOfRulesOnly() {
+        rules.add(rule("app.a", LogLevel.ERROR, null, null));
+        rules.add(rule("app.b", LogLevel.INFO, 10, null));
+
+        final AppliedDeviceLogRules first = index.getDeviceLogRules(device(1, 10));
+        index.invalidate(CUSTOMER_ID);
+        final AppliedDeviceLogRules rebuilt = index.getDeviceLogRules(device(1, 10));
+        Assert.assertEquals(2, loads);
+        Assert.assertNotSame(first, rebuilt);
+        Assert.assertEquals(first.getTag(), rebuilt.getTag());
+
+        // Other server nodes build own indexes and must return the same tag for the same rules
+        final PostgresDeviceLogRuleIndexTests otherNode = new PostgresDeviceLogRuleIndexTests();
+        otherNode.rules.addAll(rules);
+        Assert.assertEquals(first.getTag(), otherNode.index.getDeviceLogRules(device(2, 10)).getTag());
+
+        // The targets without own rules resolve to the same list of rules
+        Assert.assertNotEquals(first.getTag(), index.getDeviceLogRules(device(1, null)).getTag());
+        Assert.assertEquals(index.getDeviceLogRules(device(3, null)).getTag(),
+                index.getDeviceLogRules(device(4, 11, 50)).getTag());
+
+        rules.set(1, rule("app.b", LogLevel.DEBUG, 10, null));
+        index.invalidate(CUSTOMER_ID);
+        Assert.assertNotEquals(first.getTag(), index.getDeviceLogRules(device(1, 10)).getTag());
+    }
+
+    @Test
+    public void testTagDistinguishesFieldBoundaries() {
+        final AppliedDeviceLogRule first = new AppliedDeviceLogRule();
+        first.setPackageId("app.a");
+        first.setLogLevel(1);
+        first.setFilter("x");
+        final AppliedDeviceLogRule second = new AppliedDeviceLogRule();
+        second.setPackageId("app.a1");
+        second.setLogLevel(1);
+        second.setFilter(null);
+
+        Assert.assertNotEquals(PostgresDeviceLogRuleIndex.tag(Collections.singletonList(first)),
+                PostgresDeviceLogRuleIndex.tag(Collections.singletonList(second)));
+        Assert.assertNotEquals(PostgresDeviceLogRuleIndex.tag(Arrays.asList(first, second)),
+                PostgresDeviceLogRuleIndex.tag(Arrays.asList(second, first)));
+        Assert.assertEquals(PostgresDeviceLogRuleIndex.tag(Collections.emptyList()),
+                PostgresDeviceLogRuleIndex.tag(new ArrayList<>()));
+    }
+}
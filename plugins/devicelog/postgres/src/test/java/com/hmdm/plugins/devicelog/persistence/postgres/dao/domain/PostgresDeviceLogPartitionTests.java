@@ -0,0 +1,61 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.plugins.devicelog.persistence.postgres.dao.domain;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>A test suite for {@link PostgresDeviceLogPartition} class.</p>
+ */
+public class PostgresDeviceLogPartitionTests {
+
+    /**
+     * <p>Constructs new <code>PostgresDeviceLogPartitionTests</code> instance. This implementation does nothing.</p>
+     */
+    public PostgresDeviceLogPartitionTests() {
+    }
+
+    private static Long getUpperBound(String bound) {
+        final PostgresDeviceLogPartition partition = new PostgresDeviceLogPartition();
+        partition.setBound(bound);
+        return partition.getUpperBound();
+    }
+
+    @Test
+    public void testUpperBoundIsParsed() {
+        Assert.assertEquals(Long.valueOf(1700086400000L),
+                getUpperBound("FOR VALUES FROM ('1700000000000') TO ('1700086400000')"));
+        Assert.assertEquals(Long.valueOf(1700086400000L),
+                getUpperBound("FOR VALUES FROM (1700000000000) TO (1700086400000)"));
+        Assert.assertEquals("Legacy partition", Long.valueOf(1700086400000L),
+                getUpperBound("FOR VALUES FROM (MINVALUE) TO ('1700086400000')"));
+        Assert.assertEquals(Long.valueOf(-1000L), getUpperBound("FOR VALUES FROM ('-2000') TO ('-1000')"));
+    }
+
+    @Test
+    public void testNoUpperBound() {
+        Assert.assertNull(getUpperBound(null));
+        Assert.assertNull("Default partition", getUpperBound("DEFAULT"));
+        Assert.assertNull(getUpperBound("FOR VALUES FROM ('1700000000000') TO (MAXVALUE)"));
+    }
+}
@@ -229,6 +229,20 @@ angular.module('plugin-devicelog', ['ngResource', 'ui.bootstrap', 'ui.router', '
             loadData();
         });
 
+        // The last record of the loaded page. The next page is loaded following that record instead of skipping the
+        // records of all previous pages, as long as the filter is not changed
+        var lastPage = null;
+
+        var getFilterKey = function (request) {
+            var filter = {};
+            for (var p in request) {
+                if (request.hasOwnProperty(p) && p !== 'pageNum' && p !== 'totalItems') {
+                    filter[p] = request[p];
+                }
+            }
+            return angular.toJson(filter);
+        };
+
         var loading = false;
         var loadData = function () {
             $scope.errorMessage = undefined;
@@ -249,11 +263,26 @@ angular.module('plugin-devicelog', ['ngResource', 'ui.bootstrap', 'ui.router', '
 
             request.deviceFilter = $scope.deviceLookupFormatter(request.deviceFilter);
 
+            var filterKey = getFilterKey(request);
+            if (lastPage && lastPage.filterKey === filterKey && lastPage.pageNum === request.pageNum - 1
+                && request.sortValue === 'createTime') {
+                request.lastCreateTime = lastPage.lastCreateTime;
+                request.lastId = lastPage.lastId;
+            }
+
             pluginDeviceLogService.getLogs(request, function (response) {
                 loading = false;
                 if (response.status === 'OK') {
                     $scope.logs = response.data.items;
                     $scope.paging.totalItems = response.data.totalItemsCount;
+
+                    var items = response.data.items;
+                    lastPage = items && items.length > 0 ? {
+                        filterKey: filterKey,
+                        pageNum: request.pageNum,
+                        lastCreateTime: items[items.length - 1].createTime,
+                        lastId: items[items.length - 1].id
+                    } : null;
                 } else {
                     $scope.errorMessage = localization.localizeServerResponse(response);
                 }
@@ -32,4 +32,10 @@ public interface PluginTaskModule {
      * <p>Initializes this module. The implementations are expected to initialize and setup any necessary services.</p>
      */
     void init();
+
+    /**
+     * <p>Stops the services started by this module. Called once when the application is being shut down.</p>
+     */
+    default void destroy() {
+    }
 }
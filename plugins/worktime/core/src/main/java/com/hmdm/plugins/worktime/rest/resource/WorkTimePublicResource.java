@@ -2,6 +2,7 @@ package com.hmdm.plugins.worktime.rest.resource;
 
 import com.hmdm.persistence.UnsecureDAO;
 import com.hmdm.persistence.domain.Device;
+import com.hmdm.persistence.domain.DeviceIdentity;
 import com.hmdm.plugins.worktime.service.EffectiveWorkTimePolicy;
 import com.hmdm.plugins.worktime.service.WorkTimeService;
 import com.hmdm.rest.json.Response;
@@ -60,15 +61,16 @@ public class WorkTimePublicResource {
         return SecurityContext.get().getCurrentUser().isPresent();
     }
 
-    private Device resolveDevice(String deviceNumberOrId) {
-        Device device = unsecureDAO.getDeviceByNumber(deviceNumberOrId);
+    private DeviceIdentity resolveDevice(String deviceNumberOrId) {
+        DeviceIdentity device = unsecureDAO.getDeviceIdentityByNumber(deviceNumberOrId);
         if (device != null) {
             return device;
         }
 
         try {
             Integer internalId = Integer.valueOf(deviceNumberOrId);
-            return unsecureDAO.getDeviceById(internalId);
+            Device dbDevice = unsecureDAO.getDeviceById(internalId);
+            return dbDevice != null ? new DeviceIdentity(dbDevice) : null;
         } catch (Exception ignored) {
             return null;
         }
@@ -140,7 +142,7 @@ public class WorkTimePublicResource {
     public Response getDevicePolicy(
             @PathParam("deviceNumber") @ApiParam("Device number/ID from MDM") String deviceNumber) {
         try {
-            Device device = resolveDevice(deviceNumber);
+            DeviceIdentity device = resolveDevice(deviceNumber);
             if (device == null) {
                 log.warn("Device {} not found", deviceNumber);
                 return Response.DEVICE_NOT_FOUND_ERROR();
@@ -183,7 +185,7 @@ public class WorkTimePublicResource {
         }
 
         try {
-            Device device = resolveDevice(deviceNumber);
+            DeviceIdentity device = resolveDevice(deviceNumber);
             if (device == null) {
                 log.warn("Device {} not found", deviceNumber);
                 return Response.DEVICE_NOT_FOUND_ERROR();
@@ -218,7 +220,7 @@ public class WorkTimePublicResource {
     )
     public Response getDeviceStatus(@PathParam("deviceNumber") @ApiParam("Device number/ID") String deviceNumber) {
         try {
-            Device device = resolveDevice(deviceNumber);
+            DeviceIdentity device = resolveDevice(deviceNumber);
             if (device == null) {
                 log.warn("Device {} not found", deviceNumber);
                 return Response.DEVICE_NOT_FOUND_ERROR();
@@ -7,6 +7,7 @@ import com.hmdm.rest.json.SyncResponseInt;
 import com.hmdm.rest.json.SyncResponseHook;
 import com.hmdm.plugins.worktime.service.EffectiveWorkTimePolicy;
 import com.hmdm.plugins.worktime.service.WorkTimeService;
+import com.hmdm.util.CryptoUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -89,6 +90,28 @@ public class WorkTimeSyncResponseHook implements SyncResponseHook {
         }
     }
 
+    /**
+     * <p>Gets the version of the worktime policy delivered to the device: a hash of the policy currently effective for
+     * the device.</p>
+     */
+    @Override
+    public String getVersion(int deviceId) {
+        try {
+            Device device = this.unsecureDAO.getDeviceById(deviceId);
+            if (device == null) {
+                return "";
+            }
+            EffectiveWorkTimePolicy policy = workTimeService.resolveEffectivePolicy(
+                    device.getCustomerId(),
+                    deviceId,
+                    LocalDateTime.now(WORKTIME_ZONE));
+            return CryptoUtil.getSHA1String(objectMapper.writeValueAsString(policy));
+        } catch (Exception e) {
+            log.error("Error evaluating worktime policy version for device {}", deviceId, e);
+            return null;
+        }
+    }
+
     /**
      * Wrapper class for worktime policy with metadata for Android client.
      */
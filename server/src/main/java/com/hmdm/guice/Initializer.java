@@ -32,6 +32,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import javax.servlet.ServletContext;
@@ -39,16 +40,20 @@ import javax.servlet.ServletContextEvent;
 
 import com.hmdm.guice.module.*;
 import com.hmdm.notification.guice.module.*;
+import com.hmdm.notification.PushSenderMqtt;
+import com.hmdm.notification.PushSenderPolling;
 import com.hmdm.plugin.PluginList;
 import com.hmdm.plugin.PluginTaskModule;
 import com.hmdm.plugin.guice.module.PluginLiquibaseModule;
 import com.hmdm.plugin.guice.module.PluginPersistenceModule;
 import com.hmdm.plugin.guice.module.PluginPlatformTaskModule;
 import com.hmdm.plugin.guice.module.PluginRestModule;
+import com.hmdm.service.DeviceInfoWriteBehindService;
 
 public final class Initializer extends GuiceServletContextListener {
     private ServletContext context;
     private Injector injector;
+    private final List<PluginTaskModule> pluginTaskModules = new ArrayList<>();
 
     public Initializer() {
     }
@@ -128,6 +133,26 @@ public final class Initializer extends GuiceServletContextListener {
         initTasks();
     }
 
+    @Override
+    public void contextDestroyed(ServletContextEvent servletContextEvent) {
+        if (this.injector != null) {
+            this.injector.getInstance(DeviceInfoWriteBehindService.class).shutdown();
+            this.injector.getInstance(PushSenderPolling.class).shutdown();
+            this.injector.getInstance(PushSenderMqtt.class).shutdown();
+        }
+        this.pluginTaskModules.forEach(pluginTaskModule -> {
+            try {
+                pluginTaskModule.destroy();
+            } catch (Exception e) {
+                System.err.println("Failed to stop plugin task module '"
+                        + pluginTaskModule.getClass().getName() + "': " + e);
+            }
+        });
+        this.pluginTaskModules.clear();
+
+        super.contextDestroyed(servletContextEvent);
+    }
+
     private List<Module> getModules() {
         List<Module> modules = new LinkedList<>();
         modules.add(new PersistenceModule(this.context));
@@ -168,6 +193,7 @@ public final class Initializer extends GuiceServletContextListener {
                 try {
                     final PluginTaskModule pluginTaskModule = this.injector.getInstance(clazz);
                     pluginTaskModule.init();
+                    this.pluginTaskModules.add(pluginTaskModule);
                 } catch (Exception e) {
                     System.err.println("Failed to instantiate and initialize plugin task module '"
                             + clazz.getName() + "': " + e);
@@ -61,6 +61,8 @@ public class ConfigureModule extends AbstractModule {
     private final String smtpPasswordParameter = "smtp.password";
     private final String smtpFromParameter = "smtp.from";
     private final String deviceFastSearchCharsParameter = "device.fast.search.chars";
+    private final String deviceSearchIndexedParameter = "device.search.indexed";
+    private final String deviceSearchCountLimitParameter = "device.search.count.limit";
     private final String sqlInitScriptPath = "sql.init.script.path";
     private final String proxyAddresses = "proxy.addresses";
     private final String proxyIpHeader = "proxy.ip.header";
@@ -98,6 +100,23 @@ public class ConfigureModule extends AbstractModule {
     private final String jwtSecretKey = "jwt.secretkey";
     private final String jwtValidity = "jwt.validity";
     private final String jwtValidityForRememberMe = "jwt.validityrememberme";
+    private final String syncTemplateCacheTtl = "sync.template.cache.ttl";
+    private final String summaryCacheTtl = "summary.cache.ttl";
+    private final String syncResponsePreserialize = "sync.response.preserialize";
+    private final String deviceInfoFlushInterval = "device.info.flush.interval";
+    private final String deviceInfoBatchSize = "device.info.batch.size";
+    private final String deviceInfoQueueSize = "device.info.queue.size";
+    private final String deviceIdentityCacheSize = "device.identity.cache.size";
+    private final String deviceIdentityCacheTtl = "device.identity.cache.ttl";
+    private final String taskThreads = "task.threads";
+    private final String taskQueueSize = "task.queue.size";
+    private final String taskEventThreads = "task.event.threads";
+    private final String taskEventQueueSize = "task.event.queue.size";
+    private final String taskIngestThreads = "task.ingest.threads";
+    private final String taskIngestQueueSize = "task.ingest.queue.size";
+    private final String taskServiceThreads = "task.service.threads";
+    private final String taskScheduledThreads = "task.scheduled.threads";
+    private final String taskRejectionPolicy = "task.rejection.policy";
     private final ServletContext context;
 
     public ConfigureModule(ServletContext context) {
@@ -190,6 +209,11 @@ public class ConfigureModule extends AbstractModule {
         // Other
         opt = this.context.getInitParameter(deviceFastSearchCharsParameter);
         this.bindConstant().annotatedWith(Names.named(deviceFastSearchCharsParameter)).to(opt != null && !opt.equals("") ? Integer.parseInt(opt): 5);
+        opt = this.context.getInitParameter(deviceSearchIndexedParameter);
+        this.bindConstant().annotatedWith(Names.named(deviceSearchIndexedParameter)).to(
+                opt != null && (opt.equals("1") || opt.equalsIgnoreCase("true")));
+        opt = this.context.getInitParameter(deviceSearchCountLimitParameter);
+        this.bindConstant().annotatedWith(Names.named(deviceSearchCountLimitParameter)).to(opt != null && !opt.equals("") ? Integer.parseInt(opt): 0);
         opt = this.context.getInitParameter(sqlInitScriptPath);
         this.bindConstant().annotatedWith(Names.named(sqlInitScriptPath)).to(opt != null ? opt : "");
         opt = this.context.getInitParameter(proxyAddresses);
@@ -272,5 +296,42 @@ public class ConfigureModule extends AbstractModule {
         this.bindConstant().annotatedWith(Names.named(jwtValidity)).to(opt != null ? opt : "");
         opt = this.context.getInitParameter(jwtValidityForRememberMe);
         this.bindConstant().annotatedWith(Names.named(jwtValidityForRememberMe)).to(opt != null ? opt : "");
+
+        // Performance
+        opt = this.context.getInitParameter(syncTemplateCacheTtl);
+        this.bindConstant().annotatedWith(Names.named(syncTemplateCacheTtl)).to(opt != null && !opt.equals("") ? Integer.parseInt(opt): 60);
+        opt = this.context.getInitParameter(summaryCacheTtl);
+        this.bindConstant().annotatedWith(Names.named(summaryCacheTtl)).to(opt != null && !opt.equals("") ? Integer.parseInt(opt): 30);
+        opt = this.context.getInitParameter(syncResponsePreserialize);
+        this.bindConstant().annotatedWith(Names.named(syncResponsePreserialize)).to(
+                opt == null || opt.equals("") || opt.equals("1") || opt.equalsIgnoreCase("true"));
+        opt = this.context.getInitParameter(deviceInfoFlushInterval);
+        this.bindConstant().annotatedWith(Names.named(deviceInfoFlushInterval)).to(opt != null && !opt.equals("") ? Integer.parseInt(opt): 1000);
+        opt = this.context.getInitParameter(deviceInfoBatchSize);
+        this.bindConstant().annotatedWith(Names.named(deviceInfoBatchSize)).to(opt != null && !opt.equals("") ? Integer.parseInt(opt): 500);
+        opt = this.context.getInitParameter(deviceInfoQueueSize);
+        this.bindConstant().annotatedWith(Names.named(deviceInfoQueueSize)).to(opt != null && !opt.equals("") ? Integer.parseInt(opt): 50000);
+        opt = this.context.getInitParameter(deviceIdentityCacheSize);
+        this.bindConstant().annotatedWith(Names.named(deviceIdentityCacheSize)).to(opt != null && !opt.equals("") ? Integer.parseInt(opt): 100000);
+        opt = this.context.getInitParameter(deviceIdentityCacheTtl);
+        this.bindConstant().annotatedWith(Names.named(deviceIdentityCacheTtl)).to(opt != null && !opt.equals("") ? Integer.parseInt(opt): 300);
+        opt = this.context.getInitParameter(taskThreads);
+        this.bindConstant().annotatedWith(Names.named(taskThreads)).to(opt != null && !opt.equals("") ? Integer.parseInt(opt): 10);
+        opt = this.context.getInitParameter(taskQueueSize);
+        this.bindConstant().annotatedWith(Names.named(taskQueueSize)).to(opt != null && !opt.equals("") ? Integer.parseInt(opt): 10000);
+        opt = this.context.getInitParameter(taskEventThreads);
+        this.bindConstant().annotatedWith(Names.named(taskEventThreads)).to(opt != null && !opt.equals("") ? Integer.parseInt(opt): 4);
+        opt = this.context.getInitParameter(taskEventQueueSize);
+        this.bindConstant().annotatedWith(Names.named(taskEventQueueSize)).to(opt != null && !opt.equals("") ? Integer.parseInt(opt): 10000);
+        opt = this.context.getInitParameter(taskIngestThreads);
+        this.bindConstant().annotatedWith(Names.named(taskIngestThreads)).to(opt != null && !opt.equals("") ? Integer.parseInt(opt): 5);
+        opt = this.context.getInitParameter(taskIngestQueueSize);
+        this.bindConstant().annotatedWith(Names.named(taskIngestQueueSize)).to(opt != null && !opt.equals("") ? Integer.parseInt(opt): 10000);
+        opt = this.context.getInitParameter(taskServiceThreads);
+        this.bindConstant().annotatedWith(Names.named(taskServiceThreads)).to(opt != null && !opt.equals("") ? Integer.parseInt(opt): 4);
+        opt = this.context.getInitParameter(taskScheduledThreads);
+        this.bindConstant().annotatedWith(Names.named(taskScheduledThreads)).to(opt != null && !opt.equals("") ? Integer.parseInt(opt): 2);
+        opt = this.context.getInitParameter(taskRejectionPolicy);
+        this.bindConstant().annotatedWith(Names.named(taskRejectionPolicy)).to(opt != null && !opt.equals("") ? opt : "caller-runs");
     }
 }
\ No newline at end of file
@@ -26,11 +26,12 @@ import com.hmdm.event.EventService;
 import com.hmdm.persistence.ConfigurationUpdatedEventListener;
 import com.hmdm.persistence.DeviceInfoUpdatedEventListener;
 import com.hmdm.persistence.mapper.DeviceMapper;
+import com.hmdm.service.DeviceListConfigurationCache;
 import com.hmdm.service.DeviceStatusService;
+import com.hmdm.service.SyncTemplateCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -42,6 +43,8 @@ public class EventListenerModule {
     private final EventService eventService;
     private final DeviceMapper deviceMapper;
     private final DeviceStatusService deviceStatusService;
+    private final SyncTemplateCache syncTemplateCache;
+    private final DeviceListConfigurationCache deviceListConfigurationCache;
 
     private final ExecutorService executorService = Executors.newFixedThreadPool(1);
 
@@ -52,25 +55,28 @@ public class EventListenerModule {
      * <p>Constructs new <code>EventListenerModule</code> instance. This implementation does nothing.</p>
      */
     @Inject
-    public EventListenerModule(EventService eventService, DeviceMapper deviceMapper, DeviceStatusService deviceStatusService) {
+    public EventListenerModule(EventService eventService, DeviceMapper deviceMapper, DeviceStatusService deviceStatusService,
+                               SyncTemplateCache syncTemplateCache,
+                               DeviceListConfigurationCache deviceListConfigurationCache) {
         this.eventService = eventService;
         this.deviceMapper = deviceMapper;
         this.deviceStatusService = deviceStatusService;
+        this.syncTemplateCache = syncTemplateCache;
+        this.deviceListConfigurationCache = deviceListConfigurationCache;
     }
 
     public void init() {
         this.eventService.addEventListener(new DeviceInfoUpdatedEventListener(deviceStatusService));
         this.eventService.addEventListener(new ConfigurationUpdatedEventListener(deviceMapper, deviceStatusService));
+        this.eventService.addEventListener(syncTemplateCache);
+        this.eventService.addEventListener(deviceListConfigurationCache);
 
         executorService.submit(() -> {
-            List<Integer> deviceIds = this.deviceMapper.getAllDeviceIds();
-            deviceIds.forEach(deviceId -> {
-                try {
-                    this.deviceStatusService.recalcDeviceStatuses(deviceId);
-                } catch (Exception e) {
-                    logger.warn("Failed to recalculate statuses for device: {}", deviceId, e);
-                }
-            });
+            try {
+                this.deviceStatusService.recalcOutdatedDeviceStatuses();
+            } catch (Exception e) {
+                logger.warn("Failed to recalculate outdated device statuses", e);
+            }
         });
 
         Runtime.getRuntime().addShutdownHook(new Thread(executorService::shutdown));
@@ -52,6 +52,23 @@ public class LiquibaseModule extends AbstractLiquibaseModule {
         return this.getClass().getResource("/liquibase/db.changelog.xml").getPath();
     }
 
+    /**
+     * <p>Gets the list of <code>Liquibaase</code> contexts to be applied based on specified usage scenario. The
+     * <code>search</code> context is added if the indexed device search is enabled.</p>
+     *
+     * @param usageScenario  usage scenario.
+     * @return a comma-separated list of <code>Liquibase</code> contexts to be applied.
+     */
+    @Override
+    protected String getContexts(String usageScenario) {
+        String contexts = super.getContexts(usageScenario);
+        final String indexed = this.context.getInitParameter("device.search.indexed");
+        if (indexed != null && (indexed.equals("1") || indexed.equalsIgnoreCase("true"))) {
+            contexts += ",search";
+        }
+        return contexts;
+    }
+
     /**
      * <p>Gets the resource accessor to be uused for loading the change log file.</p>
      *
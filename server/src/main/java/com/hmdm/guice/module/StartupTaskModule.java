@@ -6,6 +6,8 @@ import com.hmdm.event.EventService;
 import com.hmdm.persistence.CommonDAO;
 import com.hmdm.persistence.UnsecureDAO;
 import com.hmdm.persistence.domain.User;
+import com.hmdm.service.DeviceIdentityCache;
+import com.hmdm.service.DeviceSummaryService;
 import com.hmdm.service.RsaKeyService;
 import com.hmdm.task.CustomerStatusTask;
 import com.hmdm.task.FileCheckTask;
@@ -31,6 +33,7 @@ public class StartupTaskModule {
     private UnsecureDAO unsecureDAO;
     private BackgroundTaskRunnerService taskRunner;
     private int deviceFastSearchChars;
+    private boolean deviceSearchIndexed;
     private String sqlInitScriptPath;
     private CustomerStatusTask customerStatusTask;
     private FileCheckTask fileCheckTask;
@@ -38,6 +41,8 @@ public class StartupTaskModule {
     private boolean customerAutoStatus;
     private boolean transmitPassword;
     private RsaKeyService rsaKeyService;
+    private DeviceIdentityCache deviceIdentityCache;
+    private DeviceSummaryService deviceSummaryService;
 
     private static final Logger logger = LoggerFactory.getLogger(EventService.class);
 
@@ -50,7 +55,10 @@ public class StartupTaskModule {
                              FileCheckTask fileCheckTask,
                              FileMigrateTask fileMigrateTask,
                              RsaKeyService rsaKeyService,
+                             DeviceIdentityCache deviceIdentityCache,
+                             DeviceSummaryService deviceSummaryService,
                              @Named("device.fast.search.chars") int deviceFastSearchChars,
+                             @Named("device.search.indexed") boolean deviceSearchIndexed,
                              @Named("sql.init.script.path") String sqlInitScriptPath,
                              @Named("customer.auto.status") boolean customerAutoStatus,
                              @Named("transmit.password") boolean transmitPassword) {
@@ -58,6 +66,7 @@ public class StartupTaskModule {
         this.unsecureDAO = unsecureDAO;
         this.taskRunner = taskRunner;
         this.deviceFastSearchChars = deviceFastSearchChars;
+        this.deviceSearchIndexed = deviceSearchIndexed;
         this.sqlInitScriptPath = sqlInitScriptPath;
         this.customerStatusTask = customerStatusTask;
         this.fileCheckTask = fileCheckTask;
@@ -65,15 +74,21 @@ public class StartupTaskModule {
         this.customerAutoStatus = customerAutoStatus;
         this.transmitPassword = transmitPassword;
         this.rsaKeyService = rsaKeyService;
+        this.deviceIdentityCache = deviceIdentityCache;
+        this.deviceSummaryService = deviceSummaryService;
     }
 
     public void init() {
-        taskRunner.submitTask(new UpdatePasswordTask());
-        taskRunner.submitTask(new UpdateDeviceFastSearchTask());
-        taskRunner.submitTask(new ResetUserLoginFailTimeTask());
-        taskRunner.submitTask(fileMigrateTask);
+        taskRunner.submitTask(BackgroundTaskRunnerService.Lane.SERVICES, new UpdatePasswordTask());
+        taskRunner.submitTask(BackgroundTaskRunnerService.Lane.SERVICES, new UpdateDeviceFastSearchTask());
+        taskRunner.submitTask(BackgroundTaskRunnerService.Lane.SERVICES, new UpdateDeviceInfoColumnsTask());
+        if (deviceSearchIndexed) {
+            taskRunner.submitTask(BackgroundTaskRunnerService.Lane.SERVICES, new UpdateDeviceSearchTextTask());
+        }
+        taskRunner.submitTask(BackgroundTaskRunnerService.Lane.SERVICES, new ResetUserLoginFailTimeTask());
+        taskRunner.submitTask(BackgroundTaskRunnerService.Lane.SERVICES, fileMigrateTask);
         if (!sqlInitScriptPath.equals("")) {
-            taskRunner.submitTask(new ExecuteInitSqlTask());
+            taskRunner.submitTask(BackgroundTaskRunnerService.Lane.SERVICES, new ExecuteInitSqlTask());
         }
         if (customerAutoStatus) {
             taskRunner.submitRepeatableTask(customerStatusTask, 0, 1, TimeUnit.HOURS);
@@ -81,8 +96,11 @@ public class StartupTaskModule {
         // Shift a task to 5 min so they won't execute at the same time
         taskRunner.submitRepeatableTask(fileCheckTask, 5, 60, TimeUnit.MINUTES);
         if (transmitPassword) {
-            taskRunner.submitTask(new GenerateRsaKeysTask());
+            taskRunner.submitTask(BackgroundTaskRunnerService.Lane.SERVICES, new GenerateRsaKeysTask());
         }
+        taskRunner.submitRepeatableTask(deviceIdentityCache::logStats, 1, 1, TimeUnit.HOURS);
+        taskRunner.submitRepeatableTask(deviceSummaryService::evictIdle, 10, 10, TimeUnit.MINUTES);
+        taskRunner.submitRepeatableTask(taskRunner::logStats, 1, 1, TimeUnit.HOURS);
     }
 
     public class UpdatePasswordTask implements Runnable {
@@ -104,6 +122,20 @@ public class StartupTaskModule {
         }
     }
 
+    public class UpdateDeviceInfoColumnsTask implements Runnable {
+        @Override
+        public void run() {
+            unsecureDAO.updateDeviceInfoColumns();
+        }
+    }
+
+    public class UpdateDeviceSearchTextTask implements Runnable {
+        @Override
+        public void run() {
+            unsecureDAO.updateDeviceSearchText();
+        }
+    }
+
     // Reset login fail times to avoid permanent auth failure if a server time occasionally changes
     public class ResetUserLoginFailTimeTask implements Runnable {
         @Override
@@ -273,6 +273,81 @@ public class SyncResponse implements Serializable, SyncResponseInt {
     public SyncResponse() {
     }
 
+    /**
+     * <p>Constructs new <code>SyncResponse</code> instance as a shallow copy of the specified response. The lists of
+     * applications and files are shared with the original.</p>
+     *
+     * @param template a response to copy the data from.
+     */
+    public SyncResponse(SyncResponse template) {
+        this.backgroundColor = template.backgroundColor;
+        this.textColor = template.textColor;
+        this.backgroundImageUrl = template.backgroundImageUrl;
+        this.iconSize = template.iconSize;
+        this.requestUpdates = template.requestUpdates;
+        this.disableLocation = template.disableLocation;
+        this.appPermissions = template.appPermissions;
+        this.pushOptions = template.pushOptions;
+        this.keepaliveTime = template.keepaliveTime;
+        this.autoBrightness = template.autoBrightness;
+        this.brightness = template.brightness;
+        this.manageTimeout = template.manageTimeout;
+        this.timeout = template.timeout;
+        this.lockVolume = template.lockVolume;
+        this.manageVolume = template.manageVolume;
+        this.volume = template.volume;
+        this.passwordMode = template.passwordMode;
+        this.orientation = template.orientation;
+        this.displayStatus = template.displayStatus;
+        this.runDefaultLauncher = template.runDefaultLauncher;
+        this.disableScreenshots = template.disableScreenshots;
+        this.autostartForeground = template.autostartForeground;
+        this.timeZone = template.timeZone;
+        this.allowedClasses = template.allowedClasses;
+        this.newServerUrl = template.newServerUrl;
+        this.lockSafeSettings = template.lockSafeSettings;
+        this.permissive = template.permissive;
+        this.kioskExit = template.kioskExit;
+        this.showWifi = template.showWifi;
+        this.password = template.password;
+        this.imei = template.imei;
+        this.phone = template.phone;
+        this.title = template.title;
+        this.applications = template.applications;
+        this.gps = template.gps;
+        this.bluetooth = template.bluetooth;
+        this.wifi = template.wifi;
+        this.mobileData = template.mobileData;
+        this.usbStorage = template.usbStorage;
+        this.kioskMode = template.kioskMode;
+        this.kioskHome = template.kioskHome;
+        this.kioskRecents = template.kioskRecents;
+        this.kioskNotifications = template.kioskNotifications;
+        this.kioskSystemInfo = template.kioskSystemInfo;
+        this.kioskKeyguard = template.kioskKeyguard;
+        this.kioskLockButtons = template.kioskLockButtons;
+        this.lockStatusBar = template.lockStatusBar;
+        this.kioskScreenOn = template.kioskScreenOn;
+        this.mainApp = template.mainApp;
+        this.systemUpdateType = template.systemUpdateType;
+        this.systemUpdateFrom = template.systemUpdateFrom;
+        this.systemUpdateTo = template.systemUpdateTo;
+        this.scheduleAppUpdate = template.scheduleAppUpdate;
+        this.appUpdateFrom = template.appUpdateFrom;
+        this.appUpdateTo = template.appUpdateTo;
+        this.downloadUpdates = template.downloadUpdates;
+        this.applicationSettings = template.applicationSettings;
+        this.files = template.files;
+        this.newNumber = template.newNumber;
+        this.restrictions = template.restrictions;
+        this.custom1 = template.custom1;
+        this.custom2 = template.custom2;
+        this.custom3 = template.custom3;
+        this.appName = template.appName;
+        this.vendor = template.vendor;
+        this.description = template.description;
+    }
+
     public SyncResponse(Settings settings, String password, List<Application> applications, Device device) {
         if (settings != null) {
             this.backgroundColor = settings.getBackgroundColor();
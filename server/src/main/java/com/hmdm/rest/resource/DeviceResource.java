@@ -23,10 +23,11 @@ package com.hmdm.rest.resource;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
@@ -46,6 +47,7 @@ import com.hmdm.rest.json.view.devicelist.DeviceListView;
 import com.hmdm.rest.json.view.devicelist.DeviceView;
 import com.hmdm.security.SecurityContext;
 import com.hmdm.security.SecurityException;
+import com.hmdm.service.DeviceListConfigurationCache;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
@@ -63,7 +65,7 @@ public class DeviceResource {
     private DeviceDAO deviceDAO;
     private ConfigurationDAO configurationDAO;
     private PushService pushService;
-    private ConfigurationFileDAO configurationFileDAO;
+    private DeviceListConfigurationCache configurationCache;
     private CommonDAO commonDAO;
     private UnsecureDAO unsecureDAO;
 
@@ -77,13 +79,13 @@ public class DeviceResource {
     public DeviceResource(DeviceDAO deviceDAO,
                           ConfigurationDAO configurationDAO,
                           PushService pushService,
-                          ConfigurationFileDAO configurationFileDAO,
+                          DeviceListConfigurationCache configurationCache,
                           CommonDAO commonDAO,
                           UnsecureDAO unsecureDAO) {
         this.deviceDAO = deviceDAO;
         this.configurationDAO = configurationDAO;
         this.pushService = pushService;
-        this.configurationFileDAO = configurationFileDAO;
+        this.configurationCache = configurationCache;
         this.commonDAO = commonDAO;
         this.unsecureDAO = unsecureDAO;
     }
@@ -99,46 +101,22 @@ public class DeviceResource {
     @Produces(MediaType.APPLICATION_JSON)
     public Response getAllDevices(DeviceSearchRequest request) {
         PaginatedData<Device> devices = this.deviceDAO.getAllDevices(request);
-        Map<Integer, List<Application>> configIdToApplicationsMap = new HashMap<>();
-        Map<Integer, List<ConfigurationFile>> configIdToFilesMap = new HashMap<>();
-        Map<Integer, Configuration> configIdToConfigurationsMap = new HashMap<>();
+        final Set<Integer> configurationIds = devices.getItems().stream()
+                .map(Device::getConfigurationId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        final Map<Integer, Configuration> configIdToConfigurationsMap
+                = this.configurationCache.getConfigurations(configurationIds);
         for (Device device : devices.getItems()) {
             final Integer deviceConfigurationId = device.getConfigurationId();
-
-            Configuration dbConfig = null;
-            if (!configIdToConfigurationsMap.containsKey(deviceConfigurationId)) {
-                dbConfig = configurationDAO.getConfigurationById(deviceConfigurationId);
-                if (dbConfig == null) {
-                    log.error("Device " + device.getNumber() + ": configuration does not exist: " + deviceConfigurationId);
-                    device.setConfigurationId(null);     // Will be filtered out when converting to DeviceView
-                    continue;
-                }
-            }
-
-            if (!configIdToApplicationsMap.containsKey(deviceConfigurationId)) {
-                configIdToApplicationsMap.put(deviceConfigurationId, this.configurationDAO.getConfigurationApplications(deviceConfigurationId));
-            }
-            if (!configIdToFilesMap.containsKey(deviceConfigurationId)) {
-                configIdToFilesMap.put(deviceConfigurationId, this.configurationFileDAO.getConfigurationFiles(deviceConfigurationId));
-            }
-
-            if (!configIdToConfigurationsMap.containsKey(deviceConfigurationId)) {
-                // Here we keep only required properties
-                Configuration configuration = new Configuration();
-                configuration.setId(deviceConfigurationId);
-                configuration.setName(device.getConfigName());
-                if (dbConfig.getMainAppId() != null && dbConfig.getMainAppId() > 0 &&
-                        dbConfig.getEventReceivingComponent() != null && dbConfig.getEventReceivingComponent().length() > 0) {
-                    configuration.setQrCodeKey(dbConfig.getQrCodeKey());
-                    configuration.setBaseUrl(this.configurationDAO.getBaseUrl());
-                }
-                configuration.setApplications(configIdToApplicationsMap.get(deviceConfigurationId));
-                configuration.setFiles(configIdToFilesMap.get(deviceConfigurationId));
-                
-                configIdToConfigurationsMap.put(deviceConfigurationId, configuration);
+            final Configuration configuration = configIdToConfigurationsMap.get(deviceConfigurationId);
+            if (configuration == null) {
+                log.error("Device " + device.getNumber() + ": configuration does not exist: " + deviceConfigurationId);
+                device.setConfigurationId(null);     // Will be filtered out when converting to DeviceView
+                continue;
             }
 
-            device.setConfiguration(configIdToConfigurationsMap.get(deviceConfigurationId));
+            device.setConfiguration(configuration);
         }
 
         final List<DeviceView> deviceViews = devices.getItems().stream()
@@ -146,6 +124,7 @@ public class DeviceResource {
                 .map(DeviceView::new)
                 .collect(Collectors.toList());
         PaginatedData<DeviceView> devicesPage = new PaginatedData<>(deviceViews, devices.getTotalItemsCount());
+        devicesPage.setNextPageKey(devices.getNextPageKey());
 
         DeviceListView view = new DeviceListView(configIdToConfigurationsMap.values(), devicesPage);
 
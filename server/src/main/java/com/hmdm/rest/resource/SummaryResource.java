@@ -21,12 +21,10 @@
 
 package com.hmdm.rest.resource;
 
-import com.hmdm.persistence.DeviceDAO;
-import com.hmdm.persistence.domain.DeviceSummaryRequest;
-import com.hmdm.persistence.domain.SummaryConfigItem;
 import com.hmdm.rest.json.Response;
 import com.hmdm.rest.json.SummaryResponse;
-import com.hmdm.service.DeviceApplicationsStatus;
+import com.hmdm.security.SecurityContext;
+import com.hmdm.service.DeviceSummaryService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.Authorization;
@@ -37,9 +35,6 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
-import java.util.Calendar;
-import java.util.LinkedList;
-import java.util.List;
 
 @Api(tags = {"Summary"}, authorizations = {@Authorization("Bearer Token")})
 @Singleton
@@ -48,7 +43,7 @@ public class SummaryResource {
 
     private static final Logger log = LoggerFactory.getLogger(SummaryResource.class);
 
-    private DeviceDAO deviceDAO;
+    private DeviceSummaryService deviceSummaryService;
 
     /**
      * <p>A constructor required by Swagger.</p>
@@ -57,8 +52,8 @@ public class SummaryResource {
     }
 
     @Inject
-    public SummaryResource(DeviceDAO deviceDAO) {
-        this.deviceDAO = deviceDAO;
+    public SummaryResource(DeviceSummaryService deviceSummaryService) {
+        this.deviceSummaryService = deviceSummaryService;
     }
 
     // =================================================================================================================
@@ -71,91 +66,14 @@ public class SummaryResource {
     @Path("/devices")
     @Produces(MediaType.APPLICATION_JSON)
     public Response getDeviceStats() {
-        SummaryResponse summaryResponse = new SummaryResponse();
-
-        summaryResponse.setInstallSummary(deviceDAO.getInstallSummary());
-        if (summaryResponse.getInstallSummary() == null) {
-            log.error("Failed to get installation statistics!");
-            return Response.INTERNAL_ERROR();
-        }
-
-        summaryResponse.setStatusSummary(deviceDAO.getStatusSummary());
-        if (summaryResponse.getStatusSummary() == null) {
-            log.error("Failed to get device status statistics!");
+        try {
+            return SecurityContext.get().getCurrentUser()
+                    .map(user -> Response.OK(this.deviceSummaryService.getSummary(user)))
+                    .orElse(Response.PERMISSION_DENIED());
+        } catch (Exception e) {
+            log.error("Failed to get device statistics!", e);
             return Response.INTERNAL_ERROR();
         }
-
-        summaryResponse.setDevicesTotal(deviceDAO.getTotalDevicesCount());
-        summaryResponse.setDevicesEnrolled(deviceDAO.countEnrolled(0l));
-        summaryResponse.setDevicesEnrolledLastMonth(deviceDAO.countEnrolled(
-                System.currentTimeMillis() - 30 * 86400 * 1000l));
-
-        // Top 5 configs by devices
-        DeviceSummaryRequest condition = new DeviceSummaryRequest();
-        condition.setMinOnlineTime(0l);
-        List<SummaryConfigItem> topConfigs = deviceDAO.getSummaryByConfig(condition, null);
-
-        summaryResponse.setTopConfigs(new LinkedList<>());
-        for (SummaryConfigItem summaryConfigItem : topConfigs) {
-            summaryResponse.getTopConfigs().add(summaryConfigItem.getName());
-        };
-
-        // Offline devices
-        long now = System.currentTimeMillis();
-        condition.setMaxOnlineTime(now - 3600*1000l);
-        List<SummaryConfigItem> offline = deviceDAO.getSummaryByConfig(condition, topConfigs);
-        summaryResponse.setStatusOfflineByConfig(new LinkedList<>());
-        for (SummaryConfigItem item : offline) {
-            summaryResponse.getStatusOfflineByConfig().add(item.getCounter());
-        }
-
-        // Idle devices
-        condition.setMinOnlineTime(now - 3600*4000l);
-        condition.setMaxOnlineTime(now - 3600*1000l);
-        List<SummaryConfigItem> idle = deviceDAO.getSummaryByConfig(condition, topConfigs);
-        summaryResponse.setStatusIdleByConfig(new LinkedList<>());
-        for (SummaryConfigItem item : idle) {
-            summaryResponse.getStatusIdleByConfig().add(item.getCounter());
-        }
-
-        // Online devices
-        condition.setMinOnlineTime(now - 3600*1000l);
-        condition.setMaxOnlineTime(null);
-        List<SummaryConfigItem> online = deviceDAO.getSummaryByConfig(condition, topConfigs);
-        summaryResponse.setStatusOnlineByConfig(new LinkedList<>());
-        for (SummaryConfigItem item : online) {
-            summaryResponse.getStatusOnlineByConfig().add(item.getCounter());
-        }
-
-        // Application status: failed
-        condition.setMinOnlineTime(0l);
-        condition.setMaxOnlineTime(null);
-        condition.setAppStatus(DeviceApplicationsStatus.FAILURE);
-        List<SummaryConfigItem> failed = deviceDAO.getSummaryByConfig(condition, topConfigs);
-        summaryResponse.setAppFailureByConfig(new LinkedList<>());
-        for (SummaryConfigItem item : failed) {
-            summaryResponse.getAppFailureByConfig().add(item.getCounter());
-        }
-
-        // Application status: mismatch
-        condition.setAppStatus(DeviceApplicationsStatus.VERSION_MISMATCH);
-        List<SummaryConfigItem> mismatch = deviceDAO.getSummaryByConfig(condition, topConfigs);
-        summaryResponse.setAppMismatchByConfig(new LinkedList<>());
-        for (SummaryConfigItem item : mismatch) {
-            summaryResponse.getAppMismatchByConfig().add(item.getCounter());
-        }
-
-        // Application status: success
-        condition.setAppStatus(DeviceApplicationsStatus.SUCCESS);
-        List<SummaryConfigItem> success = deviceDAO.getSummaryByConfig(condition, topConfigs);
-        summaryResponse.setAppSuccessByConfig(new LinkedList<>());
-        for (SummaryConfigItem item : success) {
-            summaryResponse.getAppSuccessByConfig().add(item.getCounter());
-        }
-
-        summaryResponse.setDevicesEnrolledMonthly(deviceDAO.getDevicesEnrolledMonthly());
-
-        return Response.OK(summaryResponse);
     }
 
 }
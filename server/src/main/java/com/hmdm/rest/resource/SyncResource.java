@@ -38,13 +38,15 @@ import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 
 import com.google.inject.Injector;
 import com.google.inject.Key;
 import com.hmdm.event.DeviceBatteryLevelUpdatedEvent;
-import com.hmdm.event.DeviceInfoUpdatedEvent;
 import com.hmdm.event.DeviceLocationUpdatedEvent;
 import com.hmdm.event.EventService;
 import com.hmdm.persistence.CustomerDAO;
@@ -54,8 +56,12 @@ import com.hmdm.persistence.domain.ApplicationSettingType;
 import com.hmdm.persistence.domain.ApplicationVersion;
 import com.hmdm.persistence.domain.ConfigurationFile;
 import com.hmdm.persistence.domain.Customer;
+import com.hmdm.persistence.domain.DeviceInfoUpdate;
 import com.hmdm.rest.filter.BaseIPFilter;
 import com.hmdm.rest.json.*;
+import com.hmdm.service.ConfigurationRevisionService;
+import com.hmdm.service.DeviceInfoWriteBehindService;
+import com.hmdm.service.SyncTemplateCache;
 import com.hmdm.security.SecurityContext;
 import com.hmdm.util.CryptoUtil;
 import com.hmdm.util.FileUtil;
@@ -83,6 +89,14 @@ public class SyncResource {
 
     private static final Logger logger = LoggerFactory.getLogger(SyncResource.class);
 
+    /**
+     * <p>
+     * A mapper used for serializing the responses to devices and parsing the data
+     * submitted by devices.
+     * </p>
+     */
+    private static final ObjectMapper jsonMapper = new ObjectMapper();
+
     /**
      * <p>
      * DAO objects
@@ -101,13 +115,35 @@ public class SyncResource {
      */
     private EventService eventService;
 
+    /**
+     * <p>
+     * A cache of precompiled device-independent parts of the responses to
+     * configuration synchronization requests.
+     * </p>
+     */
+    private SyncTemplateCache syncTemplateCache;
+
+    /**
+     * <p>
+     * A service tracking the revisions of configuration data delivered to devices.
+     * </p>
+     */
+    private ConfigurationRevisionService revisionService;
+
+    /**
+     * <p>
+     * A service used for saving the info submitted by devices.
+     * </p>
+     */
+    private DeviceInfoWriteBehindService deviceInfoWriter;
+
     /**
      * <p>
      * A list of hooks to be executed against the response to device confoguration
      * synchronization request.
      * </p>
      */
-    private Set<SyncResponseHook> syncResponseHooks;
+    private List<SyncResponseHook> syncResponseHooks = Collections.emptyList();
 
     private String baseUrl;
 
@@ -117,6 +153,14 @@ public class SyncResource {
     private String hashSecret;
     private boolean preventDuplicateEnrollment;
 
+    /**
+     * <p>
+     * A flag indicating if the response to configuration synchronization request
+     * is serialized once for both signing and sending to device.
+     * </p>
+     */
+    private boolean preserializeResponse;
+
     private static final String HEADER_IP_ADDRESS = "X-IP-Address";
     private static final String HEADER_CPU_ARCH = "X-CPU-Arch";
     private static final String HEADER_ENROLLMENT_SIGNATURE = "X-Request-Signature";
@@ -145,6 +189,9 @@ public class SyncResource {
             Injector injector,
             CustomerDAO customerDAO,
             DeviceDAO deviceDAO,
+            SyncTemplateCache syncTemplateCache,
+            ConfigurationRevisionService revisionService,
+            DeviceInfoWriteBehindService deviceInfoWriter,
             @Named("base.url") String baseUrl,
             @Named("secure.enrollment") boolean secureEnrollment,
             @Named("hash.secret") String hashSecret,
@@ -152,15 +199,20 @@ public class SyncResource {
             @Named("rebranding.mobile.name") String mobileAppName,
             @Named("rebranding.vendor.name") String vendor,
             @Named("proxy.addresses") String proxyIps,
-            @Named("proxy.ip.header") String ipHeader) {
+            @Named("proxy.ip.header") String ipHeader,
+            @Named("sync.response.preserialize") boolean preserializeResponse) {
         this.unsecureDAO = unsecureDAO;
         this.eventService = eventService;
         this.customerDAO = customerDAO;
         this.deviceDAO = deviceDAO;
+        this.syncTemplateCache = syncTemplateCache;
+        this.revisionService = revisionService;
+        this.deviceInfoWriter = deviceInfoWriter;
         this.baseUrl = baseUrl;
         this.secureEnrollment = secureEnrollment;
         this.hashSecret = hashSecret;
         this.preventDuplicateEnrollment = preventDuplicateEnrollment;
+        this.preserializeResponse = preserializeResponse;
         this.mobileAppName = mobileAppName;
         this.vendor = vendor;
         this.remoteAddrResolver = new BaseIPFilter("", proxyIps, ipHeader);
@@ -173,7 +225,10 @@ public class SyncResource {
                 allYourInterfaces.add(yourInterface);
             }
         }
-        this.syncResponseHooks = allYourInterfaces;
+        // The hooks are ordered so the entity tags evaluated from their versions are the same on all nodes
+        this.syncResponseHooks = allYourInterfaces.stream()
+                .sorted(Comparator.comparing(hook -> hook.getClass().getName()))
+                .collect(Collectors.toList());
     }
 
     // =================================================================================================================
@@ -233,6 +288,8 @@ public class SyncResource {
                 logger.warn("Requested device {} was not found", number);
                 return Response.DEVICE_NOT_FOUND_ERROR();
             }
+        } catch (WebApplicationException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Unexpected error when getting device settings", e);
             e.printStackTrace();
@@ -292,6 +349,8 @@ public class SyncResource {
                 logger.warn("Requested device {} was not found", number);
                 return Response.DEVICE_NOT_FOUND_ERROR();
             }
+        } catch (WebApplicationException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Unexpected error when getting device settings", e);
             e.printStackTrace();
@@ -301,7 +360,7 @@ public class SyncResource {
 
     private Response getDeviceSettingInternal(Device dbDevice, boolean migration, boolean foundByImeiOrSerial,
             HttpServletRequest request,
-            HttpServletResponse response) throws UnsupportedEncodingException {
+            HttpServletResponse response) throws Exception {
 
         if (!migration && dbDevice.getOldNumber() != null) {
             // If a device requested the configuration by new device ID, the migration is
@@ -310,23 +369,214 @@ public class SyncResource {
             dbDevice.setOldNumber(null);
         }
 
-        final Customer customer = this.customerDAO.findById(dbDevice.getCustomerId());
+        final String arch = SyncTemplateCache.normalizeCpuArch(request.getHeader(HEADER_CPU_ARCH));
 
-        String cpuArch = request.getHeader(HEADER_CPU_ARCH);
-        if (cpuArch == null) {
-            // Default
-            cpuArch = Application.ARCH_ARM64;
-        } else {
-            // Remove version: armeabi-v7a -> armeabi
-            int i = cpuArch.indexOf('-');
-            if (i != -1) {
-                cpuArch = cpuArch.substring(0, i);
+        final boolean hasHooks = !this.syncResponseHooks.isEmpty();
+
+        final EntityTag entityTag = getConfigurationTag(dbDevice, arch, foundByImeiOrSerial);
+        if (entityTag != null) {
+            if ("GET".equals(request.getMethod())
+                    && isTagMatched(request.getHeader(HttpHeaders.IF_NONE_MATCH), entityTag)) {
+                logger.debug("Configuration of device {} is not modified", dbDevice.getNumber());
+                throw new WebApplicationException(javax.ws.rs.core.Response.notModified(entityTag)
+                        .header(HEADER_IP_ADDRESS, remoteAddrResolver.getRemoteAddr(request))
+                        .build());
+            }
+            response.setHeader(HttpHeaders.ETAG, entityTag.toString());
+        }
+
+        final int customerId = dbDevice.getCustomerId();
+        final int configurationId = dbDevice.getConfigurationId();
+        final SyncTemplateCache.SyncTemplate template = this.syncTemplateCache.getTemplate(
+                customerId, configurationId, arch, () -> buildSyncTemplate(customerId, configurationId, arch));
+
+        // Apply the device-specific data to a copy of precompiled template
+        final SyncResponse data = new SyncResponse(template.getResponse());
+
+        data.setImei(dbDevice.getImei());
+        data.setPhone(dbDevice.getPhone());
+        if (dbDevice.getOldNumber() != null) {
+            data.setNewNumber(dbDevice.getNumber());
+        }
+
+        final Settings settings = template.getSettings();
+        if (settings != null) {
+            if (settings.isCustomSend1()) {
+                data.setCustom1(dbDevice.getCustom1());
+            }
+
+            if (settings.isCustomSend2()) {
+                data.setCustom2(dbDevice.getCustom2());
+            }
+
+            if (settings.isCustomSend3()) {
+                data.setCustom3(dbDevice.getCustom3());
+            }
+
+            if (settings.isSendDescription()) {
+                data.setDescription(dbDevice.getDescription());
             }
         }
 
-        Settings settings = this.unsecureDAO.getSettings(dbDevice.getCustomerId());
+        // Evaluate the application settings
+        final List<ApplicationSetting> deviceAppSettings = this.unsecureDAO.getDeviceAppSettings(dbDevice.getId());
+        final List<ApplicationSetting> applicationSettings = combineDeviceLogRules(
+                template.getConfigurationAppSettings(), deviceAppSettings);
+
+        final Device dbDevice1 = dbDevice;
+        data.setApplicationSettings(applicationSettings.stream().map(s -> {
+            SyncApplicationSetting syncSetting = new SyncApplicationSetting();
+            syncSetting.setPackageId(s.getApplicationPkg());
+            syncSetting.setName(s.getName());
+            syncSetting.setType(s.getType().getId());
+            syncSetting.setReadonly(s.isReadonly());
+            syncSetting.setValue(s.getValueForDevice(dbDevice1));
+            syncSetting.setLastUpdate(s.getLastUpdate());
+
+            return syncSetting;
+        }).collect(Collectors.toList()));
+
+        if (foundByImeiOrSerial) {
+            data.setNewNumber(dbDevice.getNumber());
+        }
+
+        response.setHeader(HEADER_IP_ADDRESS, remoteAddrResolver.getRemoteAddr(request));
+
+        SyncResponseInt syncResponse = data;
+
+        SecurityContext.init(dbDevice.getCustomerId());
+        try {
+            if (hasHooks) {
+                for (SyncResponseHook hook : this.syncResponseHooks) {
+                    syncResponse = hook.handle(dbDevice.getId(), syncResponse);
+                }
+            }
+        } finally {
+            SecurityContext.release();
+        }
+
+        if (this.preserializeResponse) {
+            // Serialize the response once and use the same JSON for both signature and response body
+            final RawJson json = new RawJson(jsonMapper.writeValueAsString(syncResponse));
+            final String signature = CryptoUtil.getJsonSignature(hashSecret, json.getJson());
+            response.setHeader(HEADER_RESPONSE_SIGNATURE, signature);
+            return Response.OK(json);
+        }
+
+        // Always add signature to enable "soft" security implementation
+        // if (secureEnrollment) {
+        // Add a signature to avoid MITM attack
+        response.setHeader(HEADER_RESPONSE_SIGNATURE, CryptoUtil.getDataSignature(hashSecret, syncResponse));
+        // }
+
+        return Response.OK(syncResponse);
+
+    }
+
+    /**
+     * <p>Gets the entity tag for the configuration data delivered to the specified device. The tag is evaluated from
+     * the revisions of configuration data stored in database, the device-specific data and the versions of the data
+     * added by hooks so it changes each time the response to configuration synchronization request for the device may
+     * change.</p>
+     *
+     * @param dbDevice a device requesting the configuration.
+     * @param cpuArch a CPU architecture of the device.
+     * @param foundByImeiOrSerial <code>true</code> if device has been found by IMEI or serial number.
+     * @return an entity tag or <code>null</code> if it can not be evaluated.
+     */
+    private EntityTag getConfigurationTag(Device dbDevice, String cpuArch, boolean foundByImeiOrSerial) {
+        final String revision = this.revisionService.getDeviceSyncRevision(dbDevice.getId());
+        if (revision == null) {
+            return null;
+        }
+        final String hookVersions = getHookVersions(dbDevice);
+        if (hookVersions == null) {
+            return null;
+        }
+
+        final StringBuilder b = new StringBuilder(revision);
+        b.append('\0').append(cpuArch)
+                .append('\0').append(dbDevice.getOldNumber() != null || foundByImeiOrSerial ? dbDevice.getNumber() : null)
+                .append('\0').append(dbDevice.getImei())
+                .append('\0').append(dbDevice.getPhone())
+                .append('\0').append(dbDevice.getCustom1())
+                .append('\0').append(dbDevice.getCustom2())
+                .append('\0').append(dbDevice.getCustom3())
+                .append('\0').append(dbDevice.getDescription())
+                .append('\0').append(this.baseUrl)
+                .append('\0').append(this.mobileAppName)
+                .append('\0').append(this.vendor)
+                .append(hookVersions);
+
+        return new EntityTag(CryptoUtil.getSHA1String(b.toString()));
+    }
+
+    /**
+     * <p>Gets the versions of the data added to the response for the specified device by the hooks.</p>
+     *
+     * @param dbDevice a device requesting the configuration.
+     * @return the versions of the data added by all hooks or <code>null</code> if any hook can not evaluate the
+     *         version.
+     */
+    private String getHookVersions(Device dbDevice) {
+        if (this.syncResponseHooks.isEmpty()) {
+            return "";
+        }
+        final StringBuilder b = new StringBuilder();
+        SecurityContext.init(dbDevice.getCustomerId());
+        try {
+            for (SyncResponseHook hook : this.syncResponseHooks) {
+                final String version = hook.getVersion(dbDevice.getId());
+                if (version == null) {
+                    return null;
+                }
+                b.append('\0').append(hook.getClass().getName()).append('\0').append(version);
+            }
+        } finally {
+            SecurityContext.release();
+        }
+        return b.toString();
+    }
+
+    /**
+     * <p>Checks if the value of <code>If-None-Match</code> header matches the specified entity tag.</p>
+     *
+     * @param header a value of <code>If-None-Match</code> header sent by client.
+     * @param entityTag an entity tag for the current data.
+     * @return <code>true</code> if client has the current data; <code>false</code> otherwise.
+     */
+    private static boolean isTagMatched(String header, EntityTag entityTag) {
+        if (header == null) {
+            return false;
+        }
+        final String value = entityTag.toString();
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(value) || tag.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * <p>Builds the device-independent part of the response to configuration synchronization request.</p>
+     *
+     * @param customerId an ID of a customer account owning the configuration.
+     * @param configurationId an ID of a configuration.
+     * @param cpuArch a CPU architecture of the device.
+     * @return a compiled template for the response.
+     */
+    private SyncTemplateCache.SyncTemplate buildSyncTemplate(int customerId, int configurationId, String cpuArch)
+            throws UnsupportedEncodingException {
+        final Customer customer = this.customerDAO.findById(customerId);
+
+        Settings settings = this.unsecureDAO.getSettings(customerId);
         final List<Application> applications = this.unsecureDAO.getPlainConfigurationApplications(
-                dbDevice.getCustomerId(), dbDevice.getConfigurationId());
+                customerId, configurationId);
 
         for (Application app : applications) {
             final String icon = app.getIcon();
@@ -339,22 +589,21 @@ public class SyncResource {
                 }
             }
             if (app.isSplit()) {
-                if (cpuArch.equals(Application.ARCH_ARM64)) {
+                if (Application.ARCH_ARM64.equals(cpuArch)) {
                     app.setUrl(app.getUrlArm64());
-                } else if (cpuArch.equals(Application.ARCH_ARMEABI)) {
+                } else if (Application.ARCH_ARMEABI.equals(cpuArch)) {
                     app.setUrl(app.getUrlArmeabi());
                 }
             }
         }
 
-        Configuration configuration = this.unsecureDAO
-                .getConfigurationByIdWithAppSettings(dbDevice.getConfigurationId());
+        Configuration configuration = this.unsecureDAO.getConfigurationByIdWithAppSettings(configurationId);
 
         SyncResponse data;
         if (configuration.isUseDefaultDesignSettings()) {
-            data = new SyncResponse(settings, configuration.getPassword(), applications, dbDevice);
+            data = new SyncResponse(settings, configuration.getPassword(), applications, null);
         } else {
-            data = new SyncResponse(configuration, applications, dbDevice);
+            data = new SyncResponse(configuration, applications, null);
         }
 
         data.setGps(configuration.getGps());
@@ -435,44 +684,7 @@ public class SyncResource {
                 configuration.getKioskScreenOn() != null && configuration.getKioskScreenOn() ? true : null);
         data.setRestrictions(configuration.getRestrictions());
 
-        if (settings != null) {
-            if (settings.isCustomSend1()) {
-                data.setCustom1(dbDevice.getCustom1());
-            }
-
-            if (settings.isCustomSend2()) {
-                data.setCustom2(dbDevice.getCustom2());
-            }
-
-            if (settings.isCustomSend3()) {
-                data.setCustom3(dbDevice.getCustom3());
-            }
-
-            if (settings.isSendDescription()) {
-                data.setDescription(dbDevice.getDescription());
-            }
-        }
-
-        // Evaluate the application settings
-        final List<ApplicationSetting> deviceAppSettings = this.unsecureDAO.getDeviceAppSettings(dbDevice.getId());
-        final List<ApplicationSetting> configApplicationSettings = configuration.getApplicationSettings();
-        final List<ApplicationSetting> applicationSettings = combineDeviceLogRules(configApplicationSettings,
-                deviceAppSettings);
-
-        final Device dbDevice1 = dbDevice;
-        data.setApplicationSettings(applicationSettings.stream().map(s -> {
-            SyncApplicationSetting syncSetting = new SyncApplicationSetting();
-            syncSetting.setPackageId(s.getApplicationPkg());
-            syncSetting.setName(s.getName());
-            syncSetting.setType(s.getType().getId());
-            syncSetting.setReadonly(s.isReadonly());
-            syncSetting.setValue(s.getValueForDevice(dbDevice1));
-            syncSetting.setLastUpdate(s.getLastUpdate());
-
-            return syncSetting;
-        }).collect(Collectors.toList()));
-
-        final List<ConfigurationFile> configurationFiles = this.unsecureDAO.getConfigurationFiles(dbDevice);
+        final List<ConfigurationFile> configurationFiles = this.unsecureDAO.getConfigurationFiles(configurationId);
         configurationFiles.forEach(
                 file -> {
                     if (file.getExternalUrl() != null) {
@@ -508,33 +720,12 @@ public class SyncResource {
             data.setVendor(vendor);
         }
 
-        if (foundByImeiOrSerial) {
-            data.setNewNumber(dbDevice.getNumber());
-        }
-
-        SyncResponseInt syncResponse = data;
-
-        SecurityContext.init(dbDevice.getCustomerId());
-        try {
-            if (this.syncResponseHooks != null && !this.syncResponseHooks.isEmpty()) {
-                for (SyncResponseHook hook : this.syncResponseHooks) {
-                    syncResponse = hook.handle(dbDevice.getId(), syncResponse);
-                }
-            }
-        } finally {
-            SecurityContext.release();
-        }
-
-        response.setHeader(HEADER_IP_ADDRESS, remoteAddrResolver.getRemoteAddr(request));
-
-        // Always add signature to enable "soft" security implementation
-        // if (secureEnrollment) {
-        // Add a signature to avoid MITM attack
-        response.setHeader(HEADER_RESPONSE_SIGNATURE, CryptoUtil.getDataSignature(hashSecret, syncResponse));
-        // }
-
-        return Response.OK(syncResponse);
+        final List<ApplicationSetting> configApplicationSettings = configuration.getApplicationSettings()
+                .stream()
+                .filter(s -> s.getValue() != null && !s.getValue().trim().isEmpty())
+                .collect(Collectors.toList());
 
+        return new SyncTemplateCache.SyncTemplate(data, settings, configApplicationSettings);
     }
 
     // =================================================================================================================
@@ -573,38 +764,40 @@ public class SyncResource {
                     dbDevice.setOldNumber(null);
                 }
 
-                ObjectMapper objectMapper = new ObjectMapper();
+                // The info which is not saved yet is more recent than the one in database
+                String prevInfoJson = this.deviceInfoWriter.getPendingInfo(dbDevice.getId());
+                if (prevInfoJson == null) {
+                    prevInfoJson = dbDevice.getInfo();
+                }
                 DeviceInfo prevInfo = null;
                 try {
-                    prevInfo = objectMapper.readValue(dbDevice.getInfo(), DeviceInfo.class);
+                    prevInfo = jsonMapper.readValue(prevInfoJson, DeviceInfo.class);
                 } catch (Exception e) {
                 }
                 if (prevInfo != null && prevInfo.getImei() != null && deviceInfo.getImei() != null &&
                         !prevInfo.getImei().equals(deviceInfo.getImei())) {
                     dbDevice.setImeiUpdateTs(System.currentTimeMillis());
                 }
-                this.unsecureDAO.updateDeviceInfo(dbDevice.getId(),
-                        objectMapper.writeValueAsString(deviceInfo),
-                        dbDevice.getImeiUpdateTs(),
-                        remoteAddrResolver.getRemoteAddr(request));
-
-                boolean needUpdate = false;
-                if (deviceInfo.getCustom1() != null) {
-                    dbDevice.setCustom1(deviceInfo.getCustom1());
-                    needUpdate = true;
-                }
-                if (deviceInfo.getCustom2() != null) {
-                    dbDevice.setCustom2(deviceInfo.getCustom2());
-                    needUpdate = true;
-                }
-                if (deviceInfo.getCustom3() != null) {
-                    dbDevice.setCustom3(deviceInfo.getCustom3());
-                    needUpdate = true;
-                }
-                if (needUpdate) {
-                    this.unsecureDAO.updateDeviceCustomProperties(dbDevice.getId(), dbDevice);
+
+                final DeviceInfoUpdate update = new DeviceInfoUpdate();
+                update.setDeviceId(dbDevice.getId());
+                update.setInfo(jsonMapper.writeValueAsString(deviceInfo));
+                update.setImeiUpdateTs(dbDevice.getImeiUpdateTs());
+                update.setPublicIp(remoteAddrResolver.getRemoteAddr(request));
+                update.setLastUpdate(System.currentTimeMillis());
+                update.setDeviceInfo(deviceInfo);
+                update.setConfigurationId(dbDevice.getConfigurationId());
+
+                if (deviceInfo.getCustom1() != null || deviceInfo.getCustom2() != null
+                        || deviceInfo.getCustom3() != null) {
+                    update.setCustom1(deviceInfo.getCustom1() != null ? deviceInfo.getCustom1() : dbDevice.getCustom1());
+                    update.setCustom2(deviceInfo.getCustom2() != null ? deviceInfo.getCustom2() : dbDevice.getCustom2());
+                    update.setCustom3(deviceInfo.getCustom3() != null ? deviceInfo.getCustom3() : dbDevice.getCustom3());
                 }
 
+                // The info is saved in background along with the info from other devices
+                this.deviceInfoWriter.submit(update);
+
                 if (deviceInfo.getBatteryLevel() != null) {
                     this.eventService.fireEvent(
                             new DeviceBatteryLevelUpdatedEvent(dbDevice.getId(), deviceInfo.getBatteryLevel()));
@@ -618,8 +811,6 @@ public class SyncResource {
                             new DeviceLocationUpdatedEvent(dbDevice.getId(), locations, false));
                 }
 
-                this.eventService.fireEvent(new DeviceInfoUpdatedEvent(dbDevice.getId()));
-
                 response.setHeader(HEADER_IP_ADDRESS, remoteAddrResolver.getRemoteAddr(request));
                 return Response.OK();
             } else {
@@ -0,0 +1,233 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.service;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.hmdm.event.DeviceInfoUpdatedEvent;
+import com.hmdm.event.EventService;
+import com.hmdm.persistence.UnsecureDAO;
+import com.hmdm.persistence.domain.Device;
+import com.hmdm.persistence.domain.DeviceInfoUpdate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>A service used for saving the info submitted by devices. The updates are coalesced per device in memory and
+ * written to database in batches at regular intervals, so the frequent check-ins of many devices result in a few
+ * database statements.</p>
+ *
+ * <p>The number of pending updates is limited: if the limit is reached then the updates for devices which have no
+ * pending update are written immediately by the calling thread.</p>
+ */
+@Singleton
+public class DeviceInfoWriteBehindService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceInfoWriteBehindService.class);
+
+    /**
+     * <p>A mapping from device IDs to pending updates.</p>
+     */
+    private final ConcurrentMap<Integer, DeviceInfoUpdate> pending = new ConcurrentHashMap<>();
+
+    /**
+     * <p>An executor for writing the pending updates. <code>null</code> if the updates are written immediately.</p>
+     */
+    private final ScheduledExecutorService flushService;
+
+    /**
+     * <p>A flag indicating if the immediate writing of pending updates has been requested.</p>
+     */
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final Object flushLock = new Object();
+
+    private final UnsecureDAO unsecureDAO;
+
+    private final EventService eventService;
+
+    /**
+     * <p>A maximum number of updates written by single statement.</p>
+     */
+    private final int batchSize;
+
+    /**
+     * <p>A maximum number of pending updates.</p>
+     */
+    private final int queueSize;
+
+    /**
+     * <p>Constructs new <code>DeviceInfoWriteBehindService</code> instance. This implementation does nothing.</p>
+     */
+    @Inject
+    public DeviceInfoWriteBehindService(UnsecureDAO unsecureDAO,
+                                        EventService eventService,
+                                        @Named("device.info.flush.interval") int flushInterval,
+                                        @Named("device.info.batch.size") int batchSize,
+                                        @Named("device.info.queue.size") int queueSize) {
+        this.unsecureDAO = unsecureDAO;
+        this.eventService = eventService;
+        this.batchSize = Math.max(batchSize, 1);
+        this.queueSize = queueSize;
+        if (flushInterval > 0) {
+            this.flushService = Executors.newSingleThreadScheduledExecutor();
+            this.flushService.scheduleWithFixedDelay(this::flushSafely, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        } else {
+            this.flushService = null;
+        }
+    }
+
+    /**
+     * <p>Gets the latest device info which has been submitted by the device but not yet saved to database.</p>
+     *
+     * @param deviceId an ID of a device.
+     * @return a JSON representation of device info or <code>null</code> if there is no pending update for device.
+     */
+    public String getPendingInfo(int deviceId) {
+        final DeviceInfoUpdate update = this.pending.get(deviceId);
+        return update != null ? update.getInfo() : null;
+    }
+
+    /**
+     * <p>Schedules the specified update for saving to database. The {@link DeviceInfoUpdatedEvent} is fired once the
+     * update is saved.</p>
+     *
+     * @param update an update of the device info.
+     */
+    public void submit(DeviceInfoUpdate update) {
+        if (this.flushService == null || this.flushService.isShutdown()
+                || (this.pending.size() >= this.queueSize && !this.pending.containsKey(update.getDeviceId()))) {
+            writeImmediately(update);
+            return;
+        }
+
+        this.pending.merge(update.getDeviceId(), update, (older, newer) -> newer.mergeOlder(older));
+
+        if (this.pending.size() >= this.batchSize && this.flushRequested.compareAndSet(false, true)) {
+            try {
+                this.flushService.execute(this::flushSafely);
+            } catch (Exception e) {
+                this.flushRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * <p>Writes all pending updates to database.</p>
+     */
+    public void flush() {
+        synchronized (this.flushLock) {
+            this.flushRequested.set(false);
+            while (!this.pending.isEmpty()) {
+                final List<DeviceInfoUpdate> batch = new ArrayList<>(Math.min(this.batchSize, this.pending.size()));
+                for (DeviceInfoUpdate update : this.pending.values()) {
+                    batch.add(update);
+                    if (batch.size() >= this.batchSize) {
+                        break;
+                    }
+                }
+                // The rows are locked in the same order by all writers to avoid deadlocks
+                batch.sort(Comparator.comparingInt(DeviceInfoUpdate::getDeviceId));
+
+                writeBatch(batch);
+
+                // The updates submitted during writing are kept pending
+                batch.forEach(update -> this.pending.remove(update.getDeviceId(), update));
+                batch.forEach(this::fireUpdatedEvent);
+            }
+        }
+    }
+
+    /**
+     * <p>Stops the scheduled writing and writes all pending updates to database.</p>
+     */
+    public void shutdown() {
+        if (this.flushService != null) {
+            this.flushService.shutdown();
+            try {
+                this.flushService.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            logger.info("Saving {} pending device info updates", this.pending.size());
+            flushSafely();
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("Unexpected error when saving device info updates", e);
+        }
+    }
+
+    /**
+     * <p>Writes the specified updates to database. If the batch fails then the updates are written one by one, so a
+     * single bad update does not prevent the others from being saved.</p>
+     */
+    private void writeBatch(List<DeviceInfoUpdate> batch) {
+        try {
+            this.unsecureDAO.updateDeviceInfoBatch(batch);
+            logger.debug("Saved {} device info updates", batch.size());
+        } catch (Exception e) {
+            logger.error("Failed to save {} device info updates in batch, saving them one by one", batch.size(), e);
+            for (DeviceInfoUpdate update : batch) {
+                try {
+                    this.unsecureDAO.updateDeviceInfoBatch(Collections.singletonList(update));
+                } catch (Exception e1) {
+                    logger.error("Failed to save info for device #{}", update.getDeviceId(), e1);
+                }
+            }
+        }
+    }
+
+    private void writeImmediately(DeviceInfoUpdate update) {
+        this.unsecureDAO.updateDeviceInfo(update.getDeviceId(), update.getInfo(), update.getImeiUpdateTs(),
+                update.getPublicIp());
+        if (update.hasCustomProperties()) {
+            final Device device = new Device();
+            device.setCustom1(update.getCustom1());
+            device.setCustom2(update.getCustom2());
+            device.setCustom3(update.getCustom3());
+            this.unsecureDAO.updateDeviceCustomProperties(update.getDeviceId(), device);
+        }
+        fireUpdatedEvent(update);
+    }
+
+    private void fireUpdatedEvent(DeviceInfoUpdate update) {
+        this.eventService.fireEvent(new DeviceInfoUpdatedEvent(update.getDeviceId(), update.getConfigurationId(),
+                update.getDeviceInfo()));
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.hmdm.event.ConfigurationUpdatedEvent;
+import com.hmdm.event.EventListener;
+import com.hmdm.event.EventType;
+import com.hmdm.persistence.ConfigurationDAO;
+import com.hmdm.persistence.domain.Application;
+import com.hmdm.persistence.domain.Configuration;
+import com.hmdm.persistence.domain.ConfigurationFile;
+import com.hmdm.security.SecurityContext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A cache of the configurations referenced from the list of devices. Only the properties displayed in the list are
+ * kept: the name, the enrollment QR code key, the applications and the files of configuration.</p>
+ *
+ * <p>The configurations missing in cache are loaded in bulk: the configurations, their applications and their files
+ * are loaded by a single query each, regardless of the number of configurations. The cached configurations are shared
+ * by all users of the same customer account and are dropped once the configuration or the data it refers to is changed
+ * or the cache entry has expired.</p>
+ */
+@Singleton
+public class DeviceListConfigurationCache implements EventListener<ConfigurationUpdatedEvent> {
+
+    /**
+     * <p>A time to live for the cached configurations (in milliseconds). Limits the staleness of the cache when the
+     * configuration is changed on another node.</p>
+     */
+    private static final long TTL = 60000;
+
+    /**
+     * <p>A maximum number of cached configurations.</p>
+     */
+    private static final int CACHE_SIZE = 10000;
+
+    /**
+     * <p>A mapping from the customer account and configuration IDs to cached configurations.</p>
+     */
+    private final Cache<Key, CachedConfiguration> configurations = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .expireAfterWrite(TTL, TimeUnit.MILLISECONDS)
+            .build();
+
+    private final ConfigurationDAO configurationDAO;
+
+    /**
+     * <p>A service tracking the revisions of configuration data.</p>
+     */
+    private final ConfigurationRevisionService revisionService;
+
+    /**
+     * <p>Constructs new <code>DeviceListConfigurationCache</code> instance. This implementation does nothing.</p>
+     */
+    @Inject
+    public DeviceListConfigurationCache(ConfigurationDAO configurationDAO,
+                                        ConfigurationRevisionService revisionService) {
+        this.configurationDAO = configurationDAO;
+        this.revisionService = revisionService;
+    }
+
+    /**
+     * <p>Gets the specified configurations available to current user. The returned configurations are shared and must
+     * not be modified.</p>
+     *
+     * @param configurationIds the IDs of configurations.
+     * @return a mapping from configuration IDs to configurations. The configurations which do not exist or are not
+     *         available to current user are not listed.
+     */
+    public Map<Integer, Configuration> getConfigurations(Collection<Integer> configurationIds) {
+        final Map<Integer, Configuration> result = new HashMap<>();
+        final Optional<Integer> customerId = SecurityContext.get().getCurrentCustomerId();
+        if (!customerId.isPresent() || configurationIds.isEmpty()) {
+            return result;
+        }
+
+        final Map<Integer, Long> missing = new HashMap<>();
+        for (Integer configurationId : configurationIds) {
+            // The revision must be taken before loading the data so concurrent changes invalidate the loaded data
+            final long revision = this.revisionService.getRevision(configurationId);
+            final CachedConfiguration cached
+                    = this.configurations.getIfPresent(new Key(customerId.get(), configurationId));
+            if (cached != null && cached.revision == revision) {
+                result.put(configurationId, cached.configuration);
+            } else {
+                missing.put(configurationId, revision);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            final List<Configuration> dbConfigurations = this.configurationDAO.getConfigurationsByIds(missing.keySet());
+            final Map<Integer, List<Application>> applications
+                    = this.configurationDAO.getConfigurationsApplicationsLite(missing.keySet());
+            final Map<Integer, List<ConfigurationFile>> files
+                    = this.configurationDAO.getConfigurationsFiles(missing.keySet());
+            for (Configuration dbConfig : dbConfigurations) {
+                // Here we keep only required properties
+                Configuration configuration = new Configuration();
+                configuration.setId(dbConfig.getId());
+                configuration.setName(dbConfig.getName());
+                if (dbConfig.getMainAppId() != null && dbConfig.getMainAppId() > 0 &&
+                        dbConfig.getEventReceivingComponent() != null && dbConfig.getEventReceivingComponent().length() > 0) {
+                    configuration.setQrCodeKey(dbConfig.getQrCodeKey());
+                    configuration.setBaseUrl(this.configurationDAO.getBaseUrl());
+                }
+                configuration.setApplications(applications.getOrDefault(dbConfig.getId(), new ArrayList<>()));
+                configuration.setFiles(files.getOrDefault(dbConfig.getId(), new ArrayList<>()));
+
+                this.configurations.put(new Key(customerId.get(), dbConfig.getId()),
+                        new CachedConfiguration(configuration, missing.get(dbConfig.getId())));
+                result.put(dbConfig.getId(), configuration);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * <p>Drops the cached data for the specified configuration. The configuration belongs to a single customer account
+     * which is not known here, so the cached keys are checked; the number of them is limited by the cache size.</p>
+     *
+     * @param configurationId an ID of a configuration.
+     */
+    public void invalidate(int configurationId) {
+        this.configurations.asMap().keySet().removeIf(key -> key.configurationId == configurationId);
+    }
+
+    /**
+     * <p>Handles the event.</p>
+     *
+     * @param event an event fired from the external source.
+     */
+    @Override
+    public void onEvent(ConfigurationUpdatedEvent event) {
+        invalidate(event.getConfigurationId());
+    }
+
+    /**
+     * <p>Gets the type of supported events.</p>
+     *
+     * @return a type of supported events.
+     */
+    @Override
+    public EventType getSupportedEventType() {
+        return EventType.CONFIGURATION_UPDATED;
+    }
+
+    /**
+     * <p>A configuration along with the revision of data it has been loaded for.</p>
+     */
+    private static class CachedConfiguration {
+        private final Configuration configuration;
+        private final long revision;
+
+        private CachedConfiguration(Configuration configuration, long revision) {
+            this.configuration = configuration;
+            this.revision = revision;
+        }
+    }
+
+    /**
+     * <p>A key of the cached configuration: the configurations are cached per customer account the current user works
+     * in.</p>
+     */
+    private static class Key {
+        private final int customerId;
+        private final int configurationId;
+
+        private Key(int customerId, int configurationId) {
+            this.customerId = customerId;
+            this.configurationId = configurationId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return customerId == key.customerId && configurationId == key.configurationId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(customerId, configurationId);
+        }
+    }
+}
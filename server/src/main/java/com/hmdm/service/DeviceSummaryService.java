@@ -0,0 +1,353 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.service;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.hmdm.persistence.DeviceDAO;
+import com.hmdm.persistence.domain.DeviceSummaryItem;
+import com.hmdm.persistence.domain.User;
+import com.hmdm.rest.json.ChartItem;
+import com.hmdm.rest.json.SummaryResponse;
+import com.hmdm.util.BackgroundTaskRunnerService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>A service building the summary of devices displayed on the dashboard.</p>
+ *
+ * <p>The summary is computed by a single grouped query and is cached per customer account and the set of devices
+ * available to the user: the users having access to all devices of the customer account share the same summary. The
+ * summary missing in cache is computed once for all concurrent requests. The expired summary is still returned while
+ * the new one is being computed in background, so the dashboard is never blocked by the summary query once the
+ * summary has been computed. The summaries which are not requested anymore are dropped periodically.</p>
+ */
+@Singleton
+public class DeviceSummaryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceSummaryService.class);
+
+    /**
+     * <p>A number of top configurations in the summary.</p>
+     */
+    private static final int TOP_CONFIGS = 5;
+
+    /**
+     * <p>A number of months in the enrollment chart.</p>
+     */
+    private static final int MONTHS = 12;
+
+    /**
+     * <p>A number of the cache lifetimes after which the summary which is not requested anymore is dropped.</p>
+     */
+    private static final int IDLE_TTLS = 10;
+
+    private static final long ONLINE_PERIOD = TimeUnit.HOURS.toMillis(1);
+    private static final long IDLE_PERIOD = TimeUnit.HOURS.toMillis(4);
+    private static final long RECENT_ENROLLMENT_PERIOD = TimeUnit.DAYS.toMillis(30);
+
+    /**
+     * <p>A mapping from the cache keys to cached summaries.</p>
+     */
+    private final ConcurrentMap<String, CachedSummary> summaries = new ConcurrentHashMap<>();
+
+    private final DeviceDAO deviceDAO;
+
+    private final BackgroundTaskRunnerService taskRunner;
+
+    /**
+     * <p>A maximum age of the summary (in milliseconds). If zero then summaries are not cached at all.</p>
+     */
+    private final long ttl;
+
+    /**
+     * <p>Constructs new <code>DeviceSummaryService</code> instance. This implementation does nothing.</p>
+     */
+    @Inject
+    public DeviceSummaryService(DeviceDAO deviceDAO,
+                                BackgroundTaskRunnerService taskRunner,
+                                @Named("summary.cache.ttl") int ttlSeconds) {
+        this.deviceDAO = deviceDAO;
+        this.taskRunner = taskRunner;
+        this.ttl = TimeUnit.SECONDS.toMillis(ttlSeconds);
+    }
+
+    /**
+     * <p>Gets the summary of devices available to the specified user.</p>
+     *
+     * @param user a user to get the summary for.
+     * @return a summary of devices.
+     */
+    public SummaryResponse getSummary(User user) {
+        if (this.ttl <= 0) {
+            return buildSummary(user);
+        }
+
+        final String key = getKey(user);
+        final long now = System.currentTimeMillis();
+
+        CachedSummary cached = this.summaries.get(key);
+        if (cached == null) {
+            final CachedSummary loading = new CachedSummary(now);
+            cached = this.summaries.putIfAbsent(key, loading);
+            if (cached == null) {
+                return load(key, loading, user);
+            }
+        }
+
+        cached.lastAccessTime = now;
+        if (!cached.summary.isDone()) {
+            return await(cached);
+        }
+        final CachedSummary expired = cached;
+        if (now - expired.createTime >= this.ttl && expired.refreshing.compareAndSet(false, true)) {
+            this.taskRunner.submitTask(BackgroundTaskRunnerService.Lane.SERVICES, "deviceSummary", () -> {
+                try {
+                    final CachedSummary refreshed = new CachedSummary(System.currentTimeMillis());
+                    refreshed.summary.complete(buildSummary(user));
+                    refreshed.lastAccessTime = expired.lastAccessTime;
+                    this.summaries.replace(key, expired, refreshed);
+                } catch (Exception e) {
+                    logger.error("Failed to refresh the summary of devices for {}", key, e);
+                } finally {
+                    expired.refreshing.set(false);
+                }
+            });
+        }
+        return await(expired);
+    }
+
+    /**
+     * <p>Gets the key of the cached summary for the specified user.</p>
+     *
+     * @param user a user to get the summary for.
+     * @return a key of the summary shared by the users having access to the same devices.
+     */
+    static String getKey(User user) {
+        return user.isAllDevicesAvailable()
+                ? user.getCustomerId() + "/*"
+                : user.getCustomerId() + "/" + user.getId();
+    }
+
+    /**
+     * <p>Computes the summary missing in cache. The concurrent requests for the same summary wait for it to be
+     * computed. If computing fails then the summary is dropped from cache, so the next request computes it again.</p>
+     */
+    private SummaryResponse load(String key, CachedSummary loading, User user) {
+        try {
+            final SummaryResponse summary = buildSummary(user);
+            loading.createTime = System.currentTimeMillis();
+            loading.summary.complete(summary);
+            return summary;
+        } catch (RuntimeException | Error e) {
+            this.summaries.remove(key, loading);
+            loading.summary.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static SummaryResponse await(CachedSummary cached) {
+        try {
+            return cached.summary.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * <p>Drops the summaries which have not been requested for a long time.</p>
+     */
+    public void evictIdle() {
+        final long maxIdle = this.ttl * IDLE_TTLS;
+        final long now = System.currentTimeMillis();
+        this.summaries.values().removeIf(cached -> cached.summary.isDone() && now - cached.lastAccessTime > maxIdle);
+    }
+
+    /**
+     * <p>Computes the summary of devices available to the specified user.</p>
+     *
+     * @param user a user to compute the summary for.
+     * @return a summary of devices.
+     */
+    private SummaryResponse buildSummary(User user) {
+        final long now = System.currentTimeMillis();
+        final long onlineSince = now - ONLINE_PERIOD;
+
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(now);
+        final List<Long> monthBounds = getMonthBounds(calendar);
+        final List<String> monthLabels = getMonthLabels(calendar);
+
+        final List<DeviceSummaryItem> items = this.deviceDAO.getDeviceSummary(
+                user, onlineSince, now - IDLE_PERIOD, now - RECENT_ENROLLMENT_PERIOD, monthBounds);
+
+        DeviceSummaryItem total = new DeviceSummaryItem();
+        final List<DeviceSummaryItem> configs = new ArrayList<>();
+        final DeviceSummaryItem[] monthly = new DeviceSummaryItem[MONTHS];
+        for (DeviceSummaryItem item : items) {
+            if (DeviceSummaryItem.KIND_TOTAL.equals(item.getKind())) {
+                total = item;
+            } else if (DeviceSummaryItem.KIND_CONFIG.equals(item.getKind())) {
+                if (item.getConfigurationId() != null && item.getActive() > 0) {
+                    configs.add(item);
+                }
+            } else if (DeviceSummaryItem.KIND_MONTH.equals(item.getKind())) {
+                if (item.getEnrollMonth() != null && item.getEnrollMonth() >= 0 && item.getEnrollMonth() < MONTHS) {
+                    monthly[item.getEnrollMonth()] = item;
+                }
+            }
+        }
+        configs.sort((c1, c2) -> Long.compare(c2.getActive(), c1.getActive()));
+        final List<DeviceSummaryItem> topConfigs = configs.subList(0, Math.min(configs.size(), TOP_CONFIGS));
+
+        SummaryResponse summaryResponse = new SummaryResponse();
+        summaryResponse.setStatusSummary(new LinkedList<>());
+        summaryResponse.getStatusSummary().add(chartItem("green", total.getOnline()));
+        summaryResponse.getStatusSummary().add(chartItem("yellow", total.getIdle()));
+        summaryResponse.getStatusSummary().add(chartItem("red", total.getOffline()));
+
+        summaryResponse.setInstallSummary(new LinkedList<>());
+        summaryResponse.getInstallSummary().add(chartItem(DeviceApplicationsStatus.SUCCESS.name(), total.getInstallSuccess()));
+        summaryResponse.getInstallSummary().add(chartItem(DeviceApplicationsStatus.VERSION_MISMATCH.name(), total.getInstallMismatch()));
+        summaryResponse.getInstallSummary().add(chartItem(DeviceApplicationsStatus.FAILURE.name(), total.getInstallFailure()));
+
+        summaryResponse.setDevicesTotal(this.deviceDAO.getTotalDevicesCount());
+        summaryResponse.setDevicesEnrolled(total.getEnrolled());
+        summaryResponse.setDevicesEnrolledLastMonth(total.getEnrolledRecently());
+
+        summaryResponse.setTopConfigs(new LinkedList<>());
+        summaryResponse.setStatusOfflineByConfig(new LinkedList<>());
+        summaryResponse.setStatusIdleByConfig(new LinkedList<>());
+        summaryResponse.setStatusOnlineByConfig(new LinkedList<>());
+        summaryResponse.setAppFailureByConfig(new LinkedList<>());
+        summaryResponse.setAppMismatchByConfig(new LinkedList<>());
+        summaryResponse.setAppSuccessByConfig(new LinkedList<>());
+        for (DeviceSummaryItem item : topConfigs) {
+            summaryResponse.getTopConfigs().add(item.getConfigurationName());
+            summaryResponse.getStatusOfflineByConfig().add((int) item.getOffline());
+            summaryResponse.getStatusIdleByConfig().add((int) item.getIdle());
+            summaryResponse.getStatusOnlineByConfig().add((int) item.getOnline());
+            summaryResponse.getAppFailureByConfig().add((int) item.getAppFailure());
+            summaryResponse.getAppMismatchByConfig().add((int) item.getAppMismatch());
+            summaryResponse.getAppSuccessByConfig().add((int) item.getAppSuccess());
+        }
+
+        summaryResponse.setDevicesEnrolledMonthly(new LinkedList<>());
+        for (int i = 0; i < MONTHS; i++) {
+            summaryResponse.getDevicesEnrolledMonthly().add(
+                    chartItem(monthLabels.get(i), monthly[i] != null ? monthly[i].getCounter() : 0));
+        }
+
+        return summaryResponse;
+    }
+
+    /**
+     * <p>Gets the bounds of the months in the enrollment chart: the chart covers the current month and 11 months before
+     * it. A month spans from its bound (inclusive) to the bound of the next month (exclusive), as the devices are
+     * counted by <code>width_bucket</code> function.</p>
+     *
+     * @param now a current time.
+     * @return a list of 13 timestamps: the starts of the months in the chart followed by the start of the next month.
+     */
+    static List<Long> getMonthBounds(Calendar now) {
+        final Calendar c = (Calendar) now.clone();
+        c.set(Calendar.DAY_OF_MONTH, 1);
+        c.set(Calendar.HOUR_OF_DAY, 0);
+        c.set(Calendar.MINUTE, 0);
+        c.set(Calendar.SECOND, 0);
+        c.set(Calendar.MILLISECOND, 0);
+        c.add(Calendar.MONTH, 1 - MONTHS);
+
+        final List<Long> bounds = new ArrayList<>();
+        for (int i = 0; i <= MONTHS; i++) {
+            bounds.add(c.getTimeInMillis());
+            c.add(Calendar.MONTH, 1);
+        }
+        return bounds;
+    }
+
+    /**
+     * <p>Gets the labels of the months in the enrollment chart.</p>
+     *
+     * @param now a current time.
+     * @return a list of 12 labels in MM/YY format, the current month last.
+     */
+    static List<String> getMonthLabels(Calendar now) {
+        final Calendar c = (Calendar) now.clone();
+        c.set(Calendar.DAY_OF_MONTH, 1);
+        c.add(Calendar.MONTH, 1 - MONTHS);
+
+        final List<String> labels = new ArrayList<>();
+        for (int i = 0; i < MONTHS; i++) {
+            labels.add(String.format("%02d/%02d", c.get(Calendar.MONTH) + 1, c.get(Calendar.YEAR) % 100));
+            c.add(Calendar.MONTH, 1);
+        }
+        return labels;
+    }
+
+    private static ChartItem chartItem(String label, long number) {
+        ChartItem item = new ChartItem();
+        item.setStringAttr(label);
+        item.setNumber(number);
+        return item;
+    }
+
+    /**
+     * <p>A summary of devices along with the details of its caching.</p>
+     */
+    private static class CachedSummary {
+
+        /**
+         * <p>A summary which is completed once it has been computed.</p>
+         */
+        private final CompletableFuture<SummaryResponse> summary = new CompletableFuture<>();
+
+        private volatile long createTime;
+
+        private volatile long lastAccessTime;
+
+        /**
+         * <p>A flag indicating that the new summary is being computed in background.</p>
+         */
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private CachedSummary(long createTime) {
+            this.createTime = createTime;
+            this.lastAccessTime = createTime;
+        }
+    }
+}
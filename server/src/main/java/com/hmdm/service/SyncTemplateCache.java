@@ -0,0 +1,221 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.service;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.hmdm.event.ConfigurationUpdatedEvent;
+import com.hmdm.event.EventListener;
+import com.hmdm.event.EventType;
+import com.hmdm.persistence.domain.Application;
+import com.hmdm.persistence.domain.ApplicationSetting;
+import com.hmdm.persistence.domain.Settings;
+import com.hmdm.rest.json.SyncResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Named;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A cache of the precompiled device-independent parts of the responses to configuration synchronization requests
+ * from devices. The templates are kept per configuration and CPU architecture and are dropped when the configuration
+ * or the data it refers to is changed.</p>
+ */
+@Singleton
+public class SyncTemplateCache implements EventListener<ConfigurationUpdatedEvent> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SyncTemplateCache.class);
+
+    /**
+     * <p>A mapping from the configuration IDs to compiled templates for those configurations mapped by customer
+     * account and CPU architecture.</p>
+     */
+    private final ConcurrentMap<Integer, ConcurrentMap<String, SyncTemplate>> templates = new ConcurrentHashMap<>();
+
+    /**
+     * <p>A service tracking the revisions of configuration data.</p>
+     */
+    private final ConfigurationRevisionService revisionService;
+
+    /**
+     * <p>A maximum age of the template (in milliseconds). If zero then templates are not cached at all.</p>
+     */
+    private final long ttl;
+
+    /**
+     * <p>Constructs new <code>SyncTemplateCache</code> instance. This implementation does nothing.</p>
+     */
+    @Inject
+    public SyncTemplateCache(ConfigurationRevisionService revisionService,
+                             @Named("sync.template.cache.ttl") int ttlSeconds) {
+        this.revisionService = revisionService;
+        this.ttl = TimeUnit.SECONDS.toMillis(ttlSeconds);
+    }
+
+    /**
+     * <p>Gets the template for the specified configuration. Builds the new template if there is no valid one in
+     * cache.</p>
+     *
+     * @param customerId an ID of a customer account owning the configuration.
+     * @param configurationId an ID of a configuration.
+     * @param cpuArch a CPU architecture of the device as returned by {@link #normalizeCpuArch(String)}.
+     * @param builder a builder for the new template.
+     * @return a template for the configuration or <code>null</code> if builder failed to build the template.
+     * @throws Exception if builder fails.
+     */
+    public SyncTemplate getTemplate(int customerId, int configurationId, String cpuArch,
+                                    SyncTemplateBuilder builder) throws Exception {
+        if (this.ttl <= 0) {
+            return builder.build();
+        }
+
+        final String key = customerId + "/" + cpuArch;
+        // The revision must be taken before loading the data so concurrent changes invalidate the built template
+        final long revision = this.revisionService.getRevision(configurationId);
+        final long now = System.currentTimeMillis();
+
+        final ConcurrentMap<String, SyncTemplate> configurationTemplates
+                = this.templates.computeIfAbsent(configurationId, id -> new ConcurrentHashMap<>());
+        SyncTemplate template = configurationTemplates.get(key);
+        if (template != null && template.revision == revision && now - template.createTime < this.ttl) {
+            return template;
+        }
+
+        template = builder.build();
+        if (template != null) {
+            template.revision = revision;
+            template.createTime = now;
+            configurationTemplates.put(key, template);
+            logger.debug("Compiled sync template for configuration #{}, arch: {}", configurationId, cpuArch);
+        }
+
+        return template;
+    }
+
+    /**
+     * <p>Drops the cached templates for the specified configuration.</p>
+     *
+     * @param configurationId an ID of a configuration.
+     */
+    public void invalidate(int configurationId) {
+        this.templates.remove(configurationId);
+    }
+
+    /**
+     * <p>Maps the CPU architecture reported by device onto the architectures the application files are provided
+     * for. The unknown architectures are mapped to <code>null</code> so the universal files are used.</p>
+     *
+     * @param cpuArch a value of <code>X-CPU-Arch</code> header sent by device, e.g. <code>armeabi-v7a</code>.
+     * @return {@link Application#ARCH_ARMEABI}, {@link Application#ARCH_ARM64} or <code>null</code>.
+     */
+    public static String normalizeCpuArch(String cpuArch) {
+        if (cpuArch == null) {
+            // Default
+            return Application.ARCH_ARM64;
+        }
+        // Remove version: armeabi-v7a -> armeabi
+        final int i = cpuArch.indexOf('-');
+        final String arch = i != -1 ? cpuArch.substring(0, i) : cpuArch;
+        if (Application.ARCH_ARMEABI.equals(arch)) {
+            return Application.ARCH_ARMEABI;
+        } else if (Application.ARCH_ARM64.equals(arch)) {
+            return Application.ARCH_ARM64;
+        }
+        return null;
+    }
+
+    /**
+     * <p>Handles the event.</p>
+     *
+     * @param event an event fired from the external source.
+     */
+    @Override
+    public void onEvent(ConfigurationUpdatedEvent event) {
+        invalidate(event.getConfigurationId());
+    }
+
+    /**
+     * <p>Gets the type of supported events.</p>
+     *
+     * @return a type of supported events.
+     */
+    @Override
+    public EventType getSupportedEventType() {
+        return EventType.CONFIGURATION_UPDATED;
+    }
+
+    /**
+     * <p>A builder for new templates.</p>
+     */
+    @FunctionalInterface
+    public interface SyncTemplateBuilder {
+        SyncTemplate build() throws Exception;
+    }
+
+    /**
+     * <p>A compiled device-independent part of the response to configuration synchronization request. The template
+     * must not be modified once built.</p>
+     */
+    public static class SyncTemplate {
+
+        /**
+         * <p>A response with all configuration-level data populated.</p>
+         */
+        private final SyncResponse response;
+
+        /**
+         * <p>The settings of customer account.</p>
+         */
+        private final Settings settings;
+
+        /**
+         * <p>The non-empty application settings defined by configuration.</p>
+         */
+        private final List<ApplicationSetting> configurationAppSettings;
+
+        private long revision;
+
+        private long createTime;
+
+        public SyncTemplate(SyncResponse response, Settings settings, List<ApplicationSetting> configurationAppSettings) {
+            this.response = response;
+            this.settings = settings;
+            this.configurationAppSettings = configurationAppSettings;
+        }
+
+        public SyncResponse getResponse() {
+            return response;
+        }
+
+        public Settings getSettings() {
+            return settings;
+        }
+
+        public List<ApplicationSetting> getConfigurationAppSettings() {
+            return configurationAppSettings;
+        }
+    }
+}
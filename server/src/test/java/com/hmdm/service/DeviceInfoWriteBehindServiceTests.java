@@ -0,0 +1,172 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.service;
+
+import com.hmdm.event.EventService;
+import com.hmdm.persistence.UnsecureDAO;
+import com.hmdm.persistence.domain.Device;
+import com.hmdm.persistence.domain.DeviceInfoUpdate;
+import com.hmdm.util.BackgroundTaskRunnerService;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * <p>A test suite for {@link DeviceInfoWriteBehindService} class.</p>
+ */
+public class DeviceInfoWriteBehindServiceTests {
+
+    /**
+     * <p>Constructs new <code>DeviceInfoWriteBehindServiceTests</code> instance. This implementation does nothing.</p>
+     */
+    public DeviceInfoWriteBehindServiceTests() {
+    }
+
+    private static DeviceInfoUpdate createUpdate(int deviceId, String info, String custom1) {
+        final DeviceInfoUpdate update = new DeviceInfoUpdate();
+        update.setDeviceId(deviceId);
+        update.setInfo(info);
+        update.setCustom1(custom1);
+        return update;
+    }
+
+    private static DeviceInfoWriteBehindService createService(RecordingDAO dao, int queueSize) {
+        final EventService eventService = new EventService(
+                new BackgroundTaskRunnerService(1, 1, 1, 1, 1, 1, 1, 1, BackgroundTaskRunnerService.POLICY_CALLER_RUNS));
+        // The scheduled writing is not expected to happen during the test
+        return new DeviceInfoWriteBehindService(dao, eventService, 3600000, 100, queueSize);
+    }
+
+    @Test
+    public void testUpdatesAreCoalescedPerDevice() {
+        final RecordingDAO dao = new RecordingDAO();
+        final DeviceInfoWriteBehindService service = createService(dao, 1000);
+
+        service.submit(createUpdate(1, "{\"v\":1}", "first"));
+        service.submit(createUpdate(2, "{\"v\":1}", null));
+        service.submit(createUpdate(1, "{\"v\":2}", null));
+        Assert.assertEquals("{\"v\":2}", service.getPendingInfo(1));
+        Assert.assertTrue("Nothing should be written before flush", dao.batches.isEmpty());
+
+        service.flush();
+
+        Assert.assertEquals(1, dao.batches.size());
+        final List<DeviceInfoUpdate> batch = dao.batches.get(0);
+        Assert.assertEquals(2, batch.size());
+        Assert.assertEquals("{\"v\":2}", batch.get(0).getInfo());
+        Assert.assertEquals("Older custom property should be kept", "first", batch.get(0).getCustom1());
+        Assert.assertNull(service.getPendingInfo(1));
+        service.shutdown();
+    }
+
+    @Test
+    public void testBatchIsSortedByDeviceId() {
+        final RecordingDAO dao = new RecordingDAO();
+        final DeviceInfoWriteBehindService service = createService(dao, 1000);
+
+        for (int deviceId : new int[] {50, 3, 1000, 7, 1, 64, 129}) {
+            service.submit(createUpdate(deviceId, "{}", null));
+        }
+        service.flush();
+
+        Assert.assertEquals(1, dao.batches.size());
+        Assert.assertEquals(Arrays.asList(1, 3, 7, 50, 64, 129, 1000), dao.batches.get(0).stream()
+                .map(DeviceInfoUpdate::getDeviceId).collect(Collectors.toList()));
+        service.shutdown();
+    }
+
+    @Test
+    public void testFailedBatchIsWrittenOneByOne() {
+        final RecordingDAO dao = new RecordingDAO();
+        dao.failingDeviceId = 2;
+        final DeviceInfoWriteBehindService service = createService(dao, 1000);
+
+        service.submit(createUpdate(3, "{}", null));
+        service.submit(createUpdate(2, "{}", null));
+        service.submit(createUpdate(1, "{}", null));
+        service.flush();
+
+        // The failed batch is followed by the single-row batches, the bad update does not block the others
+        Assert.assertEquals(4, dao.batches.size());
+        Assert.assertEquals(Arrays.asList(1, 3), dao.written);
+        Assert.assertNull("Failed update should not stay pending", service.getPendingInfo(2));
+        service.shutdown();
+    }
+
+    @Test
+    public void testUpdateIsWrittenImmediatelyIfQueueIsFull() {
+        final RecordingDAO dao = new RecordingDAO();
+        final DeviceInfoWriteBehindService service = createService(dao, 1);
+
+        service.submit(createUpdate(1, "{}", null));
+        service.submit(createUpdate(2, "{}", "custom"));
+        Assert.assertEquals(Collections.singletonList(2), dao.writtenImmediately);
+        Assert.assertEquals(Collections.singletonList(2), dao.customPropertiesWritten);
+
+        // The device already having a pending update is still coalesced
+        service.submit(createUpdate(1, "{\"v\":2}", null));
+        Assert.assertEquals(Collections.singletonList(2), dao.writtenImmediately);
+        service.shutdown();
+    }
+
+    /**
+     * <p>A DAO recording the written updates.</p>
+     */
+    private static class RecordingDAO extends UnsecureDAO {
+        private final List<List<DeviceInfoUpdate>> batches = new ArrayList<>();
+        private final List<Integer> written = new ArrayList<>();
+        private final List<Integer> writtenImmediately = new ArrayList<>();
+        private final List<Integer> customPropertiesWritten = new ArrayList<>();
+        private Integer failingDeviceId;
+
+        private RecordingDAO() {
+            super(null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null,
+                    "", 0, "");
+        }
+
+        @Override
+        public synchronized void updateDeviceInfoBatch(List<DeviceInfoUpdate> updates) {
+            this.batches.add(new ArrayList<>(updates));
+            for (DeviceInfoUpdate update : updates) {
+                if (this.failingDeviceId != null && this.failingDeviceId == update.getDeviceId()) {
+                    throw new IllegalStateException("Bad update");
+                }
+            }
+            updates.forEach(update -> this.written.add(update.getDeviceId()));
+        }
+
+        @Override
+        public synchronized void updateDeviceInfo(Integer id, String info, Long imeiUpdateTs, String publicIp) {
+            this.writtenImmediately.add(id);
+        }
+
+        @Override
+        public synchronized void updateDeviceCustomProperties(Integer id, Device device) {
+            this.customPropertiesWritten.add(id);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.service;
+
+import com.google.inject.Guice;
+import com.hmdm.persistence.DeviceDAO;
+import com.hmdm.persistence.domain.DeviceSummaryItem;
+import com.hmdm.persistence.domain.User;
+import com.hmdm.rest.json.ChartItem;
+import com.hmdm.rest.json.SummaryResponse;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * <p>A test suite for {@link DeviceSummaryService} class.</p>
+ */
+public class DeviceSummaryServiceTests {
+
+    /**
+     * <p>Constructs new <code>DeviceSummaryServiceTests</code> instance. This implementation does nothing.</p>
+     */
+    public DeviceSummaryServiceTests() {
+    }
+
+    private static User user(int id, int customerId, boolean allDevicesAvailable) {
+        final User user = new User();
+        user.setId(id);
+        user.setCustomerId(customerId);
+        user.setAllDevicesAvailable(allDevicesAvailable);
+        return user;
+    }
+
+    private static Calendar calendar(int year, int month, int day, int hour, int minute, int second, int millis) {
+        final Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("Europe/Berlin"));
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute, second);
+        calendar.set(Calendar.MILLISECOND, millis);
+        return calendar;
+    }
+
+    /**
+     * <p>Finds the month of the enrollment chart the specified time falls into the same way the summary query does:
+     * <code>width_bucket(time, bounds) - 1</code>.</p>
+     */
+    private static int widthBucket(long time, List<Long> bounds) {
+        int bucket = 0;
+        while (bucket < bounds.size() && time >= bounds.get(bucket)) {
+            bucket++;
+        }
+        return bucket - 1;
+    }
+
+    private static DeviceSummaryItem item(String kind, Integer configurationId, Integer enrollMonth, long active) {
+        final DeviceSummaryItem item = new DeviceSummaryItem();
+        item.setKind(kind);
+        item.setConfigurationId(configurationId);
+        item.setConfigurationName(configurationId != null ? "config" + configurationId : null);
+        item.setEnrollMonth(enrollMonth);
+        item.setActive(active);
+        item.setOnline(active);
+        item.setCounter(active);
+        return item;
+    }
+
+    @Test
+    public void testMonthBoundsAreMonthStarts() {
+        final Calendar now = calendar(2026, Calendar.OCTOBER, 18, 15, 42, 17, 345);
+
+        final List<Long> bounds = DeviceSummaryService.getMonthBounds(now);
+
+        Assert.assertEquals(13, bounds.size());
+        Assert.assertEquals(calendar(2025, Calendar.NOVEMBER, 1, 0, 0, 0, 0).getTimeInMillis(), (long) bounds.get(0));
+        Assert.assertEquals(calendar(2026, Calendar.JANUARY, 1, 0, 0, 0, 0).getTimeInMillis(), (long) bounds.get(2));
+        Assert.assertEquals(calendar(2026, Calendar.OCTOBER, 1, 0, 0, 0, 0).getTimeInMillis(), (long) bounds.get(11));
+        Assert.assertEquals(calendar(2026, Calendar.NOVEMBER, 1, 0, 0, 0, 0).getTimeInMillis(), (long) bounds.get(12));
+        Assert.assertEquals(Arrays.asList("11/25", "12/25", "01/26", "02/26", "03/26", "04/26", "05/26", "06/26",
+                "07/26", "08/26", "09/26", "10/26"), DeviceSummaryService.getMonthLabels(now));
+    }
+
+    @Test
+    public void testEnrollmentsAreBucketedByMonth() {
+        final Calendar now = calendar(2026, Calendar.MARCH, 31, 23, 59, 59, 999);
+        final List<Long> bounds = DeviceSummaryService.getMonthBounds(now);
+        final List<String> labels = DeviceSummaryService.getMonthLabels(now);
+
+        final long marchStart = calendar(2026, Calendar.MARCH, 1, 0, 0, 0, 0).getTimeInMillis();
+        Assert.assertEquals("03/26", labels.get(widthBucket(marchStart, bounds)));
+        Assert.assertEquals("02/26", labels.get(widthBucket(marchStart - 1, bounds)));
+        Assert.assertEquals("03/26", labels.get(widthBucket(now.getTimeInMillis(), bounds)));
+        // Leap day and DST change are inside their months
+        Assert.assertEquals("02/26", labels.get(widthBucket(
+                calendar(2026, Calendar.FEBRUARY, 28, 12, 0, 0, 0).getTimeInMillis(), bounds)));
+        Assert.assertEquals("03/26", labels.get(widthBucket(
+                calendar(2026, Calendar.MARCH, 29, 3, 0, 0, 0).getTimeInMillis(), bounds)));
+
+        Assert.assertEquals("Enrolled before the chart", -1, widthBucket(bounds.get(0) - 1, bounds));
+        Assert.assertEquals("Enrolled after the current month", 12, widthBucket(bounds.get(12), bounds));
+        Assert.assertEquals("First month", 0, widthBucket(bounds.get(0), bounds));
+    }
+
+    @Test
+    public void testSummaryItemsAreMappedByKind() {
+        final List<DeviceSummaryItem> items = new ArrayList<>();
+        final DeviceSummaryItem total = item(DeviceSummaryItem.KIND_TOTAL, null, null, 100);
+        total.setEnrolled(90);
+        total.setEnrolledRecently(7);
+        items.add(total);
+        for (int id = 1; id <= 7; id++) {
+            items.add(item(DeviceSummaryItem.KIND_CONFIG, id, null, id * 10));
+        }
+        items.add(item(DeviceSummaryItem.KIND_CONFIG, 8, null, 0));
+        // Devices without configuration
+        items.add(item(DeviceSummaryItem.KIND_CONFIG, null, null, 500));
+        items.add(item(DeviceSummaryItem.KIND_MONTH, null, 0, 3));
+        items.add(item(DeviceSummaryItem.KIND_MONTH, null, 11, 5));
+        items.add(item(DeviceSummaryItem.KIND_MONTH, null, -1, 50));
+        items.add(item(DeviceSummaryItem.KIND_MONTH, null, 12, 60));
+        // Devices which have never been enrolled
+        items.add(item(DeviceSummaryItem.KIND_MONTH, null, null, 70));
+
+        final SummaryResponse summary = new DeviceSummaryService(new SummaryDAO(items), null, 0)
+                .getSummary(user(1, 1, true));
+
+        Assert.assertEquals(100, summary.getStatusSummary().get(0).getNumber());
+        Assert.assertEquals(90, summary.getDevicesEnrolled());
+        Assert.assertEquals(7, summary.getDevicesEnrolledLastMonth());
+        Assert.assertEquals(1000, summary.getDevicesTotal());
+        Assert.assertEquals(Arrays.asList("config7", "config6", "config5", "config4", "config3"),
+                summary.getTopConfigs());
+        Assert.assertEquals(Arrays.asList(70, 60, 50, 40, 30), summary.getStatusOnlineByConfig());
+
+        final List<Integer> monthly = summary.getDevicesEnrolledMonthly().stream()
+                .map(ChartItem::getNumber).collect(Collectors.toList());
+        Assert.assertEquals(Arrays.asList(3, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 5), monthly);
+    }
+
+    @Test
+    public void testSummaryIsCachedPerAccessScope() {
+        final SummaryDAO dao = new SummaryDAO(new ArrayList<>());
+        final DeviceSummaryService service = new DeviceSummaryService(dao, null, 60);
+
+        service.getSummary(user(1, 1, true));
+        service.getSummary(user(2, 1, true));
+        Assert.assertEquals("The users having access to all devices share the summary", 1, dao.loads.get());
+
+        service.getSummary(user(3, 1, false));
+        service.getSummary(user(4, 1, false));
+        service.getSummary(user(3, 1, false));
+        Assert.assertEquals("The users with limited access have own summaries", 3, dao.loads.get());
+
+        service.getSummary(user(5, 2, true));
+        Assert.assertEquals("The customer accounts have own summaries", 4, dao.loads.get());
+
+        Assert.assertEquals("1/*", DeviceSummaryService.getKey(user(1, 1, true)));
+        Assert.assertEquals("1/3", DeviceSummaryService.getKey(user(3, 1, false)));
+        Assert.assertNotEquals(DeviceSummaryService.getKey(user(3, 1, false)),
+                DeviceSummaryService.getKey(user(3, 2, false)));
+    }
+
+    @Test
+    public void testColdSummaryIsComputedOnceForConcurrentRequests() throws Exception {
+        final CountDownLatch queryStarted = new CountDownLatch(1);
+        final CountDownLatch queryReleased = new CountDownLatch(1);
+        final SummaryDAO dao = new SummaryDAO(new ArrayList<>()) {
+            @Override
+            public List<DeviceSummaryItem> getDeviceSummary(User user, long onlineSince, long idleSince,
+                                                            long enrolledSince, List<Long> monthBounds) {
+                queryStarted.countDown();
+                try {
+                    queryReleased.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getDeviceSummary(user, onlineSince, idleSince, enrolledSince, monthBounds);
+            }
+        };
+        final DeviceSummaryService service = new DeviceSummaryService(dao, null, 60);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<SummaryResponse>> results = new ArrayList<>();
+            results.add(executor.submit(() -> service.getSummary(user(1, 1, true))));
+            Assert.assertTrue(queryStarted.await(10, TimeUnit.SECONDS));
+            for (int i = 2; i <= 8; i++) {
+                final int userId = i;
+                results.add(executor.submit(() -> service.getSummary(user(userId, 1, true))));
+            }
+            // Let the other requests reach the cache before the summary is computed
+            Thread.sleep(200);
+            queryReleased.countDown();
+
+            final SummaryResponse first = results.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<SummaryResponse> result : results) {
+                Assert.assertSame(first, result.get(10, TimeUnit.SECONDS));
+            }
+            Assert.assertEquals(1, dao.loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailedSummaryIsComputedAgain() {
+        final SummaryDAO dao = new SummaryDAO(new ArrayList<>());
+        dao.failures.set(1);
+        final DeviceSummaryService service = new DeviceSummaryService(dao, null, 60);
+
+        try {
+            service.getSummary(user(1, 1, true));
+            Assert.fail("The failure must be reported");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        Assert.assertNotNull(service.getSummary(user(1, 1, true)));
+        Assert.assertEquals(2, dao.loads.get());
+    }
+
+    /**
+     * <p>A DAO returning the predefined summary items.</p>
+     */
+    private static class SummaryDAO extends DeviceDAO {
+
+        private final List<DeviceSummaryItem> items;
+        private final AtomicInteger loads = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+
+        private SummaryDAO(List<DeviceSummaryItem> items) {
+            super(null, null, Guice.createInjector(), null, null, null, 0, false, 0);
+            this.items = items;
+        }
+
+        @Override
+        public List<DeviceSummaryItem> getDeviceSummary(User user, long onlineSince, long idleSince,
+                                                        long enrolledSince, List<Long> monthBounds) {
+            this.loads.incrementAndGet();
+            if (this.failures.getAndDecrement() > 0) {
+                throw new IllegalStateException("Failed to compute summary");
+            }
+            return this.items;
+        }
+
+        @Override
+        public long getTotalDevicesCount() {
+            return 1000;
+        }
+    }
+}
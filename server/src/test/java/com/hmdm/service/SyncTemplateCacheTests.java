@@ -0,0 +1,132 @@
+/*
+ *
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.hmdm.service;
+
+import com.hmdm.persistence.TransactionHooks;
+import com.hmdm.persistence.domain.Application;
+import com.hmdm.persistence.mapper.SyncRevisionMapper;
+import org.apache.ibatis.transaction.Transaction;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>A test suite for {@link SyncTemplateCache} class.</p>
+ */
+public class SyncTemplateCacheTests {
+
+    /**
+     * <p>Constructs new <code>SyncTemplateCacheTests</code> instance. This implementation does nothing.</p>
+     */
+    public SyncTemplateCacheTests() {
+    }
+
+    private static ConfigurationRevisionService createRevisionService() {
+        final SyncRevisionMapper mapper = (SyncRevisionMapper) Proxy.newProxyInstance(
+                SyncRevisionMapper.class.getClassLoader(), new Class<?>[] {SyncRevisionMapper.class},
+                (proxy, method, args) -> null);
+        return new ConfigurationRevisionService(mapper);
+    }
+
+    private static SyncTemplateCache createCache() {
+        return new SyncTemplateCache(createRevisionService(), 60);
+    }
+
+    private static SyncTemplateCache.SyncTemplate createTemplate(AtomicInteger builds) {
+        builds.incrementAndGet();
+        return new SyncTemplateCache.SyncTemplate(null, null, null);
+    }
+
+    @Test
+    public void testCpuArchIsNormalized() {
+        Assert.assertEquals(Application.ARCH_ARM64, SyncTemplateCache.normalizeCpuArch(null));
+        Assert.assertEquals(Application.ARCH_ARM64, SyncTemplateCache.normalizeCpuArch("arm64-v8a"));
+        Assert.assertEquals(Application.ARCH_ARMEABI, SyncTemplateCache.normalizeCpuArch("armeabi-v7a"));
+        Assert.assertEquals(Application.ARCH_ARMEABI, SyncTemplateCache.normalizeCpuArch("armeabi"));
+        Assert.assertNull(SyncTemplateCache.normalizeCpuArch("x86_64"));
+        Assert.assertNull(SyncTemplateCache.normalizeCpuArch(""));
+        Assert.assertNull(SyncTemplateCache.normalizeCpuArch("arm64' OR 1=1"));
+    }
+
+    @Test
+    public void testTemplateIsCachedPerCustomerAndArch() throws Exception {
+        final SyncTemplateCache cache = createCache();
+        final AtomicInteger builds = new AtomicInteger();
+
+        final SyncTemplateCache.SyncTemplate template
+                = cache.getTemplate(1, 10, Application.ARCH_ARM64, () -> createTemplate(builds));
+        Assert.assertSame(template, cache.getTemplate(1, 10, Application.ARCH_ARM64, () -> createTemplate(builds)));
+        Assert.assertEquals(1, builds.get());
+
+        cache.getTemplate(1, 10, null, () -> createTemplate(builds));
+        cache.getTemplate(2, 10, Application.ARCH_ARM64, () -> createTemplate(builds));
+        Assert.assertEquals(3, builds.get());
+    }
+
+    @Test
+    public void testInvalidateDropsTemplatesOfConfigurationOnly() throws Exception {
+        final SyncTemplateCache cache = createCache();
+        final AtomicInteger builds = new AtomicInteger();
+
+        cache.getTemplate(1, 10, Application.ARCH_ARM64, () -> createTemplate(builds));
+        cache.getTemplate(1, 10, Application.ARCH_ARMEABI, () -> createTemplate(builds));
+        cache.getTemplate(1, 110, Application.ARCH_ARM64, () -> createTemplate(builds));
+        Assert.assertEquals(3, builds.get());
+
+        cache.invalidate(10);
+
+        cache.getTemplate(1, 10, Application.ARCH_ARM64, () -> createTemplate(builds));
+        cache.getTemplate(1, 10, Application.ARCH_ARMEABI, () -> createTemplate(builds));
+        Assert.assertEquals("Templates of invalidated configuration should be rebuilt", 5, builds.get());
+        cache.getTemplate(1, 110, Application.ARCH_ARM64, () -> createTemplate(builds));
+        Assert.assertEquals("Templates of other configurations should be kept", 5, builds.get());
+    }
+
+    @Test
+    public void testTemplateIsRebuiltOnceConfigurationChangesAreCommitted() throws Exception {
+        final ConfigurationRevisionService revisionService = createRevisionService();
+        final SyncTemplateCache cache = new SyncTemplateCache(revisionService, 60);
+        final AtomicInteger builds = new AtomicInteger();
+
+        cache.getTemplate(1, 10, Application.ARCH_ARM64, () -> createTemplate(builds));
+
+        final Transaction transaction = new TransactionHooks.TransactionFactory()
+                .newTransaction((DataSource) null, null, false);
+        try {
+            revisionService.onConfigurationChanged(10);
+
+            // The revision is not changed until the changes are visible to the other threads
+            cache.getTemplate(1, 10, Application.ARCH_ARM64, () -> createTemplate(builds));
+            Assert.assertEquals(1, builds.get());
+
+            transaction.commit();
+        } finally {
+            transaction.close();
+        }
+
+        cache.getTemplate(1, 10, Application.ARCH_ARM64, () -> createTemplate(builds));
+        Assert.assertEquals("Template should be rebuilt once the changes are committed", 2, builds.get());
+    }
+}